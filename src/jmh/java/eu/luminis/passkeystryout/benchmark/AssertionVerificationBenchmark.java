@@ -0,0 +1,159 @@
+package eu.luminis.passkeystryout.benchmark;
+
+import com.webauthn4j.WebAuthnManager;
+import eu.luminis.passkeystryout.passkey.PublicKeyCache;
+import eu.luminis.passkeystryout.passkey.PublicKeyCachingRelyingPartyOperations;
+import eu.luminis.passkeystryout.webauthn.VirtualAuthenticator;
+import eu.luminis.passkeystryout.webauthn.VirtualCredential;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.userdetails.User;
+import org.springframework.security.provisioning.InMemoryUserDetailsManager;
+import org.springframework.security.web.webauthn.api.Bytes;
+import org.springframework.security.web.webauthn.api.CredentialRecord;
+import org.springframework.security.web.webauthn.api.ImmutablePublicKeyCredentialUserEntity;
+import org.springframework.security.web.webauthn.api.PublicKeyCredentialRequestOptions;
+import org.springframework.security.web.webauthn.api.PublicKeyCredentialRpEntity;
+import org.springframework.security.web.webauthn.api.PublicKeyCredentialUserEntity;
+import org.springframework.security.web.webauthn.api.UserVerificationRequirement;
+import org.springframework.security.web.webauthn.authentication.WebAuthnAuthenticationProvider;
+import org.springframework.security.web.webauthn.authentication.WebAuthnAuthenticationRequestToken;
+import org.springframework.security.web.webauthn.management.MapPublicKeyCredentialUserEntityRepository;
+import org.springframework.security.web.webauthn.management.RelyingPartyAuthenticationRequest;
+import org.springframework.security.web.webauthn.management.UserCredentialRepository;
+import org.springframework.security.web.webauthn.management.WebAuthnRelyingPartyOperations;
+import org.springframework.security.web.webauthn.management.Webauthn4JRelyingPartyOperations;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * What {@code /login/webauthn} does once the request body is parsed: look up the credential, verify the client data,
+ * the authenticator data and the signature, store the new signature count and load the user. The repositories are
+ * in memory, so the cost is the verification itself; {@link RepositoryBenchmark} covers the database side.
+ * <p>
+ * The assertion is signed once in the setup by an authenticator without a signature counter, so the same assertion
+ * passes verification on every invocation. With {@code publicKeyCache} the relying party takes the parsed attestation
+ * object and public key from a {@link PublicKeyCache}, as the application does, instead of decoding them per login.
+ * <p>
+ * The same login is also run by 8 and 32 threads at once. The average time is then per thread, so the logins per
+ * microsecond are the number of threads divided by it.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class AssertionVerificationBenchmark {
+
+    private static final String RP_ID = "localhost";
+    private static final String ORIGIN = "http://localhost:8080";
+
+    @Param({"ES256", "RS256", "EdDSA"})
+    VirtualAuthenticator.Algorithm algorithm;
+
+    @Param({"false", "true"})
+    boolean publicKeyCache;
+
+    WebAuthnAuthenticationProvider authenticationProvider;
+    RelyingPartyAuthenticationRequest request;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        VirtualAuthenticator authenticator = VirtualAuthenticator.withoutSignatureCounter(RP_ID, ORIGIN);
+        PublicKeyCredentialUserEntity user = ImmutablePublicKeyCredentialUserEntity.builder()
+                .id(Bytes.random())
+                .name("alice")
+                .displayName("Alice")
+                .build();
+        MapPublicKeyCredentialUserEntityRepository userEntities = new MapPublicKeyCredentialUserEntityRepository();
+        userEntities.save(user);
+        VirtualCredential credential = authenticator.createCredential(algorithm, user.getId());
+        ConcurrentUserCredentialRepository credentials = new ConcurrentUserCredentialRepository();
+        credentials.save(credential.toCredentialRecord());
+
+        WebAuthnManager webAuthnManager = WebAuthnManager.createNonStrictWebAuthnManager();
+        Webauthn4JRelyingPartyOperations relyingParty = new Webauthn4JRelyingPartyOperations(userEntities, credentials,
+                PublicKeyCredentialRpEntity.builder().id(RP_ID).name("Passkeys Demo").build(), Set.of(ORIGIN));
+        relyingParty.setWebAuthnManager(webAuthnManager);
+        WebAuthnRelyingPartyOperations operations = publicKeyCache
+                ? new PublicKeyCachingRelyingPartyOperations(relyingParty, userEntities, credentials, Set.of(ORIGIN),
+                        webAuthnManager, new PublicKeyCache(100, Duration.ofMinutes(5)))
+                : relyingParty;
+        authenticationProvider = new WebAuthnAuthenticationProvider(operations, new InMemoryUserDetailsManager(
+                User.withUsername("alice").password("{noop}unused").roles("USER").build()));
+
+        PublicKeyCredentialRequestOptions options = PublicKeyCredentialRequestOptions.builder()
+                .challenge(Bytes.random())
+                .rpId(RP_ID)
+                .userVerification(UserVerificationRequirement.PREFERRED)
+                .build();
+        request = new RelyingPartyAuthenticationRequest(options,
+                authenticator.getAssertion(credential, options.getChallenge()));
+    }
+
+    @Benchmark
+    public Authentication verifyAssertion() {
+        return authenticationProvider.authenticate(new WebAuthnAuthenticationRequestToken(request));
+    }
+
+    @Benchmark
+    @Threads(8)
+    public Authentication verifyAssertion8Threads() {
+        return verifyAssertion();
+    }
+
+    @Benchmark
+    @Threads(32)
+    public Authentication verifyAssertion32Threads() {
+        return verifyAssertion();
+    }
+
+    /**
+     * A {@link UserCredentialRepository} that many threads can save the new signature count to at once, which the
+     * {@code MapUserCredentialRepository} of Spring Security does not allow.
+     */
+    static final class ConcurrentUserCredentialRepository implements UserCredentialRepository {
+
+        private final Map<Bytes, CredentialRecord> records = new ConcurrentHashMap<>();
+
+        @Override
+        public void delete(Bytes credentialId) {
+            records.remove(credentialId);
+        }
+
+        @Override
+        public void save(CredentialRecord credentialRecord) {
+            records.put(credentialRecord.getCredentialId(), credentialRecord);
+        }
+
+        @Override
+        public CredentialRecord findByCredentialId(Bytes credentialId) {
+            return records.get(credentialId);
+        }
+
+        @Override
+        public List<CredentialRecord> findByUserId(Bytes userId) {
+            return records.values().stream()
+                    .filter(record -> record.getUserEntityUserId().equals(userId))
+                    .toList();
+        }
+    }
+}
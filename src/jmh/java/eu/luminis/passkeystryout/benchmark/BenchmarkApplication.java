@@ -0,0 +1,29 @@
+package eu.luminis.passkeystryout.benchmark;
+
+import eu.luminis.passkeystryout.PasskeysTryoutApplication;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+/**
+ * Starts the real application for benchmarks that go through the Spring beans, on an in-memory database of its own
+ * and without the request logging, so the numbers include the proxies and the cache but not the console.
+ */
+final class BenchmarkApplication {
+
+    private BenchmarkApplication() {
+    }
+
+    static ConfigurableApplicationContext start(String databaseName) {
+        // Command line arguments, because default properties would lose to application.properties
+        return new SpringApplicationBuilder(PasskeysTryoutApplication.class).run(
+                "--server.port=0",
+                "--spring.datasource.url=jdbc:h2:mem:" + databaseName + ";DB_CLOSE_ON_EXIT=FALSE",
+                "--spring.jpa.show-sql=false",
+                "--logging.level.root=WARN",
+                "--logging.level.org.springframework.security.web.webauthn=WARN",
+                "--logging.level.org.springframework.security.authentication=WARN",
+                "--logging.level.com.webauthn4j=WARN",
+                "--passkeys.password.argon2.target-time=1ms",
+                "--passkeys.password.argon2.min-iterations=1");
+    }
+}
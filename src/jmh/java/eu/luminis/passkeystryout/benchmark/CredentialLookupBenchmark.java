@@ -0,0 +1,129 @@
+package eu.luminis.passkeystryout.benchmark;
+
+import eu.luminis.passkeystryout.passkey.JdbcCredentialRecordRepository;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+import org.springframework.security.web.webauthn.api.Bytes;
+import org.springframework.security.web.webauthn.api.CredentialRecord;
+import org.springframework.security.web.webauthn.management.JdbcUserCredentialRepository;
+import org.springframework.security.web.webauthn.management.UserCredentialRepository;
+
+import java.nio.file.Path;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Looks up random credentials by id in a table of a million, as every passkey login does before the credential cache
+ * is warm: {@code legacy} through Spring Security's repository on the text {@code user_credentials} table of earlier
+ * versions, {@code binary} through {@link JdbcCredentialRecordRepository} on {@code webauthn_credentials}. The
+ * database is an H2 file under {@code target}, like the application's own. It is filled once per trial, which takes
+ * a few minutes, and deleted afterwards; {@code -p credentials=10000} gives a quick run.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+@State(Scope.Benchmark)
+public class CredentialLookupBenchmark {
+
+    private static final int CREDENTIAL_ID_LENGTH = 64;
+    private static final int BATCH_SIZE = 10_000;
+    private static final String USER_ENTITY_ID = "YmVuY2htYXJr";
+
+    @Param({"legacy", "binary"})
+    String schema;
+
+    @Param({"1000000"})
+    int credentials;
+
+    SingleConnectionDataSource dataSource;
+    UserCredentialRepository repository;
+    Bytes[] credentialIds;
+
+    @Setup(Level.Trial)
+    public void fill() {
+        Path file = Path.of("target", "credential-lookup-benchmark", schema);
+        dataSource = new SingleConnectionDataSource("jdbc:h2:file:" + file.toAbsolutePath(), "sa", "", true);
+        JdbcTemplate jdbc = new JdbcTemplate(dataSource);
+        jdbc.execute("DROP ALL OBJECTS");
+        ResourceDatabasePopulator populator = new ResourceDatabasePopulator(new ClassPathResource("schema.sql"));
+        if (schema.equals("legacy")) {
+            populator.addScript(new ClassPathResource("legacy-user-entities.sql"));
+            populator.addScript(new ClassPathResource("legacy-user-credentials.sql"));
+        }
+        populator.execute(dataSource);
+        jdbc.update("INSERT INTO users (username, display_name, password, user_handle) "
+                + "VALUES ('benchmark', 'Benchmark', '{noop}x', ?)", USER_ENTITY_ID);
+        if (schema.equals("legacy")) {
+            jdbc.update("INSERT INTO user_entities (id, name, display_name) VALUES (?, 'benchmark', 'Benchmark')",
+                    USER_ENTITY_ID);
+        }
+
+        Random random = new Random(42);
+        credentialIds = new Bytes[credentials];
+        for (int i = 0; i < credentials; i++) {
+            byte[] id = new byte[CREDENTIAL_ID_LENGTH];
+            random.nextBytes(id);
+            credentialIds[i] = new Bytes(id);
+        }
+        byte[] publicKey = new byte[77];
+        random.nextBytes(publicKey);
+        Timestamp now = Timestamp.from(Instant.now());
+        for (int from = 0; from < credentials; from += BATCH_SIZE) {
+            List<Object[]> rows = new ArrayList<>();
+            for (int i = from; i < Math.min(from + BATCH_SIZE, credentials); i++) {
+                Object credentialId = schema.equals("legacy")
+                        ? credentialIds[i].toBase64UrlString()
+                        : credentialIds[i].getBytes();
+                Object storedKey = schema.equals("legacy") ? "AA" : publicKey;
+                rows.add(new Object[] {credentialId, storedKey, now, now});
+            }
+            jdbc.batchUpdate("INSERT INTO " + table() + """
+                     (user_entity_user_id, credential_id, public_key, signature_count, public_key_credential_type,
+                        created, last_used, label, authenticator_transports)
+                    VALUES ('%s', ?, ?, 0, 'public-key', ?, ?, 'Benchmark key', 'internal')
+                    """.formatted(USER_ENTITY_ID), rows);
+        }
+
+        repository = schema.equals("legacy")
+                ? new JdbcUserCredentialRepository(jdbc)
+                : new JdbcCredentialRecordRepository(jdbc);
+    }
+
+    @TearDown(Level.Trial)
+    public void close() {
+        new JdbcTemplate(dataSource).execute("DROP ALL OBJECTS DELETE FILES");
+        dataSource.destroy();
+    }
+
+    @Benchmark
+    public CredentialRecord findByCredentialId() {
+        Bytes credentialId = credentialIds[ThreadLocalRandom.current().nextInt(credentialIds.length)];
+        return repository.findByCredentialId(credentialId);
+    }
+
+    private String table() {
+        return schema.equals("legacy") ? "user_credentials" : "webauthn_credentials";
+    }
+}
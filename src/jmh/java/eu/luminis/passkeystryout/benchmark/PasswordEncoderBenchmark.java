@@ -0,0 +1,76 @@
+package eu.luminis.passkeystryout.benchmark;
+
+import eu.luminis.passkeystryout.password.Argon2Calibration;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The cost of checking a password, which is most of the cost of a form login. BCrypt doubles with every cost step;
+ * Argon2 is measured at the memory size the application uses, for the iteration counts that calibration usually
+ * picks.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PasswordEncoderBenchmark {
+
+    private static final String PASSWORD = "correct horse battery staple";
+
+    @State(Scope.Benchmark)
+    public static class BCrypt {
+
+        @Param({"4", "8", "10", "12"})
+        int cost;
+
+        PasswordEncoder encoder;
+        String hash;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            encoder = new BCryptPasswordEncoder(cost);
+            hash = encoder.encode(PASSWORD);
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class Argon2 {
+
+        @Param({"2", "3"})
+        int iterations;
+
+        PasswordEncoder encoder;
+        String hash;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            encoder = Argon2Calibration.encoder(19456, 1, iterations);
+            hash = encoder.encode(PASSWORD);
+        }
+    }
+
+    @Benchmark
+    public boolean bcryptMatches(BCrypt bcrypt) {
+        return bcrypt.encoder.matches(PASSWORD, bcrypt.hash);
+    }
+
+    @Benchmark
+    public boolean argon2Matches(Argon2 argon2) {
+        return argon2.encoder.matches(PASSWORD, argon2.hash);
+    }
+}
@@ -0,0 +1,119 @@
+package eu.luminis.passkeystryout.benchmark;
+
+import eu.luminis.passkeystryout.passkey.CredentialRepository;
+import eu.luminis.passkeystryout.passkey.PasskeySummary;
+import eu.luminis.passkeystryout.user.CustomUserDetailsService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.security.web.webauthn.api.Bytes;
+import org.springframework.security.core.userdetails.UserDetails;
+
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The database paths of a login and of the dashboard, through the application's own beans on an in-memory H2
+ * database. These measure the code around the database, not the database: a networked database adds its round trip
+ * to every call.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RepositoryBenchmark {
+
+    private static final String USERNAME = "alice";
+    private static final String USER_ENTITY_ID = base64Url("alice-handle");
+    private static final String DELETED_CREDENTIAL_ID = base64Url("deleted-credential");
+
+    @State(Scope.Benchmark)
+    public static class Application {
+
+        @Param({"1", "10"})
+        int passkeys;
+
+        ConfigurableApplicationContext context;
+        CredentialRepository credentialRepository;
+        CustomUserDetailsService userDetailsService;
+        JdbcTemplate jdbc;
+
+        @Setup(Level.Trial)
+        public void start() {
+            context = BenchmarkApplication.start("repository-benchmark");
+            credentialRepository = context.getBean(CredentialRepository.class);
+            userDetailsService = context.getBean(CustomUserDetailsService.class);
+            jdbc = context.getBean(JdbcTemplate.class);
+
+            jdbc.update("INSERT INTO users (username, display_name, password, user_handle) "
+                    + "VALUES (?, 'Alice', '{noop}x', ?)", USERNAME, USER_ENTITY_ID);
+            for (int i = 0; i < passkeys; i++) {
+                insertCredential(base64Url("credential-" + i));
+            }
+        }
+
+        @TearDown(Level.Trial)
+        public void stop() {
+            context.close();
+        }
+
+        void insertCredential(String credentialId) {
+            Timestamp now = Timestamp.from(Instant.now());
+            jdbc.update("""
+                    INSERT INTO webauthn_credentials (user_entity_user_id, credential_id, public_key,
+                        signature_count, public_key_credential_type, created, last_used, label,
+                        authenticator_transports)
+                    VALUES (?, ?, X'00', 0, 'public-key', ?, ?, 'Benchmark key', 'internal')
+                    """, USER_ENTITY_ID, Bytes.fromBase64(credentialId).getBytes(), now, now);
+        }
+    }
+
+    /**
+     * Puts back the credential that {@link #deletePasskeyFromUser(Application, DeletableCredential)} removes. A
+     * per-invocation setup adds some timer overhead, which is small next to the delete itself.
+     */
+    @State(Scope.Thread)
+    public static class DeletableCredential {
+
+        @Setup(Level.Invocation)
+        public void insert(Application application) {
+            application.insertCredential(DELETED_CREDENTIAL_ID);
+        }
+    }
+
+    @Benchmark
+    public List<PasskeySummary> findPasskeysInfoByUsername(Application application) {
+        return application.credentialRepository.findPasskeysInfoByUsername(USERNAME);
+    }
+
+    @Benchmark
+    public void deletePasskeyFromUser(Application application, DeletableCredential credential) {
+        application.credentialRepository.deletePasskeyFromUser(DELETED_CREDENTIAL_ID, USERNAME);
+    }
+
+    @Benchmark
+    public UserDetails loadUserByUsername(Application application) {
+        return application.userDetailsService.loadUserByUsername(USERNAME);
+    }
+
+    private static String base64Url(String value) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(value.getBytes(StandardCharsets.UTF_8));
+    }
+}
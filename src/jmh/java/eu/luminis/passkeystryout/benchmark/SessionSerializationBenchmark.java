@@ -0,0 +1,122 @@
+package eu.luminis.passkeystryout.benchmark;
+
+import eu.luminis.passkeystryout.session.CompactSessionAttributeSerializer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.core.serializer.DefaultDeserializer;
+import org.springframework.core.serializer.DefaultSerializer;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.FactorGrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.core.context.SecurityContextImpl;
+import org.springframework.security.core.userdetails.User;
+import org.springframework.security.web.authentication.WebAuthenticationDetails;
+import org.springframework.security.web.webauthn.api.Bytes;
+import org.springframework.security.web.webauthn.api.ImmutablePublicKeyCredentialUserEntity;
+import org.springframework.security.web.webauthn.authentication.WebAuthnAuthentication;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writing and reading the security context of a session attribute, as Spring Session does on every request that
+ * changes it, with Java serialisation and with {@link CompactSessionAttributeSerializer}. The serialised sizes are
+ * printed when each trial starts.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SessionSerializationBenchmark {
+
+    @Param({"password", "passkey"})
+    String login;
+
+    private final DefaultSerializer jdkSerializer = new DefaultSerializer();
+    private final DefaultDeserializer jdkDeserializer = new DefaultDeserializer();
+    private final CompactSessionAttributeSerializer compact =
+            new CompactSessionAttributeSerializer(SessionSerializationBenchmark.class.getClassLoader());
+
+    private SecurityContextImpl context;
+    private byte[] jdkBytes;
+    private byte[] compactBytes;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        context = new SecurityContextImpl(login.equals("password") ? passwordLogin() : passkeyLogin());
+        jdkBytes = jdkSerialize();
+        compactBytes = compactSerialize();
+        System.out.printf("%n%s login: Java serialisation %d bytes, compact %d bytes%n", login, jdkBytes.length,
+                compactBytes.length);
+    }
+
+    @Benchmark
+    public byte[] jdkSerialize() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(1024);
+        jdkSerializer.serialize(context, out);
+        return out.toByteArray();
+    }
+
+    @Benchmark
+    public Object jdkDeserialize() throws IOException {
+        return jdkDeserializer.deserialize(new ByteArrayInputStream(jdkBytes));
+    }
+
+    @Benchmark
+    public byte[] compactSerialize() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(256);
+        compact.serialize(context, out);
+        return out.toByteArray();
+    }
+
+    @Benchmark
+    public Object compactDeserialize() throws IOException {
+        return compact.deserialize(new ByteArrayInputStream(compactBytes));
+    }
+
+    private static Authentication passwordLogin() {
+        List<GrantedAuthority> authorities = List.of(new SimpleGrantedAuthority("ROLE_USER"),
+                FactorGrantedAuthority.withAuthority(FactorGrantedAuthority.PASSWORD_AUTHORITY)
+                        .issuedAt(Instant.now())
+                        .build());
+        User user = new User("benchmark-user", "{argon2}hash", authorities);
+        user.eraseCredentials();
+        UsernamePasswordAuthenticationToken authentication =
+                UsernamePasswordAuthenticationToken.authenticated(user, null, authorities);
+        authentication.setDetails(new WebAuthenticationDetails("192.0.2.10", null));
+        return authentication;
+    }
+
+    private static Authentication passkeyLogin() {
+        WebAuthnAuthentication authentication = new WebAuthnAuthentication(
+                ImmutablePublicKeyCredentialUserEntity.builder()
+                        .id(Bytes.random())
+                        .name("benchmark-user")
+                        .displayName("Benchmark User")
+                        .build(),
+                List.of(new SimpleGrantedAuthority("ROLE_USER"),
+                        FactorGrantedAuthority.withAuthority(FactorGrantedAuthority.WEBAUTHN_AUTHORITY)
+                                .issuedAt(Instant.now())
+                                .build()));
+        authentication.setDetails(new WebAuthenticationDetails("192.0.2.10", "6f1c1e6d-2a0a-4d4f-8f7e-0d6c5b4a3f21"));
+        return authentication;
+    }
+}
@@ -0,0 +1,45 @@
+package eu.luminis.passkeystryout;
+
+import eu.luminis.passkeystryout.transfer.AccountExporter;
+import eu.luminis.passkeystryout.transfer.AccountFormat;
+import eu.luminis.passkeystryout.transfer.AccountImporter;
+import eu.luminis.passkeystryout.transfer.AccountTransferRunner;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.jdbc.core.JdbcOperations;
+import org.springframework.transaction.support.TransactionOperations;
+
+import java.nio.file.Path;
+import java.util.Locale;
+
+/**
+ * Imports or exports users with their passkeys when {@code passkeys.transfer.mode} is set, then stops the
+ * application. Run it without the web server: {@code --spring.main.web-application-type=none}.
+ */
+@Configuration
+@ConditionalOnProperty(name = "passkeys.transfer.mode")
+public class AccountTransferConfig {
+
+    @Bean
+    public AccountTransferRunner accountTransferRunner(
+            JdbcOperations jdbc,
+            TransactionOperations transactions,
+            ConfigurableApplicationContext context,
+            @Value("${passkeys.transfer.mode}") String mode,
+            @Value("${passkeys.transfer.file}") Path file,
+            @Value("${passkeys.transfer.format}") String format,
+            @Value("${passkeys.transfer.checkpoint}") String checkpoint,
+            @Value("${passkeys.transfer.chunk-size}") int chunkSize) {
+        return new AccountTransferRunner(
+                AccountTransferRunner.Mode.valueOf(mode.toUpperCase(Locale.ROOT)),
+                file,
+                AccountFormat.named(format),
+                checkpoint.isBlank() ? file.toAbsolutePath().toString() : checkpoint,
+                new AccountImporter(jdbc, transactions, chunkSize),
+                new AccountExporter(jdbc, chunkSize),
+                context);
+    }
+}
@@ -0,0 +1,71 @@
+package eu.luminis.passkeystryout;
+
+import eu.luminis.passkeystryout.session.BatchedTouchSessionRepository;
+import eu.luminis.passkeystryout.session.ExpiredSessionSweeper;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.convert.ConversionService;
+import org.springframework.jdbc.core.JdbcOperations;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.session.FindByIndexNameSessionRepository;
+import org.springframework.session.Session;
+import org.springframework.session.jdbc.JdbcIndexedSessionRepository;
+import org.springframework.session.web.http.SessionRepositoryFilter;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Clock;
+import java.time.Duration;
+
+/**
+ * Keeps HTTP sessions in the {@code spring_session} tables, so every node sees the same sessions and a user can be
+ * sent to any of them. Only writes that change a session go to the database right away; see
+ * {@link BatchedTouchSessionRepository} and {@link ExpiredSessionSweeper}.
+ */
+@Configuration
+@ConditionalOnProperty(name = "passkeys.session.store", havingValue = "jdbc")
+public class JdbcSessionConfig {
+
+    @Bean
+    public BatchedTouchSessionRepository sessionRepository(
+            JdbcOperations jdbc,
+            PlatformTransactionManager transactionManager,
+            @Qualifier("springSessionConversionService") ConversionService conversionService,
+            @Value("${server.servlet.session.timeout:30m}") Duration timeout,
+            @Value("${passkeys.session.jdbc.touch-interval}") Duration touchInterval,
+            @Value("${passkeys.session.jdbc.batch-size}") int batchSize) {
+        JdbcIndexedSessionRepository repository =
+                new JdbcIndexedSessionRepository(jdbc, new TransactionTemplate(transactionManager));
+        repository.setConversionService(conversionService);
+        repository.setDefaultMaxInactiveInterval(timeout);
+        // Expired sessions are removed in chunks by the sweeper instead
+        repository.setCleanupCron(Scheduled.CRON_DISABLED);
+        return new BatchedTouchSessionRepository(indexed(repository), jdbc, touchInterval, batchSize);
+    }
+
+    @Bean
+    public FilterRegistrationBean<SessionRepositoryFilter<?>> sessionRepositoryFilter(
+            BatchedTouchSessionRepository sessionRepository) {
+        FilterRegistrationBean<SessionRepositoryFilter<?>> registration =
+                new FilterRegistrationBean<>(new SessionRepositoryFilter<>(sessionRepository));
+        registration.setOrder(SessionRepositoryFilter.DEFAULT_ORDER);
+        return registration;
+    }
+
+    @Bean
+    public ExpiredSessionSweeper expiredSessionSweeper(
+            JdbcOperations jdbc,
+            @Value("${passkeys.session.jdbc.cleanup-chunk-size}") int chunkSize) {
+        return new ExpiredSessionSweeper(jdbc, chunkSize, Clock.systemUTC());
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static FindByIndexNameSessionRepository<Session> indexed(JdbcIndexedSessionRepository repository) {
+        // Its session type is not public
+        return (FindByIndexNameSessionRepository) repository;
+    }
+}
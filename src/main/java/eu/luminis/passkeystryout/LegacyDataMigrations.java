@@ -0,0 +1,30 @@
+package eu.luminis.passkeystryout;
+
+import eu.luminis.passkeystryout.passkey.LegacyCredentialTableMigration;
+import eu.luminis.passkeystryout.user.LegacyUserEntityMigration;
+import org.jspecify.annotations.NullMarked;
+import org.springframework.beans.factory.InitializingBean;
+
+/**
+ * Runs the migrations of data that earlier versions left behind once, after the schema has been created. The user
+ * entities are merged into {@code users} first, because the credentials moved afterwards need an owner with a user
+ * handle. Beans that read those tables depend on this one, so none of them is used before the data is in place.
+ */
+@NullMarked
+public class LegacyDataMigrations implements InitializingBean {
+
+    private final LegacyUserEntityMigration userEntityMigration;
+    private final LegacyCredentialTableMigration credentialTableMigration;
+
+    public LegacyDataMigrations(LegacyUserEntityMigration userEntityMigration,
+                                LegacyCredentialTableMigration credentialTableMigration) {
+        this.userEntityMigration = userEntityMigration;
+        this.credentialTableMigration = credentialTableMigration;
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        userEntityMigration.migrate();
+        credentialTableMigration.migrate();
+    }
+}
@@ -1,32 +1,80 @@
 package eu.luminis.passkeystryout;
 
+import eu.luminis.passkeystryout.metrics.InstrumentedSecurityContextRepository;
+import eu.luminis.passkeystryout.metrics.WebAuthnMetrics;
+import eu.luminis.passkeystryout.password.Argon2Calibration;
+import eu.luminis.passkeystryout.password.BoundedPasswordEncoder;
+import eu.luminis.passkeystryout.password.PasswordHashingBackPressureFilter;
+import eu.luminis.passkeystryout.ratelimit.LoginRateLimitFilter;
+import eu.luminis.passkeystryout.ratelimit.TokenBucketRateLimiter;
+import eu.luminis.passkeystryout.session.CompactSessionAttributeSerializer;
+import eu.luminis.passkeystryout.session.SessionTokenCodec;
+import eu.luminis.passkeystryout.session.SessionTokenDenyList;
+import eu.luminis.passkeystryout.session.SessionTokenKeys;
+import eu.luminis.passkeystryout.session.SignedCookieSecurityContextRepository;
+import eu.luminis.passkeystryout.user.KnownUsernames;
+import jakarta.servlet.Filter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.core.convert.support.GenericConversionService;
+import org.springframework.core.io.ResourceLoader;
 import org.springframework.security.config.annotation.web.builders.HttpSecurity;
 import org.springframework.security.config.annotation.web.configuration.EnableWebSecurity;
 
 import static org.springframework.security.config.Customizer.withDefaults;
 
+import org.springframework.jdbc.core.JdbcOperations;
 import org.springframework.security.config.annotation.web.configurers.HeadersConfigurer;
+import org.springframework.security.config.http.SessionCreationPolicy;
 import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
-import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.security.crypto.password.DelegatingPasswordEncoder;
 import org.springframework.security.web.SecurityFilterChain;
 import org.springframework.security.web.authentication.UsernamePasswordAuthenticationFilter;
 import org.springframework.security.web.context.HttpSessionSecurityContextRepository;
 import org.springframework.security.web.context.SecurityContextRepository;
+import org.springframework.security.web.csrf.CookieCsrfTokenRepository;
+import org.springframework.security.web.webauthn.authentication.PublicKeyCredentialRequestOptionsFilter;
+import org.springframework.security.web.webauthn.authentication.PublicKeyCredentialRequestOptionsRepository;
+import org.springframework.security.web.webauthn.authentication.WebAuthnAuthenticationFilter;
+import org.springframework.security.web.webauthn.registration.PublicKeyCredentialCreationOptionsRepository;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 @Configuration
 @EnableWebSecurity
 public class SecurityConfig {
 
+    private static final Logger log = LoggerFactory.getLogger(SecurityConfig.class);
+
     @Bean
-    public SecurityFilterChain securityFilterChain(HttpSecurity http) throws Exception {
+    public SecurityFilterChain securityFilterChain(
+            HttpSecurity http,
+            PublicKeyCredentialRequestOptionsRepository requestOptionsRepository,
+            PublicKeyCredentialCreationOptionsRepository creationOptionsRepository,
+            SecurityContextRepository securityContextRepository,
+            @Qualifier("loginAddressRateLimiter") TokenBucketRateLimiter addressRateLimiter,
+            @Qualifier("loginUsernameRateLimiter") TokenBucketRateLimiter usernameRateLimiter,
+            WebAuthnMetrics metrics,
+            @Value("${passkeys.password.hashing.retry-after}") Duration hashingRetryAfter,
+            @Value("${passkeys.webauthn.rp-id}") String rpId,
+            @Value("${passkeys.webauthn.rp-name}") String rpName,
+            @Value("${passkeys.webauthn.allowed-origins}") Set<String> allowedOrigins) throws Exception {
         http
                 .authorizeHttpRequests(authz -> authz
                         .requestMatchers("/webjars/**").permitAll()
                         .requestMatchers("/css/**", "/js/**", "/images/**").permitAll()
                         .requestMatchers("/.well-known/**").permitAll()
-                        .requestMatchers("/", "/register", "/login").permitAll()
+                        .requestMatchers("/", "/register", "/login", "/csrf").permitAll()
                         .requestMatchers("/login/webauthn").permitAll()
                         .requestMatchers("/webauthn/authenticate/options").permitAll()
                         .requestMatchers("/h2-console/**").permitAll()
@@ -44,28 +92,194 @@ public class SecurityConfig {
                         .permitAll()
                 )
                 .webAuthn(webAuthn -> webAuthn
-                        .rpName("Passkeys Demo")
-                        .rpId("localhost")
-                        .allowedOrigins("http://localhost:8080")
+                        .rpName(rpName)
+                        .rpId(rpId)
+                        .allowedOrigins(allowedOrigins)
+                        .creationOptionsRepository(creationOptionsRepository)
                 )
+                // The token lives in a cookie of its own, so anonymous visitors do not get an HTTP session for it
                 .csrf(csrf -> csrf
+                        .csrfTokenRepository(csrfTokenRepository())
                         .ignoringRequestMatchers("/h2-console/**")
                 )
                 .headers(headers -> headers
                         .frameOptions(HeadersConfigurer.FrameOptionsConfig::sameOrigin)
-                );
+                )
+                .addFilterBefore(new LoginRateLimitFilter(addressRateLimiter, usernameRateLimiter),
+                        UsernamePasswordAuthenticationFilter.class)
+                .addFilterBefore(new PasswordHashingBackPressureFilter(hashingRetryAfter.toSeconds()),
+                        UsernamePasswordAuthenticationFilter.class);
+        if (securityContextRepository instanceof SignedCookieSecurityContextRepository) {
+            configureStatelessSessions(http, securityContextRepository);
+        }
+
+        SecurityFilterChain chain = http.build();
+        configureWebAuthnFilters(chain, requestOptionsRepository,
+                new InstrumentedSecurityContextRepository(securityContextRepository, metrics));
+        return chain;
+    }
+
+    /**
+     * The WebAuthn DSL has no option for the request options repository, so it is set on the two filters that
+     * share it once the chain is built. The login filter also gets a security context repository that times the
+     * creation of the session.
+     */
+    private static void configureWebAuthnFilters(SecurityFilterChain chain,
+                                                 PublicKeyCredentialRequestOptionsRepository repository,
+                                                 SecurityContextRepository securityContextRepository) {
+        for (Filter filter : chain.getFilters()) {
+            if (filter instanceof PublicKeyCredentialRequestOptionsFilter optionsFilter) {
+                optionsFilter.setRequestOptionsRepository(repository);
+            } else if (filter instanceof WebAuthnAuthenticationFilter authenticationFilter) {
+                authenticationFilter.setRequestOptionsRepository(repository);
+                authenticationFilter.setSecurityContextRepository(securityContextRepository);
+            }
+        }
+    }
 
-        return http.build();
+    /**
+     * CSRF tokens in an {@code XSRF-TOKEN} cookie, still sent back in the {@code X-CSRF-TOKEN} header that the pages
+     * and clients used while the token was kept in the session.
+     */
+    private static CookieCsrfTokenRepository csrfTokenRepository() {
+        CookieCsrfTokenRepository repository = new CookieCsrfTokenRepository();
+        repository.setHeaderName("X-CSRF-TOKEN");
+        return repository;
     }
 
+    /**
+     * With the security context in a cookie nothing else may create an HTTP session either: the stateless policy
+     * stops saved requests from being kept in the session.
+     */
+    private static void configureStatelessSessions(HttpSecurity http,
+                                                   SecurityContextRepository securityContextRepository)
+            throws Exception {
+        http
+                .securityContext(context -> context.securityContextRepository(securityContextRepository))
+                .sessionManagement(sessions -> sessions.sessionCreationPolicy(SessionCreationPolicy.STATELESS));
+    }
+
+    /**
+     * The security context in the HTTP session, which is either the servlet container's own or, with the jdbc store,
+     * one shared by all nodes through {@link JdbcSessionConfig}.
+     */
     @Bean
+    @ConditionalOnExpression("'${passkeys.session.store:http-session}' != 'cookie'")
     public SecurityContextRepository securityContextRepository() {
         return new HttpSessionSecurityContextRepository();
     }
 
+    /**
+     * Keeps the security context in a signed cookie, so any node with the same keys can serve a logged-in user.
+     * Without configured keys the tokens only verify on this node until it restarts.
+     */
+    @Bean
+    @ConditionalOnProperty(name = "passkeys.session.store", havingValue = "cookie")
+    public SignedCookieSecurityContextRepository signedCookieSecurityContextRepository(
+            SessionTokenDenyList denyList,
+            @Value("${passkeys.session.cookie.keys}") List<String> keys,
+            @Value("${passkeys.session.cookie.encrypt}") boolean encrypt,
+            @Value("${passkeys.session.cookie.time-to-live}") Duration timeToLive) {
+        SessionTokenKeys tokenKeys;
+        if (keys.isEmpty()) {
+            log.warn("No passkeys.session.cookie.keys configured; sessions are signed with a random key and end when "
+                    + "this node restarts");
+            tokenKeys = SessionTokenKeys.random();
+        } else {
+            tokenKeys = SessionTokenKeys.parse(keys);
+        }
+        return new SignedCookieSecurityContextRepository(new SessionTokenCodec(tokenKeys, encrypt), denyList,
+                timeToLive, Clock.systemUTC());
+    }
+
+    /**
+     * Spring Session stores the security context of password and passkey logins in the compact form of
+     * {@link CompactSessionAttributeSerializer} rather than as a Java-serialised object graph.
+     */
+    @Bean(name = "springSessionConversionService")
+    public GenericConversionService springSessionConversionService(ResourceLoader resourceLoader) {
+        ClassLoader classLoader = resourceLoader.getClassLoader();
+        return CompactSessionAttributeSerializer.conversionService(
+                classLoader != null ? classLoader : SecurityConfig.class.getClassLoader());
+    }
+
+    /**
+     * Revocations made before this node started are loaded before the first request is checked.
+     */
+    @Bean
+    @ConditionalOnProperty(name = "passkeys.session.store", havingValue = "cookie")
+    public SessionTokenDenyList sessionTokenDenyList(JdbcOperations jdbc) {
+        SessionTokenDenyList denyList = new SessionTokenDenyList(jdbc, Clock.systemUTC());
+        denyList.refresh();
+        return denyList;
+    }
+
+    /**
+     * Login, registration and passkey login requests per client address.
+     */
+    @Bean
+    public TokenBucketRateLimiter loginAddressRateLimiter(
+            @Value("${passkeys.rate-limit.address.capacity}") int capacity,
+            @Value("${passkeys.rate-limit.address.refill-interval}") Duration refillInterval,
+            @Value("${passkeys.rate-limit.maximum-keys}") int maximumKeys,
+            @Value("${passkeys.rate-limit.stripes}") int stripes) {
+        return new TokenBucketRateLimiter("address", capacity, refillInterval, maximumKeys, stripes);
+    }
+
+    /**
+     * Password logins and registrations per submitted username, whichever address they come from.
+     */
+    @Bean
+    public TokenBucketRateLimiter loginUsernameRateLimiter(
+            @Value("${passkeys.rate-limit.username.capacity}") int capacity,
+            @Value("${passkeys.rate-limit.username.refill-interval}") Duration refillInterval,
+            @Value("${passkeys.rate-limit.maximum-keys}") int maximumKeys,
+            @Value("${passkeys.rate-limit.stripes}") int stripes) {
+        return new TokenBucketRateLimiter("username", capacity, refillInterval, maximumKeys, stripes);
+    }
+
+    /**
+     * The usernames that exist, read from {@code users} at startup, so password logins for other names do not reach
+     * the database. Each read goes back to where the reads stood one refresh interval before, so users whose insert
+     * committed out of id order within that time are still picked up.
+     */
+    @Bean
+    public KnownUsernames knownUsernames(
+            JdbcOperations jdbc,
+            @Value("${passkeys.username-filter.expected-usernames}") int expectedUsernames,
+            @Value("${passkeys.username-filter.false-positive-probability}") double falsePositiveProbability,
+            @Value("${passkeys.username-filter.load-chunk-size}") int chunkSize,
+            @Value("${passkeys.username-filter.refresh-interval}") Duration refreshInterval,
+            @Value("${passkeys.username-filter.catch-up-interval}") Duration catchUpInterval) {
+        KnownUsernames knownUsernames = new KnownUsernames(jdbc, expectedUsernames, falsePositiveProbability,
+                chunkSize, refreshInterval, catchUpInterval);
+        knownUsernames.refresh();
+        return knownUsernames;
+    }
+
+    /**
+     * New passwords are hashed with Argon2, with the iteration count calibrated at startup to the target time.
+     * Existing BCrypt hashes, with or without a {@code {bcrypt}} prefix, still match and are re-encoded on the next
+     * successful login. All hashing runs on a bounded pool so a burst of attempts cannot take every request thread.
+     */
     @Bean
-    public PasswordEncoder passwordEncoder() {
-        return new BCryptPasswordEncoder();
+    public BoundedPasswordEncoder passwordEncoder(
+            @Value("${passkeys.password.argon2.target-time}") Duration targetTime,
+            @Value("${passkeys.password.argon2.memory-kib}") int memoryKib,
+            @Value("${passkeys.password.argon2.parallelism}") int parallelism,
+            @Value("${passkeys.password.argon2.min-iterations}") int minIterations,
+            @Value("${passkeys.password.argon2.max-iterations}") int maxIterations,
+            @Value("${passkeys.password.hashing.threads}") int threads,
+            @Value("${passkeys.password.hashing.queue-capacity}") int queueCapacity) {
+        int iterations = Argon2Calibration.calibrateIterations(
+                targetTime, memoryKib, parallelism, minIterations, maxIterations);
+        BCryptPasswordEncoder bcrypt = new BCryptPasswordEncoder();
+        DelegatingPasswordEncoder delegating = new DelegatingPasswordEncoder("argon2", Map.of(
+                "argon2", Argon2Calibration.encoder(memoryKib, parallelism, iterations),
+                "bcrypt", bcrypt));
+        delegating.setDefaultPasswordEncoderForMatches(bcrypt);
+        int hashingThreads = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+        return new BoundedPasswordEncoder(delegating, hashingThreads, queueCapacity);
     }
 
 }
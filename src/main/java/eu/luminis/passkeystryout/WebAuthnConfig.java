@@ -1,21 +1,207 @@
 package eu.luminis.passkeystryout;
 
+import eu.luminis.passkeystryout.ceremony.CeremonyOptionsCodec;
+import eu.luminis.passkeystryout.ceremony.ChallengePool;
+import eu.luminis.passkeystryout.ceremony.CeremonyOptionsStore;
+import eu.luminis.passkeystryout.ceremony.CookiePublicKeyCredentialCreationOptionsRepository;
+import eu.luminis.passkeystryout.ceremony.CookiePublicKeyCredentialRequestOptionsRepository;
+import eu.luminis.passkeystryout.ceremony.InMemoryCeremonyOptionsStore;
+import eu.luminis.passkeystryout.ceremony.JdbcCeremonyOptionsStore;
+import eu.luminis.passkeystryout.ceremony.PooledChallengeRelyingPartyOperations;
+import eu.luminis.passkeystryout.metrics.InstrumentedCeremonyOptionsStore;
+import eu.luminis.passkeystryout.metrics.InstrumentedCredentialLoginIndex;
+import eu.luminis.passkeystryout.metrics.InstrumentedRelyingPartyOperations;
+import eu.luminis.passkeystryout.metrics.InstrumentedUserCredentialRepository;
+import eu.luminis.passkeystryout.metrics.InstrumentedWebAuthnManager;
+import eu.luminis.passkeystryout.metrics.SignatureVerificationCounter;
+import eu.luminis.passkeystryout.metrics.WebAuthnMetrics;
+import eu.luminis.passkeystryout.passkey.CachingUserCredentialRepository;
+import eu.luminis.passkeystryout.passkey.JdbcCredentialLoginIndex;
+import eu.luminis.passkeystryout.passkey.JdbcCredentialRecordRepository;
+import eu.luminis.passkeystryout.passkey.LegacyCredentialTableMigration;
+import eu.luminis.passkeystryout.passkey.PublicKeyCache;
+import eu.luminis.passkeystryout.passkey.PublicKeyCachingRelyingPartyOperations;
+import eu.luminis.passkeystryout.passkey.SignatureCountWriteBehind;
+import eu.luminis.passkeystryout.passkey.WriteBehindUserCredentialRepository;
+import eu.luminis.passkeystryout.user.CustomUserDetailsService;
+import eu.luminis.passkeystryout.user.LegacyUserEntityMigration;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.context.annotation.Lazy;
 import org.springframework.jdbc.core.JdbcOperations;
-import org.springframework.security.web.webauthn.management.JdbcPublicKeyCredentialUserEntityRepository;
-import org.springframework.security.web.webauthn.management.JdbcUserCredentialRepository;
+import org.springframework.security.web.webauthn.api.PublicKeyCredentialRpEntity;
+import org.springframework.security.web.webauthn.management.PublicKeyCredentialUserEntityRepository;
+import org.springframework.security.web.webauthn.management.Webauthn4JRelyingPartyOperations;
+import org.springframework.transaction.support.TransactionOperations;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.util.Set;
 
 @Configuration
 public class WebAuthnConfig {
     
+    /**
+     * Merges the user entities of earlier versions into {@code users} and then moves their credentials to the binary
+     * {@code webauthn_credentials} table. The migrations run once this bean is initialised, not while the beans that
+     * use those tables are created; those beans depend on it instead.
+     */
     @Bean
-    public JdbcPublicKeyCredentialUserEntityRepository publicKeyCredentialUserEntityRepository(JdbcOperations jdbc) {
-        return new JdbcPublicKeyCredentialUserEntityRepository(jdbc);
+    public LegacyDataMigrations legacyDataMigrations(
+            JdbcOperations jdbc,
+            TransactionOperations transactions,
+            @Value("${passkeys.credential-migration.chunk-size}") int chunkSize) {
+        return new LegacyDataMigrations(new LegacyUserEntityMigration(jdbc, transactions),
+                new LegacyCredentialTableMigration(jdbc, transactions, chunkSize));
     }
-    
+
+    /**
+     * The JDBC credential repository is wrapped in a read-through cache. It is deliberately not exposed as a bean of
+     * its own: Spring Security only picks up a {@code UserCredentialRepository} when exactly one is defined.
+     */
+    @Bean
+    @DependsOn("legacyDataMigrations")
+    public CachingUserCredentialRepository userCredentialRepository(
+            JdbcOperations jdbc,
+            PublicKeyCache publicKeyCache,
+            JdbcCredentialLoginIndex credentialLoginIndex,
+            @Value("${passkeys.credential-cache.maximum-size}") int maximumSize,
+            @Value("${passkeys.credential-cache.time-to-live}") Duration timeToLive) {
+        return new CachingUserCredentialRepository(new JdbcCredentialRecordRepository(jdbc), publicKeyCache,
+                credentialLoginIndex, maximumSize, timeToLive);
+    }
+
+    /**
+     * Passkey logins by credential id, so a login without a username finds the credential and its owner with one
+     * query, or with a lookup of the stored signature count when they are cached. The
+     * {@link SignatureCountWriteBehind} is injected lazily, because it invalidates the credential cache, which in turn
+     * invalidates this index.
+     */
+    @Bean
+    @DependsOn("legacyDataMigrations")
+    public JdbcCredentialLoginIndex credentialLoginIndex(
+            JdbcOperations jdbc,
+            CustomUserDetailsService userDetailsService,
+            @Lazy SignatureCountWriteBehind signatureCounts,
+            @Value("${passkeys.login-index.maximum-size}") int maximumSize,
+            @Value("${passkeys.login-index.time-to-live}") Duration timeToLive) {
+        return new JdbcCredentialLoginIndex(jdbc, userDetailsService, signatureCounts, maximumSize, timeToLive);
+    }
+
+    @Bean
+    public PublicKeyCache publicKeyCache(
+            @Value("${passkeys.public-key-cache.maximum-size}") int maximumSize,
+            @Value("${passkeys.public-key-cache.time-to-live}") Duration timeToLive) {
+        return new PublicKeyCache(maximumSize, timeToLive);
+    }
+
+    @Bean
+    public SignatureVerificationCounter signatureVerificationCounter() {
+        return new SignatureVerificationCounter();
+    }
+
+    @Bean
+    public SignatureCountWriteBehind signatureCountWriteBehind(
+            JdbcOperations jdbc,
+            CachingUserCredentialRepository userCredentialRepository,
+            @Value("${passkeys.signature-count.batch-size}") int batchSize) {
+        return new SignatureCountWriteBehind(jdbc, userCredentialRepository, batchSize);
+    }
+
+    @Bean
+    public WebAuthnMetrics webAuthnMetrics(MeterRegistry meterRegistry) {
+        return new WebAuthnMetrics(meterRegistry);
+    }
+
+    /**
+     * The relying party that Spring Security would otherwise create itself, instrumented so every ceremony phase is
+     * timed, verifying assertions with the public keys in the {@link PublicKeyCache} and counting their outcome in
+     * the {@link SignatureVerificationCounter}. The signature counts of assertions go to the
+     * {@link SignatureCountWriteBehind}; registrations are still saved right away. The credential and owner of an
+     * assertion come from the {@link JdbcCredentialLoginIndex}. Login options take their challenge from the
+     * {@link ChallengePool}. The WebAuthn DSL picks up this bean instead of building its own.
+     */
+    @Bean
+    public InstrumentedRelyingPartyOperations relyingPartyOperations(
+            PublicKeyCredentialUserEntityRepository userEntityRepository,
+            CachingUserCredentialRepository userCredentialRepository,
+            JdbcCredentialLoginIndex credentialLoginIndex,
+            PublicKeyCache publicKeyCache,
+            SignatureVerificationCounter signatureVerificationCounter,
+            SignatureCountWriteBehind signatureCounts,
+            ChallengePool challengePool,
+            WebAuthnMetrics metrics,
+            @Value("${passkeys.webauthn.rp-id}") String rpId,
+            @Value("${passkeys.webauthn.rp-name}") String rpName,
+            @Value("${passkeys.webauthn.allowed-origins}") Set<String> allowedOrigins) {
+        InstrumentedUserCredentialRepository credentials =
+                new InstrumentedUserCredentialRepository(userCredentialRepository, metrics);
+        InstrumentedWebAuthnManager webAuthnManager = new InstrumentedWebAuthnManager(metrics,
+                signatureVerificationCounter);
+        Webauthn4JRelyingPartyOperations relyingParty = new Webauthn4JRelyingPartyOperations(
+                userEntityRepository,
+                credentials,
+                PublicKeyCredentialRpEntity.builder().id(rpId).name(rpName).build(),
+                allowedOrigins);
+        relyingParty.setWebAuthnManager(webAuthnManager);
+        InstrumentedUserCredentialRepository assertionCredentials = new InstrumentedUserCredentialRepository(
+                new WriteBehindUserCredentialRepository(userCredentialRepository, signatureCounts), metrics);
+        PublicKeyCachingRelyingPartyOperations cachingRelyingParty = new PublicKeyCachingRelyingPartyOperations(
+                relyingParty, new InstrumentedCredentialLoginIndex(credentialLoginIndex, metrics), assertionCredentials,
+                allowedOrigins, webAuthnManager, publicKeyCache);
+        return new InstrumentedRelyingPartyOperations(
+                new PooledChallengeRelyingPartyOperations(cachingRelyingParty, challengePool, rpId), metrics);
+    }
+
+    /**
+     * Challenges for passkey logins, generated in the background so the unauthenticated options endpoint does not
+     * draw from {@code SecureRandom} on every request.
+     */
+    @Bean
+    public ChallengePool challengePool(@Value("${passkeys.challenge-pool.capacity}") int capacity) {
+        ChallengePool pool = new ChallengePool(capacity);
+        pool.refill();
+        return pool;
+    }
+
+    @Bean
+    @ConditionalOnProperty(name = "passkeys.ceremony.store", havingValue = "jdbc", matchIfMissing = true)
+    public JdbcCeremonyOptionsStore jdbcCeremonyOptionsStore(
+            JdbcOperations jdbc,
+            @Value("${passkeys.ceremony.time-to-live}") Duration timeToLive) {
+        return new JdbcCeremonyOptionsStore(jdbc, new CeremonyOptionsCodec(), timeToLive, Clock.systemUTC());
+    }
+
+    /**
+     * Keeps ceremony options in memory. Only suitable when a single node serves both steps of a ceremony.
+     */
+    @Bean
+    @ConditionalOnProperty(name = "passkeys.ceremony.store", havingValue = "memory")
+    public InMemoryCeremonyOptionsStore inMemoryCeremonyOptionsStore(
+            @Value("${passkeys.ceremony.time-to-live}") Duration timeToLive,
+            @Value("${passkeys.ceremony.memory.tick}") Duration tick) {
+        return new InMemoryCeremonyOptionsStore(timeToLive, tick);
+    }
+
+    @Bean
+    public CookiePublicKeyCredentialRequestOptionsRepository requestOptionsRepository(
+            CeremonyOptionsStore ceremonyOptionsStore,
+            WebAuthnMetrics metrics,
+            @Value("${passkeys.ceremony.time-to-live}") Duration timeToLive) {
+        return new CookiePublicKeyCredentialRequestOptionsRepository(
+                new InstrumentedCeremonyOptionsStore(ceremonyOptionsStore, metrics), timeToLive);
+    }
+
     @Bean
-    public JdbcUserCredentialRepository userCredentialRepository(JdbcOperations jdbc) {
-        return new JdbcUserCredentialRepository(jdbc);
+    public CookiePublicKeyCredentialCreationOptionsRepository creationOptionsRepository(
+            CeremonyOptionsStore ceremonyOptionsStore,
+            WebAuthnMetrics metrics,
+            @Value("${passkeys.ceremony.time-to-live}") Duration timeToLive) {
+        return new CookiePublicKeyCredentialCreationOptionsRepository(
+                new InstrumentedCeremonyOptionsStore(ceremonyOptionsStore, metrics), timeToLive);
     }
 }
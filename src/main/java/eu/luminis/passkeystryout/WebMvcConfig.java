@@ -1,18 +1,25 @@
 package eu.luminis.passkeystryout;
 
+import eu.luminis.passkeystryout.page.PrerenderedPages;
+import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
-import org.springframework.web.bind.annotation.GetMapping;
-import org.springframework.web.servlet.config.annotation.ViewControllerRegistry;
-import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+import org.thymeleaf.spring6.view.ThymeleafViewResolver;
+
+import java.util.List;
 
 @Configuration
-public class WebMvcConfig implements WebMvcConfigurer {
-    
-    @Override
-    public void addViewControllers(ViewControllerRegistry registry) {
-        registry.addViewController("/").setViewName("index");
-        registry.addViewController("/login").setViewName("login");
-        registry.addViewController("/passkey/register").setViewName("register-passkey");
-        registry.addViewController("/register").setViewName("register");
+public class WebMvcConfig {
+
+    /**
+     * The pages that only differ between anonymous and signed-in visitors, served from memory once rendered. The
+     * login page is also kept with each of the messages that Spring Security and the registration redirect to it with.
+     */
+    @Bean
+    public PrerenderedPages prerenderedPages(ThymeleafViewResolver thymeleafViewResolver) {
+        return new PrerenderedPages(thymeleafViewResolver, List.of(
+                new PrerenderedPages.Page("/", "index"),
+                new PrerenderedPages.Page("/login", "login", "error", "logout", "registered"),
+                new PrerenderedPages.Page("/passkey/register", "register-passkey"),
+                new PrerenderedPages.Page("/register", "register")));
     }
 }
@@ -0,0 +1,202 @@
+package eu.luminis.passkeystryout.cache;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.jspecify.annotations.NullMarked;
+import org.jspecify.annotations.Nullable;
+
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiPredicate;
+import java.util.function.LongSupplier;
+
+/**
+ * Small in-process cache that is bounded by size (least recently used entries are evicted first) and by age
+ * (entries older than the time-to-live are dropped on access). It keeps hit, miss and eviction counters so
+ * callers can publish them as metrics.
+ * <p>
+ * A {@link ReentrantLock} guards the map instead of {@code synchronized}, so virtual threads waiting for the
+ * lock do not pin their carrier. Nothing blocking happens while the lock is held.
+ */
+@NullMarked
+public class BoundedExpiringCache<K, V> {
+
+    private final int maximumSize;
+    private final long timeToLiveNanos;
+    private final LongSupplier nanoClock;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final LinkedHashMap<K, Entry<V>> entries;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    public BoundedExpiringCache(int maximumSize, Duration timeToLive) {
+        this(maximumSize, timeToLive, System::nanoTime);
+    }
+
+    BoundedExpiringCache(int maximumSize, Duration timeToLive, LongSupplier nanoClock) {
+        if (maximumSize < 1) {
+            throw new IllegalArgumentException("maximumSize must be at least 1");
+        }
+        if (timeToLive.isNegative() || timeToLive.isZero()) {
+            throw new IllegalArgumentException("timeToLive must be positive");
+        }
+        this.maximumSize = maximumSize;
+        this.timeToLiveNanos = timeToLive.toNanos();
+        this.nanoClock = nanoClock;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, Entry<V>> eldest) {
+                if (size() > BoundedExpiringCache.this.maximumSize) {
+                    evictions.increment();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Returns the cached value, or {@code null} when the key is absent or its entry has expired.
+     */
+    public @Nullable V get(K key) {
+        V value = lookup(key);
+        if (value == null) {
+            misses.increment();
+        } else {
+            hits.increment();
+        }
+        return value;
+    }
+
+    /**
+     * Same as {@link #get(Object)} but without touching the hit and miss counters. Meant for internal
+     * bookkeeping lookups that should not skew the statistics.
+     */
+    public @Nullable V peek(K key) {
+        return lookup(key);
+    }
+
+    public void put(K key, V value) {
+        long expiresAt = nanoClock.getAsLong() + timeToLiveNanos;
+        lock.lock();
+        try {
+            entries.put(key, new Entry<>(value, expiresAt));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void invalidate(K key) {
+        lock.lock();
+        try {
+            entries.remove(key);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Removes every entry for which the predicate holds.
+     */
+    public void invalidateIf(BiPredicate<? super K, ? super V> predicate) {
+        lock.lock();
+        try {
+            entries.entrySet().removeIf(entry -> predicate.test(entry.getKey(), entry.getValue().value()));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void invalidateAll() {
+        lock.lock();
+        try {
+            entries.clear();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Drops all expired entries. Expired entries are also removed lazily on access, so calling this is only
+     * needed to release memory for keys that are never read again.
+     */
+    public void purgeExpired() {
+        long now = nanoClock.getAsLong();
+        lock.lock();
+        try {
+            Iterator<Entry<V>> iterator = entries.values().iterator();
+            while (iterator.hasNext()) {
+                if (iterator.next().isExpired(now)) {
+                    iterator.remove();
+                    evictions.increment();
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int size() {
+        lock.lock();
+        try {
+            return entries.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long hitCount() {
+        return hits.sum();
+    }
+
+    public long missCount() {
+        return misses.sum();
+    }
+
+    public long evictionCount() {
+        return evictions.sum();
+    }
+
+    /**
+     * Publishes the statistics of this cache as the {@link CacheMetrics} and {@code cache.evictions}, tagged with the
+     * name of the cache.
+     */
+    public void bindTo(MeterRegistry registry, String cacheName) {
+        CacheMetrics.bindTo(registry, cacheName, this, BoundedExpiringCache::hitCount,
+                BoundedExpiringCache::missCount, BoundedExpiringCache::size);
+        FunctionCounter.builder("cache.evictions", this, BoundedExpiringCache::evictionCount)
+                .tag("cache", cacheName)
+                .description("The number of entries evicted because of size or age.")
+                .register(registry);
+    }
+
+    private @Nullable V lookup(K key) {
+        lock.lock();
+        try {
+            Entry<V> entry = entries.get(key);
+            if (entry == null) {
+                return null;
+            }
+            if (entry.isExpired(nanoClock.getAsLong())) {
+                entries.remove(key);
+                evictions.increment();
+                return null;
+            }
+            return entry.value();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private record Entry<V>(V value, long expiresAt) {
+        boolean isExpired(long now) {
+            return now - expiresAt >= 0;
+        }
+    }
+}
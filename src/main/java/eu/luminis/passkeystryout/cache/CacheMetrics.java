@@ -0,0 +1,38 @@
+package eu.luminis.passkeystryout.cache;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.jspecify.annotations.NullMarked;
+
+import java.util.function.ToDoubleFunction;
+
+/**
+ * Registers the meters that Micrometer's own cache binders publish, {@code cache.gets} with a hit and a miss result
+ * and {@code cache.size}, tagged with the name of the cache, for the in-process caches of this application.
+ * {@link BoundedExpiringCache#bindTo(MeterRegistry, String)} adds {@code cache.evictions}.
+ */
+@NullMarked
+public final class CacheMetrics {
+
+    private CacheMetrics() {
+    }
+
+    public static <C> void bindTo(MeterRegistry registry, String cacheName, C cache, ToDoubleFunction<C> hitCount,
+                                  ToDoubleFunction<C> missCount, ToDoubleFunction<C> size) {
+        FunctionCounter.builder("cache.gets", cache, hitCount)
+                .tag("cache", cacheName)
+                .tag("result", "hit")
+                .description("The number of times cache lookup methods have returned a cached value.")
+                .register(registry);
+        FunctionCounter.builder("cache.gets", cache, missCount)
+                .tag("cache", cacheName)
+                .tag("result", "miss")
+                .description("The number of times cache lookup methods have not returned a value.")
+                .register(registry);
+        Gauge.builder("cache.size", cache, size)
+                .tag("cache", cacheName)
+                .description("The number of entries in this cache.")
+                .register(registry);
+    }
+}
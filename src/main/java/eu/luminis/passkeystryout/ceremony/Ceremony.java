@@ -0,0 +1,20 @@
+package eu.luminis.passkeystryout.ceremony;
+
+/**
+ * The two WebAuthn ceremonies that keep options between the options request and the response from the browser.
+ * Each ceremony uses its own cookie, so a registration in one tab does not cancel a login in another.
+ */
+public enum Ceremony {
+    AUTHENTICATION("WEBAUTHN_AUTHENTICATION"),
+    REGISTRATION("WEBAUTHN_REGISTRATION");
+
+    private final String cookieName;
+
+    Ceremony(String cookieName) {
+        this.cookieName = cookieName;
+    }
+
+    public String cookieName() {
+        return cookieName;
+    }
+}
@@ -0,0 +1,74 @@
+package eu.luminis.passkeystryout.ceremony;
+
+import jakarta.servlet.http.Cookie;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.jspecify.annotations.NullMarked;
+import org.jspecify.annotations.Nullable;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.ResponseCookie;
+
+import java.security.SecureRandom;
+import java.time.Duration;
+import java.util.Base64;
+
+/**
+ * Creates, reads and clears the cookie that carries the token of a running ceremony. The token is 256 bits from a
+ * {@link SecureRandom} and means nothing on its own; the options themselves stay on the server.
+ */
+@NullMarked
+class CeremonyCookies {
+
+    private static final int TOKEN_BYTES = 32;
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    private final Duration timeToLive;
+
+    CeremonyCookies(Duration timeToLive) {
+        this.timeToLive = timeToLive;
+    }
+
+    String newToken() {
+        byte[] bytes = new byte[TOKEN_BYTES];
+        RANDOM.nextBytes(bytes);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+    }
+
+    @Nullable String readToken(HttpServletRequest request, Ceremony ceremony) {
+        Cookie[] cookies = request.getCookies();
+        if (cookies == null) {
+            return null;
+        }
+        for (Cookie cookie : cookies) {
+            if (ceremony.cookieName().equals(cookie.getName()) && !cookie.getValue().isEmpty()) {
+                return cookie.getValue();
+            }
+        }
+        return null;
+    }
+
+    void writeToken(HttpServletRequest request, HttpServletResponse response, Ceremony ceremony, String token) {
+        addCookie(request, response, ceremony, token, timeToLive);
+    }
+
+    void clearToken(HttpServletRequest request, HttpServletResponse response, Ceremony ceremony) {
+        addCookie(request, response, ceremony, "", Duration.ZERO);
+    }
+
+    private static void addCookie(HttpServletRequest request, HttpServletResponse response, Ceremony ceremony,
+                                  String value, Duration maxAge) {
+        ResponseCookie cookie = ResponseCookie.from(ceremony.cookieName(), value)
+                .path(cookiePath(request))
+                .maxAge(maxAge)
+                .httpOnly(true)
+                .secure(request.isSecure())
+                .sameSite("Strict")
+                .build();
+        response.addHeader(HttpHeaders.SET_COOKIE, cookie.toString());
+    }
+
+    private static String cookiePath(HttpServletRequest request) {
+        String contextPath = request.getContextPath();
+        return contextPath.isEmpty() ? "/" : contextPath;
+    }
+}
@@ -0,0 +1,300 @@
+package eu.luminis.passkeystryout.ceremony;
+
+import org.jspecify.annotations.NullMarked;
+import org.jspecify.annotations.Nullable;
+import org.springframework.security.web.webauthn.api.AttestationConveyancePreference;
+import org.springframework.security.web.webauthn.api.AuthenticationExtensionsClientInput;
+import org.springframework.security.web.webauthn.api.AuthenticationExtensionsClientInputs;
+import org.springframework.security.web.webauthn.api.AuthenticatorAttachment;
+import org.springframework.security.web.webauthn.api.AuthenticatorSelectionCriteria;
+import org.springframework.security.web.webauthn.api.AuthenticatorTransport;
+import org.springframework.security.web.webauthn.api.Bytes;
+import org.springframework.security.web.webauthn.api.CredProtectAuthenticationExtensionsClientInput;
+import org.springframework.security.web.webauthn.api.CredProtectAuthenticationExtensionsClientInput.CredProtect;
+import org.springframework.security.web.webauthn.api.ImmutableAuthenticationExtensionsClientInput;
+import org.springframework.security.web.webauthn.api.ImmutableAuthenticationExtensionsClientInputs;
+import org.springframework.security.web.webauthn.api.ImmutablePublicKeyCredentialUserEntity;
+import org.springframework.security.web.webauthn.api.PublicKeyCredentialCreationOptions;
+import org.springframework.security.web.webauthn.api.PublicKeyCredentialDescriptor;
+import org.springframework.security.web.webauthn.api.PublicKeyCredentialParameters;
+import org.springframework.security.web.webauthn.api.PublicKeyCredentialRequestOptions;
+import org.springframework.security.web.webauthn.api.PublicKeyCredentialRpEntity;
+import org.springframework.security.web.webauthn.api.PublicKeyCredentialType;
+import org.springframework.security.web.webauthn.api.PublicKeyCredentialUserEntity;
+import org.springframework.security.web.webauthn.api.ResidentKeyRequirement;
+import org.springframework.security.web.webauthn.api.UserVerificationRequirement;
+import tools.jackson.databind.JsonNode;
+import tools.jackson.databind.json.JsonMapper;
+import tools.jackson.databind.node.ArrayNode;
+import tools.jackson.databind.node.ObjectNode;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+
+/**
+ * Turns request and creation options into JSON bytes and back, so they can be kept outside the JVM.
+ * <p>
+ * Spring Security only ships Jackson support for writing these types to the browser, and
+ * {@link PublicKeyCredentialCreationOptions} is not {@link java.io.Serializable}, hence this small hand-written
+ * mapping. Only the extension inputs Spring Security itself produces (boolean, string and credProtect) are
+ * supported.
+ */
+@NullMarked
+public class CeremonyOptionsCodec {
+
+    private static final List<PublicKeyCredentialParameters> KNOWN_PARAMETERS = List.of(
+            PublicKeyCredentialParameters.EdDSA,
+            PublicKeyCredentialParameters.ES256,
+            PublicKeyCredentialParameters.ES384,
+            PublicKeyCredentialParameters.ES512,
+            PublicKeyCredentialParameters.RS256,
+            PublicKeyCredentialParameters.RS384,
+            PublicKeyCredentialParameters.RS512,
+            PublicKeyCredentialParameters.RS1);
+
+    private static final List<UserVerificationRequirement> USER_VERIFICATION_REQUIREMENTS = List.of(
+            UserVerificationRequirement.DISCOURAGED,
+            UserVerificationRequirement.PREFERRED,
+            UserVerificationRequirement.REQUIRED);
+
+    private static final String CRED_PROTECT = "credProtect";
+
+    private final JsonMapper mapper = JsonMapper.shared();
+
+    public byte[] encode(Object options) {
+        ObjectNode json = switch (options) {
+            case PublicKeyCredentialRequestOptions request -> encodeRequest(request);
+            case PublicKeyCredentialCreationOptions creation -> encodeCreation(creation);
+            default -> throw new IllegalArgumentException("Unsupported options type " + options.getClass().getName());
+        };
+        return mapper.writeValueAsBytes(json);
+    }
+
+    public <T> T decode(byte[] encoded, Class<T> type) {
+        JsonNode json = mapper.readTree(encoded);
+        if (type == PublicKeyCredentialRequestOptions.class) {
+            return type.cast(decodeRequest(json));
+        }
+        if (type == PublicKeyCredentialCreationOptions.class) {
+            return type.cast(decodeCreation(json));
+        }
+        throw new IllegalArgumentException("Unsupported options type " + type.getName());
+    }
+
+    private ObjectNode encodeRequest(PublicKeyCredentialRequestOptions options) {
+        ObjectNode json = mapper.createObjectNode();
+        json.put("challenge", options.getChallenge().toBase64UrlString());
+        putTimeout(json, options.getTimeout());
+        json.put("rpId", options.getRpId());
+        putDescriptors(json, "allowCredentials", options.getAllowCredentials());
+        if (options.getUserVerification() != null) {
+            json.put("userVerification", options.getUserVerification().getValue());
+        }
+        putExtensions(json, options.getExtensions());
+        return json;
+    }
+
+    private PublicKeyCredentialRequestOptions decodeRequest(JsonNode json) {
+        PublicKeyCredentialRequestOptions.PublicKeyCredentialRequestOptionsBuilder builder =
+                PublicKeyCredentialRequestOptions.builder()
+                        .challenge(Bytes.fromBase64(json.path("challenge").asString()))
+                        .rpId(json.path("rpId").asString(null))
+                        .allowCredentials(readDescriptors(json.path("allowCredentials")))
+                        .extensions(readExtensions(json.path("extensions")));
+        if (json.has("timeout")) {
+            builder.timeout(Duration.ofMillis(json.get("timeout").asLong()));
+        }
+        if (json.has("userVerification")) {
+            builder.userVerification(userVerification(json.get("userVerification").asString()));
+        }
+        return builder.build();
+    }
+
+    private ObjectNode encodeCreation(PublicKeyCredentialCreationOptions options) {
+        ObjectNode json = mapper.createObjectNode();
+        ObjectNode rp = json.putObject("rp");
+        rp.put("name", options.getRp().getName());
+        rp.put("id", options.getRp().getId());
+        ObjectNode user = json.putObject("user");
+        user.put("name", options.getUser().getName());
+        user.put("id", options.getUser().getId().toBase64UrlString());
+        user.put("displayName", options.getUser().getDisplayName());
+        json.put("challenge", options.getChallenge().toBase64UrlString());
+        ArrayNode parameters = json.putArray("pubKeyCredParams");
+        for (PublicKeyCredentialParameters parameter : options.getPubKeyCredParams()) {
+            parameters.add(parameter.getAlg().getValue());
+        }
+        putTimeout(json, options.getTimeout());
+        putDescriptors(json, "excludeCredentials", options.getExcludeCredentials());
+        AuthenticatorSelectionCriteria selection = options.getAuthenticatorSelection();
+        if (selection != null) {
+            ObjectNode selectionJson = json.putObject("authenticatorSelection");
+            if (selection.getAuthenticatorAttachment() != null) {
+                selectionJson.put("authenticatorAttachment", selection.getAuthenticatorAttachment().getValue());
+            }
+            if (selection.getResidentKey() != null) {
+                selectionJson.put("residentKey", selection.getResidentKey().getValue());
+            }
+            if (selection.getUserVerification() != null) {
+                selectionJson.put("userVerification", selection.getUserVerification().getValue());
+            }
+        }
+        if (options.getAttestation() != null) {
+            json.put("attestation", options.getAttestation().getValue());
+        }
+        putExtensions(json, options.getExtensions());
+        return json;
+    }
+
+    private PublicKeyCredentialCreationOptions decodeCreation(JsonNode json) {
+        JsonNode rp = json.path("rp");
+        JsonNode user = json.path("user");
+        PublicKeyCredentialUserEntity userEntity = ImmutablePublicKeyCredentialUserEntity.builder()
+                .name(user.path("name").asString())
+                .id(Bytes.fromBase64(user.path("id").asString()))
+                .displayName(user.path("displayName").asString())
+                .build();
+        List<PublicKeyCredentialParameters> parameters = new ArrayList<>();
+        for (JsonNode alg : json.path("pubKeyCredParams").values()) {
+            parameters.add(lookup(KNOWN_PARAMETERS, parameter -> String.valueOf(parameter.getAlg().getValue()),
+                    String.valueOf(alg.asLong())));
+        }
+
+        PublicKeyCredentialCreationOptions.PublicKeyCredentialCreationOptionsBuilder builder =
+                PublicKeyCredentialCreationOptions.builder()
+                        .rp(PublicKeyCredentialRpEntity.builder()
+                                .name(rp.path("name").asString(null))
+                                .id(rp.path("id").asString(null))
+                                .build())
+                        .user(userEntity)
+                        .challenge(Bytes.fromBase64(json.path("challenge").asString()))
+                        .pubKeyCredParams(parameters)
+                        .excludeCredentials(readDescriptors(json.path("excludeCredentials")))
+                        .extensions(readExtensions(json.path("extensions")));
+        if (json.has("timeout")) {
+            builder.timeout(Duration.ofMillis(json.get("timeout").asLong()));
+        }
+        JsonNode selection = json.path("authenticatorSelection");
+        if (selection.isObject()) {
+            AuthenticatorSelectionCriteria.AuthenticatorSelectionCriteriaBuilder selectionBuilder =
+                    AuthenticatorSelectionCriteria.builder();
+            if (selection.has("authenticatorAttachment")) {
+                selectionBuilder.authenticatorAttachment(
+                        AuthenticatorAttachment.valueOf(selection.get("authenticatorAttachment").asString()));
+            }
+            if (selection.has("residentKey")) {
+                selectionBuilder.residentKey(ResidentKeyRequirement.valueOf(selection.get("residentKey").asString()));
+            }
+            if (selection.has("userVerification")) {
+                selectionBuilder.userVerification(userVerification(selection.get("userVerification").asString()));
+            }
+            builder.authenticatorSelection(selectionBuilder.build());
+        }
+        if (json.has("attestation")) {
+            builder.attestation(AttestationConveyancePreference.valueOf(json.get("attestation").asString()));
+        }
+        return builder.build();
+    }
+
+    private static void putTimeout(ObjectNode json, @Nullable Duration timeout) {
+        if (timeout != null) {
+            json.put("timeout", timeout.toMillis());
+        }
+    }
+
+    private static void putDescriptors(ObjectNode json, String name,
+                                       @Nullable List<PublicKeyCredentialDescriptor> descriptors) {
+        ArrayNode array = json.putArray(name);
+        if (descriptors == null) {
+            return;
+        }
+        for (PublicKeyCredentialDescriptor descriptor : descriptors) {
+            ObjectNode descriptorJson = array.addObject();
+            descriptorJson.put("type", descriptor.getType().getValue());
+            descriptorJson.put("id", descriptor.getId().toBase64UrlString());
+            if (descriptor.getTransports() != null) {
+                ArrayNode transports = descriptorJson.putArray("transports");
+                descriptor.getTransports().forEach(transport -> transports.add(transport.getValue()));
+            }
+        }
+    }
+
+    private static List<PublicKeyCredentialDescriptor> readDescriptors(JsonNode array) {
+        List<PublicKeyCredentialDescriptor> descriptors = new ArrayList<>();
+        for (JsonNode descriptor : array.values()) {
+            PublicKeyCredentialDescriptor.PublicKeyCredentialDescriptorBuilder builder =
+                    PublicKeyCredentialDescriptor.builder()
+                            .type(PublicKeyCredentialType.valueOf(descriptor.path("type").asString()))
+                            .id(Bytes.fromBase64(descriptor.path("id").asString()));
+            if (descriptor.has("transports")) {
+                Set<AuthenticatorTransport> transports = new LinkedHashSet<>();
+                for (JsonNode transport : descriptor.get("transports").values()) {
+                    transports.add(AuthenticatorTransport.valueOf(transport.asString()));
+                }
+                builder.transports(transports);
+            }
+            descriptors.add(builder.build());
+        }
+        return descriptors;
+    }
+
+    private static void putExtensions(ObjectNode json, @Nullable AuthenticationExtensionsClientInputs extensions) {
+        if (extensions == null) {
+            return;
+        }
+        ObjectNode extensionsJson = json.putObject("extensions");
+        for (AuthenticationExtensionsClientInput<?> extension : extensions.getInputs()) {
+            switch (extension.getInput()) {
+                case Boolean value -> extensionsJson.put(extension.getExtensionId(), value);
+                case String value -> extensionsJson.put(extension.getExtensionId(), value);
+                case CredProtect credProtect -> {
+                    ObjectNode credProtectJson = extensionsJson.putObject(CRED_PROTECT);
+                    credProtectJson.put("credentialProtectionPolicy", credProtect.getCredProtectionPolicy().name());
+                    credProtectJson.put("enforceCredentialProtectionPolicy",
+                            credProtect.isEnforceCredentialProtectionPolicy());
+                }
+                default -> throw new IllegalArgumentException(
+                        "Unsupported extension input " + extension.getExtensionId());
+            }
+        }
+    }
+
+    private static @Nullable AuthenticationExtensionsClientInputs readExtensions(JsonNode json) {
+        if (!json.isObject()) {
+            return null;
+        }
+        List<AuthenticationExtensionsClientInput<?>> inputs = new ArrayList<>();
+        for (Map.Entry<String, JsonNode> property : json.properties()) {
+            JsonNode value = property.getValue();
+            if (CRED_PROTECT.equals(property.getKey())) {
+                inputs.add(new CredProtectAuthenticationExtensionsClientInput(new CredProtect(
+                        CredProtect.ProtectionPolicy.valueOf(value.path("credentialProtectionPolicy").asString()),
+                        value.path("enforceCredentialProtectionPolicy").asBoolean())));
+            } else if (value.isBoolean()) {
+                inputs.add(new ImmutableAuthenticationExtensionsClientInput<>(property.getKey(), value.booleanValue()));
+            } else {
+                inputs.add(new ImmutableAuthenticationExtensionsClientInput<>(property.getKey(), value.asString()));
+            }
+        }
+        return new ImmutableAuthenticationExtensionsClientInputs(
+                inputs.toArray(AuthenticationExtensionsClientInput<?>[]::new));
+    }
+
+    private static UserVerificationRequirement userVerification(String value) {
+        return lookup(USER_VERIFICATION_REQUIREMENTS, UserVerificationRequirement::getValue, value);
+    }
+
+    private static <T> T lookup(List<T> candidates, Function<T, String> valueOf, String value) {
+        for (T candidate : candidates) {
+            if (valueOf.apply(candidate).equals(value)) {
+                return candidate;
+            }
+        }
+        throw new IllegalArgumentException("Unknown value " + value);
+    }
+}
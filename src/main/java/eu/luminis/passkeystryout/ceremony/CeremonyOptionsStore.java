@@ -0,0 +1,37 @@
+package eu.luminis.passkeystryout.ceremony;
+
+import org.jspecify.annotations.NullMarked;
+import org.jspecify.annotations.Nullable;
+
+/**
+ * Keeps the options of running WebAuthn ceremonies, keyed by an opaque token that the browser holds in a cookie.
+ * Options are only valid until their time-to-live has passed and can be consumed exactly once.
+ */
+@NullMarked
+public interface CeremonyOptionsStore {
+
+    /**
+     * Stores the options for a ceremony under the given token.
+     *
+     * @param ceremony the ceremony the options belong to
+     * @param token    opaque token that was handed to the browser
+     * @param options  the request or creation options
+     */
+    void save(Ceremony ceremony, String token, Object options);
+
+    /**
+     * Removes and returns the options stored under the given token. A second call for the same token returns
+     * {@code null}, as does a call for a token that has expired.
+     *
+     * @param ceremony the ceremony the options belong to
+     * @param token    opaque token from the ceremony cookie
+     * @param type     the expected type of the options
+     * @return the options, or {@code null} if they are unknown, expired or already consumed
+     */
+    <T> @Nullable T consume(Ceremony ceremony, String token, Class<T> type);
+
+    /**
+     * Removes the options stored under the given token, if any.
+     */
+    void remove(Ceremony ceremony, String token);
+}
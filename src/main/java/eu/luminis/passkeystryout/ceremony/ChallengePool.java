@@ -0,0 +1,134 @@
+package eu.luminis.passkeystryout.ceremony;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.jspecify.annotations.NullMarked;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.security.web.webauthn.api.Bytes;
+
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Random WebAuthn challenges generated ahead of time, so the options endpoint of a passkey login does not have to
+ * wait for {@link SecureRandom}. {@link #refill()} fills a bounded ring in the background, drawing the bytes of many
+ * challenges at once; {@link #take()} claims the oldest one with a compare-and-set and never blocks. When the ring is
+ * empty, because logins outpace the refills, the challenge is generated on the spot instead.
+ * <p>
+ * Only {@link #refill()} writes to the ring, and only into slots that were emptied by a take, so a taker that won the
+ * race for a position always finds the challenge that was published there. A challenge is handed out once.
+ */
+@NullMarked
+public class ChallengePool implements MeterBinder {
+
+    static final int CHALLENGE_BYTES = 32;
+
+    private final SecureRandom random = new SecureRandom();
+    private final AtomicReferenceArray<Bytes> slots;
+    private final int mask;
+    /** Position of the next challenge to take. */
+    private final AtomicLong head = new AtomicLong();
+    /** Position after the last published challenge; only advanced by {@link #refill()}. */
+    private final AtomicLong tail = new AtomicLong();
+    private final ReentrantLock refillLock = new ReentrantLock();
+    private final LongAdder taken = new LongAdder();
+    private final LongAdder fallbacks = new LongAdder();
+
+    /**
+     * @param capacity the number of challenges kept ready, rounded up to a power of two
+     */
+    public ChallengePool(int capacity) {
+        if (capacity < 1 || capacity > 1 << 20) {
+            throw new IllegalArgumentException("Capacity must be between 1 and 2^20, was " + capacity);
+        }
+        int size = capacity == 1 ? 1 : Integer.highestOneBit(capacity - 1) << 1;
+        this.slots = new AtomicReferenceArray<>(size);
+        this.mask = size - 1;
+    }
+
+    /**
+     * Returns a challenge that was never handed out before, from the ring if it has one.
+     */
+    public Bytes take() {
+        while (true) {
+            long position = head.get();
+            if (position >= tail.get()) {
+                fallbacks.increment();
+                return generate(1)[0];
+            }
+            if (head.compareAndSet(position, position + 1)) {
+                taken.increment();
+                return slots.getAndSet((int) (position & mask), null);
+            }
+        }
+    }
+
+    /**
+     * Tops the ring up to its capacity. A refill that is already running is not waited for.
+     *
+     * @return the number of challenges added
+     */
+    @Scheduled(fixedDelayString = "${passkeys.challenge-pool.refill-interval}")
+    public int refill() {
+        if (!refillLock.tryLock()) {
+            return 0;
+        }
+        try {
+            long position = tail.get();
+            int free = (int) (slots.length() - (position - head.get()));
+            int added = 0;
+            if (free > 0) {
+                for (Bytes challenge : generate(free)) {
+                    int slot = (int) ((position + added) & mask);
+                    // A taker that claimed this slot's previous challenge may not have emptied it yet
+                    if (slots.get(slot) != null) {
+                        break;
+                    }
+                    slots.set(slot, challenge);
+                    added++;
+                }
+                tail.set(position + added);
+            }
+            return added;
+        } finally {
+            refillLock.unlock();
+        }
+    }
+
+    public int size() {
+        return (int) Math.max(0, tail.get() - head.get());
+    }
+
+    public int capacity() {
+        return slots.length();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("webauthn.challenge-pool.size", this, ChallengePool::size)
+                .description("Pre-generated challenges ready to be handed out")
+                .register(registry);
+        FunctionCounter.builder("webauthn.challenge-pool.taken", taken, LongAdder::sum)
+                .description("Challenges handed out from the pool")
+                .register(registry);
+        FunctionCounter.builder("webauthn.challenge-pool.fallbacks", fallbacks, LongAdder::sum)
+                .description("Challenges generated on request because the pool was empty")
+                .register(registry);
+    }
+
+    private Bytes[] generate(int count) {
+        byte[] bytes = new byte[count * CHALLENGE_BYTES];
+        random.nextBytes(bytes);
+        Bytes[] challenges = new Bytes[count];
+        for (int i = 0; i < count; i++) {
+            challenges[i] = new Bytes(Arrays.copyOfRange(bytes, i * CHALLENGE_BYTES, (i + 1) * CHALLENGE_BYTES));
+        }
+        return challenges;
+    }
+}
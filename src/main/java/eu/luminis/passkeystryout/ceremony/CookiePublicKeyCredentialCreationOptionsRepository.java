@@ -0,0 +1,53 @@
+package eu.luminis.passkeystryout.ceremony;
+
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.jspecify.annotations.NullMarked;
+import org.jspecify.annotations.Nullable;
+import org.springframework.security.web.webauthn.api.PublicKeyCredentialCreationOptions;
+import org.springframework.security.web.webauthn.registration.PublicKeyCredentialCreationOptionsRepository;
+
+import java.time.Duration;
+
+/**
+ * Keeps the registration options in a {@link CeremonyOptionsStore} instead of the HTTP session. The browser only
+ * gets a cookie with an opaque token, so any node can finish the ceremony.
+ * <p>
+ * {@link #load(HttpServletRequest)} consumes the options: a replayed attestation finds nothing.
+ */
+@NullMarked
+public class CookiePublicKeyCredentialCreationOptionsRepository implements PublicKeyCredentialCreationOptionsRepository {
+
+    private final CeremonyOptionsStore store;
+    private final CeremonyCookies cookies;
+
+    public CookiePublicKeyCredentialCreationOptionsRepository(CeremonyOptionsStore store, Duration timeToLive) {
+        this.store = store;
+        this.cookies = new CeremonyCookies(timeToLive);
+    }
+
+    @Override
+    public void save(HttpServletRequest request, HttpServletResponse response,
+                     @Nullable PublicKeyCredentialCreationOptions options) {
+        String previous = cookies.readToken(request, Ceremony.REGISTRATION);
+        if (previous != null) {
+            store.remove(Ceremony.REGISTRATION, previous);
+        }
+        if (options == null) {
+            cookies.clearToken(request, response, Ceremony.REGISTRATION);
+            return;
+        }
+        String token = cookies.newToken();
+        store.save(Ceremony.REGISTRATION, token, options);
+        cookies.writeToken(request, response, Ceremony.REGISTRATION, token);
+    }
+
+    @Override
+    public @Nullable PublicKeyCredentialCreationOptions load(HttpServletRequest request) {
+        String token = cookies.readToken(request, Ceremony.REGISTRATION);
+        if (token == null) {
+            return null;
+        }
+        return store.consume(Ceremony.REGISTRATION, token, PublicKeyCredentialCreationOptions.class);
+    }
+}
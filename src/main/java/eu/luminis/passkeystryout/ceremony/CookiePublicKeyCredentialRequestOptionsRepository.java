@@ -0,0 +1,53 @@
+package eu.luminis.passkeystryout.ceremony;
+
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.jspecify.annotations.NullMarked;
+import org.jspecify.annotations.Nullable;
+import org.springframework.security.web.webauthn.api.PublicKeyCredentialRequestOptions;
+import org.springframework.security.web.webauthn.authentication.PublicKeyCredentialRequestOptionsRepository;
+
+import java.time.Duration;
+
+/**
+ * Keeps the authentication options in a {@link CeremonyOptionsStore} instead of the HTTP session. The browser only
+ * gets a cookie with an opaque token, so opening the login page no longer creates a session.
+ * <p>
+ * {@link #load(HttpServletRequest)} consumes the options: a replayed assertion finds nothing.
+ */
+@NullMarked
+public class CookiePublicKeyCredentialRequestOptionsRepository implements PublicKeyCredentialRequestOptionsRepository {
+
+    private final CeremonyOptionsStore store;
+    private final CeremonyCookies cookies;
+
+    public CookiePublicKeyCredentialRequestOptionsRepository(CeremonyOptionsStore store, Duration timeToLive) {
+        this.store = store;
+        this.cookies = new CeremonyCookies(timeToLive);
+    }
+
+    @Override
+    public void save(HttpServletRequest request, HttpServletResponse response,
+                     @Nullable PublicKeyCredentialRequestOptions options) {
+        String previous = cookies.readToken(request, Ceremony.AUTHENTICATION);
+        if (previous != null) {
+            store.remove(Ceremony.AUTHENTICATION, previous);
+        }
+        if (options == null) {
+            cookies.clearToken(request, response, Ceremony.AUTHENTICATION);
+            return;
+        }
+        String token = cookies.newToken();
+        store.save(Ceremony.AUTHENTICATION, token, options);
+        cookies.writeToken(request, response, Ceremony.AUTHENTICATION, token);
+    }
+
+    @Override
+    public @Nullable PublicKeyCredentialRequestOptions load(HttpServletRequest request) {
+        String token = cookies.readToken(request, Ceremony.AUTHENTICATION);
+        if (token == null) {
+            return null;
+        }
+        return store.consume(Ceremony.AUTHENTICATION, token, PublicKeyCredentialRequestOptions.class);
+    }
+}
@@ -0,0 +1,166 @@
+package eu.luminis.passkeystryout.ceremony;
+
+import org.jspecify.annotations.NullMarked;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+/**
+ * Hierarchical timing wheel in the style of the Linux kernel and Kafka timers. Scheduling an item is O(1): it is
+ * appended to one lock-free bucket, chosen by how far away its deadline is. Each level has 64 buckets; a bucket on
+ * level {@code n} spans {@code 64^n} ticks. When a lower level wraps around, the next bucket of the level above is
+ * cascaded down, so every item is touched at most once per level before it expires.
+ * <p>
+ * Any number of threads may {@link #schedule(Object, long)} concurrently; {@link #advance(long, Consumer)} is
+ * serialized by a lock and is meant to be called from a single ticker. An item scheduled while the wheel is
+ * advancing may expire up to one rotation of its level late, which is fine for reclaiming memory. Callers that
+ * need an exact deadline must check it themselves.
+ *
+ * @param <T> the scheduled item
+ */
+@NullMarked
+public class HierarchicalTimingWheel<T> {
+
+    private static final int WHEEL_BITS = 6;
+    private static final int WHEEL_SIZE = 1 << WHEEL_BITS;
+    private static final int WHEEL_MASK = WHEEL_SIZE - 1;
+
+    private final long tickNanos;
+    private final long originNanos;
+    private final int levels;
+    private final List<List<Queue<Timer<T>>>> buckets;
+    private final ReentrantLock advanceLock = new ReentrantLock();
+
+    private volatile long currentTick;
+
+    /**
+     * @param tick        the resolution of the wheel
+     * @param levels      the number of levels; with 64 buckets per level, 4 levels cover {@code 64^4} ticks
+     * @param originNanos the {@link System#nanoTime()} value that tick zero corresponds to
+     */
+    public HierarchicalTimingWheel(Duration tick, int levels, long originNanos) {
+        if (tick.isNegative() || tick.isZero()) {
+            throw new IllegalArgumentException("tick must be positive");
+        }
+        if (levels < 1 || levels * WHEEL_BITS >= Long.SIZE - 1) {
+            throw new IllegalArgumentException("levels must be between 1 and " + ((Long.SIZE - 2) / WHEEL_BITS));
+        }
+        this.tickNanos = tick.toNanos();
+        this.originNanos = originNanos;
+        this.levels = levels;
+        this.buckets = new ArrayList<>(levels);
+        for (int level = 0; level < levels; level++) {
+            List<Queue<Timer<T>>> wheel = new ArrayList<>(WHEEL_SIZE);
+            for (int slot = 0; slot < WHEEL_SIZE; slot++) {
+                wheel.add(new ConcurrentLinkedQueue<>());
+            }
+            buckets.add(wheel);
+        }
+    }
+
+    /**
+     * Schedules an item to be handed to the expiry callback once the wheel has advanced past its deadline.
+     *
+     * @param item          the item to schedule
+     * @param deadlineNanos the {@link System#nanoTime()} based deadline
+     */
+    public void schedule(T item, long deadlineNanos) {
+        long deadlineTick = Math.ceilDiv(deadlineNanos - originNanos, tickNanos);
+        place(new Timer<>(item, deadlineTick), currentTick + 1);
+    }
+
+    /**
+     * Moves the wheel forward to the given time and hands every item whose deadline has passed to the callback.
+     *
+     * @param nowNanos the current {@link System#nanoTime()}
+     * @param expired  receives every expired item
+     * @return the number of expired items
+     */
+    public int advance(long nowNanos, Consumer<? super T> expired) {
+        long targetTick = Math.floorDiv(nowNanos - originNanos, tickNanos);
+        int count = 0;
+        advanceLock.lock();
+        try {
+            long tick = currentTick;
+            while (tick < targetTick) {
+                tick++;
+                currentTick = tick;
+                cascade(tick);
+                for (Timer<T> timer : drain(buckets.getFirst().get((int) (tick & WHEEL_MASK)))) {
+                    if (timer.deadlineTick() <= tick) {
+                        expired.accept(timer.item());
+                        count++;
+                    } else {
+                        place(timer, tick + 1);
+                    }
+                }
+            }
+        } finally {
+            advanceLock.unlock();
+        }
+        return count;
+    }
+
+    /**
+     * Returns the number of scheduled items. This walks every bucket, so it is meant for tests and diagnostics.
+     */
+    public int size() {
+        int size = 0;
+        for (List<Queue<Timer<T>>> wheel : buckets) {
+            for (Queue<Timer<T>> bucket : wheel) {
+                size += bucket.size();
+            }
+        }
+        return size;
+    }
+
+    private void cascade(long tick) {
+        for (int level = 1; level < levels; level++) {
+            long lowerTicks = tick >>> (WHEEL_BITS * level - WHEEL_BITS);
+            if ((lowerTicks & WHEEL_MASK) != 0) {
+                return;
+            }
+            int slot = (int) ((tick >>> (WHEEL_BITS * level)) & WHEEL_MASK);
+            for (Timer<T> timer : drain(buckets.get(level).get(slot))) {
+                place(timer, tick);
+            }
+        }
+    }
+
+    /**
+     * Puts a timer in the bucket that is visited closest to, but not after, its deadline.
+     *
+     * @param pendingTick the first tick whose level 0 bucket has not been processed yet
+     */
+    private void place(Timer<T> timer, long pendingTick) {
+        long delta = Math.max(timer.deadlineTick() - pendingTick, 0);
+        long tick = pendingTick + delta;
+        int level = 0;
+        while (level < levels - 1 && delta >= 1L << (WHEEL_BITS * (level + 1))) {
+            level++;
+        }
+        if (delta >= 1L << (WHEEL_BITS * levels)) {
+            // Beyond the range of the top level: park it in the furthest bucket and let cascading bring it down
+            tick = pendingTick + (1L << (WHEEL_BITS * levels)) - 1;
+        }
+        int slot = (int) ((tick >>> (WHEEL_BITS * level)) & WHEEL_MASK);
+        buckets.get(level).get(slot).add(timer);
+    }
+
+    private static <T> List<Timer<T>> drain(Queue<Timer<T>> bucket) {
+        List<Timer<T>> drained = new ArrayList<>();
+        Timer<T> timer;
+        while ((timer = bucket.poll()) != null) {
+            drained.add(timer);
+        }
+        return drained;
+    }
+
+    private record Timer<T>(T item, long deadlineTick) {
+    }
+}
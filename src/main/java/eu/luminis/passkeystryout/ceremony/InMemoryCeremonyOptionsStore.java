@@ -0,0 +1,119 @@
+package eu.luminis.passkeystryout.ceremony;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.jspecify.annotations.NullMarked;
+import org.jspecify.annotations.Nullable;
+import org.springframework.scheduling.annotation.Scheduled;
+
+import java.time.Duration;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * {@link CeremonyOptionsStore} for single-node deployments that keeps the options in a {@link ConcurrentHashMap}.
+ * <p>
+ * Consuming is a single atomic {@code remove}, so a token is handed out at most once without any locking. Expiry
+ * runs on a {@link HierarchicalTimingWheel}: scheduling is O(1) per entry and the scheduled {@link #expire()} only
+ * touches the buckets that are due, so a flood of abandoned ceremonies does not need a task per entry. The wheel
+ * only reclaims memory; {@link #consume(Ceremony, String, Class)} checks the deadline itself.
+ */
+@NullMarked
+public class InMemoryCeremonyOptionsStore implements CeremonyOptionsStore, MeterBinder {
+
+    private static final int WHEEL_LEVELS = 4;
+
+    private final ConcurrentMap<Key, Entry> entries = new ConcurrentHashMap<>();
+    private final HierarchicalTimingWheel<Entry> wheel;
+    private final long timeToLiveNanos;
+    private final LongSupplier nanoClock;
+    private final LongAdder expired = new LongAdder();
+
+    public InMemoryCeremonyOptionsStore(Duration timeToLive, Duration tick) {
+        this(timeToLive, tick, System::nanoTime);
+    }
+
+    InMemoryCeremonyOptionsStore(Duration timeToLive, Duration tick, LongSupplier nanoClock) {
+        this.timeToLiveNanos = timeToLive.toNanos();
+        this.nanoClock = nanoClock;
+        this.wheel = new HierarchicalTimingWheel<>(tick, WHEEL_LEVELS, nanoClock.getAsLong());
+    }
+
+    @Override
+    public void save(Ceremony ceremony, String token, Object options) {
+        Key key = new Key(ceremony, token);
+        Entry entry = new Entry(key, options, nanoClock.getAsLong() + timeToLiveNanos);
+        entries.put(key, entry);
+        wheel.schedule(entry, entry.deadlineNanos());
+    }
+
+    @Override
+    public <T> @Nullable T consume(Ceremony ceremony, String token, Class<T> type) {
+        Entry entry = entries.remove(new Key(ceremony, token));
+        if (entry == null) {
+            return null;
+        }
+        if (nanoClock.getAsLong() - entry.deadlineNanos() >= 0) {
+            expired.increment();
+            return null;
+        }
+        return type.cast(entry.options());
+    }
+
+    @Override
+    public void remove(Ceremony ceremony, String token) {
+        entries.remove(new Key(ceremony, token));
+    }
+
+    /**
+     * Advances the timing wheel and drops every entry whose deadline has passed.
+     *
+     * @return the number of entries that were removed
+     */
+    @Scheduled(fixedRateString = "${passkeys.ceremony.memory.tick}")
+    public int expire() {
+        LongAdder removed = new LongAdder();
+        wheel.advance(nanoClock.getAsLong(), entry -> {
+            // Only remove the exact entry that was scheduled; the token may have been consumed or reused since
+            if (entries.remove(entry.key(), entry)) {
+                removed.increment();
+            }
+        });
+        expired.add(removed.sum());
+        return removed.intValue();
+    }
+
+    /**
+     * Returns the number of ceremonies that are waiting to be completed.
+     */
+    public int liveCount() {
+        return entries.size();
+    }
+
+    /**
+     * Returns the number of ceremonies that expired before they were completed.
+     */
+    public long expiredCount() {
+        return expired.sum();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("webauthn.ceremony.options.live", this, InMemoryCeremonyOptionsStore::liveCount)
+                .description("The number of WebAuthn ceremonies waiting to be completed.")
+                .register(registry);
+        FunctionCounter.builder("webauthn.ceremony.options.expired", this, InMemoryCeremonyOptionsStore::expiredCount)
+                .description("The number of WebAuthn ceremonies that expired before they were completed.")
+                .register(registry);
+    }
+
+    private record Key(Ceremony ceremony, String token) {
+    }
+
+    private record Entry(Key key, Object options, long deadlineNanos) {
+    }
+}
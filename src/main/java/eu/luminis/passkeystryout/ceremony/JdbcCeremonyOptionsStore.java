@@ -0,0 +1,88 @@
+package eu.luminis.passkeystryout.ceremony;
+
+import org.jspecify.annotations.NullMarked;
+import org.jspecify.annotations.Nullable;
+import org.springframework.jdbc.core.JdbcOperations;
+import org.springframework.scheduling.annotation.Scheduled;
+
+import java.sql.Timestamp;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * {@link CeremonyOptionsStore} on top of the {@code webauthn_ceremony_options} table. Any node that shares the
+ * database can finish a ceremony that another node started.
+ * <p>
+ * Consuming reads the row and then deletes it; only the caller whose delete actually removed the row gets the
+ * options, so two concurrent requests with the same token cannot both succeed. Expired rows are ignored on read
+ * and removed in bulk by {@link #purgeExpired()}.
+ */
+@NullMarked
+public class JdbcCeremonyOptionsStore implements CeremonyOptionsStore {
+
+    private static final String INSERT_SQL =
+            "INSERT INTO webauthn_ceremony_options (token, ceremony, options, expires_at) VALUES (?, ?, ?, ?)";
+    private static final String SELECT_SQL =
+            "SELECT options, expires_at FROM webauthn_ceremony_options WHERE token = ? AND ceremony = ?";
+    private static final String DELETE_SQL =
+            "DELETE FROM webauthn_ceremony_options WHERE token = ? AND ceremony = ?";
+    private static final String DELETE_EXPIRED_SQL =
+            "DELETE FROM webauthn_ceremony_options WHERE expires_at <= ?";
+
+    private final JdbcOperations jdbc;
+    private final CeremonyOptionsCodec codec;
+    private final Duration timeToLive;
+    private final Clock clock;
+
+    public JdbcCeremonyOptionsStore(JdbcOperations jdbc, CeremonyOptionsCodec codec, Duration timeToLive, Clock clock) {
+        this.jdbc = jdbc;
+        this.codec = codec;
+        this.timeToLive = timeToLive;
+        this.clock = clock;
+    }
+
+    @Override
+    public void save(Ceremony ceremony, String token, Object options) {
+        Instant expiresAt = clock.instant().plus(timeToLive);
+        jdbc.update(INSERT_SQL, token, ceremony.name(), codec.encode(options), Timestamp.from(expiresAt));
+    }
+
+    @Override
+    public <T> @Nullable T consume(Ceremony ceremony, String token, Class<T> type) {
+        List<StoredOptions> rows = jdbc.query(SELECT_SQL,
+                (rs, rowNum) -> new StoredOptions(rs.getBytes("options"), rs.getTimestamp("expires_at").toInstant()),
+                token, ceremony.name());
+        if (rows.isEmpty()) {
+            return null;
+        }
+        if (jdbc.update(DELETE_SQL, token, ceremony.name()) != 1) {
+            // Another request consumed the same token in the meantime
+            return null;
+        }
+        StoredOptions stored = rows.getFirst();
+        if (!stored.expiresAt().isAfter(clock.instant())) {
+            return null;
+        }
+        return codec.decode(stored.options(), type);
+    }
+
+    @Override
+    public void remove(Ceremony ceremony, String token) {
+        jdbc.update(DELETE_SQL, token, ceremony.name());
+    }
+
+    /**
+     * Deletes all expired rows. Abandoned ceremonies are never consumed, so without this the table only grows.
+     *
+     * @return the number of rows removed
+     */
+    @Scheduled(fixedDelayString = "${passkeys.ceremony.purge-interval}")
+    public int purgeExpired() {
+        return jdbc.update(DELETE_EXPIRED_SQL, Timestamp.from(clock.instant()));
+    }
+
+    private record StoredOptions(byte[] options, Instant expiresAt) {
+    }
+}
@@ -0,0 +1,73 @@
+package eu.luminis.passkeystryout.ceremony;
+
+import org.jspecify.annotations.NullMarked;
+import org.springframework.security.authentication.AuthenticationTrustResolver;
+import org.springframework.security.authentication.AuthenticationTrustResolverImpl;
+import org.springframework.security.web.webauthn.api.CredentialRecord;
+import org.springframework.security.web.webauthn.api.PublicKeyCredentialCreationOptions;
+import org.springframework.security.web.webauthn.api.PublicKeyCredentialRequestOptions;
+import org.springframework.security.web.webauthn.api.PublicKeyCredentialUserEntity;
+import org.springframework.security.web.webauthn.api.UserVerificationRequirement;
+import org.springframework.security.web.webauthn.management.PublicKeyCredentialCreationOptionsRequest;
+import org.springframework.security.web.webauthn.management.PublicKeyCredentialRequestOptionsRequest;
+import org.springframework.security.web.webauthn.management.RelyingPartyAuthenticationRequest;
+import org.springframework.security.web.webauthn.management.RelyingPartyRegistrationRequest;
+import org.springframework.security.web.webauthn.management.WebAuthnRelyingPartyOperations;
+
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * Creates the options of a passkey login by a visitor who is not signed in, the only kind the login page asks for,
+ * with a challenge from the {@link ChallengePool}. Such options allow any credential, so they are built here with the
+ * same values as Spring Security's relying party, without looking anything up. Options for a signed-in user, which
+ * list that user's credentials, and all other operations are left to the delegate.
+ */
+@NullMarked
+public class PooledChallengeRelyingPartyOperations implements WebAuthnRelyingPartyOperations {
+
+    private static final Duration TIMEOUT = Duration.ofMinutes(5);
+
+    private final WebAuthnRelyingPartyOperations delegate;
+    private final ChallengePool challenges;
+    private final String rpId;
+    private final AuthenticationTrustResolver trustResolver = new AuthenticationTrustResolverImpl();
+
+    public PooledChallengeRelyingPartyOperations(WebAuthnRelyingPartyOperations delegate, ChallengePool challenges,
+                                                 String rpId) {
+        this.delegate = delegate;
+        this.challenges = challenges;
+        this.rpId = rpId;
+    }
+
+    @Override
+    public PublicKeyCredentialCreationOptions createPublicKeyCredentialCreationOptions(
+            PublicKeyCredentialCreationOptionsRequest request) {
+        return delegate.createPublicKeyCredentialCreationOptions(request);
+    }
+
+    @Override
+    public CredentialRecord registerCredential(RelyingPartyRegistrationRequest request) {
+        return delegate.registerCredential(request);
+    }
+
+    @Override
+    public PublicKeyCredentialRequestOptions createCredentialRequestOptions(
+            PublicKeyCredentialRequestOptionsRequest request) {
+        if (trustResolver.isAuthenticated(request.getAuthentication())) {
+            return delegate.createCredentialRequestOptions(request);
+        }
+        return PublicKeyCredentialRequestOptions.builder()
+                .allowCredentials(List.of())
+                .challenge(challenges.take())
+                .rpId(rpId)
+                .timeout(TIMEOUT)
+                .userVerification(UserVerificationRequirement.PREFERRED)
+                .build();
+    }
+
+    @Override
+    public PublicKeyCredentialUserEntity authenticate(RelyingPartyAuthenticationRequest request) {
+        return delegate.authenticate(request);
+    }
+}
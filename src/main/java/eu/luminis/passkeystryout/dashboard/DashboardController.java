@@ -1,8 +1,8 @@
 package eu.luminis.passkeystryout.dashboard;
 
-import eu.luminis.passkeystryout.user.User;
+import eu.luminis.passkeystryout.metrics.WebAuthnMetrics;
 import eu.luminis.passkeystryout.passkey.CredentialRepository;
-import eu.luminis.passkeystryout.user.UserRepository;
+import eu.luminis.passkeystryout.passkey.PasskeySummary;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.security.web.webauthn.api.PublicKeyCredentialUserEntity;
@@ -11,17 +11,16 @@ import org.springframework.ui.Model;
 import org.springframework.web.bind.annotation.GetMapping;
 
 import java.util.List;
-import java.util.Map;
 
 @Controller
 public class DashboardController {
 
-    private final UserRepository userRepository;
     private final CredentialRepository credentialRepository;
+    private final WebAuthnMetrics metrics;
 
-    public DashboardController(UserRepository userRepository, CredentialRepository credentialRepository) {
-        this.userRepository = userRepository;
+    public DashboardController(CredentialRepository credentialRepository, WebAuthnMetrics metrics) {
         this.credentialRepository = credentialRepository;
+        this.metrics = metrics;
     }
 
     @GetMapping("/dashboard")
@@ -45,17 +44,11 @@ public class DashboardController {
         model.addAttribute("username", username);
         model.addAttribute("authMethod", isPasskeyAuth ? "Passkey" : "Password");
 
-        // Get user info
-        User user = userRepository.findByUsername(username).orElse(null);
-        if (user != null) {
-            List<Map<String, Object>> credentials = credentialRepository.findPasskeysInfoByUsername(username);
-            model.addAttribute("passkeys", credentials);
-            model.addAttribute("passkeyCount", credentials.size());
-        } else {
-            model.addAttribute("passkeys", List.of());
-            model.addAttribute("passkeyCount", 0);
-        }
-
+        // One query that returns nothing for unknown users, so no separate user lookup is needed
+        List<PasskeySummary> credentials = metrics.passkeys("dashboard",
+                () -> credentialRepository.findPasskeysInfoByUsername(username));
+        model.addAttribute("passkeys", credentials);
+        model.addAttribute("passkeyCount", credentials.size());
 
         return "dashboard";
     }
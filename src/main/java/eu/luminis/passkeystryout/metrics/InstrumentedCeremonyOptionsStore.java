@@ -0,0 +1,38 @@
+package eu.luminis.passkeystryout.metrics;
+
+import eu.luminis.passkeystryout.ceremony.Ceremony;
+import eu.luminis.passkeystryout.ceremony.CeremonyOptionsStore;
+import org.jspecify.annotations.NullMarked;
+import org.jspecify.annotations.Nullable;
+
+/**
+ * Times {@link #consume(Ceremony, String, Class)}, which is where a ceremony finds its challenge again, as
+ * {@link WebAuthnMetrics.Phase#CHALLENGE_LOOKUP}.
+ */
+@NullMarked
+public class InstrumentedCeremonyOptionsStore implements CeremonyOptionsStore {
+
+    private final CeremonyOptionsStore delegate;
+    private final WebAuthnMetrics metrics;
+
+    public InstrumentedCeremonyOptionsStore(CeremonyOptionsStore delegate, WebAuthnMetrics metrics) {
+        this.delegate = delegate;
+        this.metrics = metrics;
+    }
+
+    @Override
+    public void save(Ceremony ceremony, String token, Object options) {
+        delegate.save(ceremony, token, options);
+    }
+
+    @Override
+    public <T> @Nullable T consume(Ceremony ceremony, String token, Class<T> type) {
+        return metrics.phase(ceremony, WebAuthnMetrics.Phase.CHALLENGE_LOOKUP,
+                () -> delegate.consume(ceremony, token, type));
+    }
+
+    @Override
+    public void remove(Ceremony ceremony, String token) {
+        delegate.remove(ceremony, token);
+    }
+}
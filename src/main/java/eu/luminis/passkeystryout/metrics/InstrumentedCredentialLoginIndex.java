@@ -0,0 +1,40 @@
+package eu.luminis.passkeystryout.metrics;
+
+import eu.luminis.passkeystryout.passkey.CredentialLoginIndex;
+import org.jspecify.annotations.NullMarked;
+import org.jspecify.annotations.Nullable;
+import org.springframework.security.web.webauthn.api.Bytes;
+import org.springframework.security.web.webauthn.api.CredentialRecord;
+
+/**
+ * The view of the {@link CredentialLoginIndex} that the relying party works with, so finding the credential and owner
+ * of an assertion is still timed as {@link WebAuthnMetrics.Phase#CREDENTIAL_LOOKUP}.
+ * <p>
+ * It is not a bean: the credential repository invalidates the index it wraps.
+ */
+@NullMarked
+public class InstrumentedCredentialLoginIndex implements CredentialLoginIndex {
+
+    private final CredentialLoginIndex delegate;
+    private final WebAuthnMetrics metrics;
+
+    public InstrumentedCredentialLoginIndex(CredentialLoginIndex delegate, WebAuthnMetrics metrics) {
+        this.delegate = delegate;
+        this.metrics = metrics;
+    }
+
+    @Override
+    public @Nullable PasskeyLogin find(Bytes credentialId) {
+        return metrics.phase(WebAuthnMetrics.Phase.CREDENTIAL_LOOKUP, () -> delegate.find(credentialId));
+    }
+
+    @Override
+    public void recordUse(CredentialRecord used) {
+        delegate.recordUse(used);
+    }
+
+    @Override
+    public void invalidate(Bytes credentialId) {
+        delegate.invalidate(credentialId);
+    }
+}
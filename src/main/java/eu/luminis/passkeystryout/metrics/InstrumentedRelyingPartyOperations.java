@@ -0,0 +1,54 @@
+package eu.luminis.passkeystryout.metrics;
+
+import eu.luminis.passkeystryout.ceremony.Ceremony;
+import org.jspecify.annotations.NullMarked;
+import org.springframework.security.web.webauthn.api.CredentialRecord;
+import org.springframework.security.web.webauthn.api.PublicKeyCredentialCreationOptions;
+import org.springframework.security.web.webauthn.api.PublicKeyCredentialRequestOptions;
+import org.springframework.security.web.webauthn.api.PublicKeyCredentialUserEntity;
+import org.springframework.security.web.webauthn.management.PublicKeyCredentialCreationOptionsRequest;
+import org.springframework.security.web.webauthn.management.PublicKeyCredentialRequestOptionsRequest;
+import org.springframework.security.web.webauthn.management.RelyingPartyAuthenticationRequest;
+import org.springframework.security.web.webauthn.management.RelyingPartyRegistrationRequest;
+import org.springframework.security.web.webauthn.management.WebAuthnRelyingPartyOperations;
+
+/**
+ * Marks the start and end of every relying party operation, so the phases inside are recorded for the right
+ * ceremony. Together with {@link InstrumentedUserCredentialRepository} and {@link InstrumentedWebAuthnManager},
+ * which time those phases, it splits a ceremony into options, credential lookup, signature verification and
+ * signature count update.
+ */
+@NullMarked
+public class InstrumentedRelyingPartyOperations implements WebAuthnRelyingPartyOperations {
+
+    private final WebAuthnRelyingPartyOperations delegate;
+    private final WebAuthnMetrics metrics;
+
+    public InstrumentedRelyingPartyOperations(WebAuthnRelyingPartyOperations delegate, WebAuthnMetrics metrics) {
+        this.delegate = delegate;
+        this.metrics = metrics;
+    }
+
+    @Override
+    public PublicKeyCredentialCreationOptions createPublicKeyCredentialCreationOptions(
+            PublicKeyCredentialCreationOptionsRequest request) {
+        return metrics.options(Ceremony.REGISTRATION,
+                () -> delegate.createPublicKeyCredentialCreationOptions(request));
+    }
+
+    @Override
+    public CredentialRecord registerCredential(RelyingPartyRegistrationRequest request) {
+        return metrics.verification(Ceremony.REGISTRATION, () -> delegate.registerCredential(request));
+    }
+
+    @Override
+    public PublicKeyCredentialRequestOptions createCredentialRequestOptions(
+            PublicKeyCredentialRequestOptionsRequest request) {
+        return metrics.options(Ceremony.AUTHENTICATION, () -> delegate.createCredentialRequestOptions(request));
+    }
+
+    @Override
+    public PublicKeyCredentialUserEntity authenticate(RelyingPartyAuthenticationRequest request) {
+        return metrics.verification(Ceremony.AUTHENTICATION, () -> delegate.authenticate(request));
+    }
+}
@@ -0,0 +1,48 @@
+package eu.luminis.passkeystryout.metrics;
+
+import eu.luminis.passkeystryout.ceremony.Ceremony;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.jspecify.annotations.NullMarked;
+import org.springframework.security.core.context.DeferredSecurityContext;
+import org.springframework.security.core.context.SecurityContext;
+import org.springframework.security.web.context.HttpRequestResponseHolder;
+import org.springframework.security.web.context.SecurityContextRepository;
+
+/**
+ * Times the saving of the security context after a successful passkey login, which is where the HTTP session is
+ * created, as {@link WebAuthnMetrics.Phase#SESSION_CREATION}.
+ */
+@NullMarked
+public class InstrumentedSecurityContextRepository implements SecurityContextRepository {
+
+    private final SecurityContextRepository delegate;
+    private final WebAuthnMetrics metrics;
+
+    public InstrumentedSecurityContextRepository(SecurityContextRepository delegate, WebAuthnMetrics metrics) {
+        this.delegate = delegate;
+        this.metrics = metrics;
+    }
+
+    @Override
+    @SuppressWarnings("deprecation")
+    public SecurityContext loadContext(HttpRequestResponseHolder requestResponseHolder) {
+        return delegate.loadContext(requestResponseHolder);
+    }
+
+    @Override
+    public DeferredSecurityContext loadDeferredContext(HttpServletRequest request) {
+        return delegate.loadDeferredContext(request);
+    }
+
+    @Override
+    public void saveContext(SecurityContext context, HttpServletRequest request, HttpServletResponse response) {
+        metrics.phase(Ceremony.AUTHENTICATION, WebAuthnMetrics.Phase.SESSION_CREATION,
+                () -> delegate.saveContext(context, request, response));
+    }
+
+    @Override
+    public boolean containsContext(HttpServletRequest request) {
+        return delegate.containsContext(request);
+    }
+}
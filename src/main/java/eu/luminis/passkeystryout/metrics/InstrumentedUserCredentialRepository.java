@@ -0,0 +1,52 @@
+package eu.luminis.passkeystryout.metrics;
+
+import org.jspecify.annotations.NullMarked;
+import org.jspecify.annotations.Nullable;
+import org.springframework.security.web.webauthn.api.Bytes;
+import org.springframework.security.web.webauthn.api.CredentialRecord;
+import org.springframework.security.web.webauthn.management.UserCredentialRepository;
+
+import java.util.List;
+
+/**
+ * The view of the credential repository that the relying party works with. Lookups are timed as
+ * {@link WebAuthnMetrics.Phase#CREDENTIAL_LOOKUP}. The relying party only saves a credential after an assertion was
+ * verified, to store the new signature count and last use, so a save is timed as
+ * {@link WebAuthnMetrics.Phase#SIGNATURE_COUNT_UPDATE}.
+ * <p>
+ * It is not a bean: the registration filter and the controllers keep using the repository it wraps.
+ */
+@NullMarked
+public class InstrumentedUserCredentialRepository implements UserCredentialRepository {
+
+    private final UserCredentialRepository delegate;
+    private final WebAuthnMetrics metrics;
+
+    public InstrumentedUserCredentialRepository(UserCredentialRepository delegate, WebAuthnMetrics metrics) {
+        this.delegate = delegate;
+        this.metrics = metrics;
+    }
+
+    @Override
+    public @Nullable CredentialRecord findByCredentialId(Bytes credentialId) {
+        return metrics.phase(WebAuthnMetrics.Phase.CREDENTIAL_LOOKUP, () -> delegate.findByCredentialId(credentialId));
+    }
+
+    @Override
+    public List<CredentialRecord> findByUserId(Bytes userId) {
+        return metrics.phase(WebAuthnMetrics.Phase.CREDENTIAL_LOOKUP, () -> delegate.findByUserId(userId));
+    }
+
+    @Override
+    public void save(CredentialRecord record) {
+        metrics.phase(WebAuthnMetrics.Phase.SIGNATURE_COUNT_UPDATE, () -> {
+            delegate.save(record);
+            return null;
+        });
+    }
+
+    @Override
+    public void delete(Bytes credentialId) {
+        delegate.delete(credentialId);
+    }
+}
@@ -0,0 +1,87 @@
+package eu.luminis.passkeystryout.metrics;
+
+import com.webauthn4j.WebAuthnManager;
+import com.webauthn4j.data.AuthenticationData;
+import com.webauthn4j.data.AuthenticationParameters;
+import com.webauthn4j.data.AuthenticationRequest;
+import com.webauthn4j.data.RegistrationData;
+import com.webauthn4j.data.RegistrationParameters;
+import com.webauthn4j.data.RegistrationRequest;
+import com.webauthn4j.data.attestation.AttestationObject;
+import com.webauthn4j.data.attestation.authenticator.AttestedCredentialData;
+import com.webauthn4j.data.attestation.statement.COSEAlgorithmIdentifier;
+import com.webauthn4j.verifier.attestation.statement.androidkey.NullAndroidKeyAttestationStatementVerifier;
+import com.webauthn4j.verifier.attestation.statement.androidsafetynet.NullAndroidSafetyNetAttestationStatementVerifier;
+import com.webauthn4j.verifier.attestation.statement.apple.NullAppleAnonymousAttestationStatementVerifier;
+import com.webauthn4j.verifier.attestation.statement.none.NoneAttestationStatementVerifier;
+import com.webauthn4j.verifier.attestation.statement.packed.NullPackedAttestationStatementVerifier;
+import com.webauthn4j.verifier.attestation.statement.tpm.NullTPMAttestationStatementVerifier;
+import com.webauthn4j.verifier.attestation.statement.u2f.NullFIDOU2FAttestationStatementVerifier;
+import com.webauthn4j.verifier.attestation.trustworthiness.certpath.NullCertPathTrustworthinessVerifier;
+import com.webauthn4j.verifier.attestation.trustworthiness.self.NullSelfAttestationTrustworthinessVerifier;
+import org.jspecify.annotations.NullMarked;
+import org.jspecify.annotations.Nullable;
+
+import java.util.List;
+
+/**
+ * The non-strict {@link WebAuthnManager} that Spring Security uses by default, with the verification of attestations
+ * and assertions timed as {@link WebAuthnMetrics.Phase#SIGNATURE_VERIFICATION}. It also reports the COSE algorithm
+ * of the credential to the running ceremony: from the stored credential for an assertion, and from the attested
+ * credential data for a registration. The outcome of each assertion is recorded per algorithm by the
+ * {@link SignatureVerificationCounter}.
+ */
+@NullMarked
+public class InstrumentedWebAuthnManager extends WebAuthnManager {
+
+    private final WebAuthnMetrics metrics;
+    private final SignatureVerificationCounter signatureVerifications;
+
+    public InstrumentedWebAuthnManager(WebAuthnMetrics metrics,
+                                       SignatureVerificationCounter signatureVerifications) {
+        super(List.of(
+                        new NoneAttestationStatementVerifier(),
+                        new NullFIDOU2FAttestationStatementVerifier(),
+                        new NullPackedAttestationStatementVerifier(),
+                        new NullTPMAttestationStatementVerifier(),
+                        new NullAndroidKeyAttestationStatementVerifier(),
+                        new NullAndroidSafetyNetAttestationStatementVerifier(),
+                        new NullAppleAnonymousAttestationStatementVerifier()),
+                new NullCertPathTrustworthinessVerifier(),
+                new NullSelfAttestationTrustworthinessVerifier());
+        this.metrics = metrics;
+        this.signatureVerifications = signatureVerifications;
+    }
+
+    @Override
+    public RegistrationData verify(RegistrationRequest registrationRequest,
+                                   RegistrationParameters registrationParameters) {
+        RegistrationData data = metrics.phase(WebAuthnMetrics.Phase.SIGNATURE_VERIFICATION,
+                () -> super.verify(registrationRequest, registrationParameters));
+        AttestationObject attestationObject = data.getAttestationObject();
+        if (attestationObject != null) {
+            reportAlgorithm(attestationObject.getAuthenticatorData().getAttestedCredentialData());
+        }
+        return data;
+    }
+
+    @Override
+    public AuthenticationData verify(AuthenticationRequest authenticationRequest,
+                                     AuthenticationParameters authenticationParameters) {
+        COSEAlgorithmIdentifier algorithm =
+                reportAlgorithm(authenticationParameters.getAuthenticator().getAttestedCredentialData());
+        return metrics.phase(WebAuthnMetrics.Phase.SIGNATURE_VERIFICATION, () -> signatureVerifications.count(
+                algorithm, () -> super.verify(authenticationRequest, authenticationParameters)));
+    }
+
+    private @Nullable COSEAlgorithmIdentifier reportAlgorithm(@Nullable AttestedCredentialData credentialData) {
+        if (credentialData == null) {
+            return null;
+        }
+        COSEAlgorithmIdentifier algorithm = credentialData.getCOSEKey().getAlgorithm();
+        if (algorithm != null) {
+            metrics.algorithm(algorithm.getValue());
+        }
+        return algorithm;
+    }
+}
@@ -0,0 +1,92 @@
+package eu.luminis.passkeystryout.metrics;
+
+import com.webauthn4j.data.attestation.statement.COSEAlgorithmIdentifier;
+import com.webauthn4j.verifier.exception.BadSignatureException;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.jspecify.annotations.NullMarked;
+import org.jspecify.annotations.Nullable;
+
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Counts the outcome of the assertion verifications of webauthn4j per COSE algorithm of the credential, as
+ * {@code webauthn.signature.verifications}. An assertion that webauthn4j accepts is counted as {@code valid} and one
+ * it rejects with a {@link BadSignatureException} as {@code invalid}. Assertions rejected for any other reason, such
+ * as a wrong challenge, are not counted, because webauthn4j may not have reached the signature. How long the
+ * verifications take is already timed as {@link WebAuthnMetrics.Phase#SIGNATURE_VERIFICATION}.
+ * <p>
+ * ES256, RS256 and EdDSA, the algorithms that authenticators use in practice, are reported separately; any other
+ * algorithm is reported as {@code other}.
+ */
+@NullMarked
+public class SignatureVerificationCounter implements MeterBinder {
+
+    private final Counts es256 = new Counts();
+    private final Counts rs256 = new Counts();
+    private final Counts edDsa = new Counts();
+    private final Counts other = new Counts();
+
+    /**
+     * Runs the verification of an assertion by webauthn4j and counts its outcome for the algorithm of the credential.
+     */
+    public <T> T count(@Nullable COSEAlgorithmIdentifier algorithm, Supplier<T> verification) {
+        Counts counts = counts(algorithm);
+        try {
+            T result = verification.get();
+            counts.valid.increment();
+            return result;
+        } catch (BadSignatureException e) {
+            counts.invalid.increment();
+            throw e;
+        }
+    }
+
+    /**
+     * The number of assertions counted for a COSE algorithm, including the ones whose signature did not match.
+     */
+    public long verificationCount(@Nullable COSEAlgorithmIdentifier algorithm) {
+        Counts counts = counts(algorithm);
+        return counts.valid.sum() + counts.invalid.sum();
+    }
+
+    private Counts counts(@Nullable COSEAlgorithmIdentifier algorithm) {
+        if (COSEAlgorithmIdentifier.ES256.equals(algorithm)) {
+            return es256;
+        } else if (COSEAlgorithmIdentifier.RS256.equals(algorithm)) {
+            return rs256;
+        } else if (COSEAlgorithmIdentifier.EdDSA.equals(algorithm)) {
+            return edDsa;
+        }
+        return other;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        bind(registry, "ES256", es256);
+        bind(registry, "RS256", rs256);
+        bind(registry, "EdDSA", edDsa);
+        bind(registry, "other", other);
+    }
+
+    private static void bind(MeterRegistry registry, String algorithm, Counts counts) {
+        FunctionCounter.builder("webauthn.signature.verifications", counts.valid, LongAdder::sum)
+                .tag("alg", algorithm)
+                .tag("result", "valid")
+                .description("Assertion signatures verified")
+                .register(registry);
+        FunctionCounter.builder("webauthn.signature.verifications", counts.invalid, LongAdder::sum)
+                .tag("alg", algorithm)
+                .tag("result", "invalid")
+                .description("Assertion signatures verified")
+                .register(registry);
+    }
+
+    private static final class Counts {
+
+        private final LongAdder valid = new LongAdder();
+        private final LongAdder invalid = new LongAdder();
+    }
+}
@@ -0,0 +1,227 @@
+package eu.luminis.passkeystryout.metrics;
+
+import eu.luminis.passkeystryout.ceremony.Ceremony;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.jspecify.annotations.NullMarked;
+import org.jspecify.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Records where the time of a WebAuthn ceremony goes. Every phase is a {@value #PHASE_TIMER} timer, tagged with the
+ * ceremony, the phase, the outcome and the COSE algorithm of the credential. Every verified or rejected response
+ * also counts in {@value #CEREMONY_COUNTER}.
+ * <p>
+ * The algorithm is only known once the credential has been found or the attestation has been parsed. Phases that
+ * run inside {@link #options(Ceremony, Supplier)} or {@link #verification(Ceremony, Supplier)} are therefore held
+ * back until that call ends, and then recorded with the algorithm it found. Phases before the credential is known,
+ * such as the challenge lookup, are tagged with algorithm {@value #NO_ALGORITHM}.
+ */
+@NullMarked
+public class WebAuthnMetrics {
+
+    public static final String PHASE_TIMER = "webauthn.ceremony.phase";
+    public static final String CEREMONY_COUNTER = "webauthn.ceremonies";
+    public static final String PASSKEYS_TIMER = "webauthn.passkeys";
+    static final String NO_ALGORITHM = "none";
+
+    private static final ThreadLocal<@Nullable Trace> CURRENT = new ThreadLocal<>();
+
+    private final MeterRegistry registry;
+
+    public WebAuthnMetrics(MeterRegistry registry) {
+        this.registry = registry;
+    }
+
+    /**
+     * A phase of a ceremony.
+     */
+    public enum Phase {
+        OPTIONS,
+        CHALLENGE_LOOKUP,
+        CREDENTIAL_LOOKUP,
+        SIGNATURE_VERIFICATION,
+        SIGNATURE_COUNT_UPDATE,
+        SESSION_CREATION;
+
+        String tagValue() {
+            return name().toLowerCase(Locale.ROOT).replace('_', '-');
+        }
+    }
+
+    /**
+     * Times the creation of the options of a ceremony. Phases that run inside, such as looking up the credentials to
+     * exclude, are recorded for the same ceremony.
+     */
+    public <T> T options(Ceremony ceremony, Supplier<T> body) {
+        return traced(ceremony, false, () -> phase(Phase.OPTIONS, body));
+    }
+
+    /**
+     * Runs the verification of the response of a ceremony. The phases inside are recorded once it ends, tagged with
+     * the algorithm that was found, and the ceremony is counted by outcome.
+     */
+    public <T> T verification(Ceremony ceremony, Supplier<T> body) {
+        return traced(ceremony, true, body);
+    }
+
+    /**
+     * Times a phase of the ceremony that is running on this thread. Outside a ceremony, the phase is recorded right
+     * away, with ceremony and algorithm {@code none}.
+     */
+    public <T> T phase(Phase phase, Supplier<T> body) {
+        Trace trace = CURRENT.get();
+        long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            T result = body.get();
+            failed = false;
+            return result;
+        } finally {
+            long nanos = System.nanoTime() - start;
+            if (trace != null) {
+                trace.phases.add(new TimedPhase(phase, nanos, failed));
+            } else {
+                record(NO_ALGORITHM, phase, outcome(failed), NO_ALGORITHM, nanos);
+            }
+        }
+    }
+
+    /**
+     * Times a phase of the given ceremony that runs before the credential is known, and records it right away.
+     */
+    public <T> T phase(Ceremony ceremony, Phase phase, Supplier<T> body) {
+        long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            T result = body.get();
+            failed = false;
+            return result;
+        } finally {
+            record(tagValue(ceremony), phase, outcome(failed), NO_ALGORITHM, System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Same as {@link #phase(Ceremony, Phase, Supplier)}, for phases without a result.
+     */
+    public void phase(Ceremony ceremony, Phase phase, Runnable body) {
+        phase(ceremony, phase, () -> {
+            body.run();
+            return null;
+        });
+    }
+
+    /**
+     * Sets the COSE algorithm of the credential in the ceremony that is running on this thread.
+     */
+    public void algorithm(long coseAlgorithm) {
+        Trace trace = CURRENT.get();
+        if (trace != null) {
+            trace.algorithm = algorithmName(coseAlgorithm);
+        }
+    }
+
+    /**
+     * Times an operation on the passkeys of a signed-in user, such as listing them on the dashboard.
+     */
+    public <T> T passkeys(String operation, Supplier<T> body) {
+        Timer.Sample sample = Timer.start(registry);
+        boolean failed = true;
+        try {
+            T result = body.get();
+            failed = false;
+            return result;
+        } finally {
+            sample.stop(Timer.builder(PASSKEYS_TIMER)
+                    .description("Time spent in passkey management requests")
+                    .tag("operation", operation)
+                    .tag("outcome", outcome(failed))
+                    .register(registry));
+        }
+    }
+
+    private <T> T traced(Ceremony ceremony, boolean counted, Supplier<T> body) {
+        if (CURRENT.get() != null) {
+            return body.get();
+        }
+        Trace trace = new Trace();
+        CURRENT.set(trace);
+        boolean failed = true;
+        try {
+            T result = body.get();
+            failed = false;
+            return result;
+        } finally {
+            CURRENT.remove();
+            String ceremonyTag = tagValue(ceremony);
+            for (TimedPhase phase : trace.phases) {
+                record(ceremonyTag, phase.phase(), outcome(phase.failed()), trace.algorithm, phase.nanos());
+            }
+            if (counted) {
+                Counter.builder(CEREMONY_COUNTER)
+                        .description("Verified and rejected WebAuthn ceremony responses")
+                        .tag("ceremony", ceremonyTag)
+                        .tag("outcome", outcome(failed))
+                        .tag("alg", trace.algorithm)
+                        .register(registry)
+                        .increment();
+            }
+        }
+    }
+
+    private void record(String ceremony, Phase phase, String outcome, String algorithm, long nanos) {
+        Timer.builder(PHASE_TIMER)
+                .description("Time spent in a phase of a WebAuthn ceremony")
+                .tag("ceremony", ceremony)
+                .tag("phase", phase.tagValue())
+                .tag("outcome", outcome)
+                .tag("alg", algorithm)
+                .register(registry)
+                .record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    private static String tagValue(Ceremony ceremony) {
+        return ceremony.name().toLowerCase(Locale.ROOT);
+    }
+
+    private static String outcome(boolean failed) {
+        return failed ? "failure" : "success";
+    }
+
+    /**
+     * Names the algorithms of the COSE registry that WebAuthn uses. Any other value is reported as {@code other},
+     * to keep the number of time series bounded.
+     */
+    static String algorithmName(long coseAlgorithm) {
+        return switch ((int) coseAlgorithm) {
+            case -7 -> "ES256";
+            case -35 -> "ES384";
+            case -36 -> "ES512";
+            case -8 -> "EdDSA";
+            case -257 -> "RS256";
+            case -258 -> "RS384";
+            case -259 -> "RS512";
+            case -37 -> "PS256";
+            case -38 -> "PS384";
+            case -39 -> "PS512";
+            case -65535 -> "RS1";
+            default -> "other";
+        };
+    }
+
+    private static final class Trace {
+
+        private final List<TimedPhase> phases = new ArrayList<>(4);
+        private String algorithm = NO_ALGORITHM;
+    }
+
+    private record TimedPhase(Phase phase, long nanos, boolean failed) {
+    }
+}
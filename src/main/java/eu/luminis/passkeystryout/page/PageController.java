@@ -0,0 +1,42 @@
+package eu.luminis.passkeystryout.page;
+
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.jspecify.annotations.NullMarked;
+import org.springframework.security.web.csrf.CsrfToken;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.ResponseBody;
+
+import java.util.Map;
+
+/**
+ * Serves the {@link PrerenderedPages}, and the CSRF token that was left out of them.
+ */
+@Controller
+@NullMarked
+public class PageController {
+
+    private final PrerenderedPages pages;
+
+    public PageController(PrerenderedPages pages) {
+        this.pages = pages;
+    }
+
+    @GetMapping({"/", "/login", "/passkey/register", "/register"})
+    public void page(HttpServletRequest request, HttpServletResponse response) throws Exception {
+        pages.serve(request, response);
+    }
+
+    /**
+     * The CSRF token of the visitor, which the layout puts in the meta tags and forms of a prerendered page.
+     */
+    @GetMapping("/csrf")
+    @ResponseBody
+    public Map<String, String> csrf(CsrfToken token) {
+        return Map.of(
+                "headerName", token.getHeaderName(),
+                "parameterName", token.getParameterName(),
+                "token", token.getToken());
+    }
+}
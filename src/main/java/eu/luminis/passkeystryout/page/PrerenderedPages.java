@@ -0,0 +1,253 @@
+package eu.luminis.passkeystryout.page;
+
+import eu.luminis.passkeystryout.cache.CacheMetrics;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletRequestWrapper;
+import jakarta.servlet.http.HttpServletResponse;
+import org.jspecify.annotations.NullMarked;
+import org.jspecify.annotations.Nullable;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.security.authentication.AuthenticationTrustResolver;
+import org.springframework.security.authentication.AuthenticationTrustResolverImpl;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.web.csrf.CsrfToken;
+import org.springframework.util.Assert;
+import org.springframework.web.context.request.ServletWebRequest;
+import org.springframework.web.servlet.View;
+import org.springframework.web.servlet.ViewResolver;
+import org.springframework.web.util.ContentCachingResponseWrapper;
+import org.springframework.web.util.UrlPathHelper;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Serves pages that look the same to every visitor from memory instead of rendering their template per request.
+ * A page is rendered by its view once for anonymous visitors and once for signed-in ones, since the navigation
+ * differs, and once more for each query flag it knows, such as {@code /login?error}. Requests with any other query
+ * string are rendered as usual.
+ * <p>
+ * The CSRF token is the only thing on these pages that differs per visitor, so it is rendered blank: the meta tag and
+ * the hidden form fields are empty, and the layout fetches the token from {@code /csrf} once the page has loaded.
+ * <p>
+ * Every page is kept with a gzip copy, and served with an ETag and {@code Cache-Control: private, no-cache}, so the
+ * browser revalidates it and gets a 304 while it has not changed.
+ */
+@NullMarked
+public class PrerenderedPages implements MeterBinder {
+
+    private static final String CACHE_CONTROL = CacheControl.noCache().cachePrivate().getHeaderValue();
+
+    private final ViewResolver viewResolver;
+    private final Map<String, Page> pages;
+    private final AuthenticationTrustResolver trustResolver = new AuthenticationTrustResolverImpl();
+    private final ConcurrentMap<Variant, RenderedPage> rendered = new ConcurrentHashMap<>();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    public PrerenderedPages(ViewResolver viewResolver, List<Page> pages) {
+        this.viewResolver = viewResolver;
+        this.pages = pages.stream().collect(Collectors.toUnmodifiableMap(Page::path, Function.identity()));
+    }
+
+    /**
+     * A page at a path, rendered by a view, with the query strings it is kept for besides none at all.
+     */
+    public record Page(String path, String viewName, Set<String> flags) {
+
+        public Page(String path, String viewName, String... flags) {
+            this(path, viewName, Set.of(flags));
+        }
+    }
+
+    public void serve(HttpServletRequest request, HttpServletResponse response) throws Exception {
+        String path = UrlPathHelper.defaultInstance.getPathWithinApplication(request);
+        Page page = pages.get(path);
+        Assert.notNull(page, () -> "No page at " + path);
+        String flag = request.getQueryString();
+        if (flag != null && !page.flags().contains(flag)) {
+            view(page, request).render(Map.of(), request, response);
+            return;
+        }
+
+        Variant variant = new Variant(path, isAuthenticated(), flag);
+        RenderedPage renderedPage = rendered.get(variant);
+        if (renderedPage != null) {
+            hits.increment();
+        } else {
+            misses.increment();
+            renderedPage = render(page, request, response);
+            RenderedPage earlier = rendered.putIfAbsent(variant, renderedPage);
+            renderedPage = earlier != null ? earlier : renderedPage;
+        }
+        write(renderedPage, request, response);
+    }
+
+    private boolean isAuthenticated() {
+        return trustResolver.isAuthenticated(SecurityContextHolder.getContext().getAuthentication());
+    }
+
+    private View view(Page page, HttpServletRequest request) throws Exception {
+        View view = viewResolver.resolveViewName(page.viewName(), request.getLocale());
+        Assert.state(view != null, () -> "No view " + page.viewName());
+        return view;
+    }
+
+    private RenderedPage render(Page page, HttpServletRequest request, HttpServletResponse response)
+            throws Exception {
+        ContentCachingResponseWrapper buffer = new ContentCachingResponseWrapper(response);
+        view(page, request).render(Map.of(), new WithoutCsrfToken(request), buffer);
+        String contentType = buffer.getContentType();
+        Assert.state(contentType != null, () -> "No content type for " + page.viewName());
+        return RenderedPage.of(contentType, buffer.getContentAsByteArray());
+    }
+
+    private static void write(RenderedPage page, HttpServletRequest request, HttpServletResponse response)
+            throws IOException {
+        boolean gzip = acceptsGzip(request.getHeader(HttpHeaders.ACCEPT_ENCODING));
+        response.setHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+        response.setHeader(HttpHeaders.CACHE_CONTROL, CACHE_CONTROL);
+        if (new ServletWebRequest(request, response).checkNotModified(gzip ? page.gzipEtag() : page.etag())) {
+            return;
+        }
+        byte[] body = gzip ? page.gzipBody() : page.body();
+        response.setContentType(page.contentType());
+        if (gzip) {
+            response.setHeader(HttpHeaders.CONTENT_ENCODING, "gzip");
+        }
+        response.setContentLength(body.length);
+        response.getOutputStream().write(body);
+    }
+
+    /**
+     * Whether an {@code Accept-Encoding} header lists gzip, or any encoding, without ruling it out with {@code q=0}.
+     */
+    static boolean acceptsGzip(@Nullable String acceptEncoding) {
+        if (acceptEncoding == null) {
+            return false;
+        }
+        for (String coding : acceptEncoding.split(",")) {
+            String[] parts = coding.split(";");
+            String name = parts[0].trim();
+            if (!name.equalsIgnoreCase("gzip") && !name.equals("*")) {
+                continue;
+            }
+            boolean refused = Arrays.stream(parts).skip(1)
+                    .map(String::trim)
+                    .anyMatch(parameter -> parameter.matches("[qQ]\\s*=\\s*0(\\.0*)?"));
+            if (!refused) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * The number of rendered pages kept, one per page, visitor kind and query flag that was requested.
+     */
+    public int size() {
+        return rendered.size();
+    }
+
+    public long hitCount() {
+        return hits.sum();
+    }
+
+    public long missCount() {
+        return misses.sum();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        CacheMetrics.bindTo(registry, "pages", this, PrerenderedPages::hitCount, PrerenderedPages::missCount,
+                PrerenderedPages::size);
+    }
+
+    private record Variant(String path, boolean authenticated, @Nullable String flag) {
+    }
+
+    private record RenderedPage(String contentType, byte[] body, String etag, byte[] gzipBody, String gzipEtag) {
+
+        static RenderedPage of(String contentType, byte[] body) {
+            String hash = hash(body);
+            return new RenderedPage(contentType, body, "\"" + hash + "\"", gzip(body), "\"" + hash + "-gzip\"");
+        }
+
+        private static String hash(byte[] body) {
+            try {
+                byte[] digest = MessageDigest.getInstance("SHA-256").digest(body);
+                return Base64.getUrlEncoder().withoutPadding().encodeToString(Arrays.copyOf(digest, 16));
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException("SHA-256 is not available", e);
+            }
+        }
+
+        private static byte[] gzip(byte[] body) {
+            ByteArrayOutputStream compressed = new ByteArrayOutputStream(body.length / 4);
+            try (GZIPOutputStream gzip = new GZIPOutputStream(compressed)) {
+                gzip.write(body);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return compressed.toByteArray();
+        }
+    }
+
+    /**
+     * The request as the view sees it while the page is rendered for everyone: with a CSRF token that has the real
+     * header and parameter names but no value.
+     */
+    private static final class WithoutCsrfToken extends HttpServletRequestWrapper {
+
+        private final @Nullable CsrfToken blank;
+
+        WithoutCsrfToken(HttpServletRequest request) {
+            super(request);
+            CsrfToken token = (CsrfToken) request.getAttribute(CsrfToken.class.getName());
+            this.blank = token != null ? new BlankCsrfToken(token.getHeaderName(), token.getParameterName()) : null;
+        }
+
+        @Override
+        public @Nullable Object getAttribute(String name) {
+            if (blank != null && (name.equals(CsrfToken.class.getName()) || name.equals(blank.getParameterName()))) {
+                return blank;
+            }
+            return super.getAttribute(name);
+        }
+    }
+
+    private record BlankCsrfToken(String headerName, String parameterName) implements CsrfToken {
+
+        @Override
+        public String getHeaderName() {
+            return headerName;
+        }
+
+        @Override
+        public String getParameterName() {
+            return parameterName;
+        }
+
+        @Override
+        public String getToken() {
+            return "";
+        }
+    }
+}
@@ -0,0 +1,137 @@
+package eu.luminis.passkeystryout.passkey;
+
+import eu.luminis.passkeystryout.cache.BoundedExpiringCache;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.jspecify.annotations.NullMarked;
+import org.jspecify.annotations.Nullable;
+import org.springframework.security.web.webauthn.api.Bytes;
+import org.springframework.security.web.webauthn.api.CredentialRecord;
+import org.springframework.security.web.webauthn.management.UserCredentialRepository;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Read-through cache in front of another {@link UserCredentialRepository}. Credentials are cached by credential id
+ * and by user handle. Every {@link #save(CredentialRecord)} and {@link #delete(Bytes)} invalidates both caches, so
+ * an updated signature count is never served from a stale entry. They also drop the parsed public key of the
+ * credential from the {@link PublicKeyCache}, unless a save kept the same attestation object, and its passkey login
+ * from the {@link CredentialLoginIndex}.
+ * <p>
+ * To avoid a concurrent read putting back a value it loaded before a write finished, a load that overlapped with a
+ * write removes its own entry again.
+ */
+@NullMarked
+public class CachingUserCredentialRepository implements UserCredentialRepository, MeterBinder {
+
+    private final UserCredentialRepository delegate;
+    private final BoundedExpiringCache<Bytes, CredentialRecord> byCredentialId;
+    private final BoundedExpiringCache<Bytes, List<CredentialRecord>> byUserId;
+    private final PublicKeyCache publicKeyCache;
+    private final CredentialLoginIndex loginIndex;
+    private final AtomicLong writeGeneration = new AtomicLong();
+
+    public CachingUserCredentialRepository(UserCredentialRepository delegate, PublicKeyCache publicKeyCache,
+                                           CredentialLoginIndex loginIndex, int maximumSize, Duration timeToLive) {
+        this.delegate = delegate;
+        this.publicKeyCache = publicKeyCache;
+        this.loginIndex = loginIndex;
+        this.byCredentialId = new BoundedExpiringCache<>(maximumSize, timeToLive);
+        this.byUserId = new BoundedExpiringCache<>(maximumSize, timeToLive);
+    }
+
+    @Override
+    public @Nullable CredentialRecord findByCredentialId(Bytes credentialId) {
+        CredentialRecord cached = byCredentialId.get(credentialId);
+        if (cached != null) {
+            return cached;
+        }
+
+        long generation = writeGeneration.get();
+        CredentialRecord record = delegate.findByCredentialId(credentialId);
+        if (record != null) {
+            byCredentialId.put(credentialId, record);
+            if (generation != writeGeneration.get()) {
+                byCredentialId.invalidate(credentialId);
+            }
+        }
+        return record;
+    }
+
+    @Override
+    public List<CredentialRecord> findByUserId(Bytes userId) {
+        List<CredentialRecord> cached = byUserId.get(userId);
+        if (cached != null) {
+            return cached;
+        }
+
+        long generation = writeGeneration.get();
+        List<CredentialRecord> records = List.copyOf(delegate.findByUserId(userId));
+        byUserId.put(userId, records);
+        if (generation != writeGeneration.get()) {
+            byUserId.invalidate(userId);
+        }
+        return records;
+    }
+
+    @Override
+    public void save(CredentialRecord record) {
+        try {
+            delegate.save(record);
+        } finally {
+            writeGeneration.incrementAndGet();
+            byCredentialId.invalidate(record.getCredentialId());
+            byUserId.invalidate(record.getUserEntityUserId());
+            publicKeyCache.invalidateIfChanged(record);
+            loginIndex.invalidate(record.getCredentialId());
+        }
+    }
+
+    @Override
+    public void delete(Bytes credentialId) {
+        try {
+            delegate.delete(credentialId);
+        } finally {
+            invalidate(credentialId);
+            publicKeyCache.invalidate(credentialId);
+            loginIndex.invalidate(credentialId);
+        }
+    }
+
+    /**
+     * Drops the cached copies of a credential that was updated without going through this repository, such as the
+     * signature counts written by {@link SignatureCountWriteBehind}. The {@link CredentialLoginIndex} keeps its entry,
+     * which already has the count of the login that is being written.
+     */
+    public void invalidate(Bytes credentialId) {
+        writeGeneration.incrementAndGet();
+        CredentialRecord cached = byCredentialId.peek(credentialId);
+        byCredentialId.invalidate(credentialId);
+        if (cached != null) {
+            byUserId.invalidate(cached.getUserEntityUserId());
+        } else {
+            byUserId.invalidateIf((userId, records) -> records.stream()
+                    .anyMatch(record -> record.getCredentialId().equals(credentialId)));
+        }
+    }
+
+    public long hitCount() {
+        return byCredentialId.hitCount() + byUserId.hitCount();
+    }
+
+    public long missCount() {
+        return byCredentialId.missCount() + byUserId.missCount();
+    }
+
+    public long evictionCount() {
+        return byCredentialId.evictionCount() + byUserId.evictionCount();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        byCredentialId.bindTo(registry, "credentials-by-id");
+        byUserId.bindTo(registry, "credentials-by-user");
+    }
+}
@@ -0,0 +1,66 @@
+package eu.luminis.passkeystryout.passkey;
+
+import org.jspecify.annotations.NullMarked;
+import org.jspecify.annotations.Nullable;
+import org.springframework.security.web.webauthn.api.Bytes;
+import org.springframework.security.web.webauthn.api.CredentialRecord;
+import org.springframework.security.web.webauthn.api.PublicKeyCredentialUserEntity;
+import org.springframework.security.web.webauthn.management.PublicKeyCredentialUserEntityRepository;
+import org.springframework.security.web.webauthn.management.UserCredentialRepository;
+
+/**
+ * Finds what a passkey login needs from the credential id in the assertion alone: the credential, with its public key
+ * and signature count, and the user it belongs to. A login without a username has nothing else to go by.
+ */
+@NullMarked
+public interface CredentialLoginIndex {
+
+    /**
+     * The credential with the id and its owner, or {@code null} if there is no such credential.
+     */
+    @Nullable PasskeyLogin find(Bytes credentialId);
+
+    /**
+     * Takes note of the signature count and last use of a credential after a verified assertion.
+     */
+    void recordUse(CredentialRecord used);
+
+    /**
+     * Forgets a credential that was changed or deleted.
+     */
+    void invalidate(Bytes credentialId);
+
+    /**
+     * An index that looks the credential and its owner up in the two repositories, without keeping anything.
+     */
+    static CredentialLoginIndex of(UserCredentialRepository credentials,
+                                   PublicKeyCredentialUserEntityRepository userEntities) {
+        return new CredentialLoginIndex() {
+
+            @Override
+            public @Nullable PasskeyLogin find(Bytes credentialId) {
+                CredentialRecord credential = credentials.findByCredentialId(credentialId);
+                if (credential == null) {
+                    return null;
+                }
+                PublicKeyCredentialUserEntity owner = userEntities.findById(credential.getUserEntityUserId());
+                if (owner == null) {
+                    throw new IllegalArgumentException("Unable to find UserEntity with id "
+                            + credential.getUserEntityUserId() + " for credential " + credentialId);
+                }
+                return new PasskeyLogin(credential, owner);
+            }
+
+            @Override
+            public void recordUse(CredentialRecord used) {
+            }
+
+            @Override
+            public void invalidate(Bytes credentialId) {
+            }
+        };
+    }
+
+    record PasskeyLogin(CredentialRecord credential, PublicKeyCredentialUserEntity owner) {
+    }
+}
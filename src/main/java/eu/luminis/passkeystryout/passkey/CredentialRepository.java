@@ -1,54 +1,64 @@
 package eu.luminis.passkeystryout.passkey;
 
+import org.jspecify.annotations.Nullable;
+import org.springframework.jdbc.core.JdbcOperations;
+import org.springframework.jdbc.core.RowMapper;
 import org.springframework.security.web.webauthn.api.Bytes;
 import org.springframework.security.web.webauthn.api.CredentialRecord;
 import org.springframework.security.web.webauthn.api.PublicKeyCredentialUserEntity;
-import org.springframework.security.web.webauthn.management.JdbcPublicKeyCredentialUserEntityRepository;
-import org.springframework.security.web.webauthn.management.JdbcUserCredentialRepository;
+import org.springframework.security.web.webauthn.management.PublicKeyCredentialUserEntityRepository;
+import org.springframework.security.web.webauthn.management.UserCredentialRepository;
 import org.springframework.stereotype.Repository;
 
-import java.util.HashMap;
+import java.sql.Timestamp;
+import java.time.Instant;
 import java.util.List;
-import java.util.Map;
 
 @Repository
 public class CredentialRepository {
-    private final JdbcPublicKeyCredentialUserEntityRepository userEntityRepository;
-    private final JdbcUserCredentialRepository userCredentialRepository;
+    /**
+     * Joins the user and its credentials in one round-trip. Only the columns
+     * shown on the dashboard are selected, so the public key and attestation blobs are never read. The credentials of
+     * the user are found through the index on {@code (user_entity_user_id, created)}, which also gives their order.
+     */
+    static final String PASSKEY_SUMMARIES_SQL = """
+            SELECT uc.credential_id, uc.label, uc.created, uc.last_used, uc.signature_count, uc.backup_state
+            FROM users u
+            JOIN webauthn_credentials uc ON uc.user_entity_user_id = u.user_handle
+            WHERE u.username = ?
+            ORDER BY uc.created
+            """;
+
+    static final RowMapper<PasskeySummary> PASSKEY_SUMMARY_MAPPER = (rs, rowNum) -> new PasskeySummary(
+            new Bytes(rs.getBytes("credential_id")).toBase64UrlString(),
+            rs.getString("label"),
+            rs.getTimestamp("created").toInstant(),
+            toInstant(rs.getTimestamp("last_used")),
+            rs.getLong("signature_count"),
+            rs.getBoolean("backup_state"));
+
+    private final PublicKeyCredentialUserEntityRepository userEntityRepository;
+    private final UserCredentialRepository userCredentialRepository;
+    private final JdbcOperations jdbc;
 
-    public CredentialRepository(JdbcPublicKeyCredentialUserEntityRepository userEntityRepository,
-                                JdbcUserCredentialRepository userCredentialRepository) {
+    public CredentialRepository(PublicKeyCredentialUserEntityRepository userEntityRepository,
+                                UserCredentialRepository userCredentialRepository,
+                                JdbcOperations jdbc) {
         this.userEntityRepository = userEntityRepository;
         this.userCredentialRepository = userCredentialRepository;
+        this.jdbc = jdbc;
     }
 
     /**
-     * Find information about all passkeys (credentials) for a given username.
+     * Find information about all passkeys (credentials) for a given username. Uses a single query over the users and
+     * credentials tables.
      *
      * @param username String containing the username of the user
-     * @return List of maps with passkey information, or empty list if user has no passkeys
+     * @return List of passkey summaries ordered by creation time, or empty list if the user is unknown or has no
+     * passkeys
      */
-    public List<Map<String, Object>> findPasskeysInfoByUsername(String username) {
-        PublicKeyCredentialUserEntity userEntity = userEntityRepository.findByUsername(username);
-        if (userEntity == null) {
-            return List.of();
-        }
-
-        List<CredentialRecord> credentialRecords = userCredentialRepository.findByUserId(userEntity.getId());
-        if (credentialRecords.isEmpty()) {
-            return List.of();
-        }
-
-        return credentialRecords.stream().map(credentialRecord -> {
-            Map<String, Object> result = new HashMap<>();
-            result.put("credential_id", credentialRecord.getCredentialId().toBase64UrlString());
-            result.put("label", credentialRecord.getLabel());
-            result.put("created", credentialRecord.getCreated());
-            result.put("last_used", credentialRecord.getLastUsed());
-            result.put("signature_count", credentialRecord.getSignatureCount());
-            result.put("backup_state", credentialRecord.isBackupState());
-            return result;
-        }).toList();
+    public List<PasskeySummary> findPasskeysInfoByUsername(String username) {
+        return jdbc.query(PASSKEY_SUMMARIES_SQL, PASSKEY_SUMMARY_MAPPER, username);
     }
 
     /**
@@ -72,4 +82,9 @@ public class CredentialRepository {
 
         userCredentialRepository.delete(record.getCredentialId());
     }
+
+    private static @Nullable Instant toInstant(@Nullable Timestamp timestamp) {
+        return timestamp == null ? null : timestamp.toInstant();
+    }
+
 }
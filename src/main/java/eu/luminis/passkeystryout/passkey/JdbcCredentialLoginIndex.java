@@ -0,0 +1,142 @@
+package eu.luminis.passkeystryout.passkey;
+
+import eu.luminis.passkeystryout.cache.BoundedExpiringCache;
+import eu.luminis.passkeystryout.user.CustomUserDetailsService;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.jspecify.annotations.NullMarked;
+import org.jspecify.annotations.Nullable;
+import org.springframework.jdbc.core.JdbcOperations;
+import org.springframework.security.web.webauthn.api.Bytes;
+import org.springframework.security.web.webauthn.api.CredentialRecord;
+import org.springframework.security.web.webauthn.api.ImmutableCredentialRecord;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Passkey logins by credential id, in memory, read from the database with one query that joins the credential to its
+ * user when they are not cached. The user read that way also goes into the {@link CustomUserDetailsService}, so the
+ * user details that Spring Security loads after the login come from memory too.
+ * <p>
+ * A cached login is confirmed with a lookup of the stored signature count by primary key before it is returned, so a
+ * credential or user that was deleted on another node stops signing in right away rather than when the entry
+ * expires. A higher count written by another node replaces the cached one.
+ * <p>
+ * A verified assertion updates the cached signature count through {@link #recordUse(CredentialRecord)}, because the
+ * new count only reaches the database later, from the {@link SignatureCountWriteBehind}. A credential read from the
+ * database gets the use that is still queued there, so a login that was evicted before its count was written is not
+ * checked against the older count. The
+ * {@link CachingUserCredentialRepository} invalidates the entry of every credential saved or deleted through it, and a
+ * load that overlapped with an invalidation removes its own entry again.
+ */
+@NullMarked
+public class JdbcCredentialLoginIndex implements CredentialLoginIndex, MeterBinder {
+
+    static final String FIND_SQL = "SELECT " + JdbcCredentialRecordRepository.COLUMNS + """
+            , u.username, u.display_name, u.password
+            FROM webauthn_credentials c
+            JOIN users u ON u.user_handle = c.user_entity_user_id
+            WHERE c.credential_id_hash = ?
+            """;
+
+    static final String CONFIRM_SQL = """
+            SELECT c.signature_count
+            FROM webauthn_credentials c
+            JOIN users u ON u.user_handle = c.user_entity_user_id
+            WHERE c.credential_id_hash = ?
+            """;
+
+    private final JdbcOperations jdbc;
+    private final CustomUserDetailsService users;
+    private final SignatureCountWriteBehind signatureCounts;
+    private final BoundedExpiringCache<Bytes, PasskeyLogin> logins;
+    private final AtomicLong writeGeneration = new AtomicLong();
+
+    public JdbcCredentialLoginIndex(JdbcOperations jdbc, CustomUserDetailsService users,
+                                    SignatureCountWriteBehind signatureCounts, int maximumSize, Duration timeToLive) {
+        this.jdbc = jdbc;
+        this.users = users;
+        this.signatureCounts = signatureCounts;
+        this.logins = new BoundedExpiringCache<>(maximumSize, timeToLive);
+    }
+
+    @Override
+    public @Nullable PasskeyLogin find(Bytes credentialId) {
+        PasskeyLogin cached = logins.get(credentialId);
+        if (cached != null) {
+            return confirm(credentialId, cached);
+        }
+
+        long generation = writeGeneration.get();
+        long userGeneration = users.writeGeneration();
+        List<PasskeyLogin> found = jdbc.query(FIND_SQL, (rs, rowNum) -> {
+            CredentialRecord credential = signatureCounts.withPendingUse(
+                    JdbcCredentialRecordRepository.CREDENTIAL_RECORD_MAPPER.mapRow(rs, rowNum));
+            return new PasskeyLogin(credential, users.cacheOwner(rs.getString("username"),
+                    rs.getString("display_name"), rs.getString("password"), credential.getUserEntityUserId(),
+                    userGeneration));
+        }, (Object) JdbcCredentialRecordRepository.credentialIdHash(credentialId));
+        if (found.isEmpty()) {
+            return null;
+        }
+        PasskeyLogin login = found.getFirst();
+        cache(credentialId, login, generation);
+        return login;
+    }
+
+    private @Nullable PasskeyLogin confirm(Bytes credentialId, PasskeyLogin cached) {
+        long generation = writeGeneration.get();
+        List<Long> stored = jdbc.queryForList(CONFIRM_SQL, Long.class,
+                (Object) JdbcCredentialRecordRepository.credentialIdHash(credentialId));
+        if (stored.isEmpty()) {
+            invalidate(credentialId);
+            return null;
+        }
+        long storedCount = stored.getFirst();
+        if (storedCount <= cached.credential().getSignatureCount()) {
+            return cached;
+        }
+        PasskeyLogin login = new PasskeyLogin(ImmutableCredentialRecord.fromCredentialRecord(cached.credential())
+                .signatureCount(storedCount)
+                .build(), cached.owner());
+        cache(credentialId, login, generation);
+        return login;
+    }
+
+    @Override
+    public void recordUse(CredentialRecord used) {
+        long generation = writeGeneration.get();
+        PasskeyLogin cached = logins.peek(used.getCredentialId());
+        if (cached != null) {
+            cache(used.getCredentialId(), new PasskeyLogin(used, cached.owner()), generation);
+        }
+    }
+
+    @Override
+    public void invalidate(Bytes credentialId) {
+        writeGeneration.incrementAndGet();
+        logins.invalidate(credentialId);
+    }
+
+    private void cache(Bytes credentialId, PasskeyLogin login, long generation) {
+        logins.put(credentialId, login);
+        if (generation != writeGeneration.get()) {
+            logins.invalidate(credentialId);
+        }
+    }
+
+    public long hitCount() {
+        return logins.hitCount();
+    }
+
+    public long missCount() {
+        return logins.missCount();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        logins.bindTo(registry, "passkey-logins");
+    }
+}
@@ -0,0 +1,186 @@
+package eu.luminis.passkeystryout.passkey;
+
+import org.jspecify.annotations.NullMarked;
+import org.jspecify.annotations.Nullable;
+import org.springframework.jdbc.core.JdbcOperations;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.security.web.webauthn.api.AuthenticatorTransport;
+import org.springframework.security.web.webauthn.api.Bytes;
+import org.springframework.security.web.webauthn.api.CredentialRecord;
+import org.springframework.security.web.webauthn.api.ImmutableCredentialRecord;
+import org.springframework.security.web.webauthn.api.ImmutablePublicKeyCose;
+import org.springframework.security.web.webauthn.api.PublicKeyCredentialType;
+import org.springframework.security.web.webauthn.management.UserCredentialRepository;
+import org.springframework.util.Assert;
+import org.springframework.util.StringUtils;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Stores credentials in the {@code webauthn_credentials} table, which holds credential ids and public keys as bytes
+ * rather than as the Base64url text of Spring Security's {@code JdbcUserCredentialRepository}. A credential is looked
+ * up by the SHA-256 hash of its id, the fixed-width primary key that the database derives from the id column.
+ * <p>
+ * Records are read and written with the same defaults as Spring Security's repository, so the two can be swapped.
+ */
+@NullMarked
+public class JdbcCredentialRecordRepository implements UserCredentialRepository {
+
+    public static final String COLUMNS = """
+            credential_id, user_entity_user_id, public_key, signature_count, uv_initialized, backup_eligible,
+            authenticator_transports, public_key_credential_type, backup_state, attestation_object,
+            attestation_client_data_json, created, last_used, label""";
+
+    static final String FIND_BY_CREDENTIAL_ID_SQL =
+            "SELECT " + COLUMNS + " FROM webauthn_credentials WHERE credential_id_hash = ?";
+
+    static final String FIND_BY_USER_ID_SQL =
+            "SELECT " + COLUMNS + " FROM webauthn_credentials WHERE user_entity_user_id = ? ORDER BY created";
+
+    public static final String INSERT_SQL =
+            "INSERT INTO webauthn_credentials (" + COLUMNS + ") VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+    static final String UPDATE_SQL = """
+            UPDATE webauthn_credentials SET user_entity_user_id = ?, public_key = ?, signature_count = ?,
+                uv_initialized = ?, backup_eligible = ?, authenticator_transports = ?, public_key_credential_type = ?,
+                backup_state = ?, attestation_object = ?, attestation_client_data_json = ?, created = ?,
+                last_used = ?, label = ?
+            WHERE credential_id_hash = ?
+            """;
+
+    static final String DELETE_SQL = "DELETE FROM webauthn_credentials WHERE credential_id_hash = ?";
+
+    static final RowMapper<CredentialRecord> CREDENTIAL_RECORD_MAPPER = (rs, rowNum) -> {
+        Timestamp created = rs.getTimestamp("created");
+        Timestamp lastUsed = rs.getTimestamp("last_used");
+        Assert.notNull(created, "created cannot be null");
+        Assert.notNull(lastUsed, "last_used cannot be null");
+        return ImmutableCredentialRecord.builder()
+                .credentialId(new Bytes(rs.getBytes("credential_id")))
+                .userEntityUserId(Bytes.fromBase64(rs.getString("user_entity_user_id")))
+                .publicKey(new ImmutablePublicKeyCose(rs.getBytes("public_key")))
+                .signatureCount(rs.getLong("signature_count"))
+                .uvInitialized(rs.getBoolean("uv_initialized"))
+                .backupEligible(rs.getBoolean("backup_eligible"))
+                .credentialType(PublicKeyCredentialType.valueOf(rs.getString("public_key_credential_type")))
+                .backupState(rs.getBoolean("backup_state"))
+                .attestationObject(toBytes(rs.getBytes("attestation_object")))
+                .attestationClientDataJSON(toBytes(rs.getBytes("attestation_client_data_json")))
+                .created(created.toInstant())
+                .lastUsed(lastUsed.toInstant())
+                .label(rs.getString("label"))
+                .transports(toTransports(rs.getString("authenticator_transports")))
+                .build();
+    };
+
+    private final JdbcOperations jdbc;
+
+    public JdbcCredentialRecordRepository(JdbcOperations jdbc) {
+        this.jdbc = jdbc;
+    }
+
+    @Override
+    public @Nullable CredentialRecord findByCredentialId(Bytes credentialId) {
+        Assert.notNull(credentialId, "credentialId cannot be null");
+        List<CredentialRecord> records = jdbc.query(FIND_BY_CREDENTIAL_ID_SQL, CREDENTIAL_RECORD_MAPPER,
+                (Object) credentialIdHash(credentialId));
+        return records.isEmpty() ? null : records.getFirst();
+    }
+
+    @Override
+    public List<CredentialRecord> findByUserId(Bytes userId) {
+        Assert.notNull(userId, "userId cannot be null");
+        return jdbc.query(FIND_BY_USER_ID_SQL, CREDENTIAL_RECORD_MAPPER, userId.toBase64UrlString());
+    }
+
+    @Override
+    public void save(CredentialRecord record) {
+        Assert.notNull(record, "record cannot be null");
+        int updated = jdbc.update(UPDATE_SQL,
+                record.getUserEntityUserId().toBase64UrlString(),
+                record.getPublicKey().getBytes(),
+                record.getSignatureCount(),
+                record.isUvInitialized(),
+                record.isBackupEligible(),
+                toString(record.getTransports()),
+                toString(record.getCredentialType()),
+                record.isBackupState(),
+                toByteArray(record.getAttestationObject()),
+                toByteArray(record.getAttestationClientDataJSON()),
+                toTimestamp(record.getCreated()),
+                toTimestamp(record.getLastUsed()),
+                record.getLabel(),
+                credentialIdHash(record.getCredentialId()));
+        if (updated == 0) {
+            jdbc.update(INSERT_SQL,
+                    record.getCredentialId().getBytes(),
+                    record.getUserEntityUserId().toBase64UrlString(),
+                    record.getPublicKey().getBytes(),
+                    record.getSignatureCount(),
+                    record.isUvInitialized(),
+                    record.isBackupEligible(),
+                    toString(record.getTransports()),
+                    toString(record.getCredentialType()),
+                    record.isBackupState(),
+                    toByteArray(record.getAttestationObject()),
+                    toByteArray(record.getAttestationClientDataJSON()),
+                    toTimestamp(record.getCreated()),
+                    toTimestamp(record.getLastUsed()),
+                    record.getLabel());
+        }
+    }
+
+    @Override
+    public void delete(Bytes credentialId) {
+        Assert.notNull(credentialId, "credentialId cannot be null");
+        jdbc.update(DELETE_SQL, (Object) credentialIdHash(credentialId));
+    }
+
+    /**
+     * Returns the primary key of a credential: the SHA-256 hash of its id, as the database computes it.
+     */
+    static byte[] credentialIdHash(Bytes credentialId) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(credentialId.getBytes());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    private static @Nullable Bytes toBytes(byte @Nullable [] bytes) {
+        return bytes == null ? null : new Bytes(bytes);
+    }
+
+    private static byte @Nullable [] toByteArray(@Nullable Bytes bytes) {
+        return bytes == null ? null : bytes.getBytes();
+    }
+
+    private static @Nullable Timestamp toTimestamp(@Nullable Instant instant) {
+        return instant == null ? null : Timestamp.from(instant);
+    }
+
+    private static String toString(Set<AuthenticatorTransport> transports) {
+        return transports.stream().map(AuthenticatorTransport::getValue).collect(Collectors.joining(","));
+    }
+
+    private static @Nullable String toString(@Nullable PublicKeyCredentialType credentialType) {
+        return credentialType == null ? null : credentialType.getValue();
+    }
+
+    private static Set<AuthenticatorTransport> toTransports(@Nullable String transports) {
+        Set<AuthenticatorTransport> result = new HashSet<>();
+        if (StringUtils.hasText(transports)) {
+            for (String transport : transports.split(",")) {
+                result.add(AuthenticatorTransport.valueOf(transport));
+            }
+        }
+        return result;
+    }
+}
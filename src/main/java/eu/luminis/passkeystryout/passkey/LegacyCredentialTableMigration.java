@@ -0,0 +1,148 @@
+package eu.luminis.passkeystryout.passkey;
+
+import com.webauthn4j.converter.util.ObjectConverter;
+import com.webauthn4j.data.attestation.AttestationObject;
+import com.webauthn4j.data.attestation.authenticator.AttestedCredentialData;
+import org.jspecify.annotations.NullMarked;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcOperations;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.security.web.webauthn.api.Bytes;
+import org.springframework.transaction.support.TransactionOperations;
+import org.springframework.util.Assert;
+
+import java.sql.DatabaseMetaData;
+import java.sql.ResultSet;
+import java.util.List;
+
+/**
+ * Moves the credentials of earlier versions from {@code user_credentials}, which stored credential ids as Base64url
+ * text, to {@code webauthn_credentials}. Rows are copied in chunks; every chunk is inserted and deleted from the old
+ * table in one transaction, so a migration that is interrupted resumes where it stopped on the next start. The old
+ * table is dropped once it is empty.
+ * <p>
+ * The old {@code public_key} column was text, so the database stored the COSE key bytes that Spring Security wrote as
+ * characters and lost every byte that is not valid UTF-8. Logins never read that column, but the key is taken from the
+ * stored attestation object where there is one, rather than copying the damaged value.
+ */
+@NullMarked
+public class LegacyCredentialTableMigration {
+
+    private static final Logger log = LoggerFactory.getLogger(LegacyCredentialTableMigration.class);
+
+    static final String LEGACY_TABLE = "user_credentials";
+
+    static final String SELECT_CHUNK_SQL = """
+            SELECT credential_id, user_entity_user_id, public_key, signature_count, uv_initialized, backup_eligible,
+                authenticator_transports, public_key_credential_type, backup_state, attestation_object,
+                attestation_client_data_json, created, last_used, label
+            FROM user_credentials
+            ORDER BY credential_id
+            FETCH FIRST ? ROWS ONLY
+            """;
+
+    static final String DELETE_SQL = "DELETE FROM user_credentials WHERE credential_id = ?";
+
+    static final String DROP_SQL = "DROP TABLE user_credentials";
+
+    private final RowMapper<LegacyRow> legacyRowMapper = (rs, rowNum) -> {
+        String credentialId = rs.getString("credential_id");
+        byte[] attestationObject = rs.getBytes("attestation_object");
+        return new LegacyRow(credentialId, new Object[] {
+                Bytes.fromBase64(credentialId).getBytes(),
+                rs.getString("user_entity_user_id"),
+                attestationObject == null ? rs.getBytes("public_key") : publicKey(attestationObject),
+                rs.getLong("signature_count"),
+                rs.getBoolean("uv_initialized"),
+                rs.getBoolean("backup_eligible"),
+                rs.getString("authenticator_transports"),
+                rs.getString("public_key_credential_type"),
+                rs.getBoolean("backup_state"),
+                attestationObject,
+                rs.getBytes("attestation_client_data_json"),
+                rs.getTimestamp("created"),
+                rs.getTimestamp("last_used"),
+                rs.getString("label")
+        });
+    };
+
+    private final ObjectConverter objectConverter = new ObjectConverter();
+    private final JdbcOperations jdbc;
+    private final TransactionOperations transactions;
+    private final int chunkSize;
+
+    public LegacyCredentialTableMigration(JdbcOperations jdbc, TransactionOperations transactions, int chunkSize) {
+        this.jdbc = jdbc;
+        this.transactions = transactions;
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * Copies all credentials from the old table, if there is one, and drops it.
+     *
+     * @return the number of credentials copied
+     */
+    public int migrate() {
+        if (!legacyTableExists()) {
+            return 0;
+        }
+
+        int migrated = 0;
+        int copied;
+        do {
+            copied = copyChunk();
+            migrated += copied;
+        } while (copied == chunkSize);
+        jdbc.execute(DROP_SQL);
+        log.info("Migrated {} credentials from {} to webauthn_credentials", migrated, LEGACY_TABLE);
+        return migrated;
+    }
+
+    private int copyChunk() {
+        Integer copied = transactions.execute(status -> {
+            List<LegacyRow> rows = jdbc.query(SELECT_CHUNK_SQL, legacyRowMapper, chunkSize);
+            if (rows.isEmpty()) {
+                return 0;
+            }
+            jdbc.batchUpdate(JdbcCredentialRecordRepository.INSERT_SQL,
+                    rows.stream().map(LegacyRow::insertArguments).toList());
+            jdbc.batchUpdate(DELETE_SQL,
+                    rows.stream().map(row -> new Object[] {row.legacyCredentialId()}).toList());
+            return rows.size();
+        });
+        return copied == null ? 0 : copied;
+    }
+
+    private byte[] publicKey(byte[] attestationObject) {
+        AttestationObject parsed = objectConverter.getCborConverter()
+                .readValue(attestationObject, AttestationObject.class);
+        Assert.notNull(parsed, "attestationObject cannot be null");
+        AttestedCredentialData credentialData = parsed.getAuthenticatorData().getAttestedCredentialData();
+        Assert.notNull(credentialData, "attestedCredentialData cannot be null");
+        return objectConverter.getCborConverter().writeValueAsBytes(credentialData.getCOSEKey());
+    }
+
+    private boolean legacyTableExists() {
+        Boolean exists = jdbc.execute((ConnectionCallback<Boolean>) connection -> {
+            DatabaseMetaData metaData = connection.getMetaData();
+            try (ResultSet tables = metaData.getTables(connection.getCatalog(), connection.getSchema(), null, null)) {
+                while (tables.next()) {
+                    if (LEGACY_TABLE.equalsIgnoreCase(tables.getString("TABLE_NAME"))) {
+                        return true;
+                    }
+                }
+            }
+            return false;
+        });
+        return Boolean.TRUE.equals(exists);
+    }
+
+    /**
+     * A row of the old table: its Base64url credential id, and the arguments of the insert into the new table in the
+     * column order of {@link JdbcCredentialRecordRepository#INSERT_SQL}.
+     */
+    private record LegacyRow(String legacyCredentialId, Object[] insertArguments) {
+    }
+}
@@ -1,12 +1,12 @@
 package eu.luminis.passkeystryout.passkey;
 
+import eu.luminis.passkeystryout.metrics.WebAuthnMetrics;
 import org.jspecify.annotations.NullMarked;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.security.web.webauthn.api.PublicKeyCredentialUserEntity;
 import org.springframework.stereotype.Controller;
 import org.springframework.web.bind.annotation.DeleteMapping;
-import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.ResponseBody;
 import org.springframework.http.ResponseEntity;
@@ -23,14 +23,11 @@ import java.util.Map;
 public class PasskeyDeleteController {
 
     private final CredentialRepository credentialRepository;
+    private final WebAuthnMetrics metrics;
 
-    public PasskeyDeleteController(CredentialRepository credentialRepository) {
+    public PasskeyDeleteController(CredentialRepository credentialRepository, WebAuthnMetrics metrics) {
         this.credentialRepository = credentialRepository;
-    }
-
-    @GetMapping("/passkey/register")
-    public String register() {
-        return "register-passkey";
+        this.metrics = metrics;
     }
 
     @DeleteMapping("/passkey/{credentialId}")
@@ -41,7 +38,10 @@ public class PasskeyDeleteController {
 
         try {
             String username = getUsername(authentication);
-            credentialRepository.deletePasskeyFromUser(credentialId, username);
+            metrics.passkeys("delete", () -> {
+                credentialRepository.deletePasskeyFromUser(credentialId, username);
+                return null;
+            });
 
             return ResponseEntity.ok(Map.of("message", "Passkey deleted successfully"));
         } catch (PasskeyException e) {
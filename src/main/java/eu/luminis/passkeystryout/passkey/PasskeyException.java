@@ -1,6 +1,9 @@
 package eu.luminis.passkeystryout.passkey;
 
 public class PasskeyException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
     public PasskeyException(String message) {
         super(message);
     }
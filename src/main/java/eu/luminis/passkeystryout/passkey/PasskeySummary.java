@@ -0,0 +1,28 @@
+package eu.luminis.passkeystryout.passkey;
+
+import org.jspecify.annotations.NullMarked;
+import org.jspecify.annotations.Nullable;
+
+import java.time.Instant;
+
+/**
+ * Read-only view of a passkey as shown on the dashboard.
+ * <p>
+ * The credential id is kept in its Base64url form, the way the dashboard uses it in links and forms, so it is encoded
+ * once when the row is read and never again while rendering.
+ *
+ * @param credentialId   Base64url encoded credential id
+ * @param label          the label the user gave the passkey, if any
+ * @param created        when the passkey was registered
+ * @param lastUsed       when the passkey was last used to sign in, or {@code null} if it was never used
+ * @param signatureCount the signature counter reported by the authenticator
+ * @param backupState    whether the passkey is backed up (synced) by its provider
+ */
+@NullMarked
+public record PasskeySummary(String credentialId,
+                             @Nullable String label,
+                             Instant created,
+                             @Nullable Instant lastUsed,
+                             long signatureCount,
+                             boolean backupState) {
+}
@@ -0,0 +1,94 @@
+package eu.luminis.passkeystryout.passkey;
+
+import com.webauthn4j.data.attestation.authenticator.COSEKey;
+import com.webauthn4j.data.attestation.statement.COSEAlgorithmIdentifier;
+import com.webauthn4j.data.attestation.statement.COSEKeyOperation;
+import com.webauthn4j.data.attestation.statement.COSEKeyType;
+import org.jspecify.annotations.NullMarked;
+import org.jspecify.annotations.Nullable;
+
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.util.List;
+
+/**
+ * A {@link COSEKey} that converts its coordinates or modulus into a {@link PublicKey} once, when it is created. The
+ * webauthn4j implementations run the {@code KeyFactory} again on every {@link #getPublicKey()}, which is called for
+ * every assertion signature that is verified.
+ */
+@NullMarked
+final class PreparedCOSEKey implements COSEKey {
+
+    private final COSEKey delegate;
+    private final PublicKey publicKey;
+
+    PreparedCOSEKey(COSEKey delegate) {
+        this.delegate = delegate;
+        this.publicKey = delegate.getPublicKey();
+    }
+
+    @Override
+    public boolean hasPublicKey() {
+        return true;
+    }
+
+    @Override
+    public boolean hasPrivateKey() {
+        return delegate.hasPrivateKey();
+    }
+
+    @Override
+    public PublicKey getPublicKey() {
+        return publicKey;
+    }
+
+    @Override
+    public @Nullable PrivateKey getPrivateKey() {
+        return delegate.getPrivateKey();
+    }
+
+    @Override
+    public @Nullable COSEKeyType getKeyType() {
+        return delegate.getKeyType();
+    }
+
+    @Override
+    public byte @Nullable [] getKeyId() {
+        return delegate.getKeyId();
+    }
+
+    @Override
+    public @Nullable COSEAlgorithmIdentifier getAlgorithm() {
+        return delegate.getAlgorithm();
+    }
+
+    @Override
+    public @Nullable List<COSEKeyOperation> getKeyOps() {
+        return delegate.getKeyOps();
+    }
+
+    @Override
+    public byte @Nullable [] getBaseIV() {
+        return delegate.getBaseIV();
+    }
+
+    @Override
+    public void validate() {
+        delegate.validate();
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        return other instanceof PreparedCOSEKey prepared && delegate.equals(prepared.delegate);
+    }
+
+    @Override
+    public int hashCode() {
+        return delegate.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return delegate.toString();
+    }
+}
@@ -0,0 +1,111 @@
+package eu.luminis.passkeystryout.passkey;
+
+import com.webauthn4j.converter.util.ObjectConverter;
+import com.webauthn4j.data.attestation.AttestationObject;
+import com.webauthn4j.data.attestation.authenticator.AttestedCredentialData;
+import com.webauthn4j.data.attestation.authenticator.AuthenticatorData;
+import com.webauthn4j.data.extension.authenticator.RegistrationExtensionAuthenticatorOutput;
+import eu.luminis.passkeystryout.cache.BoundedExpiringCache;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.jspecify.annotations.NullMarked;
+import org.springframework.security.web.webauthn.api.Bytes;
+import org.springframework.security.web.webauthn.api.CredentialRecord;
+import org.springframework.util.Assert;
+
+import java.time.Duration;
+import java.util.Arrays;
+
+/**
+ * Keeps the stored attestation objects of credentials in parsed form, keyed by credential id, so an assertion does
+ * not decode the CBOR attestation object and build a {@link java.security.PublicKey} for every login. The public key
+ * inside a cached attestation object is a {@link PreparedCOSEKey}. The cache is bounded by size, evicting the least
+ * recently used credentials first, and by age.
+ * <p>
+ * An entry remembers the bytes it was parsed from and is only used for a record with the same attestation object, so
+ * a stale entry can never verify a signature against the wrong key. {@link CachingUserCredentialRepository} still
+ * invalidates it when a credential is deleted or saved with a different attestation object, to free the memory.
+ * Saving a new signature count keeps the entry.
+ */
+@NullMarked
+public class PublicKeyCache implements MeterBinder {
+
+    private final ObjectConverter objectConverter = new ObjectConverter();
+    private final BoundedExpiringCache<Bytes, ParsedAttestationObject> byCredentialId;
+
+    public PublicKeyCache(int maximumSize, Duration timeToLive) {
+        this.byCredentialId = new BoundedExpiringCache<>(maximumSize, timeToLive);
+    }
+
+    /**
+     * Returns the attestation object stored with the credential, parsed, with a public key that is ready to verify
+     * signatures.
+     *
+     * @throws IllegalArgumentException if the record has no attestation object or it holds no credential data
+     */
+    public AttestationObject attestationObject(CredentialRecord record) {
+        Bytes stored = record.getAttestationObject();
+        Assert.notNull(stored, "attestationObject cannot be null");
+        byte[] storedBytes = stored.getBytes();
+
+        ParsedAttestationObject cached = byCredentialId.get(record.getCredentialId());
+        if (cached != null && cached.isParsedFrom(storedBytes)) {
+            return cached.attestationObject();
+        }
+
+        AttestationObject parsed = parse(storedBytes);
+        byCredentialId.put(record.getCredentialId(), new ParsedAttestationObject(storedBytes, parsed));
+        return parsed;
+    }
+
+    public void invalidate(Bytes credentialId) {
+        byCredentialId.invalidate(credentialId);
+    }
+
+    /**
+     * Drops the entry for the credential, unless it was parsed from the attestation object the record holds.
+     */
+    public void invalidateIfChanged(CredentialRecord record) {
+        ParsedAttestationObject cached = byCredentialId.peek(record.getCredentialId());
+        Bytes stored = record.getAttestationObject();
+        if (cached != null && (stored == null || !cached.isParsedFrom(stored.getBytes()))) {
+            byCredentialId.invalidate(record.getCredentialId());
+        }
+    }
+
+    public long hitCount() {
+        return byCredentialId.hitCount();
+    }
+
+    public long missCount() {
+        return byCredentialId.missCount();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        byCredentialId.bindTo(registry, "public-keys");
+    }
+
+    private AttestationObject parse(byte[] storedBytes) {
+        AttestationObject attestationObject = objectConverter.getCborConverter()
+                .readValue(storedBytes, AttestationObject.class);
+        Assert.notNull(attestationObject, "attestationObject cannot be null");
+        AuthenticatorData<RegistrationExtensionAuthenticatorOutput> authenticatorData =
+                attestationObject.getAuthenticatorData();
+        AttestedCredentialData credentialData = authenticatorData.getAttestedCredentialData();
+        Assert.notNull(credentialData, "attestedCredentialData cannot be null");
+
+        AttestedCredentialData prepared = new AttestedCredentialData(credentialData.getAaguid(),
+                credentialData.getCredentialId(), new PreparedCOSEKey(credentialData.getCOSEKey()));
+        return new AttestationObject(
+                new AuthenticatorData<>(authenticatorData.getRpIdHash(), authenticatorData.getFlags(),
+                        authenticatorData.getSignCount(), prepared, authenticatorData.getExtensions()),
+                attestationObject.getAttestationStatement());
+    }
+
+    private record ParsedAttestationObject(byte[] storedBytes, AttestationObject attestationObject) {
+        boolean isParsedFrom(byte[] bytes) {
+            return Arrays.equals(storedBytes, bytes);
+        }
+    }
+}
@@ -0,0 +1,164 @@
+package eu.luminis.passkeystryout.passkey;
+
+import com.webauthn4j.WebAuthnManager;
+import com.webauthn4j.credential.CredentialRecordImpl;
+import com.webauthn4j.data.AuthenticationData;
+import com.webauthn4j.data.AuthenticationParameters;
+import com.webauthn4j.data.AuthenticationRequest;
+import com.webauthn4j.data.attestation.AttestationObject;
+import com.webauthn4j.data.attestation.authenticator.AuthenticatorData;
+import com.webauthn4j.data.client.Origin;
+import com.webauthn4j.data.client.challenge.DefaultChallenge;
+import com.webauthn4j.server.ServerProperty;
+import org.jspecify.annotations.NullMarked;
+import org.springframework.security.web.webauthn.api.AuthenticatorAssertionResponse;
+import org.springframework.security.web.webauthn.api.AuthenticatorTransport;
+import org.springframework.security.web.webauthn.api.Bytes;
+import org.springframework.security.web.webauthn.api.CredentialRecord;
+import org.springframework.security.web.webauthn.api.ImmutableCredentialRecord;
+import org.springframework.security.web.webauthn.api.PublicKeyCredentialCreationOptions;
+import org.springframework.security.web.webauthn.api.PublicKeyCredentialDescriptor;
+import org.springframework.security.web.webauthn.api.PublicKeyCredentialRequestOptions;
+import org.springframework.security.web.webauthn.api.PublicKeyCredentialUserEntity;
+import org.springframework.security.web.webauthn.api.UserVerificationRequirement;
+import org.springframework.security.web.webauthn.management.PublicKeyCredentialCreationOptionsRequest;
+import org.springframework.security.web.webauthn.management.PublicKeyCredentialRequestOptionsRequest;
+import org.springframework.security.web.webauthn.management.PublicKeyCredentialUserEntityRepository;
+import org.springframework.security.web.webauthn.management.RelyingPartyAuthenticationRequest;
+import org.springframework.security.web.webauthn.management.RelyingPartyRegistrationRequest;
+import org.springframework.security.web.webauthn.management.UserCredentialRepository;
+import org.springframework.security.web.webauthn.management.WebAuthnRelyingPartyOperations;
+import org.springframework.util.Assert;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Verifies assertions the way {@code Webauthn4JRelyingPartyOperations} does, but takes the parsed attestation object
+ * of the credential from a {@link PublicKeyCache} instead of decoding it from the stored bytes on every login. The
+ * other operations are passed on to the delegate unchanged.
+ * <p>
+ * The webauthn4j credential record handed to the {@link WebAuthnManager} is created per request, because verification
+ * updates its counter; only the immutable attestation object and its public key are shared. Its counter starts at the
+ * stored signature count, rather than at the count of the registration as in Spring Security, so an authenticator
+ * that reports a count that did not increase is rejected as a possible clone.
+ * <p>
+ * The credential and its owner come from a {@link CredentialLoginIndex} in one lookup, which also learns the new
+ * signature count once the assertion is verified.
+ */
+@NullMarked
+public class PublicKeyCachingRelyingPartyOperations implements WebAuthnRelyingPartyOperations {
+
+    private final WebAuthnRelyingPartyOperations delegate;
+    private final CredentialLoginIndex loginIndex;
+    private final UserCredentialRepository userCredentials;
+    private final Set<Origin> origins;
+    private final WebAuthnManager webAuthnManager;
+    private final PublicKeyCache publicKeyCache;
+
+    public PublicKeyCachingRelyingPartyOperations(WebAuthnRelyingPartyOperations delegate,
+                                                  PublicKeyCredentialUserEntityRepository userEntities,
+                                                  UserCredentialRepository userCredentials,
+                                                  Set<String> allowedOrigins,
+                                                  WebAuthnManager webAuthnManager,
+                                                  PublicKeyCache publicKeyCache) {
+        this(delegate, CredentialLoginIndex.of(userCredentials, userEntities), userCredentials, allowedOrigins,
+                webAuthnManager, publicKeyCache);
+    }
+
+    /**
+     * @param userCredentials where the signature count and last use of a verified assertion are saved
+     */
+    public PublicKeyCachingRelyingPartyOperations(WebAuthnRelyingPartyOperations delegate,
+                                                  CredentialLoginIndex loginIndex,
+                                                  UserCredentialRepository userCredentials,
+                                                  Set<String> allowedOrigins,
+                                                  WebAuthnManager webAuthnManager,
+                                                  PublicKeyCache publicKeyCache) {
+        this.delegate = delegate;
+        this.loginIndex = loginIndex;
+        this.userCredentials = userCredentials;
+        this.origins = allowedOrigins.stream().map(Origin::new).collect(Collectors.toUnmodifiableSet());
+        this.webAuthnManager = webAuthnManager;
+        this.publicKeyCache = publicKeyCache;
+    }
+
+    @Override
+    public PublicKeyCredentialCreationOptions createPublicKeyCredentialCreationOptions(
+            PublicKeyCredentialCreationOptionsRequest request) {
+        return delegate.createPublicKeyCredentialCreationOptions(request);
+    }
+
+    @Override
+    public CredentialRecord registerCredential(RelyingPartyRegistrationRequest request) {
+        return delegate.registerCredential(request);
+    }
+
+    @Override
+    public PublicKeyCredentialRequestOptions createCredentialRequestOptions(
+            PublicKeyCredentialRequestOptionsRequest request) {
+        return delegate.createCredentialRequestOptions(request);
+    }
+
+    @Override
+    public PublicKeyCredentialUserEntity authenticate(RelyingPartyAuthenticationRequest request) {
+        PublicKeyCredentialRequestOptions requestOptions = request.getRequestOptions();
+        AuthenticatorAssertionResponse assertionResponse = request.getPublicKey().getResponse();
+        Bytes keyId = request.getPublicKey().getRawId();
+        CredentialLoginIndex.PasskeyLogin login = loginIndex.find(keyId);
+        if (login == null) {
+            throw new IllegalArgumentException("Unable to find CredentialRecord with id " + keyId);
+        }
+        CredentialRecord credentialRecord = login.credential();
+
+        AttestationObject attestationObject = publicKeyCache.attestationObject(credentialRecord);
+        String rpId = requestOptions.getRpId();
+        Assert.notNull(rpId, "rpId cannot be null");
+        ServerProperty serverProperty = new ServerProperty(origins, rpId,
+                new DefaultChallenge(requestOptions.getChallenge().getBytes()));
+        boolean userVerificationRequired =
+                requestOptions.getUserVerification() == UserVerificationRequirement.REQUIRED;
+        AuthenticationRequest authenticationRequest = new AuthenticationRequest(keyId.getBytes(),
+                assertionResponse.getAuthenticatorData().getBytes(),
+                assertionResponse.getClientDataJSON().getBytes(),
+                assertionResponse.getSignature().getBytes());
+        CredentialRecordImpl authenticator = new CredentialRecordImpl(attestationObject, null, null,
+                toWebauthn4jTransports(credentialRecord.getTransports()));
+        authenticator.setCounter(credentialRecord.getSignatureCount());
+        List<byte[]> allowCredentials = toAllowCredentials(requestOptions.getAllowCredentials());
+        AuthenticationParameters authenticationParameters = new AuthenticationParameters(serverProperty,
+                authenticator, allowCredentials.isEmpty() ? null : allowCredentials, userVerificationRequired);
+
+        AuthenticationData authenticationData = webAuthnManager.verify(authenticationRequest,
+                authenticationParameters);
+        AuthenticatorData<?> authenticatorData = authenticationData.getAuthenticatorData();
+        Assert.notNull(authenticatorData, "authenticatorData cannot be null");
+
+        CredentialRecord used = ImmutableCredentialRecord.fromCredentialRecord(credentialRecord)
+                .lastUsed(Instant.now())
+                .signatureCount(authenticatorData.getSignCount())
+                .build();
+        userCredentials.save(used);
+        loginIndex.recordUse(used);
+        return login.owner();
+    }
+
+    private static Set<com.webauthn4j.data.AuthenticatorTransport> toWebauthn4jTransports(
+            Set<AuthenticatorTransport> transports) {
+        return transports.stream()
+                .map(AuthenticatorTransport::getValue)
+                .map(com.webauthn4j.data.AuthenticatorTransport::create)
+                .collect(Collectors.toSet());
+    }
+
+    private static List<byte[]> toAllowCredentials(List<PublicKeyCredentialDescriptor> allowCredentials) {
+        return allowCredentials.stream()
+                .map(PublicKeyCredentialDescriptor::getId)
+                .filter(Objects::nonNull)
+                .map(Bytes::getBytes)
+                .toList();
+    }
+}
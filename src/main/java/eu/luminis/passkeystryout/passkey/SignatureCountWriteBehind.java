@@ -0,0 +1,164 @@
+package eu.luminis.passkeystryout.passkey;
+
+import com.webauthn4j.verifier.exception.MaliciousCounterValueException;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.jspecify.annotations.NullMarked;
+import org.springframework.jdbc.core.JdbcOperations;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.security.web.webauthn.api.Bytes;
+import org.springframework.security.web.webauthn.api.CredentialRecord;
+import org.springframework.security.web.webauthn.api.ImmutableCredentialRecord;
+
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Collects the signature count and last use that every passkey login stores, and writes them to
+ * {@code webauthn_credentials} in JDBC batches on a fixed delay instead of on the request thread. Several logins with
+ * the same credential between two flushes are coalesced into a single update with the highest count and the latest
+ * use.
+ * <p>
+ * Until a use is written, {@link #withPendingUse(CredentialRecord)} applies it to records read from the database or
+ * the credential cache, so the next assertion is checked against the newest count. {@link #record(CredentialRecord)}
+ * checks the count once more atomically, so two concurrent assertions with the same counter cannot both succeed. The
+ * update never lowers a count that was written in the meantime, for example by another node.
+ * <p>
+ * Pending uses are written on {@link #close()}, which Spring calls on shutdown.
+ */
+@NullMarked
+public class SignatureCountWriteBehind implements MeterBinder, AutoCloseable {
+
+    static final String UPDATE_SQL = """
+            UPDATE webauthn_credentials SET signature_count = ?, last_used = ?
+            WHERE credential_id_hash = ? AND signature_count <= ?
+            """;
+
+    private final JdbcOperations jdbc;
+    private final CachingUserCredentialRepository credentialCache;
+    private final int batchSize;
+    private final ConcurrentHashMap<Bytes, PendingUse> pending = new ConcurrentHashMap<>();
+    private final ReentrantLock flushLock = new ReentrantLock();
+    private final LongAdder recorded = new LongAdder();
+    private final LongAdder written = new LongAdder();
+    private volatile boolean closed;
+
+    public SignatureCountWriteBehind(JdbcOperations jdbc, CachingUserCredentialRepository credentialCache,
+                                     int batchSize) {
+        this.jdbc = jdbc;
+        this.credentialCache = credentialCache;
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Queues the signature count and last use of a verified assertion.
+     *
+     * @throws MaliciousCounterValueException if a use with the same or a higher nonzero count is already queued
+     */
+    public void record(CredentialRecord record) {
+        PendingUse use = new PendingUse(record.getSignatureCount(), record.getLastUsed());
+        pending.merge(record.getCredentialId(), use, (current, next) -> {
+            if (next.signatureCount() != 0 && next.signatureCount() <= current.signatureCount()) {
+                throw new MaliciousCounterValueException(
+                        "Signature count " + next.signatureCount() + " is not higher than "
+                                + current.signatureCount() + " for credential " + record.getCredentialId());
+            }
+            return new PendingUse(Math.max(current.signatureCount(), next.signatureCount()),
+                    next.lastUsed().isAfter(current.lastUsed()) ? next.lastUsed() : current.lastUsed());
+        });
+        recorded.increment();
+        if (closed) {
+            flush();
+        }
+    }
+
+    /**
+     * Returns the record with the use that is queued for it applied, or the record itself if nothing newer is queued.
+     */
+    public CredentialRecord withPendingUse(CredentialRecord record) {
+        PendingUse use = pending.get(record.getCredentialId());
+        if (use == null || use.signatureCount() < record.getSignatureCount()) {
+            return record;
+        }
+        return ImmutableCredentialRecord.fromCredentialRecord(record)
+                .signatureCount(use.signatureCount())
+                .lastUsed(use.lastUsed())
+                .build();
+    }
+
+    /**
+     * Forgets the queued use of a credential that is being deleted.
+     */
+    public void discard(Bytes credentialId) {
+        pending.remove(credentialId);
+    }
+
+    /**
+     * Writes all queued uses. A use that is recorded while the batch runs stays queued for the next flush. When the
+     * batch fails, every use stays queued and is retried.
+     *
+     * @return the number of credentials updated
+     */
+    @Scheduled(fixedDelayString = "${passkeys.signature-count.flush-interval}")
+    public int flush() {
+        flushLock.lock();
+        try {
+            List<PendingWrite> writes = pending.entrySet().stream()
+                    .map(entry -> new PendingWrite(entry.getKey(), entry.getValue()))
+                    .toList();
+            if (writes.isEmpty()) {
+                return 0;
+            }
+
+            jdbc.batchUpdate(UPDATE_SQL, writes, batchSize, (ps, write) -> {
+                ps.setLong(1, write.use().signatureCount());
+                ps.setTimestamp(2, Timestamp.from(write.use().lastUsed()));
+                ps.setBytes(3, JdbcCredentialRecordRepository.credentialIdHash(write.credentialId()));
+                ps.setLong(4, write.use().signatureCount());
+            });
+            for (PendingWrite write : writes) {
+                credentialCache.invalidate(write.credentialId());
+                pending.remove(write.credentialId(), write.use());
+            }
+            written.add(writes.size());
+            return writes.size();
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    public int pendingCount() {
+        return pending.size();
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        flush();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("webauthn.signature-count.pending", pending, ConcurrentHashMap::size)
+                .description("Credentials with a signature count that is not written yet")
+                .register(registry);
+        FunctionCounter.builder("webauthn.signature-count.recorded", recorded, LongAdder::sum)
+                .description("Signature counts queued by passkey logins")
+                .register(registry);
+        FunctionCounter.builder("webauthn.signature-count.written", written, LongAdder::sum)
+                .description("Coalesced signature counts written to the database")
+                .register(registry);
+    }
+
+    private record PendingUse(long signatureCount, Instant lastUsed) {
+    }
+
+    private record PendingWrite(Bytes credentialId, PendingUse use) {
+    }
+}
@@ -0,0 +1,51 @@
+package eu.luminis.passkeystryout.passkey;
+
+import org.jspecify.annotations.NullMarked;
+import org.jspecify.annotations.Nullable;
+import org.springframework.security.web.webauthn.api.Bytes;
+import org.springframework.security.web.webauthn.api.CredentialRecord;
+import org.springframework.security.web.webauthn.management.UserCredentialRepository;
+
+import java.util.List;
+
+/**
+ * The credential repository of the assertion path. Saves there only store the signature count and last use of a
+ * verified assertion, so they are queued in the {@link SignatureCountWriteBehind}, and lookups by credential id see
+ * the queued uses.
+ * <p>
+ * It is not a bean, and registration does not use it, because registration saves whole new credentials.
+ */
+@NullMarked
+public class WriteBehindUserCredentialRepository implements UserCredentialRepository {
+
+    private final UserCredentialRepository delegate;
+    private final SignatureCountWriteBehind writeBehind;
+
+    public WriteBehindUserCredentialRepository(UserCredentialRepository delegate,
+                                               SignatureCountWriteBehind writeBehind) {
+        this.delegate = delegate;
+        this.writeBehind = writeBehind;
+    }
+
+    @Override
+    public @Nullable CredentialRecord findByCredentialId(Bytes credentialId) {
+        CredentialRecord record = delegate.findByCredentialId(credentialId);
+        return record == null ? null : writeBehind.withPendingUse(record);
+    }
+
+    @Override
+    public List<CredentialRecord> findByUserId(Bytes userId) {
+        return delegate.findByUserId(userId);
+    }
+
+    @Override
+    public void save(CredentialRecord record) {
+        writeBehind.record(record);
+    }
+
+    @Override
+    public void delete(Bytes credentialId) {
+        writeBehind.discard(credentialId);
+        delegate.delete(credentialId);
+    }
+}
@@ -0,0 +1,62 @@
+package eu.luminis.passkeystryout.password;
+
+import org.jspecify.annotations.NullMarked;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.security.crypto.argon2.Argon2PasswordEncoder;
+
+import java.time.Duration;
+import java.util.Arrays;
+
+/**
+ * Picks the Argon2 iteration count so one hash takes roughly the target time on the machine the application runs
+ * on. Memory and parallelism stay fixed; only the iteration count, which scales linearly, is tuned.
+ * <p>
+ * The cost of one iteration is measured with a few hashes at startup, so calibration itself stays well under a
+ * second for sensible targets.
+ */
+@NullMarked
+public final class Argon2Calibration {
+
+    private static final Logger log = LoggerFactory.getLogger(Argon2Calibration.class);
+
+    private static final int SALT_LENGTH = 16;
+    private static final int HASH_LENGTH = 32;
+    private static final int SAMPLES = 3;
+
+    private Argon2Calibration() {
+    }
+
+    /**
+     * @param targetTime    how long one hash should take
+     * @param memoryKib     memory per hash in KiB
+     * @param parallelism   the number of lanes per hash
+     * @param minIterations the lowest iteration count to accept, whatever the measurement says
+     * @param maxIterations the highest iteration count to accept, whatever the measurement says
+     * @return the iteration count to use
+     */
+    public static int calibrateIterations(Duration targetTime, int memoryKib, int parallelism,
+                                          int minIterations, int maxIterations) {
+        Argon2PasswordEncoder probe = encoder(memoryKib, parallelism, 1);
+        probe.encode("calibration-warm-up");
+
+        long[] samples = new long[SAMPLES];
+        for (int i = 0; i < SAMPLES; i++) {
+            long start = System.nanoTime();
+            probe.encode("calibration-" + i);
+            samples[i] = System.nanoTime() - start;
+        }
+        Arrays.sort(samples);
+        long perIterationNanos = Math.max(samples[SAMPLES / 2], 1);
+
+        long iterations = Math.round((double) targetTime.toNanos() / perIterationNanos);
+        int calibrated = Math.clamp(iterations, minIterations, maxIterations);
+        log.info("Calibrated Argon2 to {} iterations ({} KiB, parallelism {}): one iteration took {} ms, target is {} ms",
+                calibrated, memoryKib, parallelism, perIterationNanos / 1_000_000, targetTime.toMillis());
+        return calibrated;
+    }
+
+    public static Argon2PasswordEncoder encoder(int memoryKib, int parallelism, int iterations) {
+        return new Argon2PasswordEncoder(SALT_LENGTH, HASH_LENGTH, parallelism, memoryKib, iterations);
+    }
+}
@@ -0,0 +1,54 @@
+package eu.luminis.passkeystryout.password;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.jspecify.annotations.NullMarked;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+
+/**
+ * Answers {@code 429 Too Many Requests} with a {@code Retry-After} header when the password hashing pool rejected
+ * a hash, both for form login and for registration. It must sit in front of the authentication filters so it also
+ * sees exceptions that escape the servlet.
+ */
+@NullMarked
+public class PasswordHashingBackPressureFilter extends OncePerRequestFilter {
+
+    private final long retryAfterSeconds;
+
+    public PasswordHashingBackPressureFilter(long retryAfterSeconds) {
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        try {
+            chain.doFilter(request, response);
+        } catch (ServletException | RuntimeException e) {
+            if (!isHashingRejection(e) || response.isCommitted()) {
+                throw e;
+            }
+            response.reset();
+            response.setStatus(HttpStatus.TOO_MANY_REQUESTS.value());
+            response.setHeader(HttpHeaders.RETRY_AFTER, String.valueOf(retryAfterSeconds));
+            response.setContentType(MediaType.TEXT_PLAIN_VALUE);
+            response.getWriter().write("Too many requests, please try again later.");
+        }
+    }
+
+    private static boolean isHashingRejection(Throwable throwable) {
+        for (Throwable cause = throwable; cause != null; cause = cause.getCause()) {
+            if (cause instanceof PasswordHashingRejectedException) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
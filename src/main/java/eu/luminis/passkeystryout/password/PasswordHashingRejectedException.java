@@ -0,0 +1,14 @@
+package eu.luminis.passkeystryout.password;
+
+/**
+ * Thrown when the password hashing pool is saturated and cannot queue another hash. It is turned into a
+ * {@code 429 Too Many Requests} response by {@link PasswordHashingBackPressureFilter}.
+ */
+public class PasswordHashingRejectedException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    public PasswordHashingRejectedException(String message) {
+        super(message);
+    }
+}
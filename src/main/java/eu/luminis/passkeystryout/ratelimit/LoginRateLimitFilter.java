@@ -0,0 +1,78 @@
+package eu.luminis.passkeystryout.ratelimit;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.jspecify.annotations.NullMarked;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.security.web.servlet.util.matcher.PathPatternRequestMatcher;
+import org.springframework.security.web.util.matcher.OrRequestMatcher;
+import org.springframework.security.web.util.matcher.RequestMatcher;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Locale;
+
+/**
+ * Limits the requests that anyone may send without being signed in and that cost the server something: password
+ * logins and registrations, which hash a password, and passkey login options and assertions, which store a challenge
+ * and verify a signature. Every such request takes a token from the bucket of the client address and, when the form
+ * names a user, from the bucket of that username, so neither one address nor a botnet trying one account gets far.
+ * <p>
+ * A request that finds a bucket empty is answered with {@code 429 Too Many Requests} and a {@code Retry-After}
+ * header in whole seconds. The filter sits in front of the authentication filters, so no password is hashed and no
+ * challenge is stored for it. The client address is the one the servlet container reports; behind a proxy that
+ * requires {@code server.forward-headers-strategy}.
+ */
+@NullMarked
+public class LoginRateLimitFilter extends OncePerRequestFilter {
+
+    private static final RequestMatcher LIMITED = new OrRequestMatcher(
+            PathPatternRequestMatcher.withDefaults().matcher(HttpMethod.POST, "/login"),
+            PathPatternRequestMatcher.withDefaults().matcher(HttpMethod.POST, "/login/webauthn"),
+            PathPatternRequestMatcher.withDefaults().matcher(HttpMethod.POST, "/webauthn/authenticate/options"),
+            PathPatternRequestMatcher.withDefaults().matcher(HttpMethod.POST, "/register"));
+
+    private final TokenBucketRateLimiter byAddress;
+    private final TokenBucketRateLimiter byUsername;
+
+    public LoginRateLimitFilter(TokenBucketRateLimiter byAddress, TokenBucketRateLimiter byUsername) {
+        this.byAddress = byAddress;
+        this.byUsername = byUsername;
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return !LIMITED.matches(request);
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        Duration retryAfter = byAddress.tryAcquire(request.getRemoteAddr());
+        if (retryAfter.isZero()) {
+            String username = request.getParameter("username");
+            if (username != null && !username.isBlank()) {
+                retryAfter = byUsername.tryAcquire(username.strip().toLowerCase(Locale.ROOT));
+            }
+        }
+        if (!retryAfter.isZero()) {
+            rejectWith(response, retryAfter);
+            return;
+        }
+        chain.doFilter(request, response);
+    }
+
+    private static void rejectWith(HttpServletResponse response, Duration retryAfter) throws IOException {
+        long seconds = Math.max(1, (retryAfter.toMillis() + 999) / 1000);
+        response.setStatus(HttpStatus.TOO_MANY_REQUESTS.value());
+        response.setHeader(HttpHeaders.RETRY_AFTER, String.valueOf(seconds));
+        response.setContentType(MediaType.TEXT_PLAIN_VALUE);
+        response.getWriter().write("Too many requests, please try again later.");
+    }
+}
@@ -0,0 +1,220 @@
+package eu.luminis.passkeystryout.ratelimit;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.jspecify.annotations.NullMarked;
+import org.springframework.scheduling.annotation.Scheduled;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongSupplier;
+
+/**
+ * Token buckets by key, such as a client address or a username: each key may burst up to {@code capacity} requests
+ * and then gets one more every {@code refillInterval}. A bucket is a single number, the time at which it would be full
+ * again, so a request that is let through allocates nothing once its key is known.
+ * <p>
+ * The keys are spread over striped maps, each guarded by its own {@link ReentrantLock}, so concurrent requests for
+ * different keys rarely wait for each other and virtual threads do not pin their carrier. A bucket that is full again
+ * is the same as no bucket, so {@link #evictIdle()} drops it. Each stripe also holds at most its share of
+ * {@code maximumKeys}. A new key in a full stripe makes room by dropping the buckets that are full again; a bucket that
+ * is still throttling its key is never dropped, so spraying new keys cannot reset the limit of another key. While none
+ * is full again, new keys in that stripe are turned away until the first one will be.
+ */
+@NullMarked
+public class TokenBucketRateLimiter implements MeterBinder {
+
+    private final String name;
+    private final long refillIntervalNanos;
+    private final long burstNanos;
+    private final LongSupplier nanoClock;
+    private final Stripe[] stripes;
+    private final LongAdder allowed = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+
+    public TokenBucketRateLimiter(String name, int capacity, Duration refillInterval, int maximumKeys, int stripes) {
+        this(name, capacity, refillInterval, maximumKeys, stripes, System::nanoTime);
+    }
+
+    TokenBucketRateLimiter(String name, int capacity, Duration refillInterval, int maximumKeys, int stripes,
+                           LongSupplier nanoClock) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity must be at least 1");
+        }
+        if (refillInterval.isNegative() || refillInterval.isZero()) {
+            throw new IllegalArgumentException("refillInterval must be positive");
+        }
+        if (stripes < 1 || Integer.bitCount(stripes) != 1) {
+            throw new IllegalArgumentException("stripes must be a power of two");
+        }
+        if (maximumKeys < stripes) {
+            throw new IllegalArgumentException("maximumKeys must be at least the number of stripes");
+        }
+        this.name = name;
+        this.refillIntervalNanos = refillInterval.toNanos();
+        this.burstNanos = (capacity - 1) * refillIntervalNanos;
+        this.nanoClock = nanoClock;
+        this.stripes = new Stripe[stripes];
+        for (int i = 0; i < stripes; i++) {
+            this.stripes[i] = new Stripe(maximumKeys / stripes, nanoClock.getAsLong());
+        }
+    }
+
+    /**
+     * Takes a token from the bucket of the key.
+     *
+     * @return zero when the request may go ahead, otherwise how long until the bucket has a token again
+     */
+    public Duration tryAcquire(String key) {
+        long now = nanoClock.getAsLong();
+        Stripe stripe = stripe(key);
+        long waitNanos;
+        stripe.lock.lock();
+        try {
+            Bucket bucket = stripe.buckets.get(key);
+            if (bucket == null && !stripe.makeRoom(now)) {
+                waitNanos = Math.max(stripe.noneFullBefore - now, 1);
+            } else {
+                long fullAt = bucket == null ? now : Math.max(bucket.fullAt - now, 0) + now;
+                waitNanos = fullAt - now - burstNanos;
+                if (waitNanos <= 0) {
+                    if (bucket == null) {
+                        stripe.buckets.put(key, new Bucket(fullAt + refillIntervalNanos));
+                    } else {
+                        bucket.fullAt = fullAt + refillIntervalNanos;
+                    }
+                }
+            }
+        } finally {
+            stripe.lock.unlock();
+        }
+        if (waitNanos <= 0) {
+            allowed.increment();
+            return Duration.ZERO;
+        }
+        rejected.increment();
+        return Duration.ofNanos(waitNanos);
+    }
+
+    /**
+     * Drops the buckets that are full again.
+     *
+     * @return the number of buckets dropped
+     */
+    @Scheduled(fixedDelayString = "${passkeys.rate-limit.eviction-interval}")
+    public int evictIdle() {
+        long now = nanoClock.getAsLong();
+        int evicted = 0;
+        for (Stripe stripe : stripes) {
+            stripe.lock.lock();
+            try {
+                int before = stripe.buckets.size();
+                stripe.buckets.values().removeIf(bucket -> bucket.fullAt - now <= 0);
+                evicted += before - stripe.buckets.size();
+            } finally {
+                stripe.lock.unlock();
+            }
+        }
+        return evicted;
+    }
+
+    public int size() {
+        int size = 0;
+        for (Stripe stripe : stripes) {
+            stripe.lock.lock();
+            try {
+                size += stripe.buckets.size();
+            } finally {
+                stripe.lock.unlock();
+            }
+        }
+        return size;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("rate-limit.buckets", this, TokenBucketRateLimiter::size)
+                .description("Keys with a bucket that is not full")
+                .tag("limiter", name)
+                .register(registry);
+        FunctionCounter.builder("rate-limit.requests", allowed, LongAdder::sum)
+                .description("Requests that were let through or turned away by the rate limiter")
+                .tag("limiter", name)
+                .tag("outcome", "allowed")
+                .register(registry);
+        FunctionCounter.builder("rate-limit.requests", rejected, LongAdder::sum)
+                .description("Requests that were let through or turned away by the rate limiter")
+                .tag("limiter", name)
+                .tag("outcome", "rejected")
+                .register(registry);
+    }
+
+    private Stripe stripe(String key) {
+        int hash = key.hashCode();
+        return stripes[(hash ^ (hash >>> 16)) & (stripes.length - 1)];
+    }
+
+    private static final class Stripe {
+
+        private final ReentrantLock lock = new ReentrantLock();
+        private final Map<String, Bucket> buckets = new HashMap<>();
+        private final int maximumKeys;
+
+        /**
+         * When the stripe was last found full: the time before which none of its buckets is full again, on the clock
+         * of the limiter. Buckets only fill up later as they are used, so new keys are turned away until then without
+         * looking at the buckets again.
+         */
+        private long noneFullBefore;
+
+        Stripe(int maximumKeys, long now) {
+            this.maximumKeys = maximumKeys;
+            this.noneFullBefore = now;
+        }
+
+        /**
+         * Whether a bucket can be added, after dropping the buckets that are full again if the stripe is full.
+         */
+        boolean makeRoom(long now) {
+            if (buckets.size() < maximumKeys) {
+                return true;
+            }
+            if (noneFullBefore - now > 0) {
+                return false;
+            }
+            long earliest = Long.MAX_VALUE;
+            boolean first = true;
+            Iterator<Bucket> iterator = buckets.values().iterator();
+            while (iterator.hasNext()) {
+                long fullAt = iterator.next().fullAt;
+                if (fullAt - now <= 0) {
+                    iterator.remove();
+                } else if (first || fullAt - earliest < 0) {
+                    earliest = fullAt;
+                    first = false;
+                }
+            }
+            if (buckets.size() < maximumKeys) {
+                return true;
+            }
+            noneFullBefore = earliest;
+            return false;
+        }
+    }
+
+    private static final class Bucket {
+
+        /** When the bucket holds {@code capacity} tokens again, on the clock of the limiter. */
+        private long fullAt;
+
+        Bucket(long fullAt) {
+            this.fullAt = fullAt;
+        }
+    }
+}
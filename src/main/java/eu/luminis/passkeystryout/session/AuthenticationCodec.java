@@ -0,0 +1,196 @@
+package eu.luminis.passkeystryout.session;
+
+import org.jspecify.annotations.NullMarked;
+import org.jspecify.annotations.Nullable;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.FactorGrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.core.userdetails.User;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.web.authentication.WebAuthenticationDetails;
+import org.springframework.security.web.webauthn.api.Bytes;
+import org.springframework.security.web.webauthn.api.ImmutablePublicKeyCredentialUserEntity;
+import org.springframework.security.web.webauthn.api.PublicKeyCredentialUserEntity;
+import org.springframework.security.web.webauthn.authentication.WebAuthnAuthentication;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A compact binary form of the two authentications this application creates: the
+ * {@link UsernamePasswordAuthenticationToken} of a password login, with a {@link User} principal, and the
+ * {@link WebAuthnAuthentication} of a passkey login, with a {@link PublicKeyCredentialUserEntity} principal.
+ * <p>
+ * Only the fields needed to rebuild them are written, as length-prefixed UTF-8 and single bytes: the username and
+ * account flags, or the user handle, name and display name; the authorities, with the issue time of factor
+ * authorities; and the remote address and session id of {@link WebAuthenticationDetails}. Credentials are never
+ * written; Spring Security erases them after login anyway. A Java-serialised authentication of the same login is
+ * mostly class descriptors and is several times larger.
+ */
+@NullMarked
+public final class AuthenticationCodec {
+
+    private static final int PASSWORD_LOGIN = 1;
+    private static final int PASSKEY_LOGIN = 2;
+    private static final int SIMPLE_AUTHORITY = 0;
+    private static final int FACTOR_AUTHORITY = 1;
+    private static final int NO_DETAILS = 0;
+    private static final int WEB_DETAILS = 1;
+
+    private static final int ENABLED = 1;
+    private static final int ACCOUNT_NON_EXPIRED = 1 << 1;
+    private static final int CREDENTIALS_NON_EXPIRED = 1 << 2;
+    private static final int ACCOUNT_NON_LOCKED = 1 << 3;
+
+    private AuthenticationCodec() {
+    }
+
+    /**
+     * Whether the authentication is restored exactly by {@link #read(DataInput)}: its classes are the ones that
+     * password and passkey logins create, so nothing would be lost by writing only their fields.
+     */
+    public static boolean supports(@Nullable Authentication authentication) {
+        if (authentication == null || !authentication.isAuthenticated()) {
+            return false;
+        }
+        boolean principal = switch (authentication) {
+            case WebAuthnAuthentication passkey ->
+                    passkey.getPrincipal() instanceof ImmutablePublicKeyCredentialUserEntity;
+            case UsernamePasswordAuthenticationToken password -> password.getClass()
+                    == UsernamePasswordAuthenticationToken.class
+                    && password.getPrincipal() != null && password.getPrincipal().getClass() == User.class
+                    && password.getCredentials() == null;
+            default -> false;
+        };
+        Object details = authentication.getDetails();
+        return principal
+                && (details == null || details.getClass() == WebAuthenticationDetails.class)
+                && authentication.getAuthorities().stream().allMatch(authority ->
+                        authority.getClass() == SimpleGrantedAuthority.class
+                                || authority.getClass() == FactorGrantedAuthority.class);
+    }
+
+    /**
+     * Writes a password or passkey login. Any {@link UserDetails} principal is written as a {@link User}, and any
+     * authority other than a factor authority as a {@link SimpleGrantedAuthority}.
+     *
+     * @throws IllegalArgumentException if the principal is neither {@link UserDetails} nor
+     *                                  {@link PublicKeyCredentialUserEntity}
+     */
+    public static void write(Authentication authentication, DataOutput out) throws IOException {
+        switch (authentication.getPrincipal()) {
+            case UserDetails user -> {
+                out.writeByte(PASSWORD_LOGIN);
+                out.writeUTF(user.getUsername());
+                out.writeByte((user.isEnabled() ? ENABLED : 0)
+                        | (user.isAccountNonExpired() ? ACCOUNT_NON_EXPIRED : 0)
+                        | (user.isCredentialsNonExpired() ? CREDENTIALS_NON_EXPIRED : 0)
+                        | (user.isAccountNonLocked() ? ACCOUNT_NON_LOCKED : 0));
+            }
+            case PublicKeyCredentialUserEntity userEntity -> {
+                out.writeByte(PASSKEY_LOGIN);
+                out.writeUTF(userEntity.getName());
+                byte[] userHandle = userEntity.getId().getBytes();
+                out.writeByte(userHandle.length);
+                out.write(userHandle);
+                out.writeUTF(userEntity.getDisplayName());
+            }
+            case null, default -> throw new IllegalArgumentException(
+                    "Unsupported principal " + authentication.getPrincipal());
+        }
+
+        out.writeByte(authentication.getAuthorities().size());
+        for (GrantedAuthority authority : authentication.getAuthorities()) {
+            if (authority instanceof FactorGrantedAuthority factor) {
+                out.writeByte(FACTOR_AUTHORITY);
+                out.writeUTF(factor.getAuthority());
+                out.writeLong(factor.getIssuedAt().toEpochMilli());
+            } else {
+                out.writeByte(SIMPLE_AUTHORITY);
+                out.writeUTF(String.valueOf(authority.getAuthority()));
+            }
+        }
+
+        if (authentication.getDetails() instanceof WebAuthenticationDetails details) {
+            out.writeByte(WEB_DETAILS);
+            writeNullableUTF(out, details.getRemoteAddress());
+            writeNullableUTF(out, details.getSessionId());
+        } else {
+            out.writeByte(NO_DETAILS);
+        }
+    }
+
+    /**
+     * Reads an authentication written by {@link #write(Authentication, DataOutput)}.
+     *
+     * @throws IOException if the input ends early or is not a written authentication
+     */
+    public static Authentication read(DataInput in) throws IOException {
+        int type = in.readUnsignedByte();
+        String username = in.readUTF();
+        PublicKeyCredentialUserEntity userEntity = null;
+        int accountFlags = 0;
+        if (type == PASSKEY_LOGIN) {
+            byte[] userHandle = new byte[in.readUnsignedByte()];
+            in.readFully(userHandle);
+            userEntity = ImmutablePublicKeyCredentialUserEntity.builder()
+                    .id(new Bytes(userHandle))
+                    .name(username)
+                    .displayName(in.readUTF())
+                    .build();
+        } else if (type == PASSWORD_LOGIN) {
+            accountFlags = in.readUnsignedByte();
+        } else {
+            throw new IOException("Unknown authentication type " + type);
+        }
+
+        int authorityCount = in.readUnsignedByte();
+        List<GrantedAuthority> authorities = new ArrayList<>(authorityCount);
+        for (int i = 0; i < authorityCount; i++) {
+            int authorityType = in.readUnsignedByte();
+            String authority = in.readUTF();
+            authorities.add(authorityType == FACTOR_AUTHORITY
+                    ? FactorGrantedAuthority.withAuthority(authority)
+                            .issuedAt(Instant.ofEpochMilli(in.readLong()))
+                            .build()
+                    : new SimpleGrantedAuthority(authority));
+        }
+
+        WebAuthenticationDetails details = null;
+        if (in.readUnsignedByte() == WEB_DETAILS) {
+            details = new WebAuthenticationDetails(readNullableUTF(in), readNullableUTF(in));
+        }
+
+        if (userEntity != null) {
+            WebAuthnAuthentication authentication = new WebAuthnAuthentication(userEntity, authorities);
+            authentication.setDetails(details);
+            return authentication;
+        }
+        User user = new User(username, "", (accountFlags & ENABLED) != 0, (accountFlags & ACCOUNT_NON_EXPIRED) != 0,
+                (accountFlags & CREDENTIALS_NON_EXPIRED) != 0, (accountFlags & ACCOUNT_NON_LOCKED) != 0,
+                authorities);
+        // As it was after login
+        user.eraseCredentials();
+        UsernamePasswordAuthenticationToken authentication =
+                UsernamePasswordAuthenticationToken.authenticated(user, null, authorities);
+        authentication.setDetails(details);
+        return authentication;
+    }
+
+    private static void writeNullableUTF(DataOutput out, @Nullable String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+
+    private static @Nullable String readNullableUTF(DataInput in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+}
@@ -0,0 +1,256 @@
+package eu.luminis.passkeystryout.session;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.jspecify.annotations.NullMarked;
+import org.jspecify.annotations.Nullable;
+import org.springframework.jdbc.core.JdbcOperations;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.session.FindByIndexNameSessionRepository;
+import org.springframework.session.Session;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Puts Spring Session's JDBC repository behind a layer that defers the last access time. Spring Session saves every
+ * session that a request used, so without this every page view, a dashboard refresh included, updates its
+ * {@code spring_session} row.
+ * <p>
+ * A save that changes attributes, the id or the timeout still goes to the JDBC repository right away, with the last
+ * access time. A save that only touches the session is skipped when the stored last access time is less than the
+ * touch interval old; otherwise the time is queued, and {@link #flush()} writes all queued times in JDBC batches on a
+ * fixed delay. Sessions therefore expire at most one touch interval, plus one flush interval, earlier than they
+ * would with every access written.
+ */
+@NullMarked
+public class BatchedTouchSessionRepository
+        implements FindByIndexNameSessionRepository<BatchedTouchSessionRepository.TouchTrackingSession>, MeterBinder,
+        AutoCloseable {
+
+    static final String TOUCH_SQL = """
+            UPDATE spring_session SET last_access_time = ?,
+                expiry_time = CASE WHEN max_inactive_interval < 0 THEN expiry_time
+                                   ELSE CAST(? AS BIGINT) + CAST(max_inactive_interval AS BIGINT) * 1000 END
+            WHERE session_id = ? AND last_access_time < ?
+            """;
+
+    private final FindByIndexNameSessionRepository<Session> delegate;
+    private final JdbcOperations jdbc;
+    private final Duration touchInterval;
+    private final int batchSize;
+    private final ConcurrentHashMap<String, Instant> pending = new ConcurrentHashMap<>();
+    private final ReentrantLock flushLock = new ReentrantLock();
+    private final LongAdder skipped = new LongAdder();
+    private final LongAdder written = new LongAdder();
+
+    public BatchedTouchSessionRepository(FindByIndexNameSessionRepository<Session> delegate, JdbcOperations jdbc,
+                                         Duration touchInterval, int batchSize) {
+        this.delegate = delegate;
+        this.jdbc = jdbc;
+        this.touchInterval = touchInterval;
+        this.batchSize = batchSize;
+    }
+
+    @Override
+    public TouchTrackingSession createSession() {
+        return new TouchTrackingSession(delegate.createSession(), true);
+    }
+
+    @Override
+    public void save(TouchTrackingSession session) {
+        if (session.changed) {
+            pending.remove(session.getId());
+            session.delegate.setLastAccessedTime(session.lastAccessedTime);
+            delegate.save(session.delegate);
+            session.changed = false;
+            session.storedLastAccessedTime = session.lastAccessedTime;
+            return;
+        }
+
+        Instant lastAccessed = session.lastAccessedTime;
+        if (Duration.between(session.storedLastAccessedTime, lastAccessed).compareTo(touchInterval) < 0) {
+            skipped.increment();
+            return;
+        }
+        pending.merge(session.getId(), lastAccessed, (current, next) -> next.isAfter(current) ? next : current);
+        session.storedLastAccessedTime = lastAccessed;
+    }
+
+    @Override
+    public @Nullable TouchTrackingSession findById(String id) {
+        Session session = delegate.findById(id);
+        return session == null ? null : tracking(session);
+    }
+
+    @Override
+    public void deleteById(String id) {
+        pending.remove(id);
+        delegate.deleteById(id);
+    }
+
+    @Override
+    public Map<String, TouchTrackingSession> findByIndexNameAndIndexValue(String indexName, String indexValue) {
+        Map<String, TouchTrackingSession> sessions = new LinkedHashMap<>();
+        delegate.findByIndexNameAndIndexValue(indexName, indexValue)
+                .forEach((id, session) -> sessions.put(id, tracking(session)));
+        return sessions;
+    }
+
+    /**
+     * Writes the queued last access times. A time that is queued while the batch runs stays queued for the next
+     * flush; when the batch fails, every time stays queued and is retried.
+     *
+     * @return the number of sessions touched
+     */
+    @Scheduled(fixedDelayString = "${passkeys.session.jdbc.touch-flush-interval}")
+    public int flush() {
+        flushLock.lock();
+        try {
+            List<Map.Entry<String, Instant>> touches = List.copyOf(pending.entrySet());
+            if (touches.isEmpty()) {
+                return 0;
+            }
+            jdbc.batchUpdate(TOUCH_SQL, touches, batchSize, (ps, touch) -> {
+                long lastAccessed = touch.getValue().toEpochMilli();
+                ps.setLong(1, lastAccessed);
+                ps.setLong(2, lastAccessed);
+                ps.setString(3, touch.getKey());
+                ps.setLong(4, lastAccessed);
+            });
+            for (Map.Entry<String, Instant> touch : touches) {
+                pending.remove(touch.getKey(), touch.getValue());
+            }
+            written.add(touches.size());
+            return touches.size();
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    public int pendingCount() {
+        return pending.size();
+    }
+
+    @Override
+    public void close() {
+        flush();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("sessions.touch.pending", pending, ConcurrentHashMap::size)
+                .description("Sessions with a last access time that is not written yet")
+                .register(registry);
+        FunctionCounter.builder("sessions.touch.skipped", skipped, LongAdder::sum)
+                .description("Requests whose session was not written, because it was touched recently")
+                .register(registry);
+        FunctionCounter.builder("sessions.touch.written", written, LongAdder::sum)
+                .description("Last access times written in batches")
+                .register(registry);
+    }
+
+    private TouchTrackingSession tracking(Session session) {
+        TouchTrackingSession tracking = new TouchTrackingSession(session, false);
+        Instant queued = pending.get(session.getId());
+        if (queued != null && queued.isAfter(tracking.lastAccessedTime)) {
+            tracking.lastAccessedTime = queued;
+            tracking.storedLastAccessedTime = queued;
+        }
+        return tracking;
+    }
+
+    /**
+     * A session of the JDBC repository that keeps the last access time to itself and remembers whether anything
+     * else changed.
+     */
+    public static final class TouchTrackingSession implements Session {
+
+        private final Session delegate;
+        private Instant lastAccessedTime;
+        private Instant storedLastAccessedTime;
+        private boolean changed;
+
+        private TouchTrackingSession(Session delegate, boolean changed) {
+            this.delegate = delegate;
+            this.lastAccessedTime = delegate.getLastAccessedTime();
+            this.storedLastAccessedTime = lastAccessedTime;
+            this.changed = changed;
+        }
+
+        @Override
+        public String getId() {
+            return delegate.getId();
+        }
+
+        @Override
+        public String changeSessionId() {
+            changed = true;
+            return delegate.changeSessionId();
+        }
+
+        @Override
+        public <T> @Nullable T getAttribute(String attributeName) {
+            return delegate.getAttribute(attributeName);
+        }
+
+        @Override
+        public Set<String> getAttributeNames() {
+            return delegate.getAttributeNames();
+        }
+
+        @Override
+        public void setAttribute(String attributeName, @Nullable Object attributeValue) {
+            changed = true;
+            delegate.setAttribute(attributeName, attributeValue);
+        }
+
+        @Override
+        public void removeAttribute(String attributeName) {
+            changed = true;
+            delegate.removeAttribute(attributeName);
+        }
+
+        @Override
+        public Instant getCreationTime() {
+            return delegate.getCreationTime();
+        }
+
+        @Override
+        public void setLastAccessedTime(Instant lastAccessedTime) {
+            this.lastAccessedTime = lastAccessedTime;
+        }
+
+        @Override
+        public Instant getLastAccessedTime() {
+            return lastAccessedTime;
+        }
+
+        @Override
+        public void setMaxInactiveInterval(Duration interval) {
+            changed = true;
+            delegate.setMaxInactiveInterval(interval);
+        }
+
+        @Override
+        public Duration getMaxInactiveInterval() {
+            return delegate.getMaxInactiveInterval();
+        }
+
+        @Override
+        public boolean isExpired() {
+            Duration maxInactiveInterval = getMaxInactiveInterval();
+            return !maxInactiveInterval.isNegative()
+                    && !lastAccessedTime.plus(maxInactiveInterval).isAfter(Instant.now());
+        }
+    }
+}
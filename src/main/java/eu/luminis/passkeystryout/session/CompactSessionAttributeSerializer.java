@@ -0,0 +1,91 @@
+package eu.luminis.passkeystryout.session;
+
+import org.jspecify.annotations.NullMarked;
+import org.springframework.core.convert.support.GenericConversionService;
+import org.springframework.core.serializer.DefaultDeserializer;
+import org.springframework.core.serializer.DefaultSerializer;
+import org.springframework.core.serializer.Deserializer;
+import org.springframework.core.serializer.Serializer;
+import org.springframework.core.serializer.support.DeserializingConverter;
+import org.springframework.core.serializer.support.SerializingConverter;
+import org.springframework.security.core.context.SecurityContextImpl;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Serialises session attributes for Spring Session. A {@link SecurityContextImpl} holding a password or passkey login
+ * is written with {@link AuthenticationCodec}, behind a marker byte and a format version; everything else, and any
+ * authentication the codec cannot restore exactly, is written with Java serialisation as before.
+ * <p>
+ * Java serialisation streams start with the bytes {@code AC ED}, so the marker tells the two apart and attributes
+ * that were stored before this serialiser was used can still be read.
+ */
+@NullMarked
+public class CompactSessionAttributeSerializer implements Serializer<Object>, Deserializer<Object> {
+
+    static final int MARKER = 0x50;
+    static final int VERSION = 1;
+
+    private static final int SECURITY_CONTEXT = 1;
+
+    private final Serializer<Object> fallbackSerializer = new DefaultSerializer();
+    private final Deserializer<Object> fallbackDeserializer;
+
+    public CompactSessionAttributeSerializer(ClassLoader classLoader) {
+        this.fallbackDeserializer = new DefaultDeserializer(classLoader);
+    }
+
+    /**
+     * A conversion service that stores session attributes with this serialiser, in the form Spring Session looks up
+     * under the bean name {@code springSessionConversionService}.
+     */
+    public static GenericConversionService conversionService(ClassLoader classLoader) {
+        CompactSessionAttributeSerializer serializer = new CompactSessionAttributeSerializer(classLoader);
+        GenericConversionService conversionService = new GenericConversionService();
+        conversionService.addConverter(Object.class, byte[].class, new SerializingConverter(serializer));
+        conversionService.addConverter(byte[].class, Object.class, new DeserializingConverter(serializer));
+        return conversionService;
+    }
+
+    @Override
+    public void serialize(Object value, OutputStream outputStream) throws IOException {
+        if (value.getClass() == SecurityContextImpl.class
+                && AuthenticationCodec.supports(((SecurityContextImpl) value).getAuthentication())) {
+            DataOutputStream out = new DataOutputStream(outputStream);
+            out.writeByte(MARKER);
+            out.writeByte(VERSION);
+            out.writeByte(SECURITY_CONTEXT);
+            AuthenticationCodec.write(((SecurityContextImpl) value).getAuthentication(), out);
+            out.flush();
+        } else {
+            fallbackSerializer.serialize(value, outputStream);
+        }
+    }
+
+    @Override
+    public Object deserialize(InputStream inputStream) throws IOException {
+        InputStream in = inputStream.markSupported() ? inputStream : new BufferedInputStream(inputStream);
+        in.mark(1);
+        int first = in.read();
+        if (first != MARKER) {
+            in.reset();
+            return fallbackDeserializer.deserialize(in);
+        }
+
+        DataInputStream data = new DataInputStream(in);
+        int version = data.readUnsignedByte();
+        if (version != VERSION) {
+            throw new IOException("Unsupported session attribute format version " + version);
+        }
+        int type = data.readUnsignedByte();
+        if (type != SECURITY_CONTEXT) {
+            throw new IOException("Unknown session attribute type " + type);
+        }
+        return new SecurityContextImpl(AuthenticationCodec.read(data));
+    }
+}
@@ -0,0 +1,31 @@
+package eu.luminis.passkeystryout.session;
+
+import org.jspecify.annotations.NullMarked;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.web.webauthn.api.Bytes;
+
+import java.security.SecureRandom;
+import java.time.Duration;
+import java.time.Instant;
+
+/**
+ * An authentication as carried in a session cookie. The random id is what a logout revokes; the token itself cannot
+ * be withdrawn from the browser.
+ */
+@NullMarked
+public record SessionToken(Bytes id, Instant issuedAt, Instant expiresAt, Authentication authentication) {
+
+    static final int ID_BYTES = 16;
+
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    public static SessionToken issue(Authentication authentication, Instant now, Duration timeToLive) {
+        byte[] id = new byte[ID_BYTES];
+        RANDOM.nextBytes(id);
+        return new SessionToken(new Bytes(id), now, now.plus(timeToLive), authentication);
+    }
+
+    public boolean isExpired(Instant now) {
+        return !expiresAt.isAfter(now);
+    }
+}
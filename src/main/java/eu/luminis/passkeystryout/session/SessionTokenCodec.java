@@ -0,0 +1,166 @@
+package eu.luminis.passkeystryout.session;
+
+import org.jspecify.annotations.NullMarked;
+import org.jspecify.annotations.Nullable;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.web.webauthn.api.Bytes;
+import org.springframework.security.web.webauthn.api.PublicKeyCredentialUserEntity;
+
+import javax.crypto.Cipher;
+import javax.crypto.Mac;
+import javax.crypto.spec.GCMParameterSpec;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Base64;
+
+/**
+ * Turns an authenticated {@link Authentication} into the value of a session cookie and back. The principal is either
+ * the {@link UserDetails} of a password login or the {@link PublicKeyCredentialUserEntity} of a passkey login, written
+ * by {@link AuthenticationCodec}. Passwords are never part of a token.
+ * <p>
+ * A token is a version byte, the id of the key, a flags byte, the payload and an HMAC-SHA256 over all of these, in
+ * Base64url. With encryption on, the payload is AES-GCM encrypted under a key of its own before the MAC is computed,
+ * so the browser cannot read the username or authorities either. Any token that does not verify decodes to
+ * {@code null}.
+ */
+@NullMarked
+public class SessionTokenCodec {
+
+    static final int VERSION = 2;
+
+    private static final int FLAG_ENCRYPTED = 1;
+    private static final int MAC_BYTES = 32;
+    private static final int IV_BYTES = 12;
+    private static final int GCM_TAG_BITS = 128;
+    private static final int HEADER_BYTES = 3;
+
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    private final SessionTokenKeys keys;
+    private final boolean encrypt;
+
+    public SessionTokenCodec(SessionTokenKeys keys, boolean encrypt) {
+        this.keys = keys;
+        this.encrypt = encrypt;
+    }
+
+    /**
+     * @throws IllegalArgumentException if the principal is neither {@link UserDetails} nor
+     *                                  {@link PublicKeyCredentialUserEntity}
+     */
+    public String encode(SessionToken token) {
+        SessionTokenKeys.Key key = keys.current();
+        byte[] payload = writePayload(token);
+        ByteArrayOutputStream out = new ByteArrayOutputStream(HEADER_BYTES + IV_BYTES + payload.length + 64);
+        out.write(VERSION);
+        out.write(key.id());
+        out.write(encrypt ? FLAG_ENCRYPTED : 0);
+        if (encrypt) {
+            byte[] iv = new byte[IV_BYTES];
+            RANDOM.nextBytes(iv);
+            out.writeBytes(iv);
+            out.writeBytes(crypt(Cipher.ENCRYPT_MODE, key, iv, payload, 0, payload.length));
+        } else {
+            out.writeBytes(payload);
+        }
+        byte[] signed = out.toByteArray();
+        out.writeBytes(mac(key, signed, signed.length));
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(out.toByteArray());
+    }
+
+    /**
+     * Returns the token if it is well-formed and its MAC verifies with one of the keys. Whether it has expired or was
+     * revoked is up to the caller.
+     */
+    public @Nullable SessionToken decode(String value) {
+        byte[] bytes;
+        try {
+            bytes = Base64.getUrlDecoder().decode(value);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+        if (bytes.length < HEADER_BYTES + MAC_BYTES || bytes[0] != VERSION) {
+            return null;
+        }
+        SessionTokenKeys.Key key = keys.find(bytes[1] & 0xFF);
+        if (key == null) {
+            return null;
+        }
+        int signedLength = bytes.length - MAC_BYTES;
+        byte[] expectedMac = mac(key, bytes, signedLength);
+        if (!MessageDigest.isEqual(expectedMac, Arrays.copyOfRange(bytes, signedLength, bytes.length))) {
+            return null;
+        }
+
+        try {
+            byte[] payload;
+            if ((bytes[2] & FLAG_ENCRYPTED) != 0) {
+                byte[] iv = Arrays.copyOfRange(bytes, HEADER_BYTES, HEADER_BYTES + IV_BYTES);
+                int offset = HEADER_BYTES + IV_BYTES;
+                payload = crypt(Cipher.DECRYPT_MODE, key, iv, bytes, offset, signedLength - offset);
+            } else {
+                payload = Arrays.copyOfRange(bytes, HEADER_BYTES, signedLength);
+            }
+            return readPayload(payload);
+        } catch (IOException | IllegalArgumentException | IllegalStateException e) {
+            return null;
+        }
+    }
+
+    private static byte[] writePayload(SessionToken token) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(128);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.write(token.id().getBytes());
+            out.writeLong(token.issuedAt().toEpochMilli());
+            out.writeLong(token.expiresAt().toEpochMilli());
+            AuthenticationCodec.write(token.authentication(), out);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static SessionToken readPayload(byte[] payload) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+        Bytes id = new Bytes(in.readNBytes(SessionToken.ID_BYTES));
+        Instant issuedAt = Instant.ofEpochMilli(in.readLong());
+        Instant expiresAt = Instant.ofEpochMilli(in.readLong());
+        Authentication authentication = AuthenticationCodec.read(in);
+        if (in.available() != 0) {
+            throw new IOException("Unexpected bytes after the session token payload");
+        }
+        return new SessionToken(id, issuedAt, expiresAt, authentication);
+    }
+
+    private static byte[] mac(SessionTokenKeys.Key key, byte[] bytes, int length) {
+        try {
+            Mac mac = Mac.getInstance("HmacSHA256");
+            mac.init(key.macKey());
+            mac.update(bytes, 0, length);
+            return mac.doFinal();
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("HmacSHA256 is not available", e);
+        }
+    }
+
+    private static byte[] crypt(int mode, SessionTokenKeys.Key key, byte[] iv, byte[] input, int offset, int length) {
+        try {
+            Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
+            cipher.init(mode, key.encryptionKey(), new GCMParameterSpec(GCM_TAG_BITS, iv));
+            return cipher.doFinal(input, offset, length);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Session token could not be " + (mode == Cipher.ENCRYPT_MODE
+                    ? "encrypted" : "decrypted"), e);
+        }
+    }
+}
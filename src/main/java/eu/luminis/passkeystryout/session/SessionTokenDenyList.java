@@ -0,0 +1,79 @@
+package eu.luminis.passkeystryout.session;
+
+import org.jspecify.annotations.NullMarked;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcOperations;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.security.web.webauthn.api.Bytes;
+
+import java.sql.Timestamp;
+import java.time.Clock;
+import java.time.Instant;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The ids of session tokens that were revoked before they expired, kept in memory so that checking a request costs
+ * no query. Revocations are written to the {@code revoked_session_tokens} table as well, and {@link #refresh()}
+ * reloads that table, so a logout on one node is honoured by the others within one refresh interval. A new list is
+ * empty until it is refreshed for the first time.
+ * <p>
+ * An entry is only needed until its token expires, so the list stays as small as the number of logouts within one
+ * token lifetime.
+ */
+@NullMarked
+public class SessionTokenDenyList {
+
+    private static final String INSERT_SQL = "INSERT INTO revoked_session_tokens (token_id, expires_at) VALUES (?, ?)";
+    private static final String SELECT_SQL =
+            "SELECT token_id, expires_at FROM revoked_session_tokens WHERE expires_at > ?";
+    private static final String DELETE_EXPIRED_SQL = "DELETE FROM revoked_session_tokens WHERE expires_at <= ?";
+
+    private final JdbcOperations jdbc;
+    private final Clock clock;
+    private volatile Map<Bytes, Instant> revoked = new ConcurrentHashMap<>();
+
+    public SessionTokenDenyList(JdbcOperations jdbc, Clock clock) {
+        this.jdbc = jdbc;
+        this.clock = clock;
+    }
+
+    public void revoke(SessionToken token) {
+        revoked.put(token.id(), token.expiresAt());
+        try {
+            jdbc.update(INSERT_SQL, token.id().getBytes(), Timestamp.from(token.expiresAt()));
+        } catch (DuplicateKeyException e) {
+            // Already revoked, by this node or another one
+        }
+    }
+
+    public boolean isRevoked(SessionToken token) {
+        return revoked.containsKey(token.id());
+    }
+
+    int size() {
+        return revoked.size();
+    }
+
+    /**
+     * Deletes the revocations of expired tokens and reloads the others, including those made by other nodes.
+     */
+    @Scheduled(fixedDelayString = "${passkeys.session.cookie.deny-list-refresh-interval}")
+    public void refresh() {
+        Timestamp now = Timestamp.from(clock.instant());
+        jdbc.update(DELETE_EXPIRED_SQL, now);
+        Map<Bytes, Instant> reloaded = new ConcurrentHashMap<>();
+        jdbc.query(SELECT_SQL, rs -> {
+            reloaded.put(new Bytes(rs.getBytes("token_id")), rs.getTimestamp("expires_at").toInstant());
+        }, now);
+        // Keep what this node revoked while the table was read; a revocation that races the swap is in the table
+        // and comes back with the next refresh
+        Instant current = clock.instant();
+        revoked.forEach((id, expiresAt) -> {
+            if (expiresAt.isAfter(current)) {
+                reloaded.putIfAbsent(id, expiresAt);
+            }
+        });
+        revoked = reloaded;
+    }
+}
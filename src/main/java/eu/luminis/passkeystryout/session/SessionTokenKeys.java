@@ -0,0 +1,105 @@
+package eu.luminis.passkeystryout.session;
+
+import org.jspecify.annotations.NullMarked;
+import org.jspecify.annotations.Nullable;
+
+import javax.crypto.Mac;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+
+/**
+ * The keys that session tokens are signed and encrypted with. New tokens use the first key; tokens made with any of
+ * the others are still accepted, so a key is rotated by putting a new one in front and removing the old one once
+ * the longest session made with it has expired.
+ * <p>
+ * Every configured secret is of the form {@code <id>:<Base64url secret>}, with an id from 0 to 255 that is written
+ * into each token, and at least 32 bytes of secret. Separate MAC and encryption keys are derived from it.
+ */
+@NullMarked
+public final class SessionTokenKeys {
+
+    private static final int MINIMUM_SECRET_BYTES = 32;
+
+    private final List<Key> keys;
+
+    private SessionTokenKeys(List<Key> keys) {
+        if (keys.isEmpty()) {
+            throw new IllegalArgumentException("At least one session token key is required");
+        }
+        this.keys = List.copyOf(keys);
+    }
+
+    /**
+     * Parses keys in the {@code <id>:<Base64url secret>} form, newest first.
+     */
+    public static SessionTokenKeys parse(List<String> secrets) {
+        List<Key> keys = new ArrayList<>();
+        for (String secret : secrets) {
+            int separator = secret.indexOf(':');
+            if (separator < 1) {
+                throw new IllegalArgumentException("Session token keys must look like <id>:<Base64url secret>");
+            }
+            int id = Integer.parseInt(secret.substring(0, separator).trim());
+            if (id < 0 || id > 255) {
+                throw new IllegalArgumentException("Session token key id " + id + " is not between 0 and 255");
+            }
+            if (keys.stream().anyMatch(key -> key.id() == id)) {
+                throw new IllegalArgumentException("Session token key id " + id + " is used twice");
+            }
+            byte[] bytes = Base64.getUrlDecoder().decode(secret.substring(separator + 1).trim());
+            if (bytes.length < MINIMUM_SECRET_BYTES) {
+                throw new IllegalArgumentException("Session token key " + id + " is shorter than "
+                        + MINIMUM_SECRET_BYTES + " bytes");
+            }
+            keys.add(Key.derive(id, bytes));
+        }
+        return new SessionTokenKeys(keys);
+    }
+
+    /**
+     * A single random key. Tokens signed with it are only accepted by this JVM and do not survive a restart.
+     */
+    public static SessionTokenKeys random() {
+        byte[] secret = new byte[MINIMUM_SECRET_BYTES];
+        new SecureRandom().nextBytes(secret);
+        return new SessionTokenKeys(List.of(Key.derive(0, secret)));
+    }
+
+    Key current() {
+        return keys.getFirst();
+    }
+
+    @Nullable Key find(int id) {
+        for (Key key : keys) {
+            if (key.id() == id) {
+                return key;
+            }
+        }
+        return null;
+    }
+
+    record Key(int id, SecretKey macKey, SecretKey encryptionKey) {
+
+        static Key derive(int id, byte[] secret) {
+            return new Key(id,
+                    new SecretKeySpec(hmac(secret, "passkeys session token mac"), "HmacSHA256"),
+                    new SecretKeySpec(hmac(secret, "passkeys session token encryption"), "AES"));
+        }
+
+        private static byte[] hmac(byte[] secret, String label) {
+            try {
+                Mac mac = Mac.getInstance("HmacSHA256");
+                mac.init(new SecretKeySpec(secret, "HmacSHA256"));
+                return mac.doFinal(label.getBytes(StandardCharsets.UTF_8));
+            } catch (GeneralSecurityException e) {
+                throw new IllegalStateException("HmacSHA256 is not available", e);
+            }
+        }
+    }
+}
@@ -0,0 +1,161 @@
+package eu.luminis.passkeystryout.session;
+
+import jakarta.servlet.http.Cookie;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.jspecify.annotations.NullMarked;
+import org.jspecify.annotations.Nullable;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.ResponseCookie;
+import org.springframework.security.authentication.AuthenticationTrustResolver;
+import org.springframework.security.authentication.AuthenticationTrustResolverImpl;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.DeferredSecurityContext;
+import org.springframework.security.core.context.SecurityContext;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.core.context.SecurityContextHolderStrategy;
+import org.springframework.security.web.context.HttpRequestResponseHolder;
+import org.springframework.security.web.context.SecurityContextRepository;
+
+import java.time.Clock;
+import java.time.Duration;
+
+/**
+ * Keeps the security context in a signed, optionally encrypted, cookie instead of the HTTP session, so a logged-in
+ * user costs no server memory and any node that has the keys can serve any request.
+ * <p>
+ * A login writes a new token that is valid for the configured time to live; it is not extended by later requests.
+ * Saving an empty or anonymous context, which is what logging out does, revokes the token on the
+ * {@link SessionTokenDenyList} and clears the cookie. Tokens that do not verify, have expired or were revoked load
+ * as an empty context.
+ */
+@NullMarked
+public class SignedCookieSecurityContextRepository implements SecurityContextRepository {
+
+    public static final String COOKIE_NAME = "PASSKEYS_SESSION";
+
+    private static final String LOADED_TOKEN_ATTRIBUTE = SignedCookieSecurityContextRepository.class.getName()
+            + ".TOKEN";
+
+    private final SessionTokenCodec codec;
+    private final SessionTokenDenyList denyList;
+    private final Duration timeToLive;
+    private final Clock clock;
+    private final AuthenticationTrustResolver trustResolver = new AuthenticationTrustResolverImpl();
+    private final SecurityContextHolderStrategy contextHolderStrategy =
+            SecurityContextHolder.getContextHolderStrategy();
+
+    public SignedCookieSecurityContextRepository(SessionTokenCodec codec, SessionTokenDenyList denyList,
+                                                 Duration timeToLive, Clock clock) {
+        this.codec = codec;
+        this.denyList = denyList;
+        this.timeToLive = timeToLive;
+        this.clock = clock;
+    }
+
+    @Override
+    @Deprecated
+    public SecurityContext loadContext(HttpRequestResponseHolder requestResponseHolder) {
+        return loadDeferredContext(requestResponseHolder.getRequest()).get();
+    }
+
+    @Override
+    public DeferredSecurityContext loadDeferredContext(HttpServletRequest request) {
+        return new DeferredSecurityContext() {
+
+            private @Nullable SecurityContext context;
+            private boolean generated;
+
+            @Override
+            public SecurityContext get() {
+                if (context == null) {
+                    SessionToken token = readToken(request);
+                    generated = token == null;
+                    context = contextHolderStrategy.createEmptyContext();
+                    if (token != null) {
+                        context.setAuthentication(token.authentication());
+                    }
+                }
+                return context;
+            }
+
+            @Override
+            public boolean isGenerated() {
+                get();
+                return generated;
+            }
+        };
+    }
+
+    @Override
+    public void saveContext(SecurityContext context, HttpServletRequest request, HttpServletResponse response) {
+        Authentication authentication = context.getAuthentication();
+        if (authentication == null || trustResolver.isAnonymous(authentication)) {
+            SessionToken current = readToken(request);
+            if (current != null) {
+                denyList.revoke(current);
+            }
+            request.removeAttribute(LOADED_TOKEN_ATTRIBUTE);
+            if (readCookie(request) != null) {
+                addCookie(request, response, "", Duration.ZERO);
+            }
+            return;
+        }
+
+        SessionToken token = SessionToken.issue(authentication, clock.instant(), timeToLive);
+        request.setAttribute(LOADED_TOKEN_ATTRIBUTE, token);
+        addCookie(request, response, codec.encode(token), timeToLive);
+    }
+
+    @Override
+    public boolean containsContext(HttpServletRequest request) {
+        return readToken(request) != null;
+    }
+
+    /**
+     * Returns the valid token of this request, verifying the cookie only once per request.
+     */
+    private @Nullable SessionToken readToken(HttpServletRequest request) {
+        if (request.getAttribute(LOADED_TOKEN_ATTRIBUTE) instanceof SessionToken loaded) {
+            return loaded.isExpired(clock.instant()) ? null : loaded;
+        }
+        String value = readCookie(request);
+        if (value == null) {
+            return null;
+        }
+        SessionToken token = codec.decode(value);
+        if (token == null || token.isExpired(clock.instant()) || denyList.isRevoked(token)) {
+            return null;
+        }
+        request.setAttribute(LOADED_TOKEN_ATTRIBUTE, token);
+        return token;
+    }
+
+    private static @Nullable String readCookie(HttpServletRequest request) {
+        Cookie[] cookies = request.getCookies();
+        if (cookies == null) {
+            return null;
+        }
+        for (Cookie cookie : cookies) {
+            if (COOKIE_NAME.equals(cookie.getName()) && !cookie.getValue().isEmpty()) {
+                return cookie.getValue();
+            }
+        }
+        return null;
+    }
+
+    private static void addCookie(HttpServletRequest request, HttpServletResponse response, String value,
+                                  Duration maxAge) {
+        String contextPath = request.getContextPath();
+        ResponseCookie cookie = ResponseCookie.from(COOKIE_NAME, value)
+                .path(contextPath.isEmpty() ? "/" : contextPath)
+                .maxAge(maxAge)
+                .httpOnly(true)
+                .secure(request.isSecure())
+                // Lax rather than Strict, so following a link to the application from elsewhere keeps the user
+                // logged in; state-changing requests are still protected by the CSRF token
+                .sameSite("Lax")
+                .build();
+        response.addHeader(HttpHeaders.SET_COOKIE, cookie.toString());
+    }
+}
@@ -0,0 +1,121 @@
+package eu.luminis.passkeystryout.transfer;
+
+import eu.luminis.passkeystryout.passkey.JdbcCredentialRecordRepository;
+import org.jspecify.annotations.NullMarked;
+import org.jspecify.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.JdbcOperations;
+import org.springframework.security.web.webauthn.api.Bytes;
+
+import java.io.IOException;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes every account in {@code users} with its passkeys. Users are read in chunks ordered by id, each chunk
+ * starting after the last id of the previous one, so the database never has to skip rows and only one chunk is held
+ * in memory. The passkeys of a chunk are read in one query.
+ */
+@NullMarked
+public class AccountExporter {
+
+    private static final Logger log = LoggerFactory.getLogger(AccountExporter.class);
+
+    static final String SELECT_USERS_SQL = """
+            SELECT id, username, display_name, password, enabled, user_handle
+            FROM users
+            WHERE id > ?
+            ORDER BY id
+            FETCH FIRST ? ROWS ONLY
+            """;
+
+    static final String SELECT_CREDENTIALS_SQL = "SELECT " + JdbcCredentialRecordRepository.COLUMNS + """
+
+            FROM webauthn_credentials
+            WHERE user_entity_user_id IN (SELECT user_handle FROM users WHERE id > ? AND id <= ?)
+            ORDER BY user_entity_user_id, created
+            """;
+
+    private final JdbcOperations jdbc;
+    private final int chunkSize;
+
+    public AccountExporter(JdbcOperations jdbc, int chunkSize) {
+        if (chunkSize < 1) {
+            throw new IllegalArgumentException("chunkSize must be positive");
+        }
+        this.jdbc = jdbc;
+        this.chunkSize = chunkSize;
+    }
+
+    public TransferResult exportAccounts(AccountFormat.AccountWriter writer) throws IOException {
+        long start = System.nanoTime();
+        long accounts = 0;
+        long credentials = 0;
+        long lastId = 0;
+        List<UserRow> users;
+        do {
+            users = jdbc.query(SELECT_USERS_SQL, (rs, rowNum) -> new UserRow(
+                    rs.getLong("id"),
+                    rs.getString("username"),
+                    rs.getString("display_name"),
+                    rs.getString("password"),
+                    rs.getBoolean("enabled"),
+                    rs.getString("user_handle")), lastId, chunkSize);
+            if (users.isEmpty()) {
+                break;
+            }
+            long firstExcluded = lastId;
+            lastId = users.getLast().id();
+            Map<String, List<TransferredAccount.Credential>> credentialsByUser = credentials(firstExcluded, lastId);
+            for (UserRow user : users) {
+                List<TransferredAccount.Credential> userCredentials = user.userHandle() == null ? List.of()
+                        : credentialsByUser.getOrDefault(user.userHandle(), List.of());
+                writer.write(new TransferredAccount(user.username(), user.displayName(), user.password(),
+                        user.enabled(), user.userHandle(), userCredentials));
+                credentials += userCredentials.size();
+            }
+            accounts += users.size();
+        } while (users.size() == chunkSize);
+        writer.flush();
+        TransferResult result = new TransferResult(accounts, credentials, Duration.ofNanos(System.nanoTime() - start));
+        log.info("Exported {} accounts and {} passkeys in {} ms, {} rows/s", result.accounts(), result.credentials(),
+                result.elapsed().toMillis(), Math.round(result.rowsPerSecond()));
+        return result;
+    }
+
+    private Map<String, List<TransferredAccount.Credential>> credentials(long afterId, long toId) {
+        Map<String, List<TransferredAccount.Credential>> credentials = new HashMap<>();
+        jdbc.query(SELECT_CREDENTIALS_SQL, rs -> {
+            Timestamp lastUsed = rs.getTimestamp("last_used");
+            credentials.computeIfAbsent(rs.getString("user_entity_user_id"), userHandle -> new ArrayList<>())
+                    .add(new TransferredAccount.Credential(
+                            new Bytes(rs.getBytes("credential_id")),
+                            new Bytes(rs.getBytes("public_key")),
+                            rs.getLong("signature_count"),
+                            rs.getString("public_key_credential_type"),
+                            rs.getTimestamp("created").toInstant(),
+                            lastUsed == null ? null : lastUsed.toInstant(),
+                            rs.getString("label"),
+                            rs.getBoolean("backup_eligible"),
+                            rs.getBoolean("backup_state"),
+                            rs.getBoolean("uv_initialized"),
+                            rs.getString("authenticator_transports"),
+                            bytes(rs.getBytes("attestation_object")),
+                            bytes(rs.getBytes("attestation_client_data_json"))));
+        }, afterId, toId);
+        return credentials;
+    }
+
+    private static @Nullable Bytes bytes(byte @Nullable [] value) {
+        return value == null ? null : new Bytes(value);
+    }
+
+    private record UserRow(long id, String username, String displayName, String password, boolean enabled,
+                           @Nullable String userHandle) {
+    }
+}
@@ -0,0 +1,47 @@
+package eu.luminis.passkeystryout.transfer;
+
+import org.jspecify.annotations.NullMarked;
+import org.jspecify.annotations.Nullable;
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.Locale;
+
+/**
+ * A file format for accounts. Readers and writers handle one account at a time, so a file of any size is read and
+ * written in constant memory.
+ */
+@NullMarked
+public interface AccountFormat {
+
+    AccountReader reader(Reader reader);
+
+    AccountWriter writer(Writer writer);
+
+    /**
+     * The format for a name, {@code ndjson} or {@code csv}.
+     */
+    static AccountFormat named(String name) {
+        return switch (name.toLowerCase(Locale.ROOT)) {
+            case "ndjson" -> new NdjsonAccountFormat();
+            case "csv" -> new CsvAccountFormat();
+            default -> throw new IllegalArgumentException("Unknown account format " + name + ", use ndjson or csv");
+        };
+    }
+
+    interface AccountReader extends Closeable {
+
+        /**
+         * The next account, or {@code null} at the end of the input.
+         */
+        @Nullable TransferredAccount read() throws IOException;
+    }
+
+    interface AccountWriter extends Closeable, Flushable {
+
+        void write(TransferredAccount account) throws IOException;
+    }
+}
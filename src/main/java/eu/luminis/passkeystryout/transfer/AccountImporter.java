@@ -0,0 +1,160 @@
+package eu.luminis.passkeystryout.transfer;
+
+import eu.luminis.passkeystryout.passkey.JdbcCredentialRecordRepository;
+import org.jspecify.annotations.NullMarked;
+import org.jspecify.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.JdbcOperations;
+import org.springframework.security.web.webauthn.api.Bytes;
+import org.springframework.transaction.support.TransactionOperations;
+
+import java.io.IOException;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Inserts accounts into {@code users} and {@code webauthn_credentials}. Accounts are read and inserted in chunks;
+ * every chunk is one transaction with a JDBC batch per table, which also moves the named checkpoint past the chunk.
+ * An import that is interrupted therefore resumes after the last committed chunk when it is run again with the same
+ * checkpoint, and only the current chunk is held in memory.
+ */
+@NullMarked
+public class AccountImporter {
+
+    private static final Logger log = LoggerFactory.getLogger(AccountImporter.class);
+
+    private static final Duration PROGRESS_INTERVAL = Duration.ofSeconds(10);
+
+    static final String INSERT_USER_SQL =
+            "INSERT INTO users (username, display_name, password, enabled, user_handle) VALUES (?, ?, ?, ?, ?)";
+
+    static final String SELECT_CHECKPOINT_SQL = "SELECT position FROM account_transfer_checkpoints WHERE name = ?";
+
+    static final String UPDATE_CHECKPOINT_SQL =
+            "UPDATE account_transfer_checkpoints SET position = ?, updated_at = ? WHERE name = ?";
+
+    static final String INSERT_CHECKPOINT_SQL =
+            "INSERT INTO account_transfer_checkpoints (position, updated_at, name) VALUES (?, ?, ?)";
+
+    private final JdbcOperations jdbc;
+    private final TransactionOperations transactions;
+    private final int chunkSize;
+
+    public AccountImporter(JdbcOperations jdbc, TransactionOperations transactions, int chunkSize) {
+        if (chunkSize < 1) {
+            throw new IllegalArgumentException("chunkSize must be positive");
+        }
+        this.jdbc = jdbc;
+        this.transactions = transactions;
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * Imports every account of the reader that is not yet behind the checkpoint.
+     *
+     * @param checkpoint the name under which the number of imported accounts is kept; use one name per input file
+     */
+    public TransferResult importAccounts(AccountFormat.AccountReader reader, String checkpoint) throws IOException {
+        long start = System.nanoTime();
+        long position = position(checkpoint);
+        for (long skipped = 0; skipped < position; skipped++) {
+            if (reader.read() == null) {
+                throw new IOException("Checkpoint " + checkpoint + " is at account " + position
+                        + ", but the input has only " + skipped);
+            }
+        }
+        if (position > 0) {
+            log.info("Resuming import {} after {} accounts", checkpoint, position);
+        }
+
+        long accounts = 0;
+        long credentials = 0;
+        long lastProgress = start;
+        List<TransferredAccount> chunk = new ArrayList<>(chunkSize);
+        while (true) {
+            chunk.clear();
+            TransferredAccount account;
+            while (chunk.size() < chunkSize && (account = reader.read()) != null) {
+                chunk.add(account);
+            }
+            if (chunk.isEmpty()) {
+                break;
+            }
+            position += chunk.size();
+            credentials += insertChunk(chunk, checkpoint, position);
+            accounts += chunk.size();
+            long now = System.nanoTime();
+            if (now - lastProgress >= PROGRESS_INTERVAL.toNanos()) {
+                log.info("Imported {} accounts and {} passkeys, {} rows/s", accounts, credentials,
+                        Math.round(TransferResult.rowsPerSecond(accounts + credentials,
+                                Duration.ofNanos(now - start))));
+                lastProgress = now;
+            }
+        }
+        TransferResult result = new TransferResult(accounts, credentials, Duration.ofNanos(System.nanoTime() - start));
+        log.info("Imported {} accounts and {} passkeys in {} ms, {} rows/s", result.accounts(), result.credentials(),
+                result.elapsed().toMillis(), Math.round(result.rowsPerSecond()));
+        return result;
+    }
+
+    private long insertChunk(List<TransferredAccount> chunk, String checkpoint, long position) {
+        Integer inserted = transactions.execute(status -> {
+            List<Object[]> users = new ArrayList<>(chunk.size());
+            List<Object[]> credentials = new ArrayList<>();
+            for (TransferredAccount account : chunk) {
+                users.add(new Object[] {account.username(), account.displayName(), account.password(),
+                        account.enabled(), account.userHandle()});
+                for (TransferredAccount.Credential credential : account.credentials()) {
+                    credentials.add(insertArguments(account, credential));
+                }
+            }
+            jdbc.batchUpdate(INSERT_USER_SQL, users);
+            if (!credentials.isEmpty()) {
+                jdbc.batchUpdate(JdbcCredentialRecordRepository.INSERT_SQL, credentials);
+            }
+            Timestamp now = Timestamp.from(Instant.now());
+            if (jdbc.update(UPDATE_CHECKPOINT_SQL, position, now, checkpoint) == 0) {
+                jdbc.update(INSERT_CHECKPOINT_SQL, position, now, checkpoint);
+            }
+            return credentials.size();
+        });
+        return inserted == null ? 0 : inserted;
+    }
+
+    private long position(String checkpoint) {
+        List<Long> positions = jdbc.queryForList(SELECT_CHECKPOINT_SQL, Long.class, checkpoint);
+        return positions.isEmpty() ? 0 : positions.getFirst();
+    }
+
+    /**
+     * The arguments of {@link JdbcCredentialRecordRepository#INSERT_SQL}, in its column order. A passkey that was never
+     * used gets its creation time as last use, as passkeys registered through the application do.
+     */
+    private static Object[] insertArguments(TransferredAccount account, TransferredAccount.Credential credential) {
+        Instant lastUsed = credential.lastUsed() == null ? credential.created() : credential.lastUsed();
+        return new Object[] {
+                credential.credentialId().getBytes(),
+                account.userHandle(),
+                credential.publicKey().getBytes(),
+                credential.signatureCount(),
+                credential.uvInitialized(),
+                credential.backupEligible(),
+                credential.transports(),
+                credential.type(),
+                credential.backupState(),
+                bytes(credential.attestationObject()),
+                bytes(credential.attestationClientDataJson()),
+                Timestamp.from(credential.created()),
+                Timestamp.from(lastUsed),
+                credential.label()
+        };
+    }
+
+    private static byte @Nullable [] bytes(@Nullable Bytes value) {
+        return value == null ? null : value.getBytes();
+    }
+}
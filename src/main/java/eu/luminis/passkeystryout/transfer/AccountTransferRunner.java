@@ -0,0 +1,61 @@
+package eu.luminis.passkeystryout.transfer;
+
+import org.jspecify.annotations.NullMarked;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Runs one import or export of a file once the application has started, and closes the application when it is done.
+ */
+@NullMarked
+public class AccountTransferRunner implements ApplicationRunner {
+
+    public enum Mode { IMPORT, EXPORT }
+
+    private final Mode mode;
+    private final Path file;
+    private final AccountFormat format;
+    private final String checkpoint;
+    private final AccountImporter importer;
+    private final AccountExporter exporter;
+    private final ConfigurableApplicationContext context;
+
+    public AccountTransferRunner(Mode mode, Path file, AccountFormat format, String checkpoint,
+                                 AccountImporter importer, AccountExporter exporter,
+                                 ConfigurableApplicationContext context) {
+        this.mode = mode;
+        this.file = file;
+        this.format = format;
+        this.checkpoint = checkpoint;
+        this.importer = importer;
+        this.exporter = exporter;
+        this.context = context;
+    }
+
+    @Override
+    public void run(ApplicationArguments args) throws IOException {
+        switch (mode) {
+            case IMPORT -> {
+                try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8);
+                     AccountFormat.AccountReader accounts = format.reader(reader)) {
+                    importer.importAccounts(accounts, checkpoint);
+                }
+            }
+            case EXPORT -> {
+                try (Writer writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8);
+                     AccountFormat.AccountWriter accounts = format.writer(writer)) {
+                    exporter.exportAccounts(accounts);
+                }
+            }
+        }
+        context.close();
+    }
+}
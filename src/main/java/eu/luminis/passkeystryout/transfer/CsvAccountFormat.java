@@ -0,0 +1,243 @@
+package eu.luminis.passkeystryout.transfer;
+
+import org.jspecify.annotations.NullMarked;
+import org.jspecify.annotations.Nullable;
+import org.springframework.security.web.webauthn.api.Bytes;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * RFC 4180 CSV with a header line and one row per passkey. The account columns are repeated on every row of its
+ * passkeys; an account without passkeys has one row with empty passkey columns. The rows of an account must be
+ * consecutive. Binary values are Base64url, times are ISO-8601, and an empty field is a missing value.
+ */
+@NullMarked
+public class CsvAccountFormat implements AccountFormat {
+
+    static final List<String> HEADER = List.of("username", "display_name", "password", "enabled", "user_handle",
+            "credential_id", "public_key", "signature_count", "type", "created", "last_used", "label",
+            "backup_eligible", "backup_state", "uv_initialized", "transports", "attestation_object",
+            "attestation_client_data_json");
+
+    private static final int CREDENTIAL_ID = 5;
+
+    @Override
+    public AccountReader reader(Reader reader) {
+        BufferedReader input = reader instanceof BufferedReader buffered ? buffered : new BufferedReader(reader);
+        return new AccountReader() {
+
+            private long rowNumber;
+            private boolean headerRead;
+            private @Nullable List<String> pending;
+
+            @Override
+            public @Nullable TransferredAccount read() throws IOException {
+                if (!headerRead) {
+                    List<String> header = readRow();
+                    if (header == null) {
+                        return null;
+                    }
+                    if (!header.equals(HEADER)) {
+                        throw new IOException("Unexpected CSV header " + header + ", expected " + HEADER);
+                    }
+                    headerRead = true;
+                }
+                List<String> first = pending != null ? pending : readRow();
+                pending = null;
+                if (first == null) {
+                    return null;
+                }
+                try {
+                    List<TransferredAccount.Credential> credentials = new ArrayList<>();
+                    List<String> row = first;
+                    while (row != null && row.get(0).equals(first.get(0))) {
+                        if (!row.get(CREDENTIAL_ID).isEmpty()) {
+                            credentials.add(credential(row));
+                        }
+                        row = readRow();
+                    }
+                    pending = row;
+                    return new TransferredAccount(first.get(0), orDefault(first.get(1), first.get(0)),
+                            first.get(2), first.get(3).isEmpty() || Boolean.parseBoolean(first.get(3)),
+                            emptyToNull(first.get(4)), credentials);
+                } catch (IllegalArgumentException | java.time.format.DateTimeParseException e) {
+                    throw new IOException("Invalid account before row " + rowNumber + ": " + e.getMessage(), e);
+                }
+            }
+
+            @Override
+            public void close() throws IOException {
+                input.close();
+            }
+
+            private @Nullable List<String> readRow() throws IOException {
+                List<String> row = parseRow(input);
+                if (row == null) {
+                    return null;
+                }
+                rowNumber++;
+                if (row.size() != HEADER.size()) {
+                    throw new IOException("Row " + rowNumber + " has " + row.size() + " fields, expected "
+                            + HEADER.size());
+                }
+                return row;
+            }
+        };
+    }
+
+    @Override
+    public AccountWriter writer(Writer writer) {
+        return new AccountWriter() {
+
+            private boolean headerWritten;
+
+            @Override
+            public void write(TransferredAccount account) throws IOException {
+                if (!headerWritten) {
+                    writeRow(writer, HEADER);
+                    headerWritten = true;
+                }
+                List<String> accountFields = List.of(account.username(), account.displayName(), account.password(),
+                        String.valueOf(account.enabled()), nullToEmpty(account.userHandle()));
+                if (account.credentials().isEmpty()) {
+                    List<String> row = new ArrayList<>(accountFields);
+                    while (row.size() < HEADER.size()) {
+                        row.add("");
+                    }
+                    writeRow(writer, row);
+                }
+                for (TransferredAccount.Credential credential : account.credentials()) {
+                    List<String> row = new ArrayList<>(accountFields);
+                    row.add(credential.credentialId().toBase64UrlString());
+                    row.add(credential.publicKey().toBase64UrlString());
+                    row.add(String.valueOf(credential.signatureCount()));
+                    row.add(credential.type());
+                    row.add(credential.created().toString());
+                    row.add(credential.lastUsed() == null ? "" : credential.lastUsed().toString());
+                    row.add(nullToEmpty(credential.label()));
+                    row.add(String.valueOf(credential.backupEligible()));
+                    row.add(String.valueOf(credential.backupState()));
+                    row.add(String.valueOf(credential.uvInitialized()));
+                    row.add(nullToEmpty(credential.transports()));
+                    row.add(credential.attestationObject() == null ? ""
+                            : credential.attestationObject().toBase64UrlString());
+                    row.add(credential.attestationClientDataJson() == null ? ""
+                            : credential.attestationClientDataJson().toBase64UrlString());
+                    writeRow(writer, row);
+                }
+            }
+
+            @Override
+            public void flush() throws IOException {
+                writer.flush();
+            }
+
+            @Override
+            public void close() throws IOException {
+                writer.close();
+            }
+        };
+    }
+
+    private static TransferredAccount.Credential credential(List<String> row) {
+        return new TransferredAccount.Credential(
+                Bytes.fromBase64(row.get(5)),
+                Bytes.fromBase64(row.get(6)),
+                row.get(7).isEmpty() ? 0 : Long.parseLong(row.get(7)),
+                orDefault(row.get(8), "public-key"),
+                Instant.parse(row.get(9)),
+                row.get(10).isEmpty() ? null : Instant.parse(row.get(10)),
+                emptyToNull(row.get(11)),
+                Boolean.parseBoolean(row.get(12)),
+                Boolean.parseBoolean(row.get(13)),
+                Boolean.parseBoolean(row.get(14)),
+                emptyToNull(row.get(15)),
+                row.get(16).isEmpty() ? null : Bytes.fromBase64(row.get(16)),
+                row.get(17).isEmpty() ? null : Bytes.fromBase64(row.get(17)));
+    }
+
+    /**
+     * Reads one record, which may span lines inside a quoted field, or returns {@code null} at the end of the input.
+     */
+    static @Nullable List<String> parseRow(BufferedReader input) throws IOException {
+        int c = input.read();
+        if (c == -1) {
+            return null;
+        }
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        while (true) {
+            if (quoted) {
+                if (c == -1) {
+                    throw new IOException("Unterminated quoted field");
+                }
+                if (c == '"') {
+                    input.mark(1);
+                    int next = input.read();
+                    if (next == '"') {
+                        field.append('"');
+                    } else {
+                        quoted = false;
+                        input.reset();
+                    }
+                } else {
+                    field.append((char) c);
+                }
+            } else if (c == '"' && field.isEmpty()) {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else if (c == '\r' || c == '\n' || c == -1) {
+                if (c == '\r') {
+                    input.mark(1);
+                    if (input.read() != '\n') {
+                        input.reset();
+                    }
+                }
+                fields.add(field.toString());
+                return fields;
+            } else {
+                field.append((char) c);
+            }
+            c = input.read();
+        }
+    }
+
+    static void writeRow(Writer writer, List<String> fields) throws IOException {
+        for (int i = 0; i < fields.size(); i++) {
+            if (i > 0) {
+                writer.write(',');
+            }
+            String field = fields.get(i);
+            if (field.indexOf(',') >= 0 || field.indexOf('"') >= 0 || field.indexOf('\n') >= 0
+                    || field.indexOf('\r') >= 0) {
+                writer.write('"');
+                writer.write(field.replace("\"", "\"\""));
+                writer.write('"');
+            } else {
+                writer.write(field);
+            }
+        }
+        writer.write("\r\n");
+    }
+
+    private static String orDefault(String value, String defaultValue) {
+        return value.isEmpty() ? defaultValue : value;
+    }
+
+    private static @Nullable String emptyToNull(String value) {
+        return value.isEmpty() ? null : value;
+    }
+
+    private static String nullToEmpty(@Nullable String value) {
+        return value == null ? "" : value;
+    }
+}
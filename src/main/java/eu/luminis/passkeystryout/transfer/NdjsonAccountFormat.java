@@ -0,0 +1,173 @@
+package eu.luminis.passkeystryout.transfer;
+
+import org.jspecify.annotations.NullMarked;
+import org.jspecify.annotations.Nullable;
+import org.springframework.security.web.webauthn.api.Bytes;
+import tools.jackson.core.JacksonException;
+import tools.jackson.databind.JsonNode;
+import tools.jackson.databind.json.JsonMapper;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * One JSON object per line, with the passkeys of the account in a {@code credentials} array. Binary values are
+ * Base64url, times are ISO-8601:
+ * <pre>
+ * {"username":"alice","displayName":"Alice","password":"{bcrypt}$2a$10$...","enabled":true,"userHandle":"q8Yf...",
+ *  "credentials":[{"id":"AbC...","publicKey":"pQEC...","signatureCount":3,"type":"public-key",
+ *  "created":"2026-01-31T09:00:00Z","lastUsed":"2026-02-01T10:00:00Z","label":"Laptop","transports":"internal"}]}
+ * </pre>
+ */
+@NullMarked
+public class NdjsonAccountFormat implements AccountFormat {
+
+    private static final JsonMapper MAPPER = JsonMapper.shared();
+
+    @Override
+    public AccountReader reader(Reader reader) {
+        BufferedReader lines = reader instanceof BufferedReader buffered ? buffered : new BufferedReader(reader);
+        return new AccountReader() {
+
+            private long lineNumber;
+
+            @Override
+            public @Nullable TransferredAccount read() throws IOException {
+                String line;
+                do {
+                    line = lines.readLine();
+                    lineNumber++;
+                    if (line == null) {
+                        return null;
+                    }
+                } while (line.isBlank());
+                try {
+                    return account(MAPPER.readTree(line));
+                } catch (JacksonException | IllegalArgumentException | NullPointerException e) {
+                    throw new IOException("Invalid account on line " + lineNumber + ": " + e.getMessage(), e);
+                }
+            }
+
+            @Override
+            public void close() throws IOException {
+                lines.close();
+            }
+        };
+    }
+
+    @Override
+    public AccountWriter writer(Writer writer) {
+        return new AccountWriter() {
+
+            @Override
+            public void write(TransferredAccount account) throws IOException {
+                writer.write(MAPPER.writeValueAsString(json(account)));
+                writer.write('\n');
+            }
+
+            @Override
+            public void flush() throws IOException {
+                writer.flush();
+            }
+
+            @Override
+            public void close() throws IOException {
+                writer.close();
+            }
+        };
+    }
+
+    private static TransferredAccount account(JsonNode json) {
+        List<TransferredAccount.Credential> credentials = new ArrayList<>();
+        for (JsonNode credential : json.path("credentials")) {
+            credentials.add(new TransferredAccount.Credential(
+                    Bytes.fromBase64(required(credential, "id")),
+                    Bytes.fromBase64(required(credential, "publicKey")),
+                    credential.path("signatureCount").asLong(0),
+                    optional(credential, "type", "public-key"),
+                    Instant.parse(required(credential, "created")),
+                    instant(optional(credential, "lastUsed", null)),
+                    optional(credential, "label", null),
+                    credential.path("backupEligible").asBoolean(false),
+                    credential.path("backupState").asBoolean(false),
+                    credential.path("uvInitialized").asBoolean(false),
+                    optional(credential, "transports", null),
+                    bytes(optional(credential, "attestationObject", null)),
+                    bytes(optional(credential, "attestationClientDataJson", null))));
+        }
+        return new TransferredAccount(
+                required(json, "username"),
+                optional(json, "displayName", required(json, "username")),
+                required(json, "password"),
+                json.path("enabled").asBoolean(true),
+                optional(json, "userHandle", null),
+                credentials);
+    }
+
+    private static Map<String, Object> json(TransferredAccount account) {
+        Map<String, Object> json = new LinkedHashMap<>();
+        json.put("username", account.username());
+        json.put("displayName", account.displayName());
+        json.put("password", account.password());
+        json.put("enabled", account.enabled());
+        putIfPresent(json, "userHandle", account.userHandle());
+        List<Map<String, Object>> credentials = new ArrayList<>();
+        for (TransferredAccount.Credential credential : account.credentials()) {
+            Map<String, Object> entry = new LinkedHashMap<>();
+            entry.put("id", credential.credentialId().toBase64UrlString());
+            entry.put("publicKey", credential.publicKey().toBase64UrlString());
+            entry.put("signatureCount", credential.signatureCount());
+            entry.put("type", credential.type());
+            entry.put("created", credential.created().toString());
+            putIfPresent(entry, "lastUsed", credential.lastUsed() == null ? null : credential.lastUsed().toString());
+            putIfPresent(entry, "label", credential.label());
+            entry.put("backupEligible", credential.backupEligible());
+            entry.put("backupState", credential.backupState());
+            entry.put("uvInitialized", credential.uvInitialized());
+            putIfPresent(entry, "transports", credential.transports());
+            putIfPresent(entry, "attestationObject", base64(credential.attestationObject()));
+            putIfPresent(entry, "attestationClientDataJson", base64(credential.attestationClientDataJson()));
+            credentials.add(entry);
+        }
+        json.put("credentials", credentials);
+        return json;
+    }
+
+    private static String required(JsonNode json, String field) {
+        JsonNode value = json.get(field);
+        if (value == null || !value.isString()) {
+            throw new IllegalArgumentException("missing " + field);
+        }
+        return value.asString();
+    }
+
+    private static @Nullable String optional(JsonNode json, String field, @Nullable String defaultValue) {
+        JsonNode value = json.get(field);
+        return value == null || value.isNull() ? defaultValue : value.asString();
+    }
+
+    private static void putIfPresent(Map<String, Object> json, String field, @Nullable Object value) {
+        if (value != null) {
+            json.put(field, value);
+        }
+    }
+
+    private static @Nullable Instant instant(@Nullable String value) {
+        return value == null ? null : Instant.parse(value);
+    }
+
+    private static @Nullable Bytes bytes(@Nullable String value) {
+        return value == null ? null : Bytes.fromBase64(value);
+    }
+
+    private static @Nullable String base64(@Nullable Bytes value) {
+        return value == null ? null : value.toBase64UrlString();
+    }
+}
@@ -0,0 +1,25 @@
+package eu.luminis.passkeystryout.transfer;
+
+import org.jspecify.annotations.NullMarked;
+
+import java.time.Duration;
+
+/**
+ * What an import or export transferred. Accounts skipped because an earlier run already imported them are not
+ * counted.
+ */
+@NullMarked
+public record TransferResult(long accounts, long credentials, Duration elapsed) {
+
+    /**
+     * The rows of {@code users} and {@code webauthn_credentials} transferred per second.
+     */
+    public double rowsPerSecond() {
+        return rowsPerSecond(accounts + credentials, elapsed);
+    }
+
+    static double rowsPerSecond(long rows, Duration elapsed) {
+        long nanos = elapsed.toNanos();
+        return nanos == 0 ? 0 : rows * 1_000_000_000d / nanos;
+    }
+}
@@ -0,0 +1,34 @@
+package eu.luminis.passkeystryout.transfer;
+
+import org.jspecify.annotations.NullMarked;
+import org.jspecify.annotations.Nullable;
+import org.springframework.security.web.webauthn.api.Bytes;
+
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * A user with its passkeys, as it is imported and exported: a row of {@code users} and the rows of
+ * {@code webauthn_credentials} that belong to it. The password is the stored hash, with its {@code {id}} prefix.
+ */
+@NullMarked
+public record TransferredAccount(String username, String displayName, String password, boolean enabled,
+                                 @Nullable String userHandle, List<Credential> credentials) {
+
+    public TransferredAccount {
+        if (!credentials.isEmpty() && userHandle == null) {
+            throw new IllegalArgumentException("Account " + username + " has passkeys but no user handle");
+        }
+        credentials = List.copyOf(credentials);
+    }
+
+    /**
+     * A passkey of the account. The transports are the comma-separated values that are stored, the type is the
+     * WebAuthn credential type such as {@code public-key}.
+     */
+    public record Credential(Bytes credentialId, Bytes publicKey, long signatureCount, String type, Instant created,
+                             @Nullable Instant lastUsed, @Nullable String label, boolean backupEligible,
+                             boolean backupState, boolean uvInitialized, @Nullable String transports,
+                             @Nullable Bytes attestationObject, @Nullable Bytes attestationClientDataJson) {
+    }
+}
@@ -1,31 +1,254 @@
 package eu.luminis.passkeystryout.user;
 
+import eu.luminis.passkeystryout.cache.BoundedExpiringCache;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
 import org.jspecify.annotations.NullMarked;
+import org.jspecify.annotations.Nullable;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.security.core.userdetails.User;
 import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.core.userdetails.UserDetailsPasswordService;
 import org.springframework.security.core.userdetails.UserDetailsService;
 import org.springframework.security.core.userdetails.UsernameNotFoundException;
+import org.springframework.security.web.webauthn.api.Bytes;
+import org.springframework.security.web.webauthn.api.ImmutablePublicKeyCredentialUserEntity;
+import org.springframework.security.web.webauthn.api.PublicKeyCredentialUserEntity;
+import org.springframework.security.web.webauthn.management.PublicKeyCredentialUserEntityRepository;
 import org.springframework.stereotype.Service;
 
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The one identity store of the application. Password logins and passkey logins both resolve the user from the
+ * {@code users} table: the WebAuthn user entity is the same row, with its {@code user_handle} as id. The handle is
+ * assigned when Spring Security saves the user entity before the first passkey registration of the user.
+ * <p>
+ * Rows are cached by username, and usernames by user handle, so a request that needs both the user details and the
+ * user entity reads the row once. Every write through this service invalidates the cached row; a load that
+ * overlapped with a write removes its own entry again, as in the credential cache. Users that do not exist are not
+ * cached, so registering a new user needs no invalidation.
+ * <p>
+ * A new {@link UserDetails} is built for every call, because Spring Security erases the password of the instance it
+ * authenticated. {@link #loadUserByUsername(String)}, which password logins call with whatever name was typed, only
+ * queries the user for names that the {@link KnownUsernames} filter cannot rule out. Before it rules a name out, the
+ * filter reads the users inserted since its last read, so users created by another node or by an import can log in
+ * straight away. The one window left is an insert that commits more than a
+ * {@code passkeys.username-filter.refresh-interval} after a user with a higher id was read: that user is turned away
+ * as unknown until the filter is next rebuilt. Every user read from the database is added to the filter as well, so
+ * a passkey login of a user this node has not seen yet still loads its details.
+ */
 @Service
 @NullMarked
-public class CustomUserDetailsService implements UserDetailsService {
-    
+public class CustomUserDetailsService implements UserDetailsService, UserDetailsPasswordService,
+        PublicKeyCredentialUserEntityRepository, MeterBinder {
+
     private final UserRepository userRepository;
-    
-    public CustomUserDetailsService(UserRepository userRepository) {
+    private final KnownUsernames knownUsernames;
+    private final BoundedExpiringCache<String, UserAccount> byUsername;
+    private final BoundedExpiringCache<Bytes, String> usernameByUserHandle;
+    private final AtomicLong writeGeneration = new AtomicLong();
+
+    public CustomUserDetailsService(UserRepository userRepository,
+                                    KnownUsernames knownUsernames,
+                                    @Value("${passkeys.user-cache.maximum-size}") int maximumSize,
+                                    @Value("${passkeys.user-cache.time-to-live}") Duration timeToLive) {
         this.userRepository = userRepository;
+        this.knownUsernames = knownUsernames;
+        this.byUsername = new BoundedExpiringCache<>(maximumSize, timeToLive);
+        this.usernameByUserHandle = new BoundedExpiringCache<>(maximumSize, timeToLive);
     }
-    
+
     @Override
     public UserDetails loadUserByUsername(String username) throws UsernameNotFoundException {
-        eu.luminis.passkeystryout.user.User user = userRepository.findByUsername(username)
-            .orElseThrow(() -> new UsernameNotFoundException("User not found: " + username));
-        
+        UserAccount account = byUsername.get(username);
+        if (account == null) {
+            account = knownUsernames.lookUp(username, () -> loadAccount(username));
+        }
+        if (account == null) {
+            throw new UsernameNotFoundException("User not found: " + username);
+        }
+
         return User.builder()
-            .username(user.getUsername())
-            .password(user.getPassword())
+            .username(account.username())
+            .password(account.password())
             .authorities("ROLE_USER")
             .build();
     }
+
+    /**
+     * Stores a re-encoded password. Spring Security calls this after a successful form login when the stored hash
+     * was made with an older algorithm or a lower cost than the current encoder uses.
+     */
+    @Override
+    public UserDetails updatePassword(UserDetails userDetails, String newPassword) {
+        eu.luminis.passkeystryout.user.User user = userRepository.findByUsername(userDetails.getUsername())
+            .orElseThrow(() -> new UsernameNotFoundException("User not found: " + userDetails.getUsername()));
+        user.setPassword(newPassword);
+        try {
+            userRepository.save(user);
+        } finally {
+            invalidate(user.getUsername());
+        }
+
+        return User.withUserDetails(userDetails)
+            .password(newPassword)
+            .build();
+    }
+
+    @Override
+    public @Nullable PublicKeyCredentialUserEntity findById(Bytes id) {
+        String username = usernameByUserHandle.get(id);
+        if (username != null) {
+            UserAccount account = findAccount(username);
+            if (account != null && account.userEntity() != null && account.userEntity().getId().equals(id)) {
+                return account.userEntity();
+            }
+        }
+
+        long generation = writeGeneration.get();
+        UserAccount account = userRepository.findByUserHandle(id.toBase64UrlString())
+            .map(UserAccount::of)
+            .orElse(null);
+        if (account == null) {
+            return null;
+        }
+        cache(account, generation);
+        return account.userEntity();
+    }
+
+    /**
+     * Returns the user entity of an existing user, or {@code null} if the user has not been given a user handle yet.
+     */
+    @Override
+    public @Nullable PublicKeyCredentialUserEntity findByUsername(String username) {
+        UserAccount account = findAccount(username);
+        return account == null ? null : account.userEntity();
+    }
+
+    /**
+     * Stores the user handle that Spring Security generated for a user. The display name of the entity is not
+     * stored; the user entity always shows the display name the user registered with.
+     *
+     * @throws UsernameNotFoundException if there is no user with the name of the entity
+     */
+    @Override
+    public void save(PublicKeyCredentialUserEntity userEntity) {
+        eu.luminis.passkeystryout.user.User user = userRepository.findByUsername(userEntity.getName())
+            .orElseThrow(() -> new UsernameNotFoundException("User not found: " + userEntity.getName()));
+        user.setUserHandle(userEntity.getId().toBase64UrlString());
+        try {
+            userRepository.save(user);
+        } finally {
+            invalidate(user.getUsername());
+        }
+    }
+
+    /**
+     * Removes the user handle from a user; the user itself is kept.
+     */
+    @Override
+    public void delete(Bytes id) {
+        userRepository.findByUserHandle(id.toBase64UrlString()).ifPresent(user -> {
+            user.setUserHandle(null);
+            try {
+                userRepository.save(user);
+            } finally {
+                invalidate(user.getUsername());
+                usernameByUserHandle.invalidate(id);
+            }
+        });
+    }
+
+    /**
+     * Caches a user that was read together with one of its passkeys, so the user details that Spring Security loads
+     * after the passkey login need no query of their own. Like the loads of this service, the user is dropped again
+     * if it was written since {@code generation}, which the caller takes from {@link #writeGeneration()} before its
+     * query.
+     *
+     * @return the user entity of the user
+     */
+    public PublicKeyCredentialUserEntity cacheOwner(String username, String displayName, String password,
+                                                    Bytes userHandle, long generation) {
+        PublicKeyCredentialUserEntity userEntity = ImmutablePublicKeyCredentialUserEntity.builder()
+            .id(userHandle)
+            .name(username)
+            .displayName(displayName)
+            .build();
+        cache(new UserAccount(username, password, userEntity), generation);
+        return userEntity;
+    }
+
+    public long writeGeneration() {
+        return writeGeneration.get();
+    }
+
+    private @Nullable UserAccount findAccount(String username) {
+        UserAccount cached = byUsername.get(username);
+        return cached != null ? cached : loadAccount(username);
+    }
+
+    private @Nullable UserAccount loadAccount(String username) {
+        long generation = writeGeneration.get();
+        UserAccount account = userRepository.findByUsername(username)
+            .map(UserAccount::of)
+            .orElse(null);
+        if (account != null) {
+            cache(account, generation);
+        }
+        return account;
+    }
+
+    private void cache(UserAccount account, long generation) {
+        knownUsernames.add(account.username());
+        byUsername.put(account.username(), account);
+        if (account.userEntity() != null) {
+            usernameByUserHandle.put(account.userEntity().getId(), account.username());
+        }
+        if (generation != writeGeneration.get()) {
+            invalidate(account.username());
+        }
+    }
+
+    private void invalidate(String username) {
+        writeGeneration.incrementAndGet();
+        UserAccount cached = byUsername.peek(username);
+        byUsername.invalidate(username);
+        if (cached != null && cached.userEntity() != null) {
+            usernameByUserHandle.invalidate(cached.userEntity().getId());
+        }
+    }
+
+    public long hitCount() {
+        return byUsername.hitCount() + usernameByUserHandle.hitCount();
+    }
+
+    public long missCount() {
+        return byUsername.missCount() + usernameByUserHandle.missCount();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        byUsername.bindTo(registry, "users-by-username");
+        usernameByUserHandle.bindTo(registry, "users-by-handle");
+    }
+
+    /**
+     * The cached copy of a row of {@code users}, with the user entity built once. The JPA entity itself is not
+     * cached, because it is mutable.
+     */
+    private record UserAccount(String username, String password, @Nullable PublicKeyCredentialUserEntity userEntity) {
+
+        static UserAccount of(eu.luminis.passkeystryout.user.User user) {
+            String userHandle = user.getUserHandle();
+            PublicKeyCredentialUserEntity userEntity = userHandle == null ? null
+                : ImmutablePublicKeyCredentialUserEntity.builder()
+                    .id(Bytes.fromBase64(userHandle))
+                    .name(user.getUsername())
+                    .displayName(user.getDisplayName())
+                    .build();
+            return new UserAccount(user.getUsername(), user.getPassword(), userEntity);
+        }
+    }
 }
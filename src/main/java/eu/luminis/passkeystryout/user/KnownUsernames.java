@@ -0,0 +1,304 @@
+package eu.luminis.passkeystryout.user;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.jspecify.annotations.NullMarked;
+import org.jspecify.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.JdbcOperations;
+import org.springframework.scheduling.annotation.Scheduled;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongConsumer;
+import java.util.function.Supplier;
+
+/**
+ * The usernames in {@code users}, in a {@link UsernameBloomFilter}, so a login attempt for a name that does not exist
+ * is turned away without a database query. Credential stuffing mostly tries such names.
+ * <p>
+ * The filter is filled from the table in chunks ordered by id, and {@link #refresh()} adds the rows inserted since,
+ * which picks up users created by other nodes or by an import. Users saved through JPA on this node are added right
+ * away. Once the filter holds more names than it was sized for it is rebuilt at twice the size; names added in the
+ * meantime go to both filters.
+ * <p>
+ * A name the filter rules out is not taken as final right away: {@link #lookUp(String, Supplier)} first reads the
+ * rows inserted since, and only answers "not found" if the name is still missing. Only one such read starts per
+ * {@code catchUpInterval}; names ruled out in between are answered without a query and without waiting for the lock,
+ * so a run of unknown names costs at most one query per interval. Users created by another node or written by
+ * {@link eu.luminis.passkeystryout.transfer.AccountImporter} can therefore log in within about one catch-up interval,
+ * and at the latest after the next refresh. While the filter is being rebuilt, names it rules out are looked up in
+ * the database instead.
+ * <p>
+ * Ids are handed out before the rows commit, so a row can commit after a row with a higher id was read. Every read
+ * therefore starts from the highest id that had been read {@code rereadWindow} earlier, rather than from the highest
+ * id read so far. A user whose insert takes longer than that to commit stays unknown until the filter is rebuilt, as
+ * does one whose insert committed out of order during the initial load or a rebuild; until then that user cannot log
+ * in with a password.
+ * <p>
+ * Turning a name away faster than a lookup would take tells an attacker that the name does not exist, so
+ * {@link #lookUp(String, Supplier)} answers "not found" only once about as long as recent database lookups took has
+ * passed. The password check that Spring Security runs for unknown users is left as it is.
+ */
+@NullMarked
+public class KnownUsernames implements MeterBinder {
+
+    private static final Logger log = LoggerFactory.getLogger(KnownUsernames.class);
+
+    static final String SELECT_CHUNK_SQL = """
+            SELECT id, username
+            FROM users
+            WHERE id > ?
+            ORDER BY id
+            FETCH FIRST ? ROWS ONLY
+            """;
+
+    private final JdbcOperations jdbc;
+    private final double falsePositiveProbability;
+    private final int chunkSize;
+    private final long rereadNanos;
+    private final long catchUpNanos;
+    private final LongConsumer pause;
+    private final ReentrantLock readLock = new ReentrantLock();
+    private final Deque<ReadMark> marks = new ArrayDeque<>();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder passed = new LongAdder();
+    private final AtomicLong nextCatchUp = new AtomicLong(System.nanoTime());
+
+    private volatile UsernameBloomFilter filter;
+    private volatile @Nullable UsernameBloomFilter rebuilding;
+    private volatile long lookupNanos;
+    private volatile long readsStarted;
+    private volatile long readsFinished;
+    private long lastId;
+
+    public KnownUsernames(JdbcOperations jdbc, int expectedUsernames, double falsePositiveProbability, int chunkSize,
+                          Duration rereadWindow, Duration catchUpInterval) {
+        this(jdbc, expectedUsernames, falsePositiveProbability, chunkSize, rereadWindow, catchUpInterval,
+                LockSupport::parkNanos);
+    }
+
+    KnownUsernames(JdbcOperations jdbc, int expectedUsernames, double falsePositiveProbability, int chunkSize,
+                   Duration rereadWindow, Duration catchUpInterval, LongConsumer pause) {
+        this.jdbc = jdbc;
+        this.falsePositiveProbability = falsePositiveProbability;
+        this.chunkSize = chunkSize;
+        this.rereadNanos = rereadWindow.toNanos();
+        this.catchUpNanos = catchUpInterval.toNanos();
+        this.pause = pause;
+        this.filter = new UsernameBloomFilter(expectedUsernames, falsePositiveProbability);
+    }
+
+    /**
+     * Adds a username, for a user that was just created.
+     */
+    public void add(String username) {
+        filter.put(username);
+        UsernameBloomFilter next = rebuilding;
+        if (next != null) {
+            next.put(username);
+        }
+    }
+
+    /**
+     * Whether there may be a user with the name, as far as the filter knows. It may not have read the newest users
+     * yet, so {@code false} is only final after {@link #lookUp(String, Supplier)}.
+     */
+    public boolean mightContain(String username) {
+        return filter.mightContain(username);
+    }
+
+    /**
+     * Runs the lookup if there may be a user with the name, also after reading the users inserted since the filter
+     * was last brought up to date, if no such read started within the catch-up interval. Otherwise it returns
+     * {@code null} after waiting about as long as the lookup would have taken.
+     */
+    public <T> @Nullable T lookUp(String username, Supplier<@Nullable T> lookup) {
+        if (filter.mightContain(username) || rebuilding != null) {
+            return timedLookUp(lookup);
+        }
+        long start = System.nanoTime();
+        if (claimCatchUp(start)) {
+            catchUp(readsStarted);
+            if (filter.mightContain(username)) {
+                return timedLookUp(lookup);
+            }
+        }
+        rejected.increment();
+        long padding = lookupNanos - (System.nanoTime() - start);
+        if (padding > 0) {
+            pause.accept(padding);
+        }
+        return null;
+    }
+
+    private <T> @Nullable T timedLookUp(Supplier<@Nullable T> lookup) {
+        passed.increment();
+        long start = System.nanoTime();
+        try {
+            return lookup.get();
+        } finally {
+            long elapsed = System.nanoTime() - start;
+            long average = lookupNanos;
+            // Moving average over roughly the last eight lookups; a lost update under contention does no harm
+            lookupNanos = average == 0 ? elapsed : average + (elapsed - average) / 8;
+        }
+    }
+
+    /**
+     * Whether this lookup may read the users inserted since the last read: the first one to ask once the catch-up
+     * interval has passed since the previous such read.
+     */
+    private boolean claimCatchUp(long now) {
+        long next = nextCatchUp.get();
+        return now - next >= 0 && nextCatchUp.compareAndSet(next, now + catchUpNanos);
+    }
+
+    /**
+     * Reads the users inserted since the last read, unless a read has finished that started after {@code ticket} was
+     * taken from {@link #readsStarted}.
+     */
+    private void catchUp(long ticket) {
+        readLock.lock();
+        try {
+            if (readsFinished <= ticket) {
+                read();
+            }
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    /**
+     * Adds the users inserted since the last read, or rebuilds the filter at twice the size if it is full.
+     *
+     * @return the number of usernames added to the filter
+     */
+    @Scheduled(fixedDelayString = "${passkeys.username-filter.refresh-interval}")
+    public int refresh() {
+        readLock.lock();
+        try {
+            UsernameBloomFilter current = filter;
+            if (current.insertions() <= current.expectedInsertions()) {
+                return read();
+            }
+            return rebuild(current);
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    private int read() {
+        long read = readsStarted + 1;
+        readsStarted = read;
+        long now = System.nanoTime();
+        boolean initial = marks.isEmpty();
+        long from = readFrom(now);
+        marks.addLast(new ReadMark(now, lastId));
+        int added = load(filter, from);
+        if (initial) {
+            settle();
+        }
+        readsFinished = read;
+        return added;
+    }
+
+    private int rebuild(UsernameBloomFilter current) {
+        UsernameBloomFilter next = new UsernameBloomFilter(
+                (int) Math.min(Integer.MAX_VALUE / 2, current.insertions()) * 2, falsePositiveProbability);
+        long read = readsStarted + 1;
+        readsStarted = read;
+        rebuilding = next;
+        try {
+            int added = load(next, 0);
+            filter = next;
+            settle();
+            log.info("Rebuilt the username filter for {} usernames", next.expectedInsertions());
+            return added;
+        } finally {
+            rebuilding = null;
+            readsFinished = read;
+        }
+    }
+
+    /**
+     * The highest id that had been read {@code rereadWindow} ago. Marks that are older than the newest such mark are
+     * dropped.
+     */
+    private long readFrom(long now) {
+        ReadMark settled = null;
+        while (!marks.isEmpty() && now - marks.getFirst().nanos() >= rereadNanos) {
+            settled = marks.removeFirst();
+        }
+        if (settled != null) {
+            marks.addFirst(settled);
+        }
+        ReadMark oldest = marks.peekFirst();
+        return oldest == null ? lastId : oldest.lastId();
+    }
+
+    /**
+     * Lets the next read start from the highest id read so far, after a load of the whole table.
+     */
+    private void settle() {
+        marks.clear();
+        marks.addLast(new ReadMark(System.nanoTime() - rereadNanos, lastId));
+    }
+
+    private int load(UsernameBloomFilter target, long afterId) {
+        int added = 0;
+        long from = afterId;
+        List<IdAndUsername> rows;
+        do {
+            rows = jdbc.query(SELECT_CHUNK_SQL,
+                    (rs, rowNum) -> new IdAndUsername(rs.getLong("id"), rs.getString("username")), from, chunkSize);
+            for (IdAndUsername row : rows) {
+                if (target.put(row.username())) {
+                    added++;
+                }
+            }
+            if (!rows.isEmpty()) {
+                from = rows.getLast().id();
+            }
+        } while (rows.size() == chunkSize);
+        lastId = Math.max(lastId, from);
+        return added;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("username-filter.lookups", rejected, LongAdder::sum)
+                .tag("result", "rejected")
+                .description("Username lookups answered without a database query because the name does not exist")
+                .register(registry);
+        FunctionCounter.builder("username-filter.lookups", passed, LongAdder::sum)
+                .tag("result", "passed")
+                .description("Username lookups that went to the database")
+                .register(registry);
+        Gauge.builder("username-filter.usernames", this, usernames -> usernames.filter.insertions())
+                .description("The number of usernames in the filter")
+                .register(registry);
+        Gauge.builder("username-filter.false-positive-probability", this,
+                        usernames -> usernames.filter.falsePositiveProbability())
+                .description("The chance that a name that does not exist is still looked up")
+                .register(registry);
+    }
+
+    private record IdAndUsername(long id, String username) {
+    }
+
+    /**
+     * The highest id read when a read started.
+     */
+    private record ReadMark(long nanos, long lastId) {
+    }
+}
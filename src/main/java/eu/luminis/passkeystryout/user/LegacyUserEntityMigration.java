@@ -0,0 +1,98 @@
+package eu.luminis.passkeystryout.user;
+
+import org.jspecify.annotations.NullMarked;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcOperations;
+import org.springframework.transaction.support.TransactionOperations;
+
+import java.sql.DatabaseMetaData;
+import java.sql.ResultSet;
+
+/**
+ * Merges the {@code user_entities} table of earlier versions into {@code users}: the id of the user entity with the
+ * same name becomes the {@code user_handle} of the user. Credentials whose user entity has no user cannot be used to
+ * log in and are deleted, so the credentials can reference {@code users} instead. The old table is dropped
+ * afterwards.
+ * <p>
+ * The handles are copied in one transaction. The foreign key is replaced after that commits, because the database
+ * commits schema changes on its own; running the migration again after an interruption finishes the job.
+ */
+@NullMarked
+public class LegacyUserEntityMigration {
+
+    private static final Logger log = LoggerFactory.getLogger(LegacyUserEntityMigration.class);
+
+    static final String LEGACY_TABLE = "user_entities";
+
+    static final String LEGACY_CREDENTIAL_TABLE = "user_credentials";
+
+    static final String COPY_USER_HANDLES_SQL = """
+            UPDATE users u SET user_handle = (SELECT ue.id FROM user_entities ue WHERE ue.name = u.username)
+            WHERE u.user_handle IS NULL AND EXISTS (SELECT 1 FROM user_entities ue WHERE ue.name = u.username)
+            """;
+
+    static final String DELETE_ORPHANED_CREDENTIALS_SQL = """
+            DELETE FROM %s WHERE user_entity_user_id NOT IN (
+                SELECT user_handle FROM users WHERE user_handle IS NOT NULL)
+            """;
+
+    static final String DROP_SQL = "DROP TABLE user_entities CASCADE";
+
+    static final String ADD_FOREIGN_KEY_SQL = """
+            ALTER TABLE webauthn_credentials ADD CONSTRAINT IF NOT EXISTS fk_webauthn_credentials_user
+            FOREIGN KEY (user_entity_user_id) REFERENCES users(user_handle)
+            """;
+
+    private final JdbcOperations jdbc;
+    private final TransactionOperations transactions;
+
+    public LegacyUserEntityMigration(JdbcOperations jdbc, TransactionOperations transactions) {
+        this.jdbc = jdbc;
+        this.transactions = transactions;
+    }
+
+    /**
+     * Copies the user handles from the old table, if there is one, and drops it.
+     *
+     * @return the number of users that were given a user handle
+     */
+    public int migrate() {
+        if (!tableExists(LEGACY_TABLE)) {
+            return 0;
+        }
+
+        boolean legacyCredentials = tableExists(LEGACY_CREDENTIAL_TABLE);
+        int[] counts = transactions.execute(status -> {
+            int migrated = jdbc.update(COPY_USER_HANDLES_SQL);
+            int orphaned = jdbc.update(DELETE_ORPHANED_CREDENTIALS_SQL.formatted("webauthn_credentials"));
+            if (legacyCredentials) {
+                orphaned += jdbc.update(DELETE_ORPHANED_CREDENTIALS_SQL.formatted(LEGACY_CREDENTIAL_TABLE));
+            }
+            return new int[] {migrated, orphaned};
+        });
+        int migrated = counts == null ? 0 : counts[0];
+        int orphaned = counts == null ? 0 : counts[1];
+        jdbc.execute(DROP_SQL);
+        jdbc.execute(ADD_FOREIGN_KEY_SQL);
+        log.info("Merged {} user entities from {} into users, deleted {} credentials without a user", migrated,
+                LEGACY_TABLE, orphaned);
+        return migrated;
+    }
+
+    private boolean tableExists(String table) {
+        Boolean exists = jdbc.execute((ConnectionCallback<Boolean>) connection -> {
+            DatabaseMetaData metaData = connection.getMetaData();
+            try (ResultSet tables = metaData.getTables(connection.getCatalog(), connection.getSchema(), null, null)) {
+                while (tables.next()) {
+                    if (table.equalsIgnoreCase(tables.getString("TABLE_NAME"))) {
+                        return true;
+                    }
+                }
+            }
+            return false;
+        });
+        return Boolean.TRUE.equals(exists);
+    }
+}
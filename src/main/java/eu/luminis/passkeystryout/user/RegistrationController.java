@@ -1,5 +1,6 @@
 package eu.luminis.passkeystryout.user;
 
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
@@ -25,14 +26,23 @@ public class RegistrationController {
                           Model model) {
         
         if (userRepository.existsByUsername(username)) {
-            model.addAttribute("error", "Username already exists");
-            return "register";
+            return usernameTaken(model);
         }
         
         String encodedPassword = passwordEncoder.encode(password);
         User user = new User(username, displayName, encodedPassword);
-        userRepository.save(user);
+        try {
+            userRepository.save(user);
+        } catch (DataIntegrityViolationException e) {
+            // Registered on this or another node since the check above; the unique constraint on the name caught it
+            return usernameTaken(model);
+        }
         
         return "redirect:/login?registered";
     }
+
+    private static String usernameTaken(Model model) {
+        model.addAttribute("error", "Username already exists");
+        return "register";
+    }
 }
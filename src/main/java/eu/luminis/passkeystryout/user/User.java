@@ -4,6 +4,7 @@ import jakarta.persistence.*;
 
 @Entity
 @Table(name = "users")
+@EntityListeners(UserEntityListener.class)
 public class User {
     
     @Id
@@ -21,6 +22,12 @@ public class User {
 
     @Column(nullable = false)
     private boolean enabled = true;
+
+    /**
+     * The Base64url WebAuthn user handle, assigned before the first passkey registration of the user.
+     */
+    @Column(unique = true)
+    private String userHandle;
     
     public User() {}
     
@@ -70,4 +77,12 @@ public class User {
     public void setEnabled(boolean enabled) {
         this.enabled = enabled;
     }
+
+    public String getUserHandle() {
+        return userHandle;
+    }
+
+    public void setUserHandle(String userHandle) {
+        this.userHandle = userHandle;
+    }
 }
@@ -0,0 +1,23 @@
+package eu.luminis.passkeystryout.user;
+
+import jakarta.persistence.PostPersist;
+import org.jspecify.annotations.NullMarked;
+
+/**
+ * Adds every user that JPA inserts to the {@link KnownUsernames}, so a user can log in right after registering.
+ * Hibernate creates the listener through Spring, which injects the filter.
+ */
+@NullMarked
+public class UserEntityListener {
+
+    private final KnownUsernames knownUsernames;
+
+    public UserEntityListener(KnownUsernames knownUsernames) {
+        this.knownUsernames = knownUsernames;
+    }
+
+    @PostPersist
+    void added(User user) {
+        knownUsernames.add(user.getUsername());
+    }
+}
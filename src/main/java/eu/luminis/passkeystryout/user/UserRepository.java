@@ -10,5 +10,6 @@ import java.util.Optional;
 @NullMarked
 public interface UserRepository extends JpaRepository<User, Long> {
     Optional<User> findByUsername(String username);
+    Optional<User> findByUserHandle(String userHandle);
     boolean existsByUsername(String username);
 }
@@ -0,0 +1,120 @@
+package eu.luminis.passkeystryout.user;
+
+import org.jspecify.annotations.NullMarked;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A Bloom filter of usernames that any number of threads may add to and query at the same time. Bits are only ever
+ * set, with a compare-and-set on the word that holds them, so readers never wait and never see a name that was added
+ * go missing. {@link #mightContain(String)} answers {@code false} only for names that were never added.
+ * <p>
+ * The two base hashes are seeded at random, so which names collide differs per instance and cannot be precomputed to
+ * flood the filter with false positives.
+ */
+@NullMarked
+class UsernameBloomFilter {
+
+    private final AtomicLongArray words;
+    private final long bits;
+    private final int hashes;
+    private final int expectedInsertions;
+    private final long seed = ThreadLocalRandom.current().nextLong();
+    private final long secondSeed = ThreadLocalRandom.current().nextLong();
+    private final LongAdder insertions = new LongAdder();
+
+    UsernameBloomFilter(int expectedInsertions, double falsePositiveProbability) {
+        if (expectedInsertions < 1) {
+            throw new IllegalArgumentException("expectedInsertions must be positive");
+        }
+        if (falsePositiveProbability <= 0 || falsePositiveProbability >= 1) {
+            throw new IllegalArgumentException("falsePositiveProbability must be between 0 and 1");
+        }
+        double optimalBits = -expectedInsertions * Math.log(falsePositiveProbability) / (Math.log(2) * Math.log(2));
+        int wordCount = (int) Math.min(Integer.MAX_VALUE - 8, Math.ceil(optimalBits / Long.SIZE));
+        this.words = new AtomicLongArray(Math.max(wordCount, 1));
+        this.bits = (long) words.length() * Long.SIZE;
+        this.hashes = Math.max(1, (int) Math.round((double) bits / expectedInsertions * Math.log(2)));
+        this.expectedInsertions = expectedInsertions;
+    }
+
+    /**
+     * Adds a username.
+     *
+     * @return whether a bit was set, which is {@code false} if the name was already in the filter or collides with
+     * names that were
+     */
+    boolean put(String username) {
+        long hash = hash(username, seed);
+        long first = mix(hash);
+        long second = mix(hash ^ secondSeed) | 1;
+        boolean changed = false;
+        for (int i = 0; i < hashes; i++) {
+            long bit = Math.floorMod(first + i * second, bits);
+            int index = (int) (bit >>> 6);
+            long mask = 1L << bit;
+            long word = words.get(index);
+            while ((word & mask) == 0) {
+                if (words.compareAndSet(index, word, word | mask)) {
+                    changed = true;
+                    break;
+                }
+                word = words.get(index);
+            }
+        }
+        if (changed) {
+            insertions.increment();
+        }
+        return changed;
+    }
+
+    boolean mightContain(String username) {
+        long hash = hash(username, seed);
+        long first = mix(hash);
+        long second = mix(hash ^ secondSeed) | 1;
+        for (int i = 0; i < hashes; i++) {
+            long bit = Math.floorMod(first + i * second, bits);
+            if ((words.get((int) (bit >>> 6)) & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * The number of names added, not counting names that were already in the filter.
+     */
+    long insertions() {
+        return insertions.sum();
+    }
+
+    int expectedInsertions() {
+        return expectedInsertions;
+    }
+
+    /**
+     * The chance that a name that was never added is reported as present, given the names added so far.
+     */
+    double falsePositiveProbability() {
+        return Math.pow(1 - Math.exp(-hashes * (double) insertions() / bits), hashes);
+    }
+
+    private static long hash(String value, long seed) {
+        // FNV-1a over the UTF-16 code units, starting from the seed instead of the fixed offset basis
+        long hash = seed;
+        for (int i = 0; i < value.length(); i++) {
+            hash = (hash ^ value.charAt(i)) * 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    private static long mix(long value) {
+        // The finaliser of SplitMix64, which spreads every input bit over the whole word
+        long z = value;
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+}
@@ -0,0 +1,94 @@
+-- PostgreSQL version of schema.sql, run instead of it in the postgres profile. Keep the two in step: tables,
+-- columns and constraint names are the same, only the types and index options differ.
+
+-- Application Users Table
+-- A user is also the WebAuthn user entity: user_handle is its Base64url id, assigned before the first passkey
+-- registration.
+CREATE TABLE IF NOT EXISTS users (
+    id BIGINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    username VARCHAR(255) NOT NULL UNIQUE,
+    display_name VARCHAR(255) NOT NULL,
+    password VARCHAR(255) NOT NULL,
+    enabled BOOLEAN NOT NULL DEFAULT TRUE,
+    user_handle VARCHAR(255) UNIQUE
+);
+
+-- WebAuthn Credentials Table
+-- Lookups go through the SHA-256 hash of the credential id, which the database derives itself, as in schema.sql.
+-- The hash is the primary key rather than a HASH index on credential_id, because hash indexes cannot enforce
+-- uniqueness.
+CREATE TABLE IF NOT EXISTS webauthn_credentials (
+    credential_id_hash BYTEA GENERATED ALWAYS AS (sha256(credential_id)) STORED,
+    credential_id BYTEA NOT NULL,
+    user_entity_user_id VARCHAR(255) NOT NULL,
+    public_key BYTEA NOT NULL,
+    signature_count BIGINT NOT NULL,
+    public_key_credential_type VARCHAR(32) NOT NULL,
+    created TIMESTAMP NOT NULL,
+    last_used TIMESTAMP,
+    label VARCHAR(512),
+    backup_eligible BOOLEAN NOT NULL DEFAULT FALSE,
+    backup_state BOOLEAN NOT NULL DEFAULT FALSE,
+    uv_initialized BOOLEAN NOT NULL DEFAULT FALSE,
+    authenticator_transports VARCHAR(512),
+    attestation_object BYTEA,
+    attestation_client_data_json BYTEA,
+    CONSTRAINT pk_webauthn_credentials PRIMARY KEY (credential_id_hash),
+    CONSTRAINT fk_webauthn_credentials_user FOREIGN KEY (user_entity_user_id) REFERENCES users(user_handle)
+);
+
+-- Serves the dashboard listing. It also carries every column the listing selects, so the query is answered from the
+-- index without reading the rows and their public key and attestation blobs.
+CREATE INDEX IF NOT EXISTS idx_webauthn_credentials_user_created ON webauthn_credentials(user_entity_user_id, created)
+    INCLUDE (credential_id, label, last_used, signature_count, backup_state);
+
+-- Options of running WebAuthn ceremonies, keyed by the opaque token in the ceremony cookie
+CREATE TABLE IF NOT EXISTS webauthn_ceremony_options (
+    token VARCHAR(64) PRIMARY KEY,
+    ceremony VARCHAR(16) NOT NULL,
+    options BYTEA NOT NULL,
+    expires_at TIMESTAMP NOT NULL
+);
+
+CREATE INDEX IF NOT EXISTS idx_webauthn_ceremony_options_expires_at ON webauthn_ceremony_options(expires_at);
+
+-- Session tokens that were revoked before they expired, only used when the security context is kept in a signed
+-- cookie. Every node reloads this table into its in-memory deny-list.
+CREATE TABLE IF NOT EXISTS revoked_session_tokens (
+    token_id BYTEA PRIMARY KEY,
+    expires_at TIMESTAMP NOT NULL
+);
+
+-- HTTP sessions of Spring Session, only used with passkeys.session.store=jdbc. The layout is Spring Session's own;
+-- expired sessions are deleted in chunks through the expiry_time index.
+CREATE TABLE IF NOT EXISTS spring_session (
+    primary_id CHAR(36) NOT NULL,
+    session_id CHAR(36) NOT NULL,
+    creation_time BIGINT NOT NULL,
+    last_access_time BIGINT NOT NULL,
+    max_inactive_interval INT NOT NULL,
+    expiry_time BIGINT NOT NULL,
+    principal_name VARCHAR(100),
+    CONSTRAINT spring_session_pk PRIMARY KEY (primary_id)
+);
+
+CREATE UNIQUE INDEX IF NOT EXISTS spring_session_ix1 ON spring_session(session_id);
+CREATE INDEX IF NOT EXISTS spring_session_ix2 ON spring_session(expiry_time);
+CREATE INDEX IF NOT EXISTS spring_session_ix3 ON spring_session(principal_name);
+
+CREATE TABLE IF NOT EXISTS spring_session_attributes (
+    session_primary_id CHAR(36) NOT NULL,
+    attribute_name VARCHAR(200) NOT NULL,
+    attribute_bytes BYTEA NOT NULL,
+    CONSTRAINT spring_session_attributes_pk PRIMARY KEY (session_primary_id, attribute_name),
+    CONSTRAINT spring_session_attributes_fk FOREIGN KEY (session_primary_id) REFERENCES spring_session(primary_id)
+        ON DELETE CASCADE
+);
+
+-- Progress of account imports: the number of accounts of an input file that are imported, committed together with
+-- every chunk so an interrupted import resumes after it.
+CREATE TABLE IF NOT EXISTS account_transfer_checkpoints (
+    name VARCHAR(1024) PRIMARY KEY,
+    position BIGINT NOT NULL,
+    updated_at TIMESTAMP NOT NULL
+);
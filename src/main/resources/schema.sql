@@ -1,16 +1,26 @@
--- WebAuthn User Entities Table
-CREATE TABLE IF NOT EXISTS user_entities (
-    id VARCHAR(255) PRIMARY KEY,
-    name VARCHAR(255) NOT NULL UNIQUE,
-    display_name VARCHAR(255) NOT NULL
+-- Application Users Table
+-- A user is also the WebAuthn user entity: user_handle is its Base64url id, assigned before the first passkey
+-- registration. Earlier versions kept user entities in a table of their own, user_entities, which
+-- LegacyUserEntityMigration merges into this one.
+CREATE TABLE IF NOT EXISTS users (
+    id BIGINT AUTO_INCREMENT PRIMARY KEY,
+    username VARCHAR(255) NOT NULL UNIQUE,
+    display_name VARCHAR(255) NOT NULL,
+    password VARCHAR(255) NOT NULL,
+    enabled BOOLEAN NOT NULL DEFAULT TRUE,
+    user_handle VARCHAR(255) UNIQUE
 );
 
+ALTER TABLE users ADD COLUMN IF NOT EXISTS user_handle VARCHAR(255) UNIQUE;
+
 -- WebAuthn Credentials Table
-CREATE TABLE IF NOT EXISTS user_credentials (
-    id VARCHAR(255) DEFAULT RANDOM_UUID() PRIMARY KEY,
+-- Credential ids are stored as raw bytes. Lookups go through the SHA-256 hash of the id, a fixed-width key that the
+-- database derives itself, so the primary key index stays small however long the ids are that authenticators choose.
+CREATE TABLE IF NOT EXISTS webauthn_credentials (
+    credential_id_hash BINARY(32) GENERATED ALWAYS AS (HASH('SHA-256', credential_id)) NOT NULL,
+    credential_id VARBINARY(1023) NOT NULL,
     user_entity_user_id VARCHAR(255) NOT NULL,
-    credential_id VARCHAR(1024) NOT NULL UNIQUE,
-    public_key TEXT NOT NULL,
+    public_key VARBINARY(2048) NOT NULL,
     signature_count BIGINT NOT NULL,
     public_key_credential_type VARCHAR(32) NOT NULL,
     created TIMESTAMP NOT NULL,
@@ -22,14 +32,63 @@ CREATE TABLE IF NOT EXISTS user_credentials (
     authenticator_transports VARCHAR(512),
     attestation_object VARBINARY(1024),
     attestation_client_data_json VARBINARY(1024),
-    FOREIGN KEY (user_entity_user_id) REFERENCES user_entities(id)
+    CONSTRAINT pk_webauthn_credentials PRIMARY KEY (credential_id_hash),
+    CONSTRAINT fk_webauthn_credentials_user FOREIGN KEY (user_entity_user_id) REFERENCES users(user_handle)
 );
 
--- Application Users Table
-CREATE TABLE IF NOT EXISTS users (
-    id BIGINT AUTO_INCREMENT PRIMARY KEY,
-    username VARCHAR(255) NOT NULL UNIQUE,
-    display_name VARCHAR(255) NOT NULL,
-    password VARCHAR(255) NOT NULL,
-    enabled BOOLEAN NOT NULL DEFAULT TRUE
+-- Serves the dashboard listing, which selects the credentials of one user ordered by creation time
+CREATE INDEX IF NOT EXISTS idx_webauthn_credentials_user_created ON webauthn_credentials(user_entity_user_id, created);
+
+-- Options of running WebAuthn ceremonies, keyed by the opaque token in the ceremony cookie
+CREATE TABLE IF NOT EXISTS webauthn_ceremony_options (
+    token VARCHAR(64) PRIMARY KEY,
+    ceremony VARCHAR(16) NOT NULL,
+    options VARBINARY(1048576) NOT NULL,
+    expires_at TIMESTAMP NOT NULL
+);
+
+-- Registration options list every passkey the user already has, which outgrew the 8 KiB of earlier versions
+ALTER TABLE webauthn_ceremony_options ALTER COLUMN options SET DATA TYPE VARBINARY(1048576);
+
+CREATE INDEX IF NOT EXISTS idx_webauthn_ceremony_options_expires_at ON webauthn_ceremony_options(expires_at);
+
+-- Session tokens that were revoked before they expired, only used when the security context is kept in a signed
+-- cookie. Every node reloads this table into its in-memory deny-list.
+CREATE TABLE IF NOT EXISTS revoked_session_tokens (
+    token_id VARBINARY(16) PRIMARY KEY,
+    expires_at TIMESTAMP NOT NULL
+);
+
+-- HTTP sessions of Spring Session, only used with passkeys.session.store=jdbc. The layout is Spring Session's own;
+-- expired sessions are deleted in chunks through the expiry_time index.
+CREATE TABLE IF NOT EXISTS spring_session (
+    primary_id CHAR(36) NOT NULL,
+    session_id CHAR(36) NOT NULL,
+    creation_time BIGINT NOT NULL,
+    last_access_time BIGINT NOT NULL,
+    max_inactive_interval INT NOT NULL,
+    expiry_time BIGINT NOT NULL,
+    principal_name VARCHAR(100),
+    CONSTRAINT spring_session_pk PRIMARY KEY (primary_id)
+);
+
+CREATE UNIQUE INDEX IF NOT EXISTS spring_session_ix1 ON spring_session(session_id);
+CREATE INDEX IF NOT EXISTS spring_session_ix2 ON spring_session(expiry_time);
+CREATE INDEX IF NOT EXISTS spring_session_ix3 ON spring_session(principal_name);
+
+CREATE TABLE IF NOT EXISTS spring_session_attributes (
+    session_primary_id CHAR(36) NOT NULL,
+    attribute_name VARCHAR(200) NOT NULL,
+    attribute_bytes VARBINARY(1048576) NOT NULL,
+    CONSTRAINT spring_session_attributes_pk PRIMARY KEY (session_primary_id, attribute_name),
+    CONSTRAINT spring_session_attributes_fk FOREIGN KEY (session_primary_id) REFERENCES spring_session(primary_id)
+        ON DELETE CASCADE
+);
+
+-- Progress of account imports: the number of accounts of an input file that are imported, committed together with
+-- every chunk so an interrupted import resumes after it.
+CREATE TABLE IF NOT EXISTS account_transfer_checkpoints (
+    name VARCHAR(1024) PRIMARY KEY,
+    position BIGINT NOT NULL,
+    updated_at TIMESTAMP NOT NULL
 );
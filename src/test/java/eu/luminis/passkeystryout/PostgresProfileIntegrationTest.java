@@ -0,0 +1,163 @@
+package eu.luminis.passkeystryout;
+
+import com.zaxxer.hikari.HikariDataSource;
+import eu.luminis.passkeystryout.load.ClosedLoopLoad;
+import eu.luminis.passkeystryout.load.WebAuthnBrowser;
+import eu.luminis.passkeystryout.passkey.CredentialRepository;
+import eu.luminis.passkeystryout.passkey.SignatureCountWriteBehind;
+import eu.luminis.passkeystryout.user.User;
+import eu.luminis.passkeystryout.user.UserRepository;
+import eu.luminis.passkeystryout.webauthn.VirtualAuthenticator;
+import eu.luminis.passkeystryout.webauthn.VirtualCredential;
+import io.zonky.test.db.postgres.embedded.EmbeddedPostgres;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.server.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Runs two application nodes in the {@code postgres} profile against one embedded PostgreSQL server, started from the
+ * binaries that Maven provides, as a stand-in for a shared production database.
+ */
+class PostgresProfileIntegrationTest {
+
+    private static final String PASSWORD = "postgres-test-password";
+    private static final String DASHBOARD_QUERY_PLAN_SQL = """
+            EXPLAIN SELECT uc.credential_id, uc.label, uc.created, uc.last_used, uc.signature_count, uc.backup_state
+            FROM users u
+            JOIN webauthn_credentials uc ON uc.user_entity_user_id = u.user_handle
+            WHERE u.username = 'pg-alice'
+            ORDER BY uc.created
+            """;
+
+    private static EmbeddedPostgres postgres;
+    private static ConfigurableApplicationContext nodeA;
+    private static ConfigurableApplicationContext nodeB;
+
+    private final VirtualAuthenticator authenticator = new VirtualAuthenticator("localhost", "http://localhost:8080");
+
+    @BeforeAll
+    static void start() throws IOException {
+        postgres = EmbeddedPostgres.builder().start();
+        nodeA = startNode();
+        nodeB = startNode();
+    }
+
+    @AfterAll
+    static void stop() throws IOException {
+        nodeA.close();
+        nodeB.close();
+        postgres.close();
+    }
+
+    @Test
+    void passkey_shouldSignInOnAnotherNode() throws Exception {
+        // Given
+        nodeA.getBean(UserRepository.class).save(new User("pg-alice", "Alice",
+                nodeA.getBean(PasswordEncoder.class).encode(PASSWORD)));
+        VirtualCredential credential;
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            WebAuthnBrowser browserOnA = new WebAuthnBrowser(baseUrl(nodeA), authenticator, executor);
+            browserOnA.signInWithPassword(ClosedLoopLoad.Steps.untimed(), "pg-alice", PASSWORD);
+            credential = browserOnA.registerPasskey(ClosedLoopLoad.Steps.untimed(),
+                    VirtualAuthenticator.Algorithm.ES256, "Shared key");
+
+            // When
+            new WebAuthnBrowser(baseUrl(nodeB), authenticator, executor)
+                    .signInWithPasskey(ClosedLoopLoad.Steps.untimed(), credential);
+        }
+        nodeB.getBean(SignatureCountWriteBehind.class).flush();
+
+        // Then
+        assertThat(nodeA.getBean(CredentialRepository.class).findPasskeysInfoByUsername("pg-alice"))
+                .singleElement()
+                .satisfies(passkey -> {
+                    assertThat(passkey.credentialId()).isEqualTo(credential.credentialId().toBase64UrlString());
+                    assertThat(passkey.label()).isEqualTo("Shared key");
+                    assertThat(passkey.signatureCount()).isEqualTo(1);
+                });
+    }
+
+    @Test
+    void dashboardQuery_shouldBeAnsweredFromTheCoveringIndex() {
+        // Given
+        JdbcTemplate jdbc = nodeA.getBean(JdbcTemplate.class);
+        jdbc.execute("VACUUM ANALYZE webauthn_credentials");
+
+        // When
+        List<String> plan = jdbc.execute((ConnectionCallback<List<String>>) connection -> {
+            // The table is far too small for the planner to prefer any index on its own
+            connection.setAutoCommit(false);
+            try (Statement statement = connection.createStatement()) {
+                statement.execute("SET LOCAL enable_seqscan = off");
+                List<String> lines = new ArrayList<>();
+                try (ResultSet rs = statement.executeQuery(DASHBOARD_QUERY_PLAN_SQL)) {
+                    while (rs.next()) {
+                        lines.add(rs.getString(1));
+                    }
+                }
+                return lines;
+            } finally {
+                connection.rollback();
+                connection.setAutoCommit(true);
+            }
+        });
+
+        // Then
+        assertThat(String.join("\n", plan)).contains("Index Only Scan using idx_webauthn_credentials_user_created");
+    }
+
+    @Test
+    void dataSource_shouldUseTheTunedPoolAndServerSidePreparedStatements() {
+        // When
+        DataSource dataSource = nodeA.getBean(DataSource.class);
+
+        // Then
+        assertThat(dataSource).isInstanceOfSatisfying(HikariDataSource.class, hikari -> {
+            assertThat(hikari.getPoolName()).isEqualTo("passkeys-postgres");
+            assertThat(hikari.getMinimumIdle()).isEqualTo(hikari.getMaximumPoolSize());
+            assertThat(hikari.getDataSourceProperties())
+                    .containsEntry("prepareThreshold", "1")
+                    .containsEntry("preparedStatementCacheQueries", "256");
+        });
+    }
+
+    private static ConfigurableApplicationContext startNode() {
+        // Command line arguments, because default properties would lose to the profile's properties
+        return new SpringApplicationBuilder(PasskeysTryoutApplication.class)
+                .profiles("postgres")
+                .run("--server.port=0",
+                        "--spring.datasource.url=" + postgres.getJdbcUrl("postgres", "postgres"),
+                        "--spring.datasource.username=postgres",
+                        "--spring.datasource.password=",
+                        "--spring.datasource.hikari.maximum-pool-size=4",
+                        "--spring.datasource.hikari.minimum-idle=4",
+                        "--spring.jpa.show-sql=false",
+                        "--logging.level.root=WARN",
+                        "--logging.level.org.springframework.security.web.webauthn=WARN",
+                        "--logging.level.org.springframework.security.authentication=WARN",
+                        "--logging.level.com.webauthn4j=WARN",
+                        "--passkeys.password.argon2.target-time=1ms",
+                        "--passkeys.password.argon2.min-iterations=1");
+    }
+
+    private static String baseUrl(ConfigurableApplicationContext node) {
+        return "http://localhost:" + ((WebServerApplicationContext) node).getWebServer().getPort();
+    }
+}
@@ -0,0 +1,131 @@
+package eu.luminis.passkeystryout;
+
+import eu.luminis.passkeystryout.passkey.CredentialRepository;
+import eu.luminis.passkeystryout.user.CustomUserDetailsService;
+import eu.luminis.passkeystryout.user.KnownUsernames;
+import org.apache.tomcat.util.threads.VirtualThreadExecutor;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.tomcat.TomcatWebServer;
+import org.springframework.boot.web.server.servlet.context.ServletWebServerApplicationContext;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.TestPropertySource;
+
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Runs the application in the {@code virtual-threads} profile. The connection pool is kept small so that the
+ * workload has to wait for connections, which is where a pinned virtual thread would show up.
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@ActiveProfiles("virtual-threads")
+@TestPropertySource(properties = "spring.datasource.hikari.maximum-pool-size=2")
+class VirtualThreadModeIntegrationTest {
+
+    private static final int USERS = 50;
+
+    @Autowired
+    ServletWebServerApplicationContext context;
+
+    @Autowired
+    AsyncTaskExecutor applicationTaskExecutor;
+
+    @Autowired
+    CredentialRepository credentialRepository;
+
+    @Autowired
+    CustomUserDetailsService userDetailsService;
+
+    @Autowired
+    KnownUsernames knownUsernames;
+
+    @Autowired
+    JdbcTemplate jdbc;
+
+    @AfterEach
+    void tearDown() {
+        jdbc.update("DELETE FROM webauthn_credentials WHERE user_entity_user_id IN "
+                + "(SELECT user_handle FROM users WHERE username LIKE 'vt-%')");
+        jdbc.update("DELETE FROM users WHERE username LIKE 'vt-%'");
+    }
+
+    @Test
+    void tomcat_shouldRunRequestsOnVirtualThreads() {
+        TomcatWebServer webServer = (TomcatWebServer) context.getWebServer();
+
+        assertThat(webServer.getTomcat().getConnector().getProtocolHandler().getExecutor())
+                .isInstanceOf(VirtualThreadExecutor.class);
+    }
+
+    @Test
+    void asyncExecutor_shouldRunTasksOnVirtualThreads() throws Exception {
+        Future<Boolean> virtual = applicationTaskExecutor.submit(() -> Thread.currentThread().isVirtual());
+
+        assertThat(virtual.get()).isTrue();
+    }
+
+    @Test
+    void repositories_shouldNotPinCarrierThreads() throws Exception {
+        // Given
+        for (int i = 0; i < USERS; i++) {
+            insertUserWithPasskey("vt-" + i);
+        }
+        // The users were inserted behind the application's back, as another node would
+        knownUsernames.refresh();
+
+        // When
+        List<String> pinned;
+        try (VirtualThreadPinningRecorder recorder = VirtualThreadPinningRecorder.start();
+             ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < USERS; i++) {
+                String username = "vt-" + i;
+                futures.add(executor.submit(() -> {
+                    userDetailsService.loadUserByUsername(username);
+                    credentialRepository.findPasskeysInfoByUsername(username);
+                    credentialRepository.deletePasskeyFromUser(base64Url(username + "-credential"), username);
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+            pinned = recorder.stopAndReportPinningIn(CredentialRepository.class, CustomUserDetailsService.class);
+        }
+
+        // Then
+        assertThat(pinned).as("virtual threads pinned to their carrier").isEmpty();
+        assertThat(jdbc.queryForObject(
+                "SELECT COUNT(*) FROM webauthn_credentials uc JOIN users u ON u.user_handle = uc.user_entity_user_id "
+                        + "WHERE u.username LIKE 'vt-%'", Integer.class))
+                .isZero();
+    }
+
+    private void insertUserWithPasskey(String username) {
+        Timestamp now = Timestamp.from(Instant.now());
+        jdbc.update("INSERT INTO users (username, display_name, password, user_handle) VALUES (?, ?, ?, ?)",
+                username, username, "{noop}secret", base64Url(username));
+        jdbc.update("""
+                INSERT INTO webauthn_credentials (user_entity_user_id, credential_id, public_key, signature_count,
+                    public_key_credential_type, created, last_used, authenticator_transports)
+                VALUES (?, ?, X'00', 0, 'public-key', ?, ?, 'internal')
+                """, base64Url(username), (username + "-credential").getBytes(StandardCharsets.UTF_8), now, now);
+    }
+
+    private static String base64Url(String value) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(value.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,96 @@
+package eu.luminis.passkeystryout;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordedFrame;
+import jdk.jfr.consumer.RecordedStackTrace;
+import jdk.jfr.consumer.RecordingFile;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Records {@code jdk.VirtualThreadPinned} JFR events while a workload runs. A virtual thread is pinned when it
+ * blocks while it cannot unmount from its carrier, for example inside a {@code synchronized} block on JDK 21 or in
+ * a native frame. Every pinned virtual thread takes a carrier out of the scheduler until it unblocks, so pinning
+ * under JDBC or password hashing quietly caps the throughput of the virtual-thread mode.
+ * <p>
+ * The threshold is zero, so even short pins are reported. The JVM records at most
+ * {@code -XX:FlightRecorderOptions=stackdepth} frames per event; the surefire configuration raises that so frames
+ * of the application are not cut off below deep JDBC and Hibernate stacks.
+ */
+public final class VirtualThreadPinningRecorder implements AutoCloseable {
+
+    private static final String PINNED_EVENT = "jdk.VirtualThreadPinned";
+
+    private final Recording recording = new Recording();
+
+    private VirtualThreadPinningRecorder() {
+        recording.enable(PINNED_EVENT).withThreshold(Duration.ZERO).withStackTrace();
+        recording.setToDisk(true);
+    }
+
+    public static VirtualThreadPinningRecorder start() {
+        VirtualThreadPinningRecorder recorder = new VirtualThreadPinningRecorder();
+        recorder.recording.start();
+        return recorder;
+    }
+
+    /**
+     * Stops the recording and returns a report for every pinned event whose stack passes through one of the given
+     * classes, innermost frame first.
+     */
+    public List<String> stopAndReportPinningIn(Class<?>... classes) {
+        Set<String> classNames = Arrays.stream(classes).map(Class::getName).collect(Collectors.toSet());
+        return stop().stream()
+                .filter(event -> event.getStackTrace() != null)
+                .filter(event -> event.getStackTrace().getFrames().stream()
+                        .anyMatch(frame -> classNames.contains(frame.getMethod().getType().getName())))
+                .map(VirtualThreadPinningRecorder::describe)
+                .toList();
+    }
+
+    private List<RecordedEvent> stop() {
+        recording.stop();
+        try {
+            Path dump = Files.createTempFile("virtual-thread-pinning", ".jfr");
+            try {
+                recording.dump(dump);
+                return RecordingFile.readAllEvents(dump).stream()
+                        .filter(event -> event.getEventType().getName().equals(PINNED_EVENT))
+                        .toList();
+            } finally {
+                Files.deleteIfExists(dump);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static String describe(RecordedEvent event) {
+        RecordedStackTrace stackTrace = event.getStackTrace();
+        String frames = stackTrace.getFrames().stream()
+                .map(VirtualThreadPinningRecorder::describe)
+                .collect(Collectors.joining("\n\tat "));
+        return "Pinned for " + event.getDuration().toNanos() + "ns"
+                + (stackTrace.isTruncated() ? " (stack truncated)" : "")
+                + "\n\tat " + frames;
+    }
+
+    private static String describe(RecordedFrame frame) {
+        return frame.getMethod().getType().getName() + "." + frame.getMethod().getName()
+                + ":" + frame.getLineNumber();
+    }
+
+    @Override
+    public void close() {
+        recording.close();
+    }
+}
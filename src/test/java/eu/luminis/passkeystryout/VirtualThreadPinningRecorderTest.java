@@ -0,0 +1,67 @@
+package eu.luminis.passkeystryout;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class VirtualThreadPinningRecorderTest {
+
+    @Test
+    void stopAndReportPinningIn_shouldReportVirtualThreadBlockedWhilePinned() throws Exception {
+        // Given a virtual thread that sleeps inside a class initializer, which pins it on every JDK release
+        List<String> pinned;
+        try (VirtualThreadPinningRecorder recorder = VirtualThreadPinningRecorder.start()) {
+            Thread.ofVirtual().start(SleepsWhileInitializing::touch).join();
+
+            // When
+            pinned = recorder.stopAndReportPinningIn(SleepsWhileInitializing.class);
+        }
+
+        // Then
+        assertThat(pinned).singleElement().asString()
+                .contains(SleepsWhileInitializing.class.getName() + ".<clinit>");
+    }
+
+    @Test
+    void stopAndReportPinningIn_shouldIgnorePinningOutsideTheGivenClasses() throws Exception {
+        // Given
+        List<String> pinned;
+        try (VirtualThreadPinningRecorder recorder = VirtualThreadPinningRecorder.start()) {
+            Thread.ofVirtual().start(AlsoSleepsWhileInitializing::touch).join();
+
+            // When
+            pinned = recorder.stopAndReportPinningIn(SleepsWhileInitializing.class);
+        }
+
+        // Then
+        assertThat(pinned).isEmpty();
+    }
+
+    static class SleepsWhileInitializing {
+        static {
+            sleep();
+        }
+
+        static void touch() {
+        }
+    }
+
+    static class AlsoSleepsWhileInitializing {
+        static {
+            sleep();
+        }
+
+        static void touch() {
+        }
+    }
+
+    private static void sleep() {
+        try {
+            Thread.sleep(20);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
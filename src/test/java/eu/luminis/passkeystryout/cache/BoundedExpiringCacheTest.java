@@ -0,0 +1,119 @@
+package eu.luminis.passkeystryout.cache;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class BoundedExpiringCacheTest {
+
+    private AtomicLong clock;
+    private BoundedExpiringCache<String, String> cache;
+
+    @BeforeEach
+    void setUp() {
+        clock = new AtomicLong();
+        cache = new BoundedExpiringCache<>(2, Duration.ofSeconds(10), clock::get);
+    }
+
+    @Test
+    void get_shouldCountHitsAndMisses() {
+        cache.put("a", "1");
+
+        assertThat(cache.get("a")).isEqualTo("1");
+        assertThat(cache.get("b")).isNull();
+
+        assertThat(cache.hitCount()).isEqualTo(1);
+        assertThat(cache.missCount()).isEqualTo(1);
+    }
+
+    @Test
+    void put_shouldEvictLeastRecentlyUsedEntry_whenFull() {
+        cache.put("a", "1");
+        cache.put("b", "2");
+        cache.get("a");
+
+        cache.put("c", "3");
+
+        assertThat(cache.peek("a")).isEqualTo("1");
+        assertThat(cache.peek("b")).isNull();
+        assertThat(cache.peek("c")).isEqualTo("3");
+        assertThat(cache.evictionCount()).isEqualTo(1);
+    }
+
+    @Test
+    void get_shouldDropExpiredEntries() {
+        cache.put("a", "1");
+        clock.addAndGet(Duration.ofSeconds(10).toNanos());
+
+        assertThat(cache.get("a")).isNull();
+        assertThat(cache.size()).isZero();
+        assertThat(cache.evictionCount()).isEqualTo(1);
+    }
+
+    @Test
+    void purgeExpired_shouldOnlyRemoveExpiredEntries() {
+        cache.put("a", "1");
+        clock.addAndGet(Duration.ofSeconds(5).toNanos());
+        cache.put("b", "2");
+        clock.addAndGet(Duration.ofSeconds(6).toNanos());
+
+        cache.purgeExpired();
+
+        assertThat(cache.size()).isEqualTo(1);
+        assertThat(cache.peek("b")).isEqualTo("2");
+    }
+
+    @Test
+    void invalidateIf_shouldRemoveMatchingEntries() {
+        cache.put("a", "keep");
+        cache.put("b", "drop");
+
+        cache.invalidateIf((key, value) -> value.equals("drop"));
+
+        assertThat(cache.peek("a")).isEqualTo("keep");
+        assertThat(cache.peek("b")).isNull();
+    }
+
+    @Test
+    void peek_shouldNotTouchStatistics() {
+        cache.put("a", "1");
+
+        cache.peek("a");
+        cache.peek("b");
+
+        assertThat(cache.hitCount()).isZero();
+        assertThat(cache.missCount()).isZero();
+    }
+
+    @Test
+    void bindTo_shouldPublishTheStatisticsUnderTheNameOfTheCache() {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        cache.bindTo(registry, "letters");
+        cache.put("a", "1");
+        cache.put("b", "2");
+        cache.put("c", "3");
+        cache.get("c");
+        cache.get("a");
+
+        assertThat(registry.get("cache.gets").tags("cache", "letters", "result", "hit").functionCounter().count())
+                .isEqualTo(1);
+        assertThat(registry.get("cache.gets").tags("cache", "letters", "result", "miss").functionCounter().count())
+                .isEqualTo(1);
+        assertThat(registry.get("cache.evictions").tag("cache", "letters").functionCounter().count()).isEqualTo(1);
+        assertThat(registry.get("cache.size").tag("cache", "letters").gauge().value()).isEqualTo(2);
+    }
+
+    @Test
+    void constructor_shouldRejectInvalidLimits() {
+        assertThatThrownBy(() -> new BoundedExpiringCache<>(0, Duration.ofSeconds(1)))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> new BoundedExpiringCache<>(1, Duration.ZERO))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+}
@@ -0,0 +1,128 @@
+package eu.luminis.passkeystryout.ceremony;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.security.web.webauthn.api.AttestationConveyancePreference;
+import org.springframework.security.web.webauthn.api.AuthenticatorAttachment;
+import org.springframework.security.web.webauthn.api.AuthenticatorSelectionCriteria;
+import org.springframework.security.web.webauthn.api.AuthenticatorTransport;
+import org.springframework.security.web.webauthn.api.Bytes;
+import org.springframework.security.web.webauthn.api.CredProtectAuthenticationExtensionsClientInput;
+import org.springframework.security.web.webauthn.api.CredProtectAuthenticationExtensionsClientInput.CredProtect;
+import org.springframework.security.web.webauthn.api.ImmutableAuthenticationExtensionsClientInput;
+import org.springframework.security.web.webauthn.api.ImmutableAuthenticationExtensionsClientInputs;
+import org.springframework.security.web.webauthn.api.ImmutablePublicKeyCredentialUserEntity;
+import org.springframework.security.web.webauthn.api.PublicKeyCredentialCreationOptions;
+import org.springframework.security.web.webauthn.api.PublicKeyCredentialDescriptor;
+import org.springframework.security.web.webauthn.api.PublicKeyCredentialParameters;
+import org.springframework.security.web.webauthn.api.PublicKeyCredentialRequestOptions;
+import org.springframework.security.web.webauthn.api.PublicKeyCredentialRpEntity;
+import org.springframework.security.web.webauthn.api.PublicKeyCredentialType;
+import org.springframework.security.web.webauthn.api.ResidentKeyRequirement;
+import org.springframework.security.web.webauthn.api.UserVerificationRequirement;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class CeremonyOptionsCodecTest {
+
+    private final CeremonyOptionsCodec codec = new CeremonyOptionsCodec();
+
+    @Test
+    void requestOptions_shouldSurviveRoundTrip() {
+        // Given
+        PublicKeyCredentialRequestOptions options = PublicKeyCredentialRequestOptions.builder()
+                .challenge(Bytes.random())
+                .timeout(Duration.ofMinutes(5))
+                .rpId("localhost")
+                .allowCredentials(List.of(PublicKeyCredentialDescriptor.builder()
+                        .type(PublicKeyCredentialType.PUBLIC_KEY)
+                        .id(Bytes.fromBase64("Y3JlZDFpZA"))
+                        .transports(Set.of(AuthenticatorTransport.INTERNAL, AuthenticatorTransport.HYBRID))
+                        .build()))
+                .userVerification(UserVerificationRequirement.REQUIRED)
+                .build();
+
+        // When
+        PublicKeyCredentialRequestOptions decoded =
+                codec.decode(codec.encode(options), PublicKeyCredentialRequestOptions.class);
+
+        // Then
+        assertThat(decoded.getChallenge()).isEqualTo(options.getChallenge());
+        assertThat(decoded.getTimeout()).isEqualTo(Duration.ofMinutes(5));
+        assertThat(decoded.getRpId()).isEqualTo("localhost");
+        assertThat(decoded.getUserVerification()).isSameAs(UserVerificationRequirement.REQUIRED);
+        assertThat(decoded.getAllowCredentials()).singleElement().satisfies(descriptor -> {
+            assertThat(descriptor.getId()).isEqualTo(Bytes.fromBase64("Y3JlZDFpZA"));
+            assertThat(descriptor.getType().getValue()).isEqualTo("public-key");
+            assertThat(descriptor.getTransports()).extracting(AuthenticatorTransport::getValue)
+                    .containsExactlyInAnyOrder("internal", "hybrid");
+        });
+    }
+
+    @Test
+    void creationOptions_shouldSurviveRoundTrip() {
+        // Given
+        PublicKeyCredentialCreationOptions options = PublicKeyCredentialCreationOptions.builder()
+                .rp(PublicKeyCredentialRpEntity.builder().name("Passkeys Demo").id("localhost").build())
+                .user(ImmutablePublicKeyCredentialUserEntity.builder()
+                        .name("alice")
+                        .id(Bytes.random())
+                        .displayName("Alice")
+                        .build())
+                .challenge(Bytes.random())
+                .pubKeyCredParams(PublicKeyCredentialParameters.EdDSA, PublicKeyCredentialParameters.ES256,
+                        PublicKeyCredentialParameters.RS256)
+                .timeout(Duration.ofMinutes(5))
+                .authenticatorSelection(AuthenticatorSelectionCriteria.builder()
+                        .authenticatorAttachment(AuthenticatorAttachment.PLATFORM)
+                        .residentKey(ResidentKeyRequirement.REQUIRED)
+                        .userVerification(UserVerificationRequirement.PREFERRED)
+                        .build())
+                .attestation(AttestationConveyancePreference.NONE)
+                .extensions(new ImmutableAuthenticationExtensionsClientInputs(
+                        ImmutableAuthenticationExtensionsClientInput.credProps,
+                        new CredProtectAuthenticationExtensionsClientInput(new CredProtect(
+                                CredProtect.ProtectionPolicy.USER_VERIFICATION_REQUIRED, true))))
+                .build();
+
+        // When
+        PublicKeyCredentialCreationOptions decoded =
+                codec.decode(codec.encode(options), PublicKeyCredentialCreationOptions.class);
+
+        // Then
+        assertThat(decoded.getRp().getName()).isEqualTo("Passkeys Demo");
+        assertThat(decoded.getRp().getId()).isEqualTo("localhost");
+        assertThat(decoded.getUser().getName()).isEqualTo("alice");
+        assertThat(decoded.getUser().getId()).isEqualTo(options.getUser().getId());
+        assertThat(decoded.getUser().getDisplayName()).isEqualTo("Alice");
+        assertThat(decoded.getChallenge()).isEqualTo(options.getChallenge());
+        assertThat(decoded.getPubKeyCredParams()).containsExactly(PublicKeyCredentialParameters.EdDSA,
+                PublicKeyCredentialParameters.ES256, PublicKeyCredentialParameters.RS256);
+        assertThat(decoded.getTimeout()).isEqualTo(Duration.ofMinutes(5));
+        assertThat(decoded.getExcludeCredentials()).isEmpty();
+        assertThat(decoded.getAuthenticatorSelection().getAuthenticatorAttachment().getValue()).isEqualTo("platform");
+        assertThat(decoded.getAuthenticatorSelection().getResidentKey().getValue()).isEqualTo("required");
+        assertThat(decoded.getAuthenticatorSelection().getUserVerification())
+                .isSameAs(UserVerificationRequirement.PREFERRED);
+        assertThat(decoded.getAttestation().getValue()).isEqualTo("none");
+        assertThat(decoded.getExtensions().getInputs()).hasSize(2);
+        assertThat(decoded.getExtensions().getInputs().get(0).getExtensionId()).isEqualTo("credProps");
+        assertThat(decoded.getExtensions().getInputs().get(0).getInput()).isEqualTo(true);
+        assertThat(decoded.getExtensions().getInputs().get(1).getInput())
+                .isInstanceOfSatisfying(CredProtect.class, credProtect -> {
+                    assertThat(credProtect.getCredProtectionPolicy())
+                            .isEqualTo(CredProtect.ProtectionPolicy.USER_VERIFICATION_REQUIRED);
+                    assertThat(credProtect.isEnforceCredentialProtectionPolicy()).isTrue();
+                });
+    }
+
+    @Test
+    void encode_shouldRejectUnknownTypes() {
+        assertThatThrownBy(() -> codec.encode("not options"))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+}
@@ -0,0 +1,84 @@
+package eu.luminis.passkeystryout.ceremony;
+
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.webmvc.test.autoconfigure.AutoConfigureMockMvc;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.security.test.web.servlet.request.SecurityMockMvcRequestPostProcessors.csrf;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.cookie;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest
+@AutoConfigureMockMvc
+// A context of its own: csrf() of spring-security-test swaps the CSRF token repository for one in the session
+@TestPropertySource(properties = "spring.datasource.url=jdbc:h2:mem:ceremony-options")
+class CeremonyOptionsIntegrationTest {
+
+    private static final Pattern CSRF_TOKEN = Pattern.compile("\"token\":\"([^\"]+)\"");
+    private static final Pattern CSRF_HEADER = Pattern.compile("\"headerName\":\"([^\"]+)\"");
+
+    @Autowired
+    MockMvc mockMvc;
+
+    @Test
+    void authenticationOptions_shouldUseCookieTokenInsteadOfSession() throws Exception {
+        // Given a visitor who opens the login page and fetches its CSRF token, as the page does before a passkey login
+        MvcResult page = mockMvc.perform(get("/login"))
+                .andExpect(status().isOk())
+                .andReturn();
+        MvcResult csrf = mockMvc.perform(get("/csrf"))
+                .andExpect(status().isOk())
+                .andExpect(cookie().exists("XSRF-TOKEN"))
+                .andReturn();
+        Matcher token = CSRF_TOKEN.matcher(csrf.getResponse().getContentAsString());
+        Matcher header = CSRF_HEADER.matcher(csrf.getResponse().getContentAsString());
+        assertThat(token.find()).isTrue();
+        assertThat(header.find()).isTrue();
+
+        // When
+        MvcResult options = mockMvc.perform(post("/webauthn/authenticate/options")
+                        .cookie(csrf.getResponse().getCookie("XSRF-TOKEN"))
+                        .header(header.group(1), token.group(1)))
+                .andExpect(status().isOk())
+                .andExpect(cookie().exists("WEBAUTHN_AUTHENTICATION"))
+                .andExpect(cookie().httpOnly("WEBAUTHN_AUTHENTICATION", true))
+                .andReturn();
+
+        // Then
+        for (MvcResult result : List.of(page, csrf, options)) {
+            assertThat(result.getRequest().getSession(false)).isNull();
+            assertThat(result.getResponse().getCookie("JSESSIONID")).isNull();
+        }
+    }
+
+    @Nested
+    @TestPropertySource(properties = "passkeys.ceremony.store=memory")
+    class InMemoryStore {
+
+        @Autowired
+        CeremonyOptionsStore store;
+
+        @Test
+        void authenticationOptions_shouldBeKeptInMemory() throws Exception {
+            assertThat(store).isInstanceOf(InMemoryCeremonyOptionsStore.class);
+
+            mockMvc.perform(post("/webauthn/authenticate/options").with(csrf()))
+                    .andExpect(status().isOk())
+                    .andExpect(cookie().exists("WEBAUTHN_AUTHENTICATION"));
+
+            assertThat(((InMemoryCeremonyOptionsStore) store).liveCount()).isEqualTo(1);
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package eu.luminis.passkeystryout.ceremony;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.web.webauthn.api.Bytes;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class ChallengePoolTest {
+
+    @Test
+    void take_shouldHandOutPooledChallenges_untilTheRingIsEmpty() {
+        // Given
+        ChallengePool pool = new ChallengePool(4);
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        pool.bindTo(registry);
+
+        // When
+        int added = pool.refill();
+        List<Bytes> challenges = new ArrayList<>();
+        for (int i = 0; i < 6; i++) {
+            challenges.add(pool.take());
+        }
+
+        // Then
+        assertThat(added).isEqualTo(4);
+        assertThat(challenges).doesNotHaveDuplicates()
+                .allSatisfy(challenge -> assertThat(challenge.getBytes()).hasSize(ChallengePool.CHALLENGE_BYTES));
+        assertThat(registry.get("webauthn.challenge-pool.taken").functionCounter().count()).isEqualTo(4);
+        assertThat(registry.get("webauthn.challenge-pool.fallbacks").functionCounter().count()).isEqualTo(2);
+        assertThat(registry.get("webauthn.challenge-pool.size").gauge().value()).isZero();
+    }
+
+    @Test
+    void refill_shouldOnlyTopUpWhatWasTaken() {
+        // Given
+        ChallengePool pool = new ChallengePool(8);
+        pool.refill();
+        pool.take();
+        pool.take();
+        pool.take();
+
+        // When
+        int added = pool.refill();
+
+        // Then
+        assertThat(added).isEqualTo(3);
+        assertThat(pool.size()).isEqualTo(8);
+        assertThat(pool.refill()).isZero();
+    }
+
+    @Test
+    void capacity_shouldBeRoundedUpToAPowerOfTwo() {
+        assertThat(new ChallengePool(1).capacity()).isEqualTo(1);
+        assertThat(new ChallengePool(5).capacity()).isEqualTo(8);
+        assertThat(new ChallengePool(1024).capacity()).isEqualTo(1024);
+        assertThatThrownBy(() -> new ChallengePool(0)).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void concurrentTakes_shouldNeverHandOutAChallengeTwice_whileTheRingIsRefilled() throws Exception {
+        // Given
+        ChallengePool pool = new ChallengePool(64);
+        Set<Bytes> seen = ConcurrentHashMap.newKeySet();
+        int takers = 8;
+        int takesPerTaker = 5_000;
+        CountDownLatch start = new CountDownLatch(1);
+
+        // When
+        List<Future<Integer>> duplicates = new ArrayList<>();
+        try (ExecutorService executor = Executors.newFixedThreadPool(takers + 1)) {
+            Future<?> refiller = executor.submit(() -> {
+                start.await();
+                while (!Thread.currentThread().isInterrupted()) {
+                    pool.refill();
+                }
+                return null;
+            });
+            for (int t = 0; t < takers; t++) {
+                duplicates.add(executor.submit(() -> {
+                    start.await();
+                    int count = 0;
+                    for (int i = 0; i < takesPerTaker; i++) {
+                        if (!seen.add(pool.take())) {
+                            count++;
+                        }
+                    }
+                    return count;
+                }));
+            }
+            start.countDown();
+            for (Future<Integer> taker : duplicates) {
+                taker.get();
+            }
+            refiller.cancel(true);
+        }
+
+        // Then
+        for (Future<Integer> taker : duplicates) {
+            assertThat(taker.get()).isZero();
+        }
+        assertThat(seen).hasSize(takers * takesPerTaker);
+    }
+}
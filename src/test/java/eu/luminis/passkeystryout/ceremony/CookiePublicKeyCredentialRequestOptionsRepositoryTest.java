@@ -0,0 +1,103 @@
+package eu.luminis.passkeystryout.ceremony;
+
+import jakarta.servlet.http.Cookie;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.http.HttpHeaders;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.web.webauthn.api.Bytes;
+import org.springframework.security.web.webauthn.api.PublicKeyCredentialRequestOptions;
+
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class CookiePublicKeyCredentialRequestOptionsRepositoryTest {
+
+    @Mock
+    private CeremonyOptionsStore store;
+
+    private CookiePublicKeyCredentialRequestOptionsRepository repository;
+    private MockHttpServletRequest request;
+    private MockHttpServletResponse response;
+    private PublicKeyCredentialRequestOptions options;
+
+    @BeforeEach
+    void setUp() {
+        repository = new CookiePublicKeyCredentialRequestOptionsRepository(store, Duration.ofMinutes(5));
+        request = new MockHttpServletRequest();
+        response = new MockHttpServletResponse();
+        options = PublicKeyCredentialRequestOptions.builder().challenge(Bytes.random()).rpId("localhost").build();
+    }
+
+    @Test
+    void save_shouldStoreOptionsUnderCookieTokenWithoutSession() {
+        // When
+        repository.save(request, response, options);
+
+        // Then
+        ArgumentCaptor<String> token = ArgumentCaptor.forClass(String.class);
+        verify(store).save(eq(Ceremony.AUTHENTICATION), token.capture(), eq(options));
+        Cookie cookie = response.getCookie("WEBAUTHN_AUTHENTICATION");
+        assertThat(cookie).isNotNull();
+        assertThat(cookie.getValue()).isEqualTo(token.getValue()).hasSize(43);
+        assertThat(cookie.isHttpOnly()).isTrue();
+        assertThat(cookie.getMaxAge()).isEqualTo(300);
+        assertThat(response.getHeader(HttpHeaders.SET_COOKIE)).contains("SameSite=Strict");
+        assertThat(request.getSession(false)).isNull();
+    }
+
+    @Test
+    void save_shouldReplacePreviousOptions() {
+        // Given
+        request.setCookies(new Cookie("WEBAUTHN_AUTHENTICATION", "previous"));
+
+        // When
+        repository.save(request, response, options);
+
+        // Then
+        verify(store).remove(Ceremony.AUTHENTICATION, "previous");
+        verify(store).save(eq(Ceremony.AUTHENTICATION), any(), eq(options));
+    }
+
+    @Test
+    void save_shouldRemoveOptionsAndClearCookie_whenOptionsAreNull() {
+        // Given
+        request.setCookies(new Cookie("WEBAUTHN_AUTHENTICATION", "token"));
+
+        // When
+        repository.save(request, response, null);
+
+        // Then
+        verify(store).remove(Ceremony.AUTHENTICATION, "token");
+        verify(store, never()).save(any(), any(), any());
+        assertThat(response.getCookie("WEBAUTHN_AUTHENTICATION").getMaxAge()).isZero();
+    }
+
+    @Test
+    void load_shouldConsumeOptionsForCookieToken() {
+        // Given
+        request.setCookies(new Cookie("WEBAUTHN_AUTHENTICATION", "token"));
+        when(store.consume(Ceremony.AUTHENTICATION, "token", PublicKeyCredentialRequestOptions.class))
+                .thenReturn(options);
+
+        // When / Then
+        assertThat(repository.load(request)).isSameAs(options);
+    }
+
+    @Test
+    void load_shouldReturnNull_whenCookieIsMissing() {
+        // When / Then
+        assertThat(repository.load(request)).isNull();
+        verifyNoInteractions(store);
+    }
+}
@@ -0,0 +1,131 @@
+package eu.luminis.passkeystryout.ceremony;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class HierarchicalTimingWheelTest {
+
+    private static final long TICK = Duration.ofSeconds(1).toNanos();
+
+    private final HierarchicalTimingWheel<String> wheel = new HierarchicalTimingWheel<>(Duration.ofSeconds(1), 3, 0);
+
+    @Test
+    void advance_shouldExpireItemsOnTheirDeadlineTick() {
+        // Given
+        wheel.schedule("a", 3 * TICK);
+        wheel.schedule("b", 5 * TICK);
+        List<String> expired = new ArrayList<>();
+
+        // When / Then
+        wheel.advance(2 * TICK, expired::add);
+        assertThat(expired).isEmpty();
+
+        wheel.advance(3 * TICK, expired::add);
+        assertThat(expired).containsExactly("a");
+
+        wheel.advance(10 * TICK, expired::add);
+        assertThat(expired).containsExactly("a", "b");
+        assertThat(wheel.size()).isZero();
+    }
+
+    @Test
+    void advance_shouldRoundDeadlinesUpToTheNextTick() {
+        // Given
+        wheel.schedule("a", TICK + 1);
+        List<String> expired = new ArrayList<>();
+
+        // When
+        wheel.advance(TICK + 1, expired::add);
+
+        // Then
+        assertThat(expired).isEmpty();
+        wheel.advance(2 * TICK, expired::add);
+        assertThat(expired).containsExactly("a");
+    }
+
+    @Test
+    void advance_shouldCascadeItemsFromHigherLevels() {
+        // Given deadlines on level 1 (>= 64 ticks) and level 2 (>= 4096 ticks)
+        wheel.schedule("level1", 300 * TICK);
+        wheel.schedule("level2", 5000 * TICK);
+        List<String> expired = new ArrayList<>();
+
+        // When / Then
+        wheel.advance(299 * TICK, expired::add);
+        assertThat(expired).isEmpty();
+        wheel.advance(300 * TICK, expired::add);
+        assertThat(expired).containsExactly("level1");
+
+        wheel.advance(4999 * TICK, expired::add);
+        assertThat(expired).containsExactly("level1");
+        wheel.advance(5000 * TICK, expired::add);
+        assertThat(expired).containsExactly("level1", "level2");
+    }
+
+    @Test
+    void advance_shouldHandleDeadlinesBeyondTheTopLevel() {
+        // Given three levels cover 64^3 ticks
+        long deadline = 64L * 64 * 64 * 2 + 17;
+        wheel.schedule("far", deadline * TICK);
+        List<String> expired = new ArrayList<>();
+
+        // When / Then
+        wheel.advance((deadline - 1) * TICK, expired::add);
+        assertThat(expired).isEmpty();
+        wheel.advance(deadline * TICK, expired::add);
+        assertThat(expired).containsExactly("far");
+    }
+
+    @Test
+    void advance_shouldExpireEveryItemExactlyOnceOnItsDeadline() {
+        // Given
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        long[] deadlines = new long[2_000];
+        for (int i = 0; i < deadlines.length; i++) {
+            deadlines[i] = random.nextLong(1, 10_000);
+            wheel.schedule(String.valueOf(i), deadlines[i] * TICK);
+        }
+
+        // When
+        List<String> expired = new ArrayList<>();
+        for (long tick = 1; tick < 10_000; tick++) {
+            long now = tick;
+            wheel.advance(now * TICK, item -> {
+                assertThat(deadlines[Integer.parseInt(item)]).isEqualTo(now);
+                expired.add(item);
+            });
+        }
+
+        // Then
+        assertThat(expired).hasSize(deadlines.length).doesNotHaveDuplicates();
+    }
+
+    @Test
+    void schedule_shouldExpireOverdueItemsOnTheNextTick() {
+        // Given
+        wheel.advance(10 * TICK, item -> { });
+        wheel.schedule("late", 5 * TICK);
+        List<String> expired = new ArrayList<>();
+
+        // When
+        wheel.advance(11 * TICK, expired::add);
+
+        // Then
+        assertThat(expired).containsExactly("late");
+    }
+
+    @Test
+    void constructor_shouldRejectInvalidArguments() {
+        assertThatThrownBy(() -> new HierarchicalTimingWheel<>(Duration.ZERO, 3, 0))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> new HierarchicalTimingWheel<>(Duration.ofSeconds(1), 0, 0))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+}
@@ -0,0 +1,152 @@
+package eu.luminis.passkeystryout.ceremony;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.web.webauthn.api.Bytes;
+import org.springframework.security.web.webauthn.api.PublicKeyCredentialRequestOptions;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class InMemoryCeremonyOptionsStoreTest {
+
+    private static final Duration TIME_TO_LIVE = Duration.ofMinutes(5);
+
+    private AtomicLong clock;
+    private InMemoryCeremonyOptionsStore store;
+    private PublicKeyCredentialRequestOptions options;
+
+    @BeforeEach
+    void setUp() {
+        clock = new AtomicLong();
+        store = new InMemoryCeremonyOptionsStore(TIME_TO_LIVE, Duration.ofSeconds(1), clock::get);
+        options = PublicKeyCredentialRequestOptions.builder()
+                .challenge(Bytes.random())
+                .rpId("localhost")
+                .build();
+    }
+
+    @Test
+    void consume_shouldReturnOptionsOnlyOnce() {
+        // Given
+        store.save(Ceremony.AUTHENTICATION, "token", options);
+
+        // When / Then
+        assertThat(store.consume(Ceremony.AUTHENTICATION, "token", PublicKeyCredentialRequestOptions.class))
+                .isSameAs(options);
+        assertThat(store.consume(Ceremony.AUTHENTICATION, "token", PublicKeyCredentialRequestOptions.class))
+                .isNull();
+        assertThat(store.liveCount()).isZero();
+    }
+
+    @Test
+    void consume_shouldNotMixCeremonies() {
+        // Given
+        store.save(Ceremony.AUTHENTICATION, "token", options);
+
+        // When / Then
+        assertThat(store.consume(Ceremony.REGISTRATION, "token", PublicKeyCredentialRequestOptions.class)).isNull();
+        assertThat(store.liveCount()).isEqualTo(1);
+    }
+
+    @Test
+    void consume_shouldIgnoreExpiredOptions_evenBeforeTheWheelRemovedThem() {
+        // Given
+        store.save(Ceremony.AUTHENTICATION, "token", options);
+        clock.addAndGet(TIME_TO_LIVE.toNanos());
+
+        // When / Then
+        assertThat(store.consume(Ceremony.AUTHENTICATION, "token", PublicKeyCredentialRequestOptions.class))
+                .isNull();
+        assertThat(store.expiredCount()).isEqualTo(1);
+    }
+
+    @Test
+    void expire_shouldRemoveAbandonedCeremonies() {
+        // Given
+        store.save(Ceremony.AUTHENTICATION, "abandoned", options);
+        clock.addAndGet(Duration.ofMinutes(1).toNanos());
+        store.save(Ceremony.REGISTRATION, "recent", options);
+
+        // When
+        clock.addAndGet(Duration.ofMinutes(4).toNanos());
+        int removed = store.expire();
+
+        // Then
+        assertThat(removed).isEqualTo(1);
+        assertThat(store.liveCount()).isEqualTo(1);
+        assertThat(store.expiredCount()).isEqualTo(1);
+    }
+
+    @Test
+    void expire_shouldNotRemoveEntryThatReplacedAnExpiredOne() {
+        // Given the same token is saved again before the first entry is expired by the wheel
+        store.save(Ceremony.AUTHENTICATION, "token", options);
+        clock.addAndGet(Duration.ofMinutes(4).toNanos());
+        store.save(Ceremony.AUTHENTICATION, "token", options);
+
+        // When
+        clock.addAndGet(Duration.ofMinutes(2).toNanos());
+        store.expire();
+
+        // Then
+        assertThat(store.consume(Ceremony.AUTHENTICATION, "token", PublicKeyCredentialRequestOptions.class))
+                .isSameAs(options);
+    }
+
+    @Test
+    void consume_shouldHandOutOptionsToExactlyOneConcurrentCaller() throws Exception {
+        // Given
+        int threads = 16;
+        store.save(Ceremony.AUTHENTICATION, "token", options);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<PublicKeyCredentialRequestOptions>> results = new ArrayList<>();
+
+        // When
+        try (ExecutorService executor = Executors.newFixedThreadPool(threads)) {
+            for (int i = 0; i < threads; i++) {
+                results.add(executor.submit(() -> {
+                    start.await();
+                    return store.consume(Ceremony.AUTHENTICATION, "token", PublicKeyCredentialRequestOptions.class);
+                }));
+            }
+            start.countDown();
+        }
+
+        // Then
+        int winners = 0;
+        for (Future<PublicKeyCredentialRequestOptions> result : results) {
+            if (result.get() != null) {
+                winners++;
+            }
+        }
+        assertThat(winners).isEqualTo(1);
+    }
+
+    @Test
+    void bindTo_shouldPublishLiveAndExpiredMeters() {
+        // Given
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        store.bindTo(registry);
+        store.save(Ceremony.AUTHENTICATION, "live", options);
+        store.save(Ceremony.AUTHENTICATION, "abandoned", options);
+        store.consume(Ceremony.AUTHENTICATION, "live", PublicKeyCredentialRequestOptions.class);
+
+        // When
+        clock.addAndGet(TIME_TO_LIVE.toNanos());
+        store.expire();
+
+        // Then
+        assertThat(registry.get("webauthn.ceremony.options.live").gauge().value()).isZero();
+        assertThat(registry.get("webauthn.ceremony.options.expired").functionCounter().count()).isEqualTo(1.0);
+    }
+}
@@ -0,0 +1,129 @@
+package eu.luminis.passkeystryout.ceremony;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+import org.springframework.security.web.webauthn.api.Bytes;
+import org.springframework.security.web.webauthn.api.PublicKeyCredentialRequestOptions;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Runs the ceremony options store against an in-memory H2 database created from {@code schema.sql}.
+ */
+class JdbcCeremonyOptionsStoreTest {
+
+    private static final Instant NOW = Instant.parse("2025-01-01T10:00:00Z");
+    private static final Duration TIME_TO_LIVE = Duration.ofMinutes(5);
+
+    private EmbeddedDatabase database;
+    private JdbcTemplate jdbc;
+    private JdbcCeremonyOptionsStore store;
+    private PublicKeyCredentialRequestOptions options;
+
+    @BeforeEach
+    void setUp() {
+        database = new EmbeddedDatabaseBuilder()
+                .setType(EmbeddedDatabaseType.H2)
+                .generateUniqueName(true)
+                .addScript("schema.sql")
+                .build();
+        jdbc = new JdbcTemplate(database);
+        store = storeAt(NOW);
+        options = PublicKeyCredentialRequestOptions.builder()
+                .challenge(Bytes.random())
+                .rpId("localhost")
+                .build();
+    }
+
+    @AfterEach
+    void tearDown() {
+        database.shutdown();
+    }
+
+    @Test
+    void consume_shouldReturnOptionsOnlyOnce() {
+        // Given
+        store.save(Ceremony.AUTHENTICATION, "token", options);
+
+        // When
+        PublicKeyCredentialRequestOptions first =
+                store.consume(Ceremony.AUTHENTICATION, "token", PublicKeyCredentialRequestOptions.class);
+        PublicKeyCredentialRequestOptions second =
+                store.consume(Ceremony.AUTHENTICATION, "token", PublicKeyCredentialRequestOptions.class);
+
+        // Then
+        assertThat(first).isNotNull();
+        assertThat(first.getChallenge()).isEqualTo(options.getChallenge());
+        assertThat(second).isNull();
+    }
+
+    @Test
+    void consume_shouldNotMixCeremonies() {
+        // Given
+        store.save(Ceremony.AUTHENTICATION, "token", options);
+
+        // When / Then
+        assertThat(store.consume(Ceremony.REGISTRATION, "token", PublicKeyCredentialRequestOptions.class)).isNull();
+        assertThat(store.consume(Ceremony.AUTHENTICATION, "token", PublicKeyCredentialRequestOptions.class))
+                .isNotNull();
+    }
+
+    @Test
+    void consume_shouldIgnoreExpiredOptions() {
+        // Given
+        store.save(Ceremony.AUTHENTICATION, "token", options);
+
+        // When
+        PublicKeyCredentialRequestOptions result = storeAt(NOW.plus(TIME_TO_LIVE))
+                .consume(Ceremony.AUTHENTICATION, "token", PublicKeyCredentialRequestOptions.class);
+
+        // Then
+        assertThat(result).isNull();
+        assertThat(countRows()).isZero();
+    }
+
+    @Test
+    void purgeExpired_shouldOnlyDeleteExpiredRows() {
+        // Given
+        store.save(Ceremony.AUTHENTICATION, "old", options);
+        storeAt(NOW.plus(Duration.ofMinutes(3))).save(Ceremony.AUTHENTICATION, "new", options);
+
+        // When
+        int purged = storeAt(NOW.plus(Duration.ofMinutes(6))).purgeExpired();
+
+        // Then
+        assertThat(purged).isEqualTo(1);
+        assertThat(countRows()).isEqualTo(1);
+    }
+
+    @Test
+    void remove_shouldDeleteOptions() {
+        // Given
+        store.save(Ceremony.AUTHENTICATION, "token", options);
+
+        // When
+        store.remove(Ceremony.AUTHENTICATION, "token");
+
+        // Then
+        assertThat(countRows()).isZero();
+    }
+
+    private JdbcCeremonyOptionsStore storeAt(Instant instant) {
+        return new JdbcCeremonyOptionsStore(jdbc, new CeremonyOptionsCodec(), TIME_TO_LIVE,
+                Clock.fixed(instant, ZoneOffset.UTC));
+    }
+
+    private int countRows() {
+        return jdbc.queryForObject("SELECT COUNT(*) FROM webauthn_ceremony_options", Integer.class);
+    }
+}
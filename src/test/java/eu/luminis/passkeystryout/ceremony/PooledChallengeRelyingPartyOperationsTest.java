@@ -0,0 +1,70 @@
+package eu.luminis.passkeystryout.ceremony;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.security.authentication.AnonymousAuthenticationToken;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.authority.AuthorityUtils;
+import org.springframework.security.web.webauthn.api.Bytes;
+import org.springframework.security.web.webauthn.api.PublicKeyCredentialRequestOptions;
+import org.springframework.security.web.webauthn.api.UserVerificationRequirement;
+import org.springframework.security.web.webauthn.management.ImmutablePublicKeyCredentialRequestOptionsRequest;
+import org.springframework.security.web.webauthn.management.WebAuthnRelyingPartyOperations;
+
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+class PooledChallengeRelyingPartyOperationsTest {
+
+    private final WebAuthnRelyingPartyOperations delegate = mock(WebAuthnRelyingPartyOperations.class);
+    private final ChallengePool pool = new ChallengePool(2);
+    private final PooledChallengeRelyingPartyOperations operations =
+            new PooledChallengeRelyingPartyOperations(delegate, pool, "localhost");
+
+    @Test
+    void optionsForAnonymousVisitor_shouldUseAPooledChallenge_withoutTheDelegate() {
+        // Given
+        pool.refill();
+        Authentication anonymous = new AnonymousAuthenticationToken("key", "anonymousUser",
+                AuthorityUtils.createAuthorityList("ROLE_ANONYMOUS"));
+
+        // When
+        PublicKeyCredentialRequestOptions options = operations.createCredentialRequestOptions(
+                new ImmutablePublicKeyCredentialRequestOptionsRequest(anonymous));
+
+        // Then
+        assertThat(options.getChallenge().getBytes()).hasSize(ChallengePool.CHALLENGE_BYTES);
+        assertThat(options.getRpId()).isEqualTo("localhost");
+        assertThat(options.getAllowCredentials()).isEmpty();
+        assertThat(options.getTimeout()).isEqualTo(Duration.ofMinutes(5));
+        assertThat(options.getUserVerification()).isEqualTo(UserVerificationRequirement.PREFERRED);
+        assertThat(pool.size()).isOne();
+        verifyNoInteractions(delegate);
+    }
+
+    @Test
+    void optionsForSignedInUser_shouldBeLeftToTheDelegate() {
+        // Given
+        Authentication user = UsernamePasswordAuthenticationToken.authenticated("alice", null,
+                AuthorityUtils.createAuthorityList("ROLE_USER"));
+        PublicKeyCredentialRequestOptions delegated = PublicKeyCredentialRequestOptions.builder()
+                .challenge(Bytes.random())
+                .rpId("localhost")
+                .build();
+        when(delegate.createCredentialRequestOptions(any())).thenReturn(delegated);
+
+        // When
+        PublicKeyCredentialRequestOptions options = operations.createCredentialRequestOptions(
+                new ImmutablePublicKeyCredentialRequestOptionsRequest(user));
+
+        // Then
+        assertThat(options).isSameAs(delegated);
+        verify(delegate).createCredentialRequestOptions(any());
+    }
+}
@@ -1,12 +1,16 @@
 package eu.luminis.passkeystryout.dashboard;
 
+import eu.luminis.passkeystryout.metrics.WebAuthnMetrics;
 import eu.luminis.passkeystryout.passkey.CredentialRepository;
-import eu.luminis.passkeystryout.user.User;
-import eu.luminis.passkeystryout.user.UserRepository;
+import eu.luminis.passkeystryout.passkey.PasskeySummary;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.Nested;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.TestConfiguration;
 import org.springframework.boot.webmvc.test.autoconfigure.WebMvcTest;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Import;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.security.web.webauthn.api.PublicKeyCredentialUserEntity;
 import org.springframework.test.context.bean.override.mockito.MockitoBean;
@@ -14,9 +18,9 @@ import org.springframework.test.web.servlet.MockMvc;
 
 import java.time.Instant;
 import java.util.List;
-import java.util.Map;
-import java.util.Optional;
 
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.hamcrest.Matchers.containsString;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
 import static org.springframework.security.test.web.servlet.request.SecurityMockMvcRequestPostProcessors.authentication;
@@ -25,17 +29,32 @@ import static org.springframework.test.web.servlet.request.MockMvcRequestBuilder
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
 
 @WebMvcTest(DashboardController.class)
+@Import(DashboardControllerWebMvcTest.Metrics.class)
 class DashboardControllerWebMvcTest {
 
     @Autowired
     MockMvc mockMvc;
 
-    @MockitoBean
-    UserRepository userRepository;
-
     @MockitoBean
     CredentialRepository credentialRepository;
 
+    @Autowired
+    SimpleMeterRegistry meterRegistry;
+
+    @TestConfiguration
+    static class Metrics {
+
+        @Bean
+        SimpleMeterRegistry meterRegistry() {
+            return new SimpleMeterRegistry();
+        }
+
+        @Bean
+        WebAuthnMetrics webAuthnMetrics(SimpleMeterRegistry meterRegistry) {
+            return new WebAuthnMetrics(meterRegistry);
+        }
+    }
+
     @Nested
     class Dashboard {
 
@@ -47,16 +66,8 @@ class DashboardControllerWebMvcTest {
                     .roles("USER")
                     .build();
 
-            User user = new User();
-            when(userRepository.findByUsername("alice")).thenReturn(Optional.of(user));
-            List<Map<String, Object>> passkeys = List.of(Map.of(
-                    "id", "key1",
-                    "credential_id", "cred1",
-                    "label", "Alice's Passkey",
-                    "created", Instant.now(),
-                    "last_used", Instant.now(),
-                    "signature_count", 42,
-                    "backup_state", false));
+            List<PasskeySummary> passkeys = List.of(
+                    new PasskeySummary("cred1", "Alice's Passkey", Instant.now(), Instant.now(), 42, false));
             when(credentialRepository.findPasskeysInfoByUsername("alice")).thenReturn(passkeys);
 
             mockMvc.perform(get("/dashboard").with(user(principal)))
@@ -65,7 +76,8 @@ class DashboardControllerWebMvcTest {
                     .andExpect(model().attribute("username", "alice"))
                     .andExpect(model().attribute("authMethod", "Password"))
                     .andExpect(model().attribute("passkeys", passkeys))
-                    .andExpect(model().attribute("passkeyCount", 1));
+                    .andExpect(model().attribute("passkeyCount", 1))
+                    .andExpect(content().string(containsString("data-credential-id=\"cred1\"")));
         }
 
         @Test
@@ -73,22 +85,9 @@ class DashboardControllerWebMvcTest {
             PublicKeyCredentialUserEntity webAuthnUser = mock(PublicKeyCredentialUserEntity.class);
             when(webAuthnUser.getName()).thenReturn("bob");
 
-            User user = new User();
-            when(userRepository.findByUsername("bob")).thenReturn(Optional.of(user));
-            List<Map<String, Object>> passkeys = List.of(
-                    Map.of("id", "key2",
-                            "credential_id", "cred1",
-                            "label", "Alice's Passkey",
-                            "created", Instant.now(),
-                            "last_used", Instant.now(),
-                            "signature_count", 42,
-                            "backup_state", false),
-                    Map.of("id", "key3", "credential_id", "cred1",
-                            "label", "Alice's Passkey",
-                            "created", Instant.now(),
-                            "last_used", Instant.now(),
-                            "signature_count", 42,
-                            "backup_state", false));
+            List<PasskeySummary> passkeys = List.of(
+                    new PasskeySummary("cred1", "Bob's Passkey", Instant.now(), Instant.now(), 42, false),
+                    new PasskeySummary("cred2", "Bob's Backup Key", Instant.now(), null, 0, true));
             when(credentialRepository.findPasskeysInfoByUsername("bob")).thenReturn(passkeys);
 
             mockMvc.perform(get("/dashboard").with(authentication(
@@ -99,12 +98,14 @@ class DashboardControllerWebMvcTest {
                     .andExpect(model().attribute("username", "bob"))
                     .andExpect(model().attribute("authMethod", "Passkey"))
                     .andExpect(model().attribute("passkeys", passkeys))
-                    .andExpect(model().attribute("passkeyCount", 2));
+                    .andExpect(model().attribute("passkeyCount", 2))
+                    .andExpect(content().string(containsString("Never used")))
+                    .andExpect(content().string(containsString("Synced")));
         }
 
         @Test
         void returnsDashboardWithUnknownPrincipalAndNoUser() throws Exception {
-            when(userRepository.findByUsername("unknown")).thenReturn(Optional.empty());
+            when(credentialRepository.findPasskeysInfoByUsername("unknown")).thenReturn(List.of());
 
             mockMvc.perform(get("/dashboard").with(authentication(
                             new org.springframework.security.authentication.UsernamePasswordAuthenticationToken(
@@ -126,8 +127,6 @@ class DashboardControllerWebMvcTest {
                     .roles("USER")
                     .build();
 
-            User user = new User();
-            when(userRepository.findByUsername("carol")).thenReturn(Optional.of(user));
             when(credentialRepository.findPasskeysInfoByUsername("carol")).thenReturn(List.of());
 
             mockMvc.perform(get("/dashboard").with(user(principal)))
@@ -138,5 +137,24 @@ class DashboardControllerWebMvcTest {
                     .andExpect(model().attribute("passkeys", List.of()))
                     .andExpect(model().attribute("passkeyCount", 0));
         }
+
+        @Test
+        void recordsPasskeyLookupTimer() throws Exception {
+            when(credentialRepository.findPasskeysInfoByUsername("dave")).thenReturn(List.of());
+            long before = dashboardTimerCount();
+
+            mockMvc.perform(get("/dashboard").with(user("dave")))
+                    .andExpect(status().isOk());
+
+            assertThat(dashboardTimerCount()).isEqualTo(before + 1);
+        }
+
+        private long dashboardTimerCount() {
+            return meterRegistry.find(WebAuthnMetrics.PASSKEYS_TIMER)
+                    .tags("operation", "dashboard", "outcome", "success")
+                    .timers().stream()
+                    .mapToLong(timer -> timer.count())
+                    .sum();
+        }
     }
 }
@@ -0,0 +1,231 @@
+package eu.luminis.passkeystryout.load;
+
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+import org.jspecify.annotations.Nullable;
+
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntFunction;
+import java.util.function.ToIntFunction;
+
+/**
+ * Closed-loop load generator: a fixed number of clients, each on its own virtual thread, send the next request as
+ * soon as the previous one has completed. Latencies are recorded in an HdrHistogram so the tail percentiles are
+ * exact to three significant digits, including the requests that queued on the server.
+ * <p>
+ * A client can run a {@link Sequence} of dependent requests, such as fetching ceremony options and then posting the
+ * signed response. Every step is reported per endpoint, and the sequence as a whole under the scenario name. A step
+ * that fails ends the current sequence; the client then starts the next one.
+ */
+public final class ClosedLoopLoad {
+
+    private static final long HIGHEST_TRACKABLE_NANOS = Duration.ofMinutes(1).toNanos();
+
+    private ClosedLoopLoad() {
+    }
+
+    /**
+     * Runs the load with a single request per iteration and returns the measured result.
+     *
+     * @param scenario    name shown in the report
+     * @param concurrency the number of clients
+     * @param warmUp      period during which requests are sent but not recorded
+     * @param duration    the measured period
+     * @param request     sends one request and returns its HTTP status; anything but 2xx counts as an error
+     */
+    public static LoadResult run(String scenario, int concurrency, Duration warmUp, Duration duration,
+                                 Callable<Integer> request) throws InterruptedException {
+        Sequence sequence = steps -> steps.step(scenario, request, Integer::intValue);
+        return runSequence(scenario, concurrency, warmUp, duration, client -> sequence).getFirst();
+    }
+
+    /**
+     * Runs the load with a sequence of requests per iteration.
+     *
+     * @param clients creates the sequence for each client, by client number, so a client can keep state such as a
+     *                session or a credential between iterations
+     * @return the result of the whole sequence, under the scenario name, followed by one result per step
+     */
+    public static List<LoadResult> runSequence(String scenario, int concurrency, Duration warmUp, Duration duration,
+                                               IntFunction<Sequence> clients) throws InterruptedException {
+        long measureFrom = System.nanoTime() + warmUp.toNanos();
+        long measureUntil = measureFrom + duration.toNanos();
+        Recorder recorder = new Recorder(measureFrom, measureUntil);
+
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            List<Future<?>> running = new ArrayList<>(concurrency);
+            for (int i = 0; i < concurrency; i++) {
+                Sequence sequence = clients.apply(i);
+                running.add(executor.submit(() -> {
+                    Steps steps = new Steps(recorder);
+                    long start;
+                    while ((start = System.nanoTime()) < measureUntil) {
+                        boolean failed = false;
+                        steps.position = 0;
+                        try {
+                            sequence.run(steps);
+                        } catch (Exception e) {
+                            failed = true;
+                        }
+                        recorder.record(scenario, 0, start, System.nanoTime(), failed);
+                    }
+                }));
+            }
+            for (Future<?> client : running) {
+                try {
+                    client.get();
+                } catch (ExecutionException e) {
+                    throw new IllegalStateException("Load client failed", e.getCause());
+                }
+            }
+        }
+
+        return recorder.results(scenario, concurrency, duration);
+    }
+
+    /**
+     * One iteration of a client.
+     */
+    @FunctionalInterface
+    public interface Sequence {
+
+        void run(Steps steps) throws Exception;
+    }
+
+    /**
+     * Times the steps of a sequence.
+     */
+    public static final class Steps {
+
+        private final @Nullable Recorder recorder;
+        private int position;
+
+        private Steps(@Nullable Recorder recorder) {
+            this.recorder = recorder;
+        }
+
+        /**
+         * Returns steps that are run but not recorded, for setting up state before the load starts.
+         */
+        public static Steps untimed() {
+            return new Steps(null);
+        }
+
+        /**
+         * Runs and times one step. A status other than 2xx, or an exception, is recorded as an error and ends the
+         * sequence.
+         */
+        public <T> T step(String endpoint, Callable<T> call, ToIntFunction<? super T> status) throws Exception {
+            position++;
+            long start = System.nanoTime();
+            T result;
+            try {
+                result = call.call();
+            } catch (Exception e) {
+                record(endpoint, start, true);
+                throw e;
+            }
+            int code = status.applyAsInt(result);
+            boolean failed = code < 200 || code >= 300;
+            record(endpoint, start, failed);
+            if (failed) {
+                throw new IllegalStateException(endpoint + " returned " + code);
+            }
+            return result;
+        }
+
+        /**
+         * Sends a request as one step, named after its method and path.
+         */
+        public HttpResponse<String> send(HttpClient client, HttpRequest request) throws Exception {
+            return send(request.method() + " " + request.uri().getPath(), client, request);
+        }
+
+        /**
+         * Sends a request as one step with the given name, for paths that contain an id.
+         */
+        public HttpResponse<String> send(String endpoint, HttpClient client, HttpRequest request) throws Exception {
+            return step(endpoint, () -> client.send(request, HttpResponse.BodyHandlers.ofString()),
+                    HttpResponse::statusCode);
+        }
+
+        private void record(String endpoint, long start, boolean failed) {
+            if (recorder != null) {
+                recorder.record(endpoint, position, start, System.nanoTime(), failed);
+            }
+        }
+    }
+
+    private static final class Recorder {
+
+        private final long measureFrom;
+        private final long measureUntil;
+        private final ConcurrentMap<String, Endpoint> endpoints = new ConcurrentHashMap<>();
+
+        private Recorder(long measureFrom, long measureUntil) {
+            this.measureFrom = measureFrom;
+            this.measureUntil = measureUntil;
+        }
+
+        void record(String endpoint, int position, long start, long end, boolean failed) {
+            if (start < measureFrom || end > measureUntil) {
+                return;
+            }
+            Endpoint stats = endpoints.computeIfAbsent(endpoint, name -> new Endpoint(position));
+            stats.latencies().recordValue(Math.min(end - start, HIGHEST_TRACKABLE_NANOS));
+            if (failed) {
+                stats.errors().increment();
+            }
+        }
+
+        List<LoadResult> results(String scenario, int concurrency, Duration duration) {
+            List<LoadResult> results = new ArrayList<>();
+            results.add(result(scenario, concurrency, duration,
+                    endpoints.getOrDefault(scenario, new Endpoint(0))));
+            endpoints.entrySet().stream()
+                    .filter(entry -> !entry.getKey().equals(scenario))
+                    .sorted(Comparator.<Map.Entry<String, Endpoint>>comparingInt(entry -> entry.getValue().position())
+                            .thenComparing(Map.Entry::getKey))
+                    .forEach(entry -> results.add(result(entry.getKey(), concurrency, duration, entry.getValue())));
+            return results;
+        }
+
+        private static LoadResult result(String name, int concurrency, Duration duration, Endpoint endpoint) {
+            Histogram latencies = endpoint.latencies();
+            long requests = latencies.getTotalCount();
+            return new LoadResult(name, concurrency, requests, endpoint.errors().sum(),
+                    duration.isZero() ? 0 : requests / (duration.toNanos() / 1_000_000_000.0),
+                    percentile(latencies, 50), percentile(latencies, 99), percentile(latencies, 99.9),
+                    Duration.ofNanos(latencies.getMaxValue()));
+        }
+
+        private static Duration percentile(Histogram latencies, double percentile) {
+            return Duration.ofNanos(latencies.getValueAtPercentile(percentile));
+        }
+    }
+
+    /**
+     * Statistics of one endpoint. The position is that of the step in the sequence, which orders the report.
+     */
+    private record Endpoint(int position, Histogram latencies, LongAdder errors) {
+
+        Endpoint(int position) {
+            this(position, new ConcurrentHistogram(HIGHEST_TRACKABLE_NANOS, 3), new LongAdder());
+        }
+    }
+}
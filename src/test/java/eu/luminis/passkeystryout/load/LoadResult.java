@@ -0,0 +1,26 @@
+package eu.luminis.passkeystryout.load;
+
+import java.time.Duration;
+import java.util.Locale;
+
+/**
+ * Outcome of one {@link ClosedLoopLoad} run. Latencies only cover the measured period, not the warm-up.
+ */
+public record LoadResult(String scenario, int concurrency, long requests, long errors, double throughput,
+                         Duration p50, Duration p99, Duration p999, Duration max) {
+
+    static final String MARKDOWN_HEADER = """
+            | Scenario | Clients | Requests | Errors | Req/s | p50 (ms) | p99 (ms) | p99.9 (ms) | max (ms) |
+            |----------|--------:|---------:|-------:|------:|---------:|---------:|-----------:|---------:|
+            """;
+
+    String toMarkdownRow() {
+        return String.format(Locale.ROOT, "| %s | %d | %d | %d | %.0f | %s | %s | %s | %s |%n",
+                scenario, concurrency, requests, errors, throughput,
+                millis(p50), millis(p99), millis(p999), millis(max));
+    }
+
+    private static String millis(Duration duration) {
+        return String.format(Locale.ROOT, "%.1f", duration.toNanos() / 1_000_000.0);
+    }
+}
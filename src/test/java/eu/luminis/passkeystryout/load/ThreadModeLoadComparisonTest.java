@@ -0,0 +1,240 @@
+package eu.luminis.passkeystryout.load;
+
+import eu.luminis.passkeystryout.PasskeysTryoutApplication;
+import eu.luminis.passkeystryout.user.User;
+import eu.luminis.passkeystryout.user.UserRepository;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.server.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.net.CookieManager;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Compares the default platform-thread mode with the {@code virtual-threads} profile under the same closed-loop
+ * load. Each client alternates between the dashboard, which reads the passkeys with one query, and starting a
+ * passkey authentication, which inserts the ceremony options. Both are the blocking JDBC paths of the WebAuthn flow.
+ * <p>
+ * The workload runs once against the in-memory database and once with a simulated database round trip on every
+ * statement, which is what a networked database adds and where the thread model starts to matter. The report is
+ * written to {@code target/load-test/thread-modes.md}; {@code docs/load-tests/thread-modes.md} holds a checked-in
+ * run. Run it with {@code ./mvnw test -Pload-test -Dtest=ThreadModeLoadComparisonTest}; the system properties
+ * {@code load.clients}, {@code load.jvm-warm-up-seconds}, {@code load.warm-up-seconds} and
+ * {@code load.measured-seconds} change the defaults.
+ */
+@Tag("load")
+class ThreadModeLoadComparisonTest {
+
+    private static final String USERNAME = "load";
+    private static final String PASSWORD = "load-test-password";
+    private static final Pattern CSRF_META = Pattern.compile("<meta name=\"_csrf\" content=\"([^\"]+)\"");
+    private static final Pattern CSRF_JSON = Pattern.compile("\"token\":\"([^\"]+)\"");
+    private static final List<Integer> CONCURRENCY = Arrays.stream(System.getProperty("load.clients", "50,400").split(","))
+            .map(Integer::valueOf)
+            .toList();
+    private static final Duration DATABASE_ROUND_TRIP = Duration.ofMillis(5);
+    private static final Duration WARM_UP = Duration.ofSeconds(Integer.getInteger("load.warm-up-seconds", 10));
+    private static final Duration JVM_WARM_UP = Duration.ofSeconds(Integer.getInteger("load.jvm-warm-up-seconds", 30));
+    private static final Duration MEASURED = Duration.ofSeconds(Integer.getInteger("load.measured-seconds", 15));
+
+    @Test
+    void compareThreadModes() throws Exception {
+        List<LoadResult> results = new ArrayList<>();
+        boolean jvmWarmedUp = false;
+        for (Duration roundTrip : List.of(Duration.ZERO, DATABASE_ROUND_TRIP)) {
+            for (String mode : List.of("platform", "virtual-threads")) {
+                try (ConfigurableApplicationContext context = start(mode, roundTrip)) {
+                    Target target = prepare(context);
+                    if (!jvmWarmedUp) {
+                        // Every mode runs in this JVM, so without this the first rows would pay for JIT compilation
+                        ClosedLoopLoad.run("JVM warm-up", CONCURRENCY.getLast(), JVM_WARM_UP, Duration.ZERO,
+                                target::request);
+                        jvmWarmedUp = true;
+                    }
+                    for (int concurrency : CONCURRENCY) {
+                        String scenario = mode + ", database round trip " + roundTrip.toMillis() + " ms";
+                        results.add(ClosedLoopLoad.run(scenario, concurrency, WARM_UP, MEASURED, target::request));
+                    }
+                }
+            }
+        }
+
+        Path report = Path.of("target", "load-test", "thread-modes.md");
+        Files.createDirectories(report.getParent());
+        StringBuilder markdown = new StringBuilder()
+                .append("Java ").append(Runtime.version()).append(", ")
+                .append(Runtime.getRuntime().availableProcessors()).append(" CPU(s), ")
+                .append(WARM_UP.toSeconds()).append(" s warm-up, ")
+                .append(MEASURED.toSeconds()).append(" s measured per row\n\n")
+                .append(LoadResult.MARKDOWN_HEADER);
+        results.forEach(result -> markdown.append(result.toMarkdownRow()));
+        Files.writeString(report, markdown);
+        System.out.println(markdown);
+
+        assertThat(results).allSatisfy(result -> assertThat(result.requests()).isPositive());
+    }
+
+    private static ConfigurableApplicationContext start(String mode, Duration databaseRoundTrip) {
+        SpringApplicationBuilder builder = new SpringApplicationBuilder(PasskeysTryoutApplication.class);
+        if (!mode.equals("platform")) {
+            builder.profiles(mode);
+        }
+        if (!databaseRoundTrip.isZero()) {
+            builder.initializers(context -> context.getBeanFactory()
+                    .addBeanPostProcessor(new SlowDatabase(databaseRoundTrip)));
+        }
+        // Command line arguments, because default properties would lose to application.properties
+        return builder.run(
+                "--server.port=0",
+                "--spring.datasource.url=jdbc:h2:mem:load-" + mode + "-" + databaseRoundTrip.toMillis(),
+                "--spring.jpa.show-sql=false",
+                "--logging.level.root=WARN",
+                "--logging.level.org.springframework.security.web.webauthn=WARN",
+                "--logging.level.org.springframework.security.authentication=WARN",
+                "--logging.level.com.webauthn4j=WARN",
+                "--passkeys.password.argon2.target-time=1ms",
+                "--passkeys.password.argon2.min-iterations=1",
+                // Every simulated browser comes from the same address
+                "--passkeys.rate-limit.address.capacity=1000000");
+    }
+
+    /**
+     * Creates the user with a few passkeys and logs in once; every client shares the resulting session.
+     */
+    private static Target prepare(ConfigurableApplicationContext context) throws IOException, InterruptedException {
+        PasswordEncoder passwordEncoder = context.getBean(PasswordEncoder.class);
+        User user = new User(USERNAME, "Load Test", passwordEncoder.encode(PASSWORD));
+        user.setUserHandle("bG9hZA");
+        context.getBean(UserRepository.class).save(user);
+        JdbcTemplate jdbc = context.getBean(JdbcTemplate.class);
+        for (int i = 0; i < 3; i++) {
+            Timestamp now = Timestamp.from(Instant.now());
+            jdbc.update("""
+                    INSERT INTO webauthn_credentials (user_entity_user_id, credential_id, public_key,
+                        signature_count, public_key_credential_type, created, last_used, label,
+                        authenticator_transports)
+                    VALUES ('bG9hZA', ?, X'00', 0, 'public-key', ?, ?, ?, 'internal')
+                    """, ("credential" + i).getBytes(StandardCharsets.UTF_8), now, now, "Key " + i);
+        }
+
+        String baseUrl = "http://localhost:" + ((WebServerApplicationContext) context).getWebServer().getPort();
+        HttpClient login = HttpClient.newBuilder().cookieHandler(new CookieManager()).build();
+        // The login page is prerendered without a CSRF token; its script fetches one from /csrf
+        String csrf = login.send(HttpRequest.newBuilder(URI.create(baseUrl + "/csrf")).build(),
+                HttpResponse.BodyHandlers.ofString()).body();
+        String form = "username=" + USERNAME + "&password=" + PASSWORD
+                + "&_csrf=" + URLEncoder.encode(find(CSRF_JSON, csrf), StandardCharsets.UTF_8);
+        login.send(HttpRequest.newBuilder(URI.create(baseUrl + "/login"))
+                .header("Content-Type", "application/x-www-form-urlencoded")
+                .POST(HttpRequest.BodyPublishers.ofString(form))
+                .build(), HttpResponse.BodyHandlers.discarding());
+        String dashboard = login.send(HttpRequest.newBuilder(URI.create(baseUrl + "/dashboard")).build(),
+                HttpResponse.BodyHandlers.ofString()).body();
+        String session = ((CookieManager) login.cookieHandler().orElseThrow()).getCookieStore().getCookies().stream()
+                .filter(cookie -> cookie.getName().equals("JSESSIONID"))
+                .findFirst()
+                .orElseThrow()
+                .getValue();
+
+        HttpClient client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .executor(Executors.newVirtualThreadPerTaskExecutor())
+                .build();
+        return new Target(client, baseUrl, "JSESSIONID=" + session, csrfToken(dashboard));
+    }
+
+    private static String csrfToken(String html) {
+        return find(CSRF_META, html);
+    }
+
+    private static String find(Pattern pattern, String body) {
+        Matcher matcher = pattern.matcher(body);
+        if (!matcher.find()) {
+            throw new IllegalStateException("No CSRF token in the response");
+        }
+        return matcher.group(1);
+    }
+
+    private record Target(HttpClient client, String baseUrl, String sessionCookie, String csrfToken) {
+
+        int request() throws IOException, InterruptedException {
+            HttpRequest request = ThreadLocalRandom.current().nextBoolean()
+                    ? HttpRequest.newBuilder(URI.create(baseUrl + "/dashboard"))
+                            .header("Cookie", sessionCookie)
+                            .build()
+                    : HttpRequest.newBuilder(URI.create(baseUrl + "/webauthn/authenticate/options"))
+                            .header("Cookie", sessionCookie)
+                            .header("X-CSRF-TOKEN", csrfToken)
+                            .POST(HttpRequest.BodyPublishers.noBody())
+                            .build();
+            return client.send(request, HttpResponse.BodyHandlers.discarding()).statusCode();
+        }
+    }
+
+    /**
+     * Adds a fixed delay to every statement that is prepared, while the connection is held, as a stand-in for the
+     * network round trip to a database server.
+     */
+    private record SlowDatabase(Duration roundTrip) implements BeanPostProcessor {
+
+        @Override
+        public Object postProcessAfterInitialization(Object bean, String beanName) {
+            if (!(bean instanceof DataSource dataSource)) {
+                return bean;
+            }
+            return Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{DataSource.class},
+                    (proxy, method, args) -> {
+                        Object result = invoke(dataSource, method, args);
+                        return result instanceof Connection connection ? slow(connection) : result;
+                    });
+        }
+
+        private Connection slow(Connection connection) {
+            return (Connection) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{Connection.class},
+                    (proxy, method, args) -> {
+                        if (method.getName().startsWith("prepare")) {
+                            Thread.sleep(roundTrip);
+                        }
+                        return invoke(connection, method, args);
+                    });
+        }
+
+        private static Object invoke(Object target, Method method, Object[] args) throws Throwable {
+            try {
+                return method.invoke(target, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+    }
+}
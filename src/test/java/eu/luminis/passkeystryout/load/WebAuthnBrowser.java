@@ -0,0 +1,199 @@
+package eu.luminis.passkeystryout.load;
+
+import eu.luminis.passkeystryout.webauthn.VirtualAuthenticator;
+import eu.luminis.passkeystryout.webauthn.VirtualCredential;
+import org.springframework.security.web.webauthn.api.AuthenticatorAssertionResponse;
+import org.springframework.security.web.webauthn.api.Bytes;
+import org.springframework.security.web.webauthn.api.PublicKeyCredential;
+import tools.jackson.databind.JsonNode;
+import tools.jackson.databind.json.JsonMapper;
+
+import java.net.CookieManager;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Plays the part of the login and passkey pages: it sends the same requests, with the same JSON, as the JavaScript
+ * in the templates, and uses a {@link VirtualAuthenticator} where the pages call {@code navigator.credentials}.
+ * <p>
+ * Each browser has its own cookies, so it holds one session and one ceremony at a time. The authenticator signs
+ * the client data with its own origin, which has to be an allowed origin of the application, whatever port the
+ * application listens on.
+ */
+public final class WebAuthnBrowser {
+
+    private static final Pattern CSRF_META = Pattern.compile("<meta name=\"_csrf\" content=\"([^\"]+)\"");
+    private static final JsonMapper MAPPER = JsonMapper.shared();
+
+    private final String baseUrl;
+    private final VirtualAuthenticator authenticator;
+    private final CookieManager cookies;
+    private final HttpClient client;
+    private String csrfToken = "";
+
+    public WebAuthnBrowser(String baseUrl, VirtualAuthenticator authenticator, Executor executor) {
+        this.baseUrl = baseUrl;
+        this.authenticator = authenticator;
+        this.cookies = new CookieManager();
+        this.client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .cookieHandler(cookies)
+                .followRedirects(HttpClient.Redirect.NORMAL)
+                .executor(executor)
+                .build();
+    }
+
+    private WebAuthnBrowser(String baseUrl, WebAuthnBrowser browser) {
+        this.baseUrl = baseUrl;
+        this.authenticator = browser.authenticator;
+        this.cookies = browser.cookies;
+        this.client = browser.client;
+        this.csrfToken = browser.csrfToken;
+    }
+
+    /**
+     * The same browser, with the same cookies, sending its requests to another node of the application. Cookies are
+     * not scoped by port, so nodes on other ports of the same host see the session of this browser.
+     */
+    public WebAuthnBrowser atNode(String baseUrl) {
+        return new WebAuthnBrowser(baseUrl, this);
+    }
+
+    /**
+     * Opens the dashboard of the signed-in user and returns the page.
+     */
+    public String openDashboard(ClosedLoopLoad.Steps steps) throws Exception {
+        HttpResponse<String> dashboard = steps.send(client, HttpRequest.newBuilder(uri("/dashboard")).build());
+        if (!dashboard.uri().getPath().equals("/dashboard")) {
+            throw new IllegalStateException("Dashboard at " + baseUrl + " ended on " + dashboard.uri());
+        }
+        csrfToken = csrfToken(dashboard.body());
+        return dashboard.body();
+    }
+
+    /**
+     * Signs in with the login form and ends up on the dashboard.
+     */
+    public void signInWithPassword(ClosedLoopLoad.Steps steps, String username, String password) throws Exception {
+        openLoginPage(steps);
+        String form = "username=" + URLEncoder.encode(username, StandardCharsets.UTF_8)
+                + "&password=" + URLEncoder.encode(password, StandardCharsets.UTF_8)
+                + "&_csrf=" + URLEncoder.encode(csrfToken, StandardCharsets.UTF_8);
+        HttpResponse<String> dashboard = steps.send(client, HttpRequest.newBuilder(uri("/login"))
+                .header("Content-Type", "application/x-www-form-urlencoded")
+                .POST(HttpRequest.BodyPublishers.ofString(form))
+                .build());
+        if (!dashboard.uri().getPath().equals("/dashboard")) {
+            throw new IllegalStateException("Password login for " + username + " ended on " + dashboard.uri());
+        }
+        // The CSRF token is replaced on login
+        csrfToken = csrfToken(dashboard.body());
+    }
+
+    /**
+     * Registers a new passkey for the signed-in user, as the register-passkey page does.
+     */
+    public VirtualCredential registerPasskey(ClosedLoopLoad.Steps steps, VirtualAuthenticator.Algorithm algorithm,
+                                             String label) throws Exception {
+        JsonNode options = MAPPER.readTree(steps.send(client, post("/webauthn/register/options", "")).body());
+        VirtualCredential credential = authenticator.createCredential(algorithm,
+                Bytes.fromBase64(options.path("user").path("id").asString()),
+                Bytes.fromBase64(options.path("challenge").asString()));
+
+        Map<String, Object> response = new LinkedHashMap<>();
+        response.put("attestationObject", credential.attestationObject().toBase64UrlString());
+        response.put("clientDataJSON", credential.attestationClientDataJson().toBase64UrlString());
+        response.put("transports", List.of("internal"));
+        Map<String, Object> publicKeyCredential = new LinkedHashMap<>();
+        publicKeyCredential.put("id", credential.credentialId().toBase64UrlString());
+        publicKeyCredential.put("rawId", credential.credentialId().toBase64UrlString());
+        publicKeyCredential.put("response", response);
+        publicKeyCredential.put("type", "public-key");
+        publicKeyCredential.put("clientExtensionResults", Map.of());
+        publicKeyCredential.put("authenticatorAttachment", "platform");
+        String body = MAPPER.writeValueAsString(
+                Map.of("publicKey", Map.of("credential", publicKeyCredential, "label", label)));
+
+        steps.send(client, post("/webauthn/register", body));
+        return credential;
+    }
+
+    /**
+     * Deletes a passkey of the signed-in user, as the dashboard does.
+     */
+    public void deletePasskey(ClosedLoopLoad.Steps steps, VirtualCredential credential) throws Exception {
+        steps.send("DELETE /passkey/{credentialId}", client,
+                HttpRequest.newBuilder(uri("/passkey/" + credential.credentialId().toBase64UrlString()))
+                        .header("X-CSRF-TOKEN", csrfToken)
+                        .DELETE()
+                        .build());
+    }
+
+    /**
+     * Starts from an empty cookie jar, like a new visitor, and signs in with the passkey without giving a username.
+     */
+    public void signInWithPasskey(ClosedLoopLoad.Steps steps, VirtualCredential credential) throws Exception {
+        cookies.getCookieStore().removeAll();
+        openLoginPage(steps);
+        JsonNode options = MAPPER.readTree(steps.send(client, post("/webauthn/authenticate/options", "")).body());
+        PublicKeyCredential<AuthenticatorAssertionResponse> assertion = authenticator.getAssertion(credential,
+                Bytes.fromBase64(options.path("challenge").asString()));
+
+        AuthenticatorAssertionResponse response = assertion.getResponse();
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("id", assertion.getId());
+        body.put("rawId", assertion.getRawId().toBase64UrlString());
+        body.put("response", Map.of(
+                "authenticatorData", response.getAuthenticatorData().toBase64UrlString(),
+                "clientDataJSON", response.getClientDataJSON().toBase64UrlString(),
+                "signature", response.getSignature().toBase64UrlString(),
+                "userHandle", credential.userHandle().toBase64UrlString()));
+        body.put("type", "public-key");
+        body.put("clientExtensionResults", Map.of());
+
+        JsonNode result = MAPPER.readTree(
+                steps.send(client, post("/login/webauthn", MAPPER.writeValueAsString(body))).body());
+        if (!result.path("authenticated").asBoolean()) {
+            throw new IllegalStateException("Passkey login was not accepted: " + result);
+        }
+    }
+
+    /**
+     * Opens the login page, which is prerendered without a CSRF token, and fetches the token as its script does.
+     */
+    private void openLoginPage(ClosedLoopLoad.Steps steps) throws Exception {
+        steps.send(client, HttpRequest.newBuilder(uri("/login")).build());
+        csrfToken = MAPPER.readTree(steps.send(client, HttpRequest.newBuilder(uri("/csrf")).build()).body())
+                .path("token").asString();
+    }
+
+    private HttpRequest post(String path, String json) {
+        return HttpRequest.newBuilder(uri(path))
+                .header("Content-Type", "application/json")
+                .header("X-CSRF-TOKEN", csrfToken)
+                .POST(json.isEmpty() ? HttpRequest.BodyPublishers.noBody() : HttpRequest.BodyPublishers.ofString(json))
+                .build();
+    }
+
+    private URI uri(String path) {
+        return URI.create(baseUrl + path);
+    }
+
+    private static String csrfToken(String html) {
+        Matcher matcher = CSRF_META.matcher(html);
+        if (!matcher.find()) {
+            throw new IllegalStateException("No CSRF token on the page");
+        }
+        return matcher.group(1);
+    }
+}
@@ -0,0 +1,122 @@
+package eu.luminis.passkeystryout.load;
+
+import eu.luminis.passkeystryout.passkey.CredentialRepository;
+import eu.luminis.passkeystryout.passkey.SignatureCountWriteBehind;
+import eu.luminis.passkeystryout.user.User;
+import eu.luminis.passkeystryout.user.UserRepository;
+import eu.luminis.passkeystryout.webauthn.VirtualAuthenticator;
+import eu.luminis.passkeystryout.webauthn.VirtualCredential;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.test.context.TestPropertySource;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Runs the WebAuthn ceremonies of the load test once, so a change in the request or response format of the
+ * endpoints breaks the regular build rather than the next load test.
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@TestPropertySource(properties = {
+        "spring.datasource.url=jdbc:h2:mem:webauthn-browser",
+        "spring.jpa.show-sql=false",
+        "passkeys.password.argon2.target-time=1ms",
+        "passkeys.password.argon2.min-iterations=1",
+        // Every simulated browser comes from the same address
+        "passkeys.rate-limit.address.capacity=1000000"
+})
+class WebAuthnBrowserTest {
+
+    private static final String PASSWORD = "browser-test-password";
+
+    @LocalServerPort
+    int port;
+
+    @Autowired
+    UserRepository userRepository;
+
+    @Autowired
+    PasswordEncoder passwordEncoder;
+
+    @Autowired
+    CredentialRepository credentialRepository;
+
+    @Autowired
+    SignatureCountWriteBehind signatureCounts;
+
+    private final VirtualAuthenticator authenticator = new VirtualAuthenticator("localhost", "http://localhost:8080");
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+
+    @AfterEach
+    void closeExecutor() {
+        executor.close();
+    }
+
+    @Test
+    void registerPasskey_shouldStoreCredentialThatSignsIn() throws Exception {
+        // Given
+        WebAuthnBrowser browser = newBrowser();
+        browser.signInWithPassword(ClosedLoopLoad.Steps.untimed(), createUser("browser-register"), PASSWORD);
+
+        // When
+        VirtualCredential credential = browser.registerPasskey(ClosedLoopLoad.Steps.untimed(),
+                VirtualAuthenticator.Algorithm.ES256, "Virtual key");
+        newBrowser().signInWithPasskey(ClosedLoopLoad.Steps.untimed(), credential);
+        signatureCounts.flush();
+
+        // Then
+        assertThat(credentialRepository.findPasskeysInfoByUsername("browser-register"))
+                .singleElement()
+                .satisfies(passkey -> {
+                    assertThat(passkey.credentialId()).isEqualTo(credential.credentialId().toBase64UrlString());
+                    assertThat(passkey.label()).isEqualTo("Virtual key");
+                    assertThat(passkey.signatureCount()).isEqualTo(1);
+                });
+    }
+
+    @Test
+    void runSequence_shouldReportSequenceAndEveryEndpoint() throws Exception {
+        // Given
+        List<WebAuthnBrowser> browsers = new ArrayList<>();
+        List<VirtualCredential> credentials = new ArrayList<>();
+        for (int i = 0; i < 2; i++) {
+            WebAuthnBrowser browser = newBrowser();
+            browser.signInWithPassword(ClosedLoopLoad.Steps.untimed(), createUser("browser-login-" + i), PASSWORD);
+            credentials.add(browser.registerPasskey(ClosedLoopLoad.Steps.untimed(),
+                    VirtualAuthenticator.Algorithm.ES256, "Virtual key"));
+            browsers.add(browser);
+        }
+
+        // When
+        List<LoadResult> results = ClosedLoopLoad.runSequence("passkey login", 2, Duration.ZERO, Duration.ofSeconds(1),
+                client -> steps -> browsers.get(client).signInWithPasskey(steps, credentials.get(client)));
+
+        // Then
+        assertThat(results).extracting(LoadResult::scenario).containsExactly(
+                "passkey login", "GET /login", "GET /csrf", "POST /webauthn/authenticate/options",
+                "POST /login/webauthn");
+        assertThat(results).allSatisfy(result -> {
+            assertThat(result.requests()).isPositive();
+            assertThat(result.errors()).isZero();
+        });
+    }
+
+    private WebAuthnBrowser newBrowser() {
+        return new WebAuthnBrowser("http://localhost:" + port, authenticator, executor);
+    }
+
+    private String createUser(String username) {
+        userRepository.save(new User(username, username, passwordEncoder.encode(PASSWORD)));
+        return username;
+    }
+}
@@ -0,0 +1,126 @@
+package eu.luminis.passkeystryout.load;
+
+import eu.luminis.passkeystryout.user.User;
+import eu.luminis.passkeystryout.user.UserRepository;
+import eu.luminis.passkeystryout.webauthn.VirtualAuthenticator;
+import eu.luminis.passkeystryout.webauthn.VirtualCredential;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.test.context.TestPropertySource;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Drives the complete passkey ceremonies against the running application, with a {@link VirtualAuthenticator} in
+ * place of the browser's authenticator:
+ * <ul>
+ *     <li>registration: {@code /webauthn/register/options}, then {@code /webauthn/register} with the attestation,
+ *     by users that signed in with their password. The passkey is deleted again, so the list of credentials to
+ *     exclude does not grow during the run.</li>
+ *     <li>login: {@code /login} and {@code /csrf} for the CSRF token, {@code /webauthn/authenticate/options}, then
+ *     {@code /login/webauthn} with the signed assertion, each time from an empty cookie jar.</li>
+ * </ul>
+ * Every client has its own user and credential. The report, with throughput and latency percentiles per endpoint
+ * and per complete ceremony, is written to {@code target/load-test/webauthn.md}. Run it with
+ * {@code ./mvnw test -Pload-test -Dtest=WebAuthnLoadTest}; the system properties {@code load.clients},
+ * {@code load.algorithm}, {@code load.warm-up-seconds} and {@code load.measured-seconds} change the defaults.
+ */
+@Tag("load")
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@TestPropertySource(properties = {
+        "spring.datasource.url=jdbc:h2:mem:webauthn-load",
+        "spring.jpa.show-sql=false",
+        "logging.level.root=WARN",
+        "logging.level.org.springframework.security.web.webauthn=WARN",
+        "logging.level.org.springframework.security.authentication=WARN",
+        "logging.level.com.webauthn4j=WARN",
+        "passkeys.password.argon2.target-time=1ms",
+        "passkeys.password.argon2.min-iterations=1",
+        // Every simulated browser comes from the same address
+        "passkeys.rate-limit.address.capacity=1000000"
+})
+class WebAuthnLoadTest {
+
+    private static final String PASSWORD = "load-test-password";
+    private static final List<Integer> CONCURRENCY = Arrays.stream(System.getProperty("load.clients", "1,16,64").split(","))
+            .map(Integer::valueOf)
+            .toList();
+    private static final VirtualAuthenticator.Algorithm ALGORITHM =
+            VirtualAuthenticator.Algorithm.valueOf(System.getProperty("load.algorithm", "ES256"));
+    private static final Duration WARM_UP = Duration.ofSeconds(Integer.getInteger("load.warm-up-seconds", 10));
+    private static final Duration MEASURED = Duration.ofSeconds(Integer.getInteger("load.measured-seconds", 15));
+
+    @LocalServerPort
+    int port;
+
+    @Autowired
+    UserRepository userRepository;
+
+    @Autowired
+    PasswordEncoder passwordEncoder;
+
+    @Test
+    void passkeyCeremonies() throws Exception {
+        int clients = CONCURRENCY.stream().mapToInt(Integer::intValue).max().orElseThrow();
+        VirtualAuthenticator authenticator = new VirtualAuthenticator("localhost", "http://localhost:8080");
+        List<LoadResult> results = new ArrayList<>();
+
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            List<WebAuthnBrowser> registering = new ArrayList<>();
+            List<WebAuthnBrowser> signingIn = new ArrayList<>();
+            List<VirtualCredential> credentials = new ArrayList<>();
+            for (int i = 0; i < clients; i++) {
+                registering.add(signedIn("load-register-" + i, authenticator, executor));
+                WebAuthnBrowser browser = signedIn("load-login-" + i, authenticator, executor);
+                credentials.add(browser.registerPasskey(ClosedLoopLoad.Steps.untimed(), ALGORITHM, "Load test"));
+                signingIn.add(browser);
+            }
+
+            for (int concurrency : CONCURRENCY) {
+                results.addAll(ClosedLoopLoad.runSequence("passkey registration", concurrency, WARM_UP, MEASURED,
+                        client -> steps -> {
+                            WebAuthnBrowser browser = registering.get(client);
+                            browser.deletePasskey(steps, browser.registerPasskey(steps, ALGORITHM, "Load test"));
+                        }));
+                results.addAll(ClosedLoopLoad.runSequence("passkey login", concurrency, WARM_UP, MEASURED,
+                        client -> steps -> signingIn.get(client).signInWithPasskey(steps, credentials.get(client))));
+            }
+        }
+
+        Path report = Path.of("target", "load-test", "webauthn.md");
+        Files.createDirectories(report.getParent());
+        StringBuilder markdown = new StringBuilder()
+                .append("Java ").append(Runtime.version()).append(", ")
+                .append(Runtime.getRuntime().availableProcessors()).append(" CPU(s), ")
+                .append(ALGORITHM).append(" credentials, ")
+                .append(WARM_UP.toSeconds()).append(" s warm-up, ")
+                .append(MEASURED.toSeconds()).append(" s measured per ceremony\n\n")
+                .append(LoadResult.MARKDOWN_HEADER);
+        results.forEach(result -> markdown.append(result.toMarkdownRow()));
+        Files.writeString(report, markdown);
+        System.out.println(markdown);
+
+        assertThat(results).allSatisfy(result -> assertThat(result.requests()).isPositive());
+    }
+
+    private WebAuthnBrowser signedIn(String username, VirtualAuthenticator authenticator, ExecutorService executor)
+            throws Exception {
+        userRepository.save(new User(username, username, passwordEncoder.encode(PASSWORD)));
+        WebAuthnBrowser browser = new WebAuthnBrowser("http://localhost:" + port, authenticator, executor);
+        browser.signInWithPassword(ClosedLoopLoad.Steps.untimed(), username, PASSWORD);
+        return browser;
+    }
+}
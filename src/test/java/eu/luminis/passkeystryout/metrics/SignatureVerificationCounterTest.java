@@ -0,0 +1,74 @@
+package eu.luminis.passkeystryout.metrics;
+
+import com.webauthn4j.data.attestation.statement.COSEAlgorithmIdentifier;
+import com.webauthn4j.verifier.exception.BadChallengeException;
+import com.webauthn4j.verifier.exception.BadSignatureException;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class SignatureVerificationCounterTest {
+
+    private final SignatureVerificationCounter counter = new SignatureVerificationCounter();
+
+    @Test
+    void count_shouldReturnTheResultOfTheVerification_andCountIt() {
+        // When
+        String result = counter.count(COSEAlgorithmIdentifier.ES256, () -> "verified");
+
+        // Then
+        assertThat(result).isEqualTo("verified");
+        assertThat(counter.verificationCount(COSEAlgorithmIdentifier.ES256)).isEqualTo(1);
+        assertThat(counter.verificationCount(COSEAlgorithmIdentifier.RS256)).isZero();
+    }
+
+    @Test
+    void count_shouldRethrowBadSignature_andCountIt() {
+        // When / Then
+        assertThatThrownBy(() -> counter.count(COSEAlgorithmIdentifier.EdDSA, () -> {
+            throw new BadSignatureException("Assertion signature is not valid.");
+        })).isInstanceOf(BadSignatureException.class);
+        assertThat(counter.verificationCount(COSEAlgorithmIdentifier.EdDSA)).isEqualTo(1);
+    }
+
+    @Test
+    void count_shouldNotCountAssertionsRejectedBeforeTheSignature() {
+        // When / Then
+        assertThatThrownBy(() -> counter.count(COSEAlgorithmIdentifier.ES256, () -> {
+            throw new BadChallengeException("Response challenge does not match.");
+        })).isInstanceOf(BadChallengeException.class);
+        assertThat(counter.verificationCount(COSEAlgorithmIdentifier.ES256)).isZero();
+    }
+
+    @Test
+    void bindTo_shouldCountVerificationsPerAlgorithmAndResult() {
+        // Given
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        counter.bindTo(registry);
+
+        // When
+        counter.count(COSEAlgorithmIdentifier.ES256, () -> "verified");
+        counter.count(COSEAlgorithmIdentifier.ES256, () -> "verified");
+        assertThatThrownBy(() -> counter.count(COSEAlgorithmIdentifier.ES256, () -> {
+            throw new BadSignatureException("Assertion signature is not valid.");
+        }));
+        counter.count(COSEAlgorithmIdentifier.ES384, () -> "verified");
+        counter.count(null, () -> "verified");
+
+        // Then
+        assertThat(verifications(registry, "ES256", "valid").count()).isEqualTo(2);
+        assertThat(verifications(registry, "ES256", "invalid").count()).isEqualTo(1);
+        assertThat(verifications(registry, "RS256", "valid").count()).isZero();
+        assertThat(verifications(registry, "other", "valid").count()).isEqualTo(2);
+    }
+
+    private static FunctionCounter verifications(SimpleMeterRegistry registry, String algorithm, String result) {
+        return registry.get("webauthn.signature.verifications")
+                .tag("alg", algorithm)
+                .tag("result", result)
+                .functionCounter();
+    }
+}
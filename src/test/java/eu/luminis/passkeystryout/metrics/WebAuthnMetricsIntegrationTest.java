@@ -0,0 +1,84 @@
+package eu.luminis.passkeystryout.metrics;
+
+import eu.luminis.passkeystryout.load.ClosedLoopLoad;
+import eu.luminis.passkeystryout.load.WebAuthnBrowser;
+import eu.luminis.passkeystryout.user.User;
+import eu.luminis.passkeystryout.user.UserRepository;
+import eu.luminis.passkeystryout.webauthn.VirtualAuthenticator;
+import eu.luminis.passkeystryout.webauthn.VirtualCredential;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.test.context.TestPropertySource;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Runs a passkey registration and a passkey login against the application and checks that every phase was timed.
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@TestPropertySource(properties = {
+        "spring.datasource.url=jdbc:h2:mem:webauthn-metrics",
+        "spring.jpa.show-sql=false",
+        "passkeys.password.argon2.target-time=1ms",
+        "passkeys.password.argon2.min-iterations=1"
+})
+class WebAuthnMetricsIntegrationTest {
+
+    private static final String PASSWORD = "metrics-test-password";
+
+    @LocalServerPort
+    int port;
+
+    @Autowired
+    MeterRegistry meterRegistry;
+
+    @Autowired
+    UserRepository userRepository;
+
+    @Autowired
+    PasswordEncoder passwordEncoder;
+
+    @Test
+    void passkeyCeremonies_shouldTimeEveryPhase() throws Exception {
+        // Given
+        userRepository.save(new User("metrics", "Metrics", passwordEncoder.encode(PASSWORD)));
+        VirtualAuthenticator authenticator = new VirtualAuthenticator("localhost", "http://localhost:8080");
+
+        // When
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            WebAuthnBrowser browser = new WebAuthnBrowser("http://localhost:" + port, authenticator, executor);
+            browser.signInWithPassword(ClosedLoopLoad.Steps.untimed(), "metrics", PASSWORD);
+            VirtualCredential credential = browser.registerPasskey(ClosedLoopLoad.Steps.untimed(),
+                    VirtualAuthenticator.Algorithm.ES256, "Metrics key");
+            browser.signInWithPasskey(ClosedLoopLoad.Steps.untimed(), credential);
+        }
+
+        // Then
+        assertThat(phase("registration", "options", "none")).isNotNull();
+        assertThat(phase("registration", "challenge-lookup", "none")).isNotNull();
+        assertThat(phase("registration", "signature-verification", "ES256")).isNotNull();
+        assertThat(phase("authentication", "options", "none")).isNotNull();
+        assertThat(phase("authentication", "challenge-lookup", "none")).isNotNull();
+        assertThat(phase("authentication", "credential-lookup", "ES256")).isNotNull();
+        assertThat(phase("authentication", "signature-verification", "ES256")).isNotNull();
+        assertThat(phase("authentication", "signature-count-update", "ES256")).isNotNull();
+        assertThat(phase("authentication", "session-creation", "none")).isNotNull();
+        assertThat(meterRegistry.find(WebAuthnMetrics.CEREMONY_COUNTER)
+                .tags("outcome", "success", "alg", "ES256")
+                .counters()).hasSize(2);
+    }
+
+    private Timer phase(String ceremony, String phase, String algorithm) {
+        return meterRegistry.find(WebAuthnMetrics.PHASE_TIMER)
+                .tags("ceremony", ceremony, "phase", phase, "outcome", "success", "alg", algorithm)
+                .timer();
+    }
+}
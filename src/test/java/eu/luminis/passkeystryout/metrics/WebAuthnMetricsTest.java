@@ -0,0 +1,92 @@
+package eu.luminis.passkeystryout.metrics;
+
+import eu.luminis.passkeystryout.ceremony.Ceremony;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class WebAuthnMetricsTest {
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final WebAuthnMetrics metrics = new WebAuthnMetrics(registry);
+
+    @Test
+    void verification_shouldTagEveryPhaseWithTheAlgorithmFoundInside() {
+        // When
+        String result = metrics.verification(Ceremony.AUTHENTICATION, () -> {
+            metrics.phase(WebAuthnMetrics.Phase.CREDENTIAL_LOOKUP, () -> "record");
+            metrics.algorithm(-7);
+            metrics.phase(WebAuthnMetrics.Phase.SIGNATURE_VERIFICATION, () -> "verified");
+            return "alice";
+        });
+
+        // Then
+        assertThat(result).isEqualTo("alice");
+        assertThat(phaseCount("authentication", "credential-lookup", "success", "ES256")).isEqualTo(1);
+        assertThat(phaseCount("authentication", "signature-verification", "success", "ES256")).isEqualTo(1);
+        assertThat(registry.get(WebAuthnMetrics.CEREMONY_COUNTER)
+                .tags("ceremony", "authentication", "outcome", "success", "alg", "ES256")
+                .counter().count()).isEqualTo(1);
+    }
+
+    @Test
+    void verification_shouldRecordFailedPhaseAndCountFailure_whenVerificationThrows() {
+        // When / Then
+        assertThatThrownBy(() -> metrics.verification(Ceremony.REGISTRATION, () ->
+                metrics.phase(WebAuthnMetrics.Phase.SIGNATURE_VERIFICATION, () -> {
+                    throw new IllegalArgumentException("bad attestation");
+                })))
+                .isInstanceOf(IllegalArgumentException.class);
+
+        assertThat(phaseCount("registration", "signature-verification", "failure", "none")).isEqualTo(1);
+        assertThat(registry.get(WebAuthnMetrics.CEREMONY_COUNTER)
+                .tags("ceremony", "registration", "outcome", "failure", "alg", "none")
+                .counter().count()).isEqualTo(1);
+    }
+
+    @Test
+    void options_shouldRecordNestedLookupsForTheSameCeremonyWithoutCounting() {
+        // When
+        metrics.options(Ceremony.REGISTRATION,
+                () -> metrics.phase(WebAuthnMetrics.Phase.CREDENTIAL_LOOKUP, () -> "excluded credentials"));
+
+        // Then
+        assertThat(phaseCount("registration", "options", "success", "none")).isEqualTo(1);
+        assertThat(phaseCount("registration", "credential-lookup", "success", "none")).isEqualTo(1);
+        assertThat(registry.find(WebAuthnMetrics.CEREMONY_COUNTER).counters()).isEmpty();
+    }
+
+    @Test
+    void phase_shouldRecordRightAway_whenGivenTheCeremony() {
+        // When
+        metrics.phase(Ceremony.AUTHENTICATION, WebAuthnMetrics.Phase.CHALLENGE_LOOKUP, () -> "options");
+
+        // Then
+        assertThat(phaseCount("authentication", "challenge-lookup", "success", "none")).isEqualTo(1);
+    }
+
+    @Test
+    void phase_shouldRecordWithoutCeremony_whenNoCeremonyIsRunning() {
+        // When
+        metrics.phase(WebAuthnMetrics.Phase.CREDENTIAL_LOOKUP, () -> "record");
+
+        // Then
+        assertThat(phaseCount("none", "credential-lookup", "success", "none")).isEqualTo(1);
+    }
+
+    @Test
+    void algorithmName_shouldNameKnownAlgorithmsAndGroupTheRest() {
+        assertThat(WebAuthnMetrics.algorithmName(-7)).isEqualTo("ES256");
+        assertThat(WebAuthnMetrics.algorithmName(-8)).isEqualTo("EdDSA");
+        assertThat(WebAuthnMetrics.algorithmName(-257)).isEqualTo("RS256");
+        assertThat(WebAuthnMetrics.algorithmName(12345)).isEqualTo("other");
+    }
+
+    private long phaseCount(String ceremony, String phase, String outcome, String algorithm) {
+        return registry.get(WebAuthnMetrics.PHASE_TIMER)
+                .tags("ceremony", ceremony, "phase", phase, "outcome", outcome, "alg", algorithm)
+                .timer().count();
+    }
+}
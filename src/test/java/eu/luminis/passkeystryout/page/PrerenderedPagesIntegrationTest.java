@@ -0,0 +1,144 @@
+package eu.luminis.passkeystryout.page;
+
+import eu.luminis.passkeystryout.user.User;
+import eu.luminis.passkeystryout.user.UserRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.test.context.TestPropertySource;
+
+import java.net.CookieManager;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Requests the prerendered pages from the application, with the security filters and Thymeleaf templates in place.
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@TestPropertySource(properties = {
+        "spring.datasource.url=jdbc:h2:mem:prerendered-pages",
+        "spring.jpa.show-sql=false",
+        "passkeys.password.argon2.target-time=1ms",
+        "passkeys.password.argon2.min-iterations=1"
+})
+class PrerenderedPagesIntegrationTest {
+
+    private static final Pattern CSRF_JSON = Pattern.compile("\"token\":\"([^\"]+)\"");
+    private static final String PASSWORD = "pages-test-password";
+
+    @LocalServerPort
+    int port;
+
+    @Autowired
+    UserRepository userRepository;
+
+    @Autowired
+    PasswordEncoder passwordEncoder;
+
+    private final HttpClient client = HttpClient.newBuilder()
+            .cookieHandler(new CookieManager())
+            .followRedirects(HttpClient.Redirect.NORMAL)
+            .build();
+
+    @Test
+    void loginPage_shouldBeServedWithoutCsrfToken_andRevalidatedByETag() throws Exception {
+        // Given
+        HttpResponse<String> page = client.send(HttpRequest.newBuilder(uri("/login")).build(),
+                HttpResponse.BodyHandlers.ofString());
+        String etag = page.headers().firstValue("ETag").orElseThrow();
+
+        // When
+        HttpResponse<String> revalidated = client.send(HttpRequest.newBuilder(uri("/login"))
+                .header("If-None-Match", etag)
+                .build(), HttpResponse.BodyHandlers.ofString());
+
+        // Then
+        assertThat(page.statusCode()).isEqualTo(200);
+        assertThat(page.body()).contains("<meta name=\"_csrf\"/>")
+                .contains("<input type=\"hidden\" name=\"_csrf\" value=\"\"/>")
+                .contains("fetch(\"\\/csrf\")")
+                .contains("Sign In");
+        assertThat(page.headers().firstValue("Cache-Control")).hasValue("no-cache, private");
+        assertThat(revalidated.statusCode()).isEqualTo(304);
+    }
+
+    @Test
+    void homePage_shouldBeGzipped_whenTheBrowserAcceptsIt() throws Exception {
+        // When
+        HttpResponse<byte[]> page = client.send(HttpRequest.newBuilder(uri("/"))
+                .header("Accept-Encoding", "gzip")
+                .build(), HttpResponse.BodyHandlers.ofByteArray());
+
+        // Then
+        assertThat(page.headers().firstValue("Content-Encoding")).hasValue("gzip");
+        assertThat(page.body()).startsWith(0x1f, 0x8b);
+    }
+
+    @Test
+    void loginPage_shouldNotStartASession_onceItIsRendered() throws Exception {
+        // Given
+        client.send(HttpRequest.newBuilder(uri("/login")).build(), HttpResponse.BodyHandlers.discarding());
+        HttpClient newVisitor = HttpClient.newHttpClient();
+
+        // When
+        HttpResponse<String> page = newVisitor.send(HttpRequest.newBuilder(uri("/login")).build(),
+                HttpResponse.BodyHandlers.ofString());
+
+        // Then
+        assertThat(page.statusCode()).isEqualTo(200);
+        assertThat(page.headers().allValues("Set-Cookie")).isEmpty();
+    }
+
+    @Test
+    void csrfEndpoint_shouldKeepTheTokenInACookie_withoutStartingASession() throws Exception {
+        // Given
+        HttpClient newVisitor = HttpClient.newBuilder().cookieHandler(new CookieManager()).build();
+        newVisitor.send(HttpRequest.newBuilder(uri("/login")).build(), HttpResponse.BodyHandlers.discarding());
+
+        // When
+        HttpResponse<String> csrf = newVisitor.send(HttpRequest.newBuilder(uri("/csrf")).build(),
+                HttpResponse.BodyHandlers.ofString());
+
+        // Then
+        assertThat(csrf.statusCode()).isEqualTo(200);
+        assertThat(CSRF_JSON.matcher(csrf.body()).find()).isTrue();
+        assertThat(csrf.headers().allValues("Set-Cookie"))
+                .anyMatch(cookie -> cookie.startsWith("XSRF-TOKEN="))
+                .noneMatch(cookie -> cookie.startsWith("JSESSIONID="));
+    }
+
+    @Test
+    void passwordLogin_shouldAcceptTheTokenFromTheCsrfEndpoint() throws Exception {
+        // Given
+        userRepository.save(new User("pages", "Pages", passwordEncoder.encode(PASSWORD)));
+        client.send(HttpRequest.newBuilder(uri("/login")).build(), HttpResponse.BodyHandlers.discarding());
+        Matcher token = CSRF_JSON.matcher(client.send(HttpRequest.newBuilder(uri("/csrf")).build(),
+                HttpResponse.BodyHandlers.ofString()).body());
+        assertThat(token.find()).isTrue();
+
+        // When
+        HttpResponse<String> dashboard = client.send(HttpRequest.newBuilder(uri("/login"))
+                .header("Content-Type", "application/x-www-form-urlencoded")
+                .POST(HttpRequest.BodyPublishers.ofString("username=pages&password=" + PASSWORD
+                        + "&_csrf=" + URLEncoder.encode(token.group(1), StandardCharsets.UTF_8)))
+                .build(), HttpResponse.BodyHandlers.ofString());
+
+        // Then
+        assertThat(dashboard.uri().getPath()).isEqualTo("/dashboard");
+        assertThat(dashboard.body()).contains("Pages");
+    }
+
+    private URI uri(String path) {
+        return URI.create("http://localhost:" + port + path);
+    }
+}
@@ -0,0 +1,194 @@
+package eu.luminis.passkeystryout.page;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.servlet.http.HttpServletRequest;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.authentication.TestingAuthenticationToken;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.web.csrf.CsrfToken;
+import org.springframework.security.web.csrf.DefaultCsrfToken;
+import org.springframework.web.servlet.View;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPInputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class PrerenderedPagesTest {
+
+    private final AtomicInteger renders = new AtomicInteger();
+    private final View view = (model, request, response) -> {
+        renders.incrementAndGet();
+        response.setContentType("text/html;charset=UTF-8");
+        response.getWriter().write("<meta name=\"_csrf\" content=\"" + csrfToken(request).getToken() + "\">"
+                + " signed in: " + (SecurityContextHolder.getContext().getAuthentication() != null)
+                + " query: " + request.getQueryString());
+    };
+    private final PrerenderedPages pages = new PrerenderedPages((viewName, locale) -> view, List.of(
+            new PrerenderedPages.Page("/", "index"),
+            new PrerenderedPages.Page("/login", "login", "error", "logout")));
+
+    @AfterEach
+    void clearSecurityContext() {
+        SecurityContextHolder.clearContext();
+    }
+
+    @Test
+    void serve_shouldRenderOnce_andServeTheSameBytesAfterwards() throws Exception {
+        // When
+        MockHttpServletResponse first = serve(request("/login"));
+        MockHttpServletResponse second = serve(request("/login"));
+
+        // Then
+        assertThat(renders).hasValue(1);
+        assertThat(second.getContentAsByteArray()).isEqualTo(first.getContentAsByteArray());
+        assertThat(second.getContentType()).isEqualTo("text/html;charset=UTF-8");
+        assertThat(second.getHeader("ETag")).isNotBlank().isEqualTo(first.getHeader("ETag"));
+        assertThat(second.getHeader("Cache-Control")).isEqualTo("no-cache, private");
+        assertThat(pages.missCount()).isEqualTo(1);
+        assertThat(pages.hitCount()).isEqualTo(1);
+    }
+
+    @Test
+    void serve_shouldRenderTheCsrfTokenBlank() throws Exception {
+        // When
+        MockHttpServletResponse response = serve(request("/login"));
+
+        // Then
+        assertThat(response.getContentAsString()).contains("<meta name=\"_csrf\" content=\"\">")
+                .doesNotContain("secret-token");
+    }
+
+    @Test
+    void serve_shouldAnswerNotModified_whenTheETagMatches() throws Exception {
+        // Given
+        String etag = serve(request("/")).getHeader("ETag");
+        MockHttpServletRequest revalidation = request("/");
+        revalidation.addHeader("If-None-Match", etag);
+
+        // When
+        MockHttpServletResponse response = serve(revalidation);
+
+        // Then
+        assertThat(response.getStatus()).isEqualTo(304);
+        assertThat(response.getContentAsByteArray()).isEmpty();
+    }
+
+    @Test
+    void serve_shouldSendTheGzipCopy_whenTheBrowserAcceptsIt() throws Exception {
+        // Given
+        MockHttpServletResponse plain = serve(request("/"));
+        MockHttpServletRequest request = request("/");
+        request.addHeader("Accept-Encoding", "gzip, deflate, br");
+
+        // When
+        MockHttpServletResponse compressed = serve(request);
+
+        // Then
+        assertThat(compressed.getHeader("Content-Encoding")).isEqualTo("gzip");
+        assertThat(compressed.getHeader("Vary")).isEqualTo("Accept-Encoding");
+        assertThat(compressed.getHeader("ETag")).isNotEqualTo(plain.getHeader("ETag"));
+        assertThat(gunzip(compressed.getContentAsByteArray())).isEqualTo(plain.getContentAsByteArray());
+        assertThat(plain.getHeader("Content-Encoding")).isNull();
+        assertThat(renders).hasValue(1);
+    }
+
+    @Test
+    void serve_shouldKeepAPagePerVisitorKindAndKnownFlag() throws Exception {
+        // Given
+        serve(request("/login"));
+        MockHttpServletRequest withError = request("/login");
+        withError.setQueryString("error");
+
+        // When
+        MockHttpServletResponse error = serve(withError);
+        SecurityContextHolder.getContext().setAuthentication(
+                new TestingAuthenticationToken("alice", "password", "ROLE_USER"));
+        MockHttpServletResponse signedIn = serve(request("/login"));
+
+        // Then
+        assertThat(error.getContentAsString()).contains("signed in: false query: error");
+        assertThat(signedIn.getContentAsString()).contains("signed in: true query: null");
+        assertThat(renders).hasValue(3);
+        assertThat(pages.size()).isEqualTo(3);
+    }
+
+    @Test
+    void serve_shouldRenderPerRequest_forOtherQueryStrings() throws Exception {
+        // Given
+        MockHttpServletRequest request = request("/login");
+        request.setQueryString("continue");
+
+        // When
+        MockHttpServletResponse response = serve(request);
+        serve(request);
+
+        // Then
+        assertThat(response.getContentAsString()).contains("content=\"secret-token\"");
+        assertThat(response.getHeader("ETag")).isNull();
+        assertThat(renders).hasValue(2);
+        assertThat(pages.size()).isZero();
+    }
+
+    @Test
+    void acceptsGzip_shouldFollowTheAcceptEncodingHeader() {
+        assertThat(PrerenderedPages.acceptsGzip("gzip")).isTrue();
+        assertThat(PrerenderedPages.acceptsGzip("br;q=1.0, GZIP;q=0.5")).isTrue();
+        assertThat(PrerenderedPages.acceptsGzip("*")).isTrue();
+        assertThat(PrerenderedPages.acceptsGzip("gzip;q=0")).isFalse();
+        assertThat(PrerenderedPages.acceptsGzip("br, deflate")).isFalse();
+        assertThat(PrerenderedPages.acceptsGzip(null)).isFalse();
+    }
+
+    @Test
+    void bindTo_shouldReportHitsAndMisses() throws Exception {
+        // Given
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        pages.bindTo(registry);
+
+        // When
+        serve(request("/"));
+        serve(request("/"));
+
+        // Then
+        assertThat(registry.get("cache.gets").tags("cache", "pages", "result", "hit").functionCounter().count())
+                .isEqualTo(1);
+        assertThat(registry.get("cache.gets").tags("cache", "pages", "result", "miss").functionCounter().count())
+                .isEqualTo(1);
+        assertThat(registry.get("cache.size").tag("cache", "pages").gauge().value()).isEqualTo(1);
+    }
+
+    private MockHttpServletResponse serve(MockHttpServletRequest request) throws Exception {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        pages.serve(request, response);
+        return response;
+    }
+
+    /**
+     * A GET request as the CSRF filter leaves it, with the token of the visitor in its attributes.
+     */
+    private static MockHttpServletRequest request(String path) {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", path);
+        CsrfToken token = new DefaultCsrfToken("X-CSRF-TOKEN", "_csrf", "secret-token");
+        request.setAttribute(CsrfToken.class.getName(), token);
+        request.setAttribute(token.getParameterName(), token);
+        return request;
+    }
+
+    private static CsrfToken csrfToken(HttpServletRequest request) {
+        return (CsrfToken) request.getAttribute(CsrfToken.class.getName());
+    }
+
+    private static byte[] gunzip(byte[] compressed) throws IOException {
+        try (GZIPInputStream gzip = new GZIPInputStream(new ByteArrayInputStream(compressed))) {
+            return gzip.readAllBytes();
+        }
+    }
+}
@@ -0,0 +1,138 @@
+package eu.luminis.passkeystryout.passkey;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.security.web.webauthn.api.Bytes;
+import org.springframework.security.web.webauthn.api.CredentialRecord;
+import org.springframework.security.web.webauthn.management.UserCredentialRepository;
+
+import java.time.Duration;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class CachingUserCredentialRepositoryTest {
+
+    private static final Bytes USER_ID = Bytes.fromBase64("dGVzdHVzZXJpZA");
+    private static final Bytes CREDENTIAL_ID = Bytes.fromBase64("Y3JlZDFpZA");
+
+    @Mock
+    private UserCredentialRepository delegate;
+
+    @Mock
+    private PublicKeyCache publicKeyCache;
+
+    @Mock
+    private CredentialLoginIndex loginIndex;
+
+    private CachingUserCredentialRepository repository;
+    private CredentialRecord record;
+
+    @BeforeEach
+    void setUp() {
+        repository = new CachingUserCredentialRepository(delegate, publicKeyCache, loginIndex, 100, Duration.ofMinutes(5));
+        record = mock(CredentialRecord.class);
+        lenient().when(record.getCredentialId()).thenReturn(CREDENTIAL_ID);
+        lenient().when(record.getUserEntityUserId()).thenReturn(USER_ID);
+    }
+
+    @Test
+    void findByCredentialId_shouldHitDelegateOnlyOnce() {
+        when(delegate.findByCredentialId(CREDENTIAL_ID)).thenReturn(record);
+
+        assertThat(repository.findByCredentialId(CREDENTIAL_ID)).isSameAs(record);
+        assertThat(repository.findByCredentialId(CREDENTIAL_ID)).isSameAs(record);
+
+        verify(delegate, times(1)).findByCredentialId(CREDENTIAL_ID);
+        assertThat(repository.hitCount()).isEqualTo(1);
+        assertThat(repository.missCount()).isEqualTo(1);
+    }
+
+    @Test
+    void findByCredentialId_shouldNotCacheMissingCredentials() {
+        when(delegate.findByCredentialId(CREDENTIAL_ID)).thenReturn(null);
+
+        assertThat(repository.findByCredentialId(CREDENTIAL_ID)).isNull();
+        assertThat(repository.findByCredentialId(CREDENTIAL_ID)).isNull();
+
+        verify(delegate, times(2)).findByCredentialId(CREDENTIAL_ID);
+    }
+
+    @Test
+    void findByUserId_shouldHitDelegateOnlyOnce() {
+        when(delegate.findByUserId(USER_ID)).thenReturn(List.of(record));
+
+        assertThat(repository.findByUserId(USER_ID)).containsExactly(record);
+        assertThat(repository.findByUserId(USER_ID)).containsExactly(record);
+
+        verify(delegate, times(1)).findByUserId(USER_ID);
+    }
+
+    @Test
+    void save_shouldInvalidateBothCaches() {
+        when(delegate.findByCredentialId(CREDENTIAL_ID)).thenReturn(record);
+        when(delegate.findByUserId(USER_ID)).thenReturn(List.of(record));
+        repository.findByCredentialId(CREDENTIAL_ID);
+        repository.findByUserId(USER_ID);
+
+        repository.save(record);
+        repository.findByCredentialId(CREDENTIAL_ID);
+        repository.findByUserId(USER_ID);
+
+        verify(delegate).save(record);
+        verify(delegate, times(2)).findByCredentialId(CREDENTIAL_ID);
+        verify(delegate, times(2)).findByUserId(USER_ID);
+        verify(publicKeyCache).invalidateIfChanged(record);
+    }
+
+    @Test
+    void delete_shouldInvalidateBothCaches() {
+        when(delegate.findByCredentialId(CREDENTIAL_ID)).thenReturn(record);
+        when(delegate.findByUserId(USER_ID)).thenReturn(List.of(record));
+        repository.findByCredentialId(CREDENTIAL_ID);
+        repository.findByUserId(USER_ID);
+
+        repository.delete(CREDENTIAL_ID);
+        repository.findByCredentialId(CREDENTIAL_ID);
+        repository.findByUserId(USER_ID);
+
+        verify(delegate).delete(CREDENTIAL_ID);
+        verify(delegate, times(2)).findByCredentialId(CREDENTIAL_ID);
+        verify(delegate, times(2)).findByUserId(USER_ID);
+        verify(publicKeyCache).invalidate(CREDENTIAL_ID);
+        verify(loginIndex).invalidate(CREDENTIAL_ID);
+    }
+
+    @Test
+    void delete_shouldInvalidateUserCache_whenCredentialWasNotCachedById() {
+        when(delegate.findByUserId(USER_ID)).thenReturn(List.of(record));
+        repository.findByUserId(USER_ID);
+
+        repository.delete(CREDENTIAL_ID);
+        repository.findByUserId(USER_ID);
+
+        verify(delegate, times(2)).findByUserId(USER_ID);
+    }
+
+    @Test
+    void bindTo_shouldPublishCacheMetrics() {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        when(delegate.findByCredentialId(CREDENTIAL_ID)).thenReturn(record);
+        repository.bindTo(registry);
+
+        repository.findByCredentialId(CREDENTIAL_ID);
+        repository.findByCredentialId(CREDENTIAL_ID);
+
+        assertThat(registry.get("cache.gets").tags("cache", "credentials-by-id", "result", "hit")
+                .functionCounter().count()).isEqualTo(1.0);
+        assertThat(registry.get("cache.gets").tags("cache", "credentials-by-id", "result", "miss")
+                .functionCounter().count()).isEqualTo(1.0);
+        assertThat(registry.get("cache.size").tags("cache", "credentials-by-id").gauge().value()).isEqualTo(1.0);
+    }
+}
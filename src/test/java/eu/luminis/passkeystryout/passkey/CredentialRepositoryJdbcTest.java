@@ -0,0 +1,94 @@
+package eu.luminis.passkeystryout.passkey;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+import org.springframework.security.web.webauthn.api.Bytes;
+import org.springframework.security.web.webauthn.management.MapPublicKeyCredentialUserEntityRepository;
+
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Runs the dashboard projection query against an in-memory H2 database created from {@code schema.sql}.
+ */
+class CredentialRepositoryJdbcTest {
+
+    private EmbeddedDatabase database;
+    private JdbcTemplate jdbc;
+    private CredentialRepository credentialRepository;
+
+    @BeforeEach
+    void setUp() {
+        database = new EmbeddedDatabaseBuilder()
+                .setType(EmbeddedDatabaseType.H2)
+                .generateUniqueName(true)
+                .addScript("schema.sql")
+                .build();
+        jdbc = new JdbcTemplate(database);
+        credentialRepository = new CredentialRepository(
+                new MapPublicKeyCredentialUserEntityRepository(),
+                new JdbcCredentialRecordRepository(jdbc),
+                jdbc);
+    }
+
+    @AfterEach
+    void tearDown() {
+        database.shutdown();
+    }
+
+    @Test
+    void findPasskeysInfoByUsername_shouldJoinUsersAndCredentials() {
+        // Given
+        Instant created = Instant.parse("2025-01-01T10:00:00Z");
+        Instant lastUsed = created.plus(1, ChronoUnit.DAYS);
+        insertUser("alice", "dXNlcjE");
+        insertCredential("dXNlcjE", "Y3JlZDJpZA", "YubiKey", created.plusSeconds(60), null, 0, false);
+        insertCredential("dXNlcjE", "Y3JlZDFpZA", "My MacBook", created, lastUsed, 5, true);
+        insertUser("bob", "dXNlcjI");
+        insertCredential("dXNlcjI", "Y3JlZDNpZA", "Bob's key", created, null, 1, false);
+
+        // When
+        List<PasskeySummary> passkeys = credentialRepository.findPasskeysInfoByUsername("alice");
+
+        // Then
+        assertThat(passkeys).containsExactly(
+                new PasskeySummary("Y3JlZDFpZA", "My MacBook", created, lastUsed, 5, true),
+                new PasskeySummary("Y3JlZDJpZA", "YubiKey", created.plusSeconds(60), null, 0, false));
+    }
+
+    @Test
+    void findPasskeysInfoByUsername_shouldReturnEmptyList_whenUserHasNoUserHandle() {
+        // Given
+        jdbc.update("INSERT INTO users (username, display_name, password) VALUES (?, ?, ?)", "alice", "Alice", "{noop}x");
+        insertUser("bob", "dXNlcjI");
+        insertCredential("dXNlcjI", "Y3JlZDNpZA", "Bob's key", Instant.now(), null, 0, false);
+
+        // When / Then
+        assertThat(credentialRepository.findPasskeysInfoByUsername("alice")).isEmpty();
+    }
+
+    private void insertUser(String username, String userEntityId) {
+        jdbc.update("INSERT INTO users (username, display_name, password, user_handle) VALUES (?, ?, ?, ?)",
+                username, username, "{noop}x", userEntityId);
+    }
+
+    private void insertCredential(String userEntityId, String credentialId, String label, Instant created,
+                                  Instant lastUsed, long signatureCount, boolean backupState) {
+        jdbc.update("""
+                        INSERT INTO webauthn_credentials (user_entity_user_id, credential_id, public_key,
+                            signature_count, public_key_credential_type, created, last_used, label, backup_state)
+                        VALUES (?, ?, X'00', ?, 'public-key', ?, ?, ?, ?)
+                        """,
+                userEntityId, Bytes.fromBase64(credentialId).getBytes(), signatureCount, Timestamp.from(created),
+                lastUsed == null ? null : Timestamp.from(lastUsed), label, backupState);
+    }
+}
@@ -6,19 +6,23 @@ import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.jdbc.core.JdbcOperations;
 import org.springframework.security.web.webauthn.api.Bytes;
 import org.springframework.security.web.webauthn.api.CredentialRecord;
 import org.springframework.security.web.webauthn.api.PublicKeyCredentialUserEntity;
-import org.springframework.security.web.webauthn.management.JdbcPublicKeyCredentialUserEntityRepository;
 import org.springframework.security.web.webauthn.management.JdbcUserCredentialRepository;
+import org.springframework.security.web.webauthn.management.PublicKeyCredentialUserEntityRepository;
 
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
 import java.time.Instant;
 import java.util.List;
-import java.util.Map;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatThrownBy;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.*;
 import static org.mockito.Mockito.lenient;
 
@@ -26,11 +30,14 @@ import static org.mockito.Mockito.lenient;
 class CredentialRepositoryTest {
 
     @Mock
-    private JdbcPublicKeyCredentialUserEntityRepository userEntityRepository;
+    private PublicKeyCredentialUserEntityRepository userEntityRepository;
 
     @Mock
     private JdbcUserCredentialRepository userCredentialRepository;
 
+    @Mock
+    private JdbcOperations jdbc;
+
     @InjectMocks
     private CredentialRepository credentialRepository;
 
@@ -76,68 +83,74 @@ class CredentialRepositoryTest {
     void findPasskeysInfoByUsername_shouldReturnPasskeyInfo_whenUserHasPasskeys() {
         // Given
         String username = "testuser";
-        when(userEntityRepository.findByUsername(username)).thenReturn(testUserEntity);
-        when(userCredentialRepository.findByUserId(testUserEntity.getId()))
-                .thenReturn(List.of(testCredentialRecord1, testCredentialRecord2));
+        Instant now = Instant.now();
+        Instant earlier = now.minusSeconds(3600);
+        when(jdbc.query(eq(CredentialRepository.PASSKEY_SUMMARIES_SQL), eq(CredentialRepository.PASSKEY_SUMMARY_MAPPER), eq(username)))
+                .thenReturn(List.of(
+                        new PasskeySummary("Y3JlZDFpZA", "My MacBook", earlier, now, 5L, true),
+                        new PasskeySummary("Y3JlZDJpZA", "YubiKey", earlier, null, 0L, false)));
 
         // When
-        List<Map<String, Object>> result = credentialRepository.findPasskeysInfoByUsername(username);
+        List<PasskeySummary> result = credentialRepository.findPasskeysInfoByUsername(username);
 
         // Then
         assertThat(result).hasSize(2);
         
         // Check first credential
-        Map<String, Object> passkey1 = result.get(0);
-        assertThat(passkey1.get("credential_id")).isEqualTo("Y3JlZDFpZA");
-        assertThat(passkey1.get("label")).isEqualTo("My MacBook");
-        assertThat(passkey1.get("created")).isEqualTo(testCredentialRecord1.getCreated());
-        assertThat(passkey1.get("last_used")).isEqualTo(testCredentialRecord1.getLastUsed());
-        assertThat(passkey1.get("signature_count")).isEqualTo(5L);
-        assertThat(passkey1.get("backup_state")).isEqualTo(true);
+        PasskeySummary passkey1 = result.get(0);
+        assertThat(passkey1.credentialId()).isEqualTo("Y3JlZDFpZA");
+        assertThat(passkey1.label()).isEqualTo("My MacBook");
+        assertThat(passkey1.created()).isEqualTo(earlier);
+        assertThat(passkey1.lastUsed()).isEqualTo(now);
+        assertThat(passkey1.signatureCount()).isEqualTo(5L);
+        assertThat(passkey1.backupState()).isTrue();
 
         // Check second credential
-        Map<String, Object> passkey2 = result.get(1);
-        assertThat(passkey2.get("credential_id")).isEqualTo("Y3JlZDJpZA");
-        assertThat(passkey2.get("label")).isEqualTo("YubiKey");
-        assertThat(passkey2.get("created")).isEqualTo(testCredentialRecord2.getCreated());
-        assertThat(passkey2.get("last_used")).isNull();
-        assertThat(passkey2.get("signature_count")).isEqualTo(0L);
-        assertThat(passkey2.get("backup_state")).isEqualTo(false);
-
-        // Verify interactions
-        verify(userEntityRepository).findByUsername(username);
-        verify(userCredentialRepository).findByUserId(testUserEntity.getId());
+        PasskeySummary passkey2 = result.get(1);
+        assertThat(passkey2.credentialId()).isEqualTo("Y3JlZDJpZA");
+        assertThat(passkey2.label()).isEqualTo("YubiKey");
+        assertThat(passkey2.created()).isEqualTo(earlier);
+        assertThat(passkey2.lastUsed()).isNull();
+        assertThat(passkey2.signatureCount()).isZero();
+        assertThat(passkey2.backupState()).isFalse();
+
+        // Verify a single query is used instead of the WebAuthn repositories
+        verifyNoInteractions(userEntityRepository, userCredentialRepository);
     }
 
     @Test
-    void findPasskeysInfoByUsername_shouldReturnEmptyList_whenUserNotFound() {
+    void findPasskeysInfoByUsername_shouldReturnEmptyList_whenQueryReturnsNoRows() {
         // Given
         String username = "nonexistent";
-        when(userEntityRepository.findByUsername(username)).thenReturn(null);
+        when(jdbc.query(eq(CredentialRepository.PASSKEY_SUMMARIES_SQL), eq(CredentialRepository.PASSKEY_SUMMARY_MAPPER), eq(username)))
+                .thenReturn(List.of());
 
         // When
-        List<Map<String, Object>> result = credentialRepository.findPasskeysInfoByUsername(username);
+        List<PasskeySummary> result = credentialRepository.findPasskeysInfoByUsername(username);
 
         // Then
         assertThat(result).isEmpty();
-        verify(userEntityRepository).findByUsername(username);
-        verify(userCredentialRepository, never()).findByUserId(any());
+        verifyNoInteractions(userEntityRepository, userCredentialRepository);
     }
 
     @Test
-    void findPasskeysInfoByUsername_shouldReturnEmptyList_whenUserHasNoPasskeys() {
+    void passkeySummaryMapper_shouldMapDisplayColumns() throws SQLException {
         // Given
-        String username = "testuser";
-        when(userEntityRepository.findByUsername(username)).thenReturn(testUserEntity);
-        when(userCredentialRepository.findByUserId(testUserEntity.getId())).thenReturn(List.of());
+        Instant created = Instant.parse("2025-01-01T10:00:00Z");
+        ResultSet rs = mock(ResultSet.class);
+        when(rs.getBytes("credential_id")).thenReturn(Bytes.fromBase64("Y3JlZDFpZA").getBytes());
+        when(rs.getString("label")).thenReturn("My MacBook");
+        when(rs.getTimestamp("created")).thenReturn(Timestamp.from(created));
+        when(rs.getTimestamp("last_used")).thenReturn(null);
+        when(rs.getLong("signature_count")).thenReturn(7L);
+        when(rs.getBoolean("backup_state")).thenReturn(true);
 
         // When
-        List<Map<String, Object>> result = credentialRepository.findPasskeysInfoByUsername(username);
+        PasskeySummary summary = CredentialRepository.PASSKEY_SUMMARY_MAPPER.mapRow(rs, 0);
 
         // Then
-        assertThat(result).isEmpty();
-        verify(userEntityRepository).findByUsername(username);
-        verify(userCredentialRepository).findByUserId(testUserEntity.getId());
+        assertThat(summary).isEqualTo(
+                new PasskeySummary("Y3JlZDFpZA", "My MacBook", created, null, 7L, true));
     }
 
     @Test
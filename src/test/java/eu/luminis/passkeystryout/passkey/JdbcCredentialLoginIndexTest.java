@@ -0,0 +1,205 @@
+package eu.luminis.passkeystryout.passkey;
+
+import eu.luminis.passkeystryout.user.CustomUserDetailsService;
+import eu.luminis.passkeystryout.user.KnownUsernames;
+import eu.luminis.passkeystryout.user.UserRepository;
+import eu.luminis.passkeystryout.webauthn.VirtualAuthenticator;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.web.webauthn.api.Bytes;
+import org.springframework.security.web.webauthn.api.CredentialRecord;
+import org.springframework.security.web.webauthn.api.ImmutableCredentialRecord;
+
+import java.time.Duration;
+import java.time.Instant;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verifyNoInteractions;
+
+/**
+ * Finds passkey logins in an in-memory H2 database created from {@code schema.sql}.
+ */
+class JdbcCredentialLoginIndexTest {
+
+    private EmbeddedDatabase database;
+    private JdbcTemplate jdbc;
+    private UserRepository userRepository;
+    private CustomUserDetailsService users;
+    private SignatureCountWriteBehind writeBehind;
+    private JdbcCredentialLoginIndex index;
+    private CachingUserCredentialRepository credentials;
+    private Bytes userHandle;
+    private CredentialRecord registered;
+
+    @BeforeEach
+    void setUp() {
+        database = new EmbeddedDatabaseBuilder()
+                .setType(EmbeddedDatabaseType.H2)
+                .generateUniqueName(true)
+                .addScript("schema.sql")
+                .build();
+        jdbc = new JdbcTemplate(database);
+        userRepository = mock(UserRepository.class);
+        users = new CustomUserDetailsService(userRepository,
+                new KnownUsernames(jdbc, 100, 0.01, 100, Duration.ofSeconds(2), Duration.ZERO), 100,
+                Duration.ofMinutes(5));
+        writeBehind = new SignatureCountWriteBehind(jdbc, mock(CachingUserCredentialRepository.class), 2);
+        index = new JdbcCredentialLoginIndex(jdbc, users, writeBehind, 100, Duration.ofMinutes(5));
+        credentials = new CachingUserCredentialRepository(new JdbcCredentialRecordRepository(jdbc),
+                new PublicKeyCache(100, Duration.ofMinutes(5)), index, 100, Duration.ofMinutes(5));
+
+        userHandle = Bytes.random();
+        jdbc.update("INSERT INTO users (username, display_name, password, user_handle) VALUES (?, ?, ?, ?)",
+                "alice", "Alice", "{noop}x", userHandle.toBase64UrlString());
+        registered = new VirtualAuthenticator("localhost", "http://localhost:8080")
+                .createCredential(VirtualAuthenticator.Algorithm.ES256, userHandle)
+                .toCredentialRecord();
+        credentials.save(registered);
+    }
+
+    @AfterEach
+    void tearDown() {
+        database.shutdown();
+    }
+
+    @Test
+    void find_shouldReturnCredentialAndOwner_andLoadThemOnlyOnce() {
+        // When
+        CredentialLoginIndex.PasskeyLogin first = index.find(registered.getCredentialId());
+        CredentialLoginIndex.PasskeyLogin second = index.find(registered.getCredentialId());
+
+        // Then
+        assertThat(first).isNotNull();
+        assertThat(first.credential().getCredentialId()).isEqualTo(registered.getCredentialId());
+        assertThat(first.credential().getPublicKey().getBytes()).isEqualTo(registered.getPublicKey().getBytes());
+        assertThat(first.owner().getId()).isEqualTo(userHandle);
+        assertThat(first.owner().getName()).isEqualTo("alice");
+        assertThat(first.owner().getDisplayName()).isEqualTo("Alice");
+        assertThat(second).isSameAs(first);
+        assertThat(index.missCount()).isEqualTo(1);
+        assertThat(index.hitCount()).isEqualTo(1);
+    }
+
+    @Test
+    void find_shouldReturnNull_forUnknownCredential() {
+        assertThat(index.find(Bytes.random())).isNull();
+    }
+
+    @Test
+    void find_shouldReturnNull_whenTheCachedCredentialWasDeletedOnAnotherNode() {
+        // Given
+        index.find(registered.getCredentialId());
+        jdbc.update("DELETE FROM webauthn_credentials WHERE credential_id_hash = ?",
+                (Object) JdbcCredentialRecordRepository.credentialIdHash(registered.getCredentialId()));
+
+        // When
+        CredentialLoginIndex.PasskeyLogin login = index.find(registered.getCredentialId());
+
+        // Then
+        assertThat(login).isNull();
+        assertThat(index.find(registered.getCredentialId())).isNull();
+        assertThat(index.missCount()).isEqualTo(2);
+    }
+
+    @Test
+    void find_shouldTakeTheStoredSignatureCount_whenAnotherNodeWroteAHigherOne() {
+        // Given
+        index.find(registered.getCredentialId());
+        jdbc.update("UPDATE webauthn_credentials SET signature_count = ? WHERE credential_id_hash = ?",
+                registered.getSignatureCount() + 7,
+                JdbcCredentialRecordRepository.credentialIdHash(registered.getCredentialId()));
+
+        // When
+        CredentialLoginIndex.PasskeyLogin login = index.find(registered.getCredentialId());
+
+        // Then
+        assertThat(login).isNotNull();
+        assertThat(login.credential().getSignatureCount()).isEqualTo(registered.getSignatureCount() + 7);
+        assertThat(login.owner().getName()).isEqualTo("alice");
+        assertThat(index.missCount()).isEqualTo(1);
+    }
+
+    @Test
+    void find_shouldCacheOwner_forTheUserDetailsLoadedAfterTheLogin() {
+        // Given
+        index.find(registered.getCredentialId());
+
+        // When
+        UserDetails userDetails = users.loadUserByUsername("alice");
+
+        // Then
+        assertThat(userDetails.getPassword()).isEqualTo("{noop}x");
+        assertThat(users.findById(userHandle)).isNotNull();
+        verifyNoInteractions(userRepository);
+    }
+
+    @Test
+    void recordUse_shouldUpdateCachedSignatureCount_beforeItIsWritten() {
+        // Given
+        index.find(registered.getCredentialId());
+        CredentialRecord used = ImmutableCredentialRecord.fromCredentialRecord(registered)
+                .signatureCount(registered.getSignatureCount() + 5)
+                .lastUsed(Instant.now())
+                .build();
+
+        // When
+        index.recordUse(used);
+
+        // Then
+        CredentialLoginIndex.PasskeyLogin login = index.find(registered.getCredentialId());
+        assertThat(login).isNotNull();
+        assertThat(login.credential().getSignatureCount()).isEqualTo(registered.getSignatureCount() + 5);
+        assertThat(login.owner().getName()).isEqualTo("alice");
+        assertThat(index.missCount()).isEqualTo(1);
+    }
+
+    @Test
+    void find_shouldApplyTheQueuedUse_whenTheLoginWasEvictedBeforeItsCountWasWritten() {
+        // Given
+        JdbcCredentialLoginIndex smallIndex = new JdbcCredentialLoginIndex(jdbc, users, writeBehind, 1,
+                Duration.ofMinutes(5));
+        smallIndex.find(registered.getCredentialId());
+        CredentialRecord used = ImmutableCredentialRecord.fromCredentialRecord(registered)
+                .signatureCount(registered.getSignatureCount() + 5)
+                .lastUsed(Instant.now())
+                .build();
+        writeBehind.record(used);
+        smallIndex.recordUse(used);
+        CredentialRecord other = new VirtualAuthenticator("localhost", "http://localhost:8080")
+                .createCredential(VirtualAuthenticator.Algorithm.ES256, userHandle)
+                .toCredentialRecord();
+        credentials.save(other);
+        smallIndex.find(other.getCredentialId());
+
+        // When
+        CredentialLoginIndex.PasskeyLogin login = smallIndex.find(registered.getCredentialId());
+        writeBehind.flush();
+
+        // Then
+        assertThat(login).isNotNull();
+        assertThat(login.credential().getSignatureCount()).isEqualTo(registered.getSignatureCount() + 5);
+        assertThat(smallIndex.missCount()).isEqualTo(3);
+        CredentialLoginIndex.PasskeyLogin afterFlush = smallIndex.find(registered.getCredentialId());
+        assertThat(afterFlush).isNotNull();
+        assertThat(afterFlush.credential().getSignatureCount()).isEqualTo(registered.getSignatureCount() + 5);
+    }
+
+    @Test
+    void delete_shouldRemoveTheLogin() {
+        // Given
+        index.find(registered.getCredentialId());
+
+        // When
+        credentials.delete(registered.getCredentialId());
+
+        // Then
+        assertThat(index.find(registered.getCredentialId())).isNull();
+    }
+}
@@ -0,0 +1,151 @@
+package eu.luminis.passkeystryout.passkey;
+
+import eu.luminis.passkeystryout.webauthn.VirtualAuthenticator;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+import org.springframework.security.web.webauthn.api.AuthenticatorTransport;
+import org.springframework.security.web.webauthn.api.Bytes;
+import org.springframework.security.web.webauthn.api.CredentialRecord;
+import org.springframework.security.web.webauthn.api.ImmutableCredentialRecord;
+
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Runs the binary credential repository against an in-memory H2 database created from {@code schema.sql}.
+ */
+class JdbcCredentialRecordRepositoryTest {
+
+    private final VirtualAuthenticator authenticator = new VirtualAuthenticator("localhost", "http://localhost:8080");
+
+    private EmbeddedDatabase database;
+    private JdbcTemplate jdbc;
+    private JdbcCredentialRecordRepository repository;
+    private Bytes userId;
+
+    @BeforeEach
+    void setUp() {
+        database = new EmbeddedDatabaseBuilder()
+                .setType(EmbeddedDatabaseType.H2)
+                .generateUniqueName(true)
+                .addScript("schema.sql")
+                .build();
+        jdbc = new JdbcTemplate(database);
+        repository = new JdbcCredentialRecordRepository(jdbc);
+        userId = Bytes.random();
+        jdbc.update("INSERT INTO users (username, display_name, password, user_handle) VALUES (?, ?, ?, ?)",
+                "alice", "Alice", "{noop}x", userId.toBase64UrlString());
+    }
+
+    @AfterEach
+    void tearDown() {
+        database.shutdown();
+    }
+
+    @Test
+    void save_shouldStoreEveryFieldOfTheRecord() {
+        // Given
+        CredentialRecord record = credential(Instant.now().truncatedTo(ChronoUnit.MILLIS));
+
+        // When
+        repository.save(record);
+
+        // Then
+        CredentialRecord stored = repository.findByCredentialId(record.getCredentialId());
+        assertThat(stored).isNotNull();
+        assertThat(stored.getCredentialId().getBytes()).isEqualTo(record.getCredentialId().getBytes());
+        assertThat(stored.getUserEntityUserId()).isEqualTo(userId);
+        assertThat(stored.getPublicKey().getBytes()).isEqualTo(record.getPublicKey().getBytes());
+        assertThat(stored.getAttestationObject()).isNotNull();
+        assertThat(stored.getAttestationObject().getBytes()).isEqualTo(record.getAttestationObject().getBytes());
+        assertThat(stored.getTransports()).containsExactlyInAnyOrder(AuthenticatorTransport.INTERNAL,
+                AuthenticatorTransport.HYBRID);
+        assertThat(stored.getCredentialType()).isEqualTo(record.getCredentialType());
+        assertThat(stored.isUvInitialized()).isTrue();
+        assertThat(stored.getCreated()).isEqualTo(record.getCreated());
+        assertThat(stored.getLastUsed()).isEqualTo(record.getLastUsed());
+        assertThat(stored.getLabel()).isEqualTo(record.getLabel());
+    }
+
+    @Test
+    void save_shouldUpdateAnExistingCredential() {
+        // Given
+        CredentialRecord record = credential(Instant.now());
+        repository.save(record);
+
+        // When
+        repository.save(ImmutableCredentialRecord.fromCredentialRecord(record)
+                .signatureCount(42)
+                .label("Renamed")
+                .build());
+
+        // Then
+        CredentialRecord stored = repository.findByCredentialId(record.getCredentialId());
+        assertThat(stored).isNotNull();
+        assertThat(stored.getSignatureCount()).isEqualTo(42);
+        assertThat(stored.getLabel()).isEqualTo("Renamed");
+        assertThat(jdbc.queryForObject("SELECT COUNT(*) FROM webauthn_credentials", Integer.class)).isEqualTo(1);
+    }
+
+    @Test
+    void findByUserId_shouldReturnCredentialsInCreationOrder() {
+        // Given
+        Instant created = Instant.now().truncatedTo(ChronoUnit.MILLIS);
+        CredentialRecord newer = credential(created.plusSeconds(60));
+        CredentialRecord older = credential(created);
+        repository.save(newer);
+        repository.save(older);
+
+        // When / Then
+        assertThat(repository.findByUserId(userId))
+                .extracting(CredentialRecord::getCreated)
+                .containsExactly(older.getCreated(), newer.getCreated());
+    }
+
+    @Test
+    void delete_shouldRemoveOnlyThatCredential() {
+        // Given
+        CredentialRecord deleted = credential(Instant.now());
+        CredentialRecord kept = credential(Instant.now());
+        repository.save(deleted);
+        repository.save(kept);
+
+        // When
+        repository.delete(deleted.getCredentialId());
+
+        // Then
+        assertThat(repository.findByCredentialId(deleted.getCredentialId())).isNull();
+        assertThat(repository.findByCredentialId(kept.getCredentialId())).isNotNull();
+    }
+
+    @Test
+    void credentialIdHash_shouldMatchTheKeyTheDatabaseDerives() {
+        // Given
+        CredentialRecord record = credential(Instant.now());
+        repository.save(record);
+
+        // When
+        byte[] stored = jdbc.queryForObject("SELECT credential_id_hash FROM webauthn_credentials", byte[].class);
+
+        // Then
+        assertThat(stored).isEqualTo(JdbcCredentialRecordRepository.credentialIdHash(record.getCredentialId()));
+    }
+
+    private CredentialRecord credential(Instant created) {
+        CredentialRecord record = authenticator.createCredential(VirtualAuthenticator.Algorithm.ES256, userId)
+                .toCredentialRecord();
+        return ImmutableCredentialRecord.fromCredentialRecord(record)
+                .transports(Set.of(AuthenticatorTransport.INTERNAL, AuthenticatorTransport.HYBRID))
+                .created(created)
+                .lastUsed(created)
+                .build();
+    }
+}
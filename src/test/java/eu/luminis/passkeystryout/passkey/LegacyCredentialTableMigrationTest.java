@@ -0,0 +1,128 @@
+package eu.luminis.passkeystryout.passkey;
+
+import eu.luminis.passkeystryout.webauthn.VirtualAuthenticator;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+import org.springframework.security.web.webauthn.api.Bytes;
+import org.springframework.security.web.webauthn.api.CredentialRecord;
+import org.springframework.security.web.webauthn.api.ImmutablePublicKeyCredentialUserEntity;
+import org.springframework.security.web.webauthn.management.JdbcPublicKeyCredentialUserEntityRepository;
+import org.springframework.security.web.webauthn.management.JdbcUserCredentialRepository;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Fills the credentials table of earlier versions through Spring Security's {@link JdbcUserCredentialRepository} and
+ * migrates it to {@code webauthn_credentials}.
+ */
+class LegacyCredentialTableMigrationTest {
+
+    private final VirtualAuthenticator authenticator = new VirtualAuthenticator("localhost", "http://localhost:8080");
+
+    private EmbeddedDatabase database;
+    private JdbcTemplate jdbc;
+    private TransactionTemplate transactions;
+    private Bytes userId;
+
+    @BeforeEach
+    void setUp() {
+        database = new EmbeddedDatabaseBuilder()
+                .setType(EmbeddedDatabaseType.H2)
+                .generateUniqueName(true)
+                .addScript("schema.sql")
+                .addScript("legacy-user-entities.sql")
+                .addScript("legacy-user-credentials.sql")
+                .build();
+        jdbc = new JdbcTemplate(database);
+        transactions = new TransactionTemplate(new DataSourceTransactionManager(database));
+        userId = Bytes.random();
+        jdbc.update("INSERT INTO users (username, display_name, password, user_handle) VALUES (?, ?, ?, ?)",
+                "alice", "Alice", "{noop}x", userId.toBase64UrlString());
+        new JdbcPublicKeyCredentialUserEntityRepository(jdbc).save(ImmutablePublicKeyCredentialUserEntity.builder()
+                .id(userId)
+                .name("alice")
+                .displayName("Alice")
+                .build());
+    }
+
+    @AfterEach
+    void tearDown() {
+        database.shutdown();
+    }
+
+    @Test
+    void migrate_shouldCopyEveryCredentialInChunksAndDropTheOldTable() {
+        // Given
+        JdbcUserCredentialRepository legacy = new JdbcUserCredentialRepository(jdbc);
+        List<CredentialRecord> records = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            CredentialRecord record = authenticator.createCredential(VirtualAuthenticator.Algorithm.ES256, userId)
+                    .toCredentialRecord();
+            legacy.save(record);
+            records.add(record);
+        }
+
+        // When
+        int migrated = new LegacyCredentialTableMigration(jdbc, transactions, 2).migrate();
+
+        // Then
+        assertThat(migrated).isEqualTo(5);
+        assertThat(legacyTableExists()).isFalse();
+        JdbcCredentialRecordRepository repository = new JdbcCredentialRecordRepository(jdbc);
+        for (CredentialRecord record : records) {
+            CredentialRecord stored = repository.findByCredentialId(record.getCredentialId());
+            assertThat(stored).isNotNull();
+            assertThat(stored.getUserEntityUserId()).isEqualTo(userId);
+            assertThat(stored.getPublicKey().getBytes()).isEqualTo(record.getPublicKey().getBytes());
+            assertThat(stored.getAttestationObject()).isNotNull();
+            assertThat(stored.getAttestationObject().getBytes())
+                    .isEqualTo(record.getAttestationObject().getBytes());
+            assertThat(stored.getLabel()).isEqualTo(record.getLabel());
+        }
+    }
+
+    @Test
+    void migrate_shouldFinishAMigrationThatWasInterrupted() {
+        // Given
+        JdbcUserCredentialRepository legacy = new JdbcUserCredentialRepository(jdbc);
+        CredentialRecord moved = authenticator.createCredential(VirtualAuthenticator.Algorithm.ES256, userId)
+                .toCredentialRecord();
+        CredentialRecord remaining = authenticator.createCredential(VirtualAuthenticator.Algorithm.RS256, userId)
+                .toCredentialRecord();
+        new JdbcCredentialRecordRepository(jdbc).save(moved);
+        legacy.save(remaining);
+
+        // When
+        int migrated = new LegacyCredentialTableMigration(jdbc, transactions, 2).migrate();
+
+        // Then
+        assertThat(migrated).isEqualTo(1);
+        assertThat(jdbc.queryForObject("SELECT COUNT(*) FROM webauthn_credentials", Integer.class)).isEqualTo(2);
+    }
+
+    @Test
+    void migrate_shouldDoNothing_whenThereIsNoOldTable() {
+        // Given
+        jdbc.execute("DROP TABLE user_credentials");
+
+        // When / Then
+        assertThat(new LegacyCredentialTableMigration(jdbc, transactions, 2).migrate()).isZero();
+    }
+
+    private boolean legacyTableExists() {
+        Integer tables = jdbc.queryForObject(
+                "SELECT COUNT(*) FROM information_schema.tables WHERE table_name = 'USER_CREDENTIALS'",
+                Integer.class);
+        return tables != null && tables > 0;
+    }
+}
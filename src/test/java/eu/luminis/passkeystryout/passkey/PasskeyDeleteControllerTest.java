@@ -1,11 +1,14 @@
 package eu.luminis.passkeystryout.passkey;
 
+import eu.luminis.passkeystryout.metrics.WebAuthnMetrics;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.jspecify.annotations.NullMarked;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.Authentication;
@@ -29,6 +32,11 @@ class PasskeyDeleteControllerTest {
     @Mock
     private Authentication authentication;
 
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @Spy
+    private WebAuthnMetrics metrics = new WebAuthnMetrics(meterRegistry);
+
     @InjectMocks
     private PasskeyDeleteController controller;
 
@@ -81,6 +89,24 @@ class PasskeyDeleteControllerTest {
         verify(credentialRepository).deletePasskeyFromUser(credentialId, "testuser");
     }
 
+    @Test
+    void deletePasskey_shouldRecordTimerByOutcome() {
+        // Given
+        when(authentication.getPrincipal()).thenReturn(testUserDetails);
+        lenient().doThrow(new PasskeyException("Credential not found or does not belong to user"))
+                .when(credentialRepository).deletePasskeyFromUser("nonexistent", "testuser");
+
+        // When
+        controller.deletePasskey("Y3JlZDFpZA", authentication);
+        controller.deletePasskey("nonexistent", authentication);
+
+        // Then
+        assertThat(meterRegistry.get(WebAuthnMetrics.PASSKEYS_TIMER)
+                .tags("operation", "delete", "outcome", "success").timer().count()).isEqualTo(1);
+        assertThat(meterRegistry.get(WebAuthnMetrics.PASSKEYS_TIMER)
+                .tags("operation", "delete", "outcome", "failure").timer().count()).isEqualTo(1);
+    }
+
     @Test
     void deletePasskey_shouldReturnError_whenUserNotFound() {
         // Given
@@ -0,0 +1,138 @@
+package eu.luminis.passkeystryout.passkey;
+
+import com.webauthn4j.data.attestation.AttestationObject;
+import com.webauthn4j.data.attestation.authenticator.COSEKey;
+import eu.luminis.passkeystryout.webauthn.VirtualAuthenticator;
+import eu.luminis.passkeystryout.webauthn.VirtualCredential;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.web.webauthn.api.Bytes;
+import org.springframework.security.web.webauthn.api.CredentialRecord;
+import org.springframework.security.web.webauthn.api.ImmutableCredentialRecord;
+
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class PublicKeyCacheTest {
+
+    private final VirtualAuthenticator authenticator = new VirtualAuthenticator("localhost", "http://localhost:8080");
+    private final PublicKeyCache cache = new PublicKeyCache(100, Duration.ofMinutes(5));
+
+    @Test
+    void attestationObject_shouldParseOnceAndReuseThePublicKey() {
+        // Given
+        CredentialRecord record = credential(VirtualAuthenticator.Algorithm.ES256).toCredentialRecord();
+
+        // When
+        COSEKey first = coseKey(cache.attestationObject(record));
+        COSEKey second = coseKey(cache.attestationObject(record));
+
+        // Then
+        assertThat(second).isSameAs(first);
+        assertThat(second.getPublicKey()).isSameAs(first.getPublicKey());
+        assertThat(cache.missCount()).isEqualTo(1);
+        assertThat(cache.hitCount()).isEqualTo(1);
+    }
+
+    @Test
+    void attestationObject_shouldPrepareTheKeyOfEveryAlgorithm() {
+        for (VirtualAuthenticator.Algorithm algorithm : VirtualAuthenticator.Algorithm.values()) {
+            // Given
+            VirtualCredential credential = credential(algorithm);
+
+            // When
+            COSEKey key = coseKey(cache.attestationObject(credential.toCredentialRecord()));
+
+            // Then
+            assertThat(key.getAlgorithm()).isEqualTo(algorithm.coseAlgorithm());
+            assertThat(key.getPublicKey().getEncoded()).isEqualTo(credential.publicKey().getEncoded());
+        }
+    }
+
+    @Test
+    void attestationObject_shouldParseAgain_whenTheStoredAttestationObjectChanged() {
+        // Given
+        VirtualCredential original = credential(VirtualAuthenticator.Algorithm.ES256);
+        VirtualCredential replacement = credential(VirtualAuthenticator.Algorithm.ES256);
+        CredentialRecord record = original.toCredentialRecord();
+        COSEKey originalKey = coseKey(cache.attestationObject(record));
+
+        // When
+        COSEKey key = coseKey(cache.attestationObject(ImmutableCredentialRecord.fromCredentialRecord(record)
+                .attestationObject(replacement.attestationObject())
+                .build()));
+
+        // Then
+        assertThat(key.getPublicKey()).isNotEqualTo(originalKey.getPublicKey());
+        assertThat(key.getPublicKey().getEncoded()).isEqualTo(replacement.publicKey().getEncoded());
+    }
+
+    @Test
+    void attestationObject_shouldRejectRecordsWithoutAttestationObject() {
+        // Given
+        CredentialRecord record = ImmutableCredentialRecord
+                .fromCredentialRecord(credential(VirtualAuthenticator.Algorithm.ES256).toCredentialRecord())
+                .attestationObject(null)
+                .build();
+
+        // When / Then
+        assertThatThrownBy(() -> cache.attestationObject(record))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("attestationObject cannot be null");
+    }
+
+    @Test
+    void invalidateIfChanged_shouldKeepTheEntry_whenOnlyTheSignatureCountChanged() {
+        // Given
+        CredentialRecord record = credential(VirtualAuthenticator.Algorithm.ES256).toCredentialRecord();
+        cache.attestationObject(record);
+
+        // When
+        cache.invalidateIfChanged(ImmutableCredentialRecord.fromCredentialRecord(record).signatureCount(42).build());
+        cache.attestationObject(record);
+
+        // Then
+        assertThat(cache.missCount()).isEqualTo(1);
+    }
+
+    @Test
+    void invalidate_shouldDropTheEntry() {
+        // Given
+        CredentialRecord record = credential(VirtualAuthenticator.Algorithm.ES256).toCredentialRecord();
+        cache.attestationObject(record);
+
+        // When
+        cache.invalidate(record.getCredentialId());
+        cache.attestationObject(record);
+
+        // Then
+        assertThat(cache.missCount()).isEqualTo(2);
+    }
+
+    @Test
+    void bindTo_shouldPublishCacheMetrics() {
+        // Given
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        cache.bindTo(registry);
+        CredentialRecord record = credential(VirtualAuthenticator.Algorithm.ES256).toCredentialRecord();
+
+        // When
+        cache.attestationObject(record);
+        cache.attestationObject(record);
+
+        // Then
+        assertThat(registry.get("cache.gets").tags("cache", "public-keys", "result", "hit")
+                .functionCounter().count()).isEqualTo(1.0);
+        assertThat(registry.get("cache.size").tags("cache", "public-keys").gauge().value()).isEqualTo(1.0);
+    }
+
+    private VirtualCredential credential(VirtualAuthenticator.Algorithm algorithm) {
+        return authenticator.createCredential(algorithm, Bytes.random());
+    }
+
+    private static COSEKey coseKey(AttestationObject attestationObject) {
+        return attestationObject.getAuthenticatorData().getAttestedCredentialData().getCOSEKey();
+    }
+}
@@ -0,0 +1,160 @@
+package eu.luminis.passkeystryout.passkey;
+
+import com.webauthn4j.WebAuthnManager;
+import com.webauthn4j.verifier.exception.MaliciousCounterValueException;
+import eu.luminis.passkeystryout.webauthn.VirtualAuthenticator;
+import eu.luminis.passkeystryout.webauthn.VirtualCredential;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.web.webauthn.api.AuthenticatorAssertionResponse;
+import org.springframework.security.web.webauthn.api.Bytes;
+import org.springframework.security.web.webauthn.api.CredentialRecord;
+import org.springframework.security.web.webauthn.api.ImmutablePublicKeyCredentialUserEntity;
+import org.springframework.security.web.webauthn.api.PublicKeyCredential;
+import org.springframework.security.web.webauthn.api.PublicKeyCredentialDescriptor;
+import org.springframework.security.web.webauthn.api.PublicKeyCredentialRequestOptions;
+import org.springframework.security.web.webauthn.api.PublicKeyCredentialRpEntity;
+import org.springframework.security.web.webauthn.api.PublicKeyCredentialUserEntity;
+import org.springframework.security.web.webauthn.api.UserVerificationRequirement;
+import org.springframework.security.web.webauthn.management.MapPublicKeyCredentialUserEntityRepository;
+import org.springframework.security.web.webauthn.management.MapUserCredentialRepository;
+import org.springframework.security.web.webauthn.management.RelyingPartyAuthenticationRequest;
+import org.springframework.security.web.webauthn.management.Webauthn4JRelyingPartyOperations;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class PublicKeyCachingRelyingPartyOperationsTest {
+
+    private static final String RP_ID = "localhost";
+    private static final String ORIGIN = "http://localhost:8080";
+
+    private final VirtualAuthenticator authenticator = new VirtualAuthenticator(RP_ID, ORIGIN);
+    private final MapPublicKeyCredentialUserEntityRepository userEntities =
+            new MapPublicKeyCredentialUserEntityRepository();
+    private final MapUserCredentialRepository credentials = new MapUserCredentialRepository();
+    private final PublicKeyCache publicKeyCache = new PublicKeyCache(100, Duration.ofMinutes(5));
+
+    private PublicKeyCachingRelyingPartyOperations relyingParty;
+    private PublicKeyCredentialUserEntity user;
+
+    @BeforeEach
+    void setUp() {
+        user = ImmutablePublicKeyCredentialUserEntity.builder()
+                .id(Bytes.random())
+                .name("alice")
+                .displayName("Alice")
+                .build();
+        userEntities.save(user);
+
+        Webauthn4JRelyingPartyOperations delegate = new Webauthn4JRelyingPartyOperations(userEntities, credentials,
+                PublicKeyCredentialRpEntity.builder().id(RP_ID).name("Passkeys Demo").build(), Set.of(ORIGIN));
+        relyingParty = new PublicKeyCachingRelyingPartyOperations(delegate, userEntities, credentials,
+                Set.of(ORIGIN), WebAuthnManager.createNonStrictWebAuthnManager(), publicKeyCache);
+    }
+
+    @Test
+    void authenticate_shouldVerifyRepeatLoginsWithTheCachedPublicKey() {
+        for (VirtualAuthenticator.Algorithm algorithm : VirtualAuthenticator.Algorithm.values()) {
+            // Given
+            VirtualCredential credential = register(algorithm);
+            long missesBefore = publicKeyCache.missCount();
+
+            // When
+            PublicKeyCredentialUserEntity first = relyingParty.authenticate(assertion(credential, List.of()));
+            PublicKeyCredentialUserEntity second = relyingParty.authenticate(assertion(credential, List.of()));
+
+            // Then
+            assertThat(first.getName()).isEqualTo("alice");
+            assertThat(second.getName()).isEqualTo("alice");
+            assertThat(publicKeyCache.missCount()).isEqualTo(missesBefore + 1);
+            CredentialRecord stored = credentials.findByCredentialId(credential.credentialId());
+            assertThat(stored).isNotNull();
+            assertThat(stored.getSignatureCount()).isEqualTo(2);
+        }
+    }
+
+    @Test
+    void authenticate_shouldRejectAssertionSignedWithAnotherKey_evenWhenTheKeyIsCached() {
+        // Given
+        VirtualCredential credential = register(VirtualAuthenticator.Algorithm.ES256);
+        relyingParty.authenticate(assertion(credential, List.of()));
+        VirtualCredential impostor = new VirtualAuthenticator(RP_ID, ORIGIN)
+                .createCredential(VirtualAuthenticator.Algorithm.ES256, user.getId());
+        RelyingPartyAuthenticationRequest forged = withCredentialId(assertion(impostor, List.of()), credential);
+
+        // When / Then
+        assertThatThrownBy(() -> relyingParty.authenticate(forged)).isInstanceOf(RuntimeException.class);
+    }
+
+    @Test
+    void authenticate_shouldRejectSignatureCountThatIsNotHigherThanTheStoredOne() {
+        // Given
+        VirtualCredential credential = register(VirtualAuthenticator.Algorithm.ES256);
+        RelyingPartyAuthenticationRequest earlier = assertion(credential, List.of());
+        RelyingPartyAuthenticationRequest later = assertion(credential, List.of());
+        relyingParty.authenticate(later);
+
+        // When / Then
+        assertThatThrownBy(() -> relyingParty.authenticate(earlier))
+                .isInstanceOf(MaliciousCounterValueException.class);
+    }
+
+    @Test
+    void authenticate_shouldRejectCredentialsOutsideTheAllowList() {
+        // Given
+        VirtualCredential credential = register(VirtualAuthenticator.Algorithm.ES256);
+        PublicKeyCredentialDescriptor other = PublicKeyCredentialDescriptor.builder().id(Bytes.random()).build();
+
+        // When / Then
+        assertThatThrownBy(() -> relyingParty.authenticate(assertion(credential, List.of(other))))
+                .isInstanceOf(RuntimeException.class);
+    }
+
+    @Test
+    void authenticate_shouldFail_whenCredentialIsUnknown() {
+        // Given
+        VirtualCredential credential = authenticator.createCredential(VirtualAuthenticator.Algorithm.ES256,
+                user.getId());
+
+        // When / Then
+        assertThatThrownBy(() -> relyingParty.authenticate(assertion(credential, List.of())))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageStartingWith("Unable to find CredentialRecord with id");
+    }
+
+    private VirtualCredential register(VirtualAuthenticator.Algorithm algorithm) {
+        VirtualCredential credential = authenticator.createCredential(algorithm, user.getId());
+        credentials.save(credential.toCredentialRecord());
+        return credential;
+    }
+
+    private RelyingPartyAuthenticationRequest assertion(VirtualCredential credential,
+                                                        List<PublicKeyCredentialDescriptor> allowCredentials) {
+        PublicKeyCredentialRequestOptions options = PublicKeyCredentialRequestOptions.builder()
+                .challenge(Bytes.random())
+                .rpId(RP_ID)
+                .allowCredentials(allowCredentials)
+                .userVerification(UserVerificationRequirement.PREFERRED)
+                .build();
+        return new RelyingPartyAuthenticationRequest(options,
+                authenticator.getAssertion(credential, options.getChallenge()));
+    }
+
+    private static RelyingPartyAuthenticationRequest withCredentialId(RelyingPartyAuthenticationRequest request,
+                                                                      VirtualCredential credential) {
+        return new RelyingPartyAuthenticationRequest(request.getRequestOptions(),
+                PublicKeyCredential.<AuthenticatorAssertionResponse>builder()
+                        .id(credential.credentialId().toBase64UrlString())
+                        .rawId(credential.credentialId())
+                        .type(request.getPublicKey().getType())
+                        .response(request.getPublicKey().getResponse())
+                        .authenticatorAttachment(request.getPublicKey().getAuthenticatorAttachment())
+                        .clientExtensionResults(request.getPublicKey().getClientExtensionResults())
+                        .build());
+    }
+}
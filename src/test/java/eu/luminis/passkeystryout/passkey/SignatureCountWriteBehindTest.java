@@ -0,0 +1,208 @@
+package eu.luminis.passkeystryout.passkey;
+
+import com.webauthn4j.verifier.exception.MaliciousCounterValueException;
+import eu.luminis.passkeystryout.webauthn.VirtualAuthenticator;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+import org.springframework.security.web.webauthn.api.Bytes;
+import org.springframework.security.web.webauthn.api.CredentialRecord;
+import org.springframework.security.web.webauthn.api.ImmutableCredentialRecord;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.mock;
+
+/**
+ * Runs the signature count write-behind against an in-memory H2 database created from {@code schema.sql}.
+ */
+class SignatureCountWriteBehindTest {
+
+    private EmbeddedDatabase database;
+    private JdbcTemplate jdbc;
+    private CachingUserCredentialRepository credentials;
+    private SignatureCountWriteBehind writeBehind;
+    private CredentialRecord registered;
+
+    @BeforeEach
+    void setUp() {
+        database = new EmbeddedDatabaseBuilder()
+                .setType(EmbeddedDatabaseType.H2)
+                .generateUniqueName(true)
+                .addScript("schema.sql")
+                .build();
+        jdbc = new JdbcTemplate(database);
+        credentials = new CachingUserCredentialRepository(new JdbcCredentialRecordRepository(jdbc),
+                new PublicKeyCache(100, Duration.ofMinutes(5)), mock(CredentialLoginIndex.class), 100,
+                Duration.ofMinutes(5));
+        writeBehind = new SignatureCountWriteBehind(jdbc, credentials, 2);
+
+        Bytes userId = Bytes.random();
+        jdbc.update("INSERT INTO users (username, display_name, password, user_handle) VALUES (?, ?, ?, ?)",
+                "alice", "Alice", "{noop}x", userId.toBase64UrlString());
+        registered = new VirtualAuthenticator("localhost", "http://localhost:8080")
+                .createCredential(VirtualAuthenticator.Algorithm.ES256, userId)
+                .toCredentialRecord();
+        credentials.save(registered);
+    }
+
+    @AfterEach
+    void tearDown() {
+        database.shutdown();
+    }
+
+    @Test
+    void flush_shouldWriteCoalescedUsesInOneUpdate() {
+        // Given
+        Instant lastUsed = Instant.now().truncatedTo(ChronoUnit.MILLIS).plusSeconds(60);
+        writeBehind.record(use(1, lastUsed.minusSeconds(2)));
+        writeBehind.record(use(2, lastUsed));
+        writeBehind.record(use(3, lastUsed.minusSeconds(1)));
+
+        // When
+        int written = writeBehind.flush();
+
+        // Then
+        assertThat(written).isEqualTo(1);
+        assertThat(writeBehind.pendingCount()).isZero();
+        CredentialRecord stored = credentials.findByCredentialId(registered.getCredentialId());
+        assertThat(stored).isNotNull();
+        assertThat(stored.getSignatureCount()).isEqualTo(3);
+        assertThat(stored.getLastUsed()).isEqualTo(lastUsed);
+    }
+
+    @Test
+    void record_shouldNotWriteBeforeFlush() {
+        // When
+        writeBehind.record(use(1, Instant.now()));
+
+        // Then
+        assertThat(storedSignatureCount()).isZero();
+        assertThat(writeBehind.pendingCount()).isEqualTo(1);
+    }
+
+    @Test
+    void record_shouldRejectCountThatDidNotIncrease() {
+        // Given
+        writeBehind.record(use(5, Instant.now()));
+
+        // When / Then
+        assertThatThrownBy(() -> writeBehind.record(use(5, Instant.now())))
+                .isInstanceOf(MaliciousCounterValueException.class);
+        assertThat(writeBehind.withPendingUse(registered).getSignatureCount()).isEqualTo(5);
+    }
+
+    @Test
+    void record_shouldAcceptRepeatedZeroCounts() {
+        // Given
+        writeBehind.record(use(0, Instant.now()));
+
+        // When
+        writeBehind.record(use(0, Instant.now()));
+
+        // Then
+        assertThat(writeBehind.pendingCount()).isEqualTo(1);
+    }
+
+    @Test
+    void withPendingUse_shouldApplyQueuedUse_untilTheCachedRecordIsReplacedByTheWrittenOne() {
+        // Given
+        CredentialRecord cached = credentials.findByCredentialId(registered.getCredentialId());
+        assertThat(cached).isNotNull();
+        writeBehind.record(use(7, Instant.now()));
+
+        // When
+        CredentialRecord beforeFlush = writeBehind.withPendingUse(cached);
+        writeBehind.flush();
+        CredentialRecord afterFlush = credentials.findByCredentialId(registered.getCredentialId());
+
+        // Then
+        assertThat(beforeFlush.getSignatureCount()).isEqualTo(7);
+        assertThat(afterFlush).isNotNull();
+        assertThat(afterFlush.getSignatureCount()).isEqualTo(7);
+        assertThat(writeBehind.withPendingUse(afterFlush)).isSameAs(afterFlush);
+    }
+
+    @Test
+    void flush_shouldNotLowerCountWrittenElsewhere() {
+        // Given
+        jdbc.update("UPDATE webauthn_credentials SET signature_count = 10");
+        writeBehind.record(use(5, Instant.now()));
+
+        // When
+        writeBehind.flush();
+
+        // Then
+        assertThat(storedSignatureCount()).isEqualTo(10);
+    }
+
+    @Test
+    void close_shouldWritePendingUsesAndLaterUsesRightAway() {
+        // Given
+        writeBehind.record(use(1, Instant.now()));
+
+        // When
+        writeBehind.close();
+        long afterClose = storedSignatureCount();
+        writeBehind.record(use(2, Instant.now()));
+
+        // Then
+        assertThat(afterClose).isEqualTo(1);
+        assertThat(storedSignatureCount()).isEqualTo(2);
+    }
+
+    @Test
+    void delete_shouldDiscardQueuedUse() {
+        // Given
+        WriteBehindUserCredentialRepository repository = new WriteBehindUserCredentialRepository(credentials,
+                writeBehind);
+        repository.save(use(1, Instant.now()));
+
+        // When
+        repository.delete(registered.getCredentialId());
+
+        // Then
+        assertThat(writeBehind.pendingCount()).isZero();
+        assertThat(repository.findByCredentialId(registered.getCredentialId())).isNull();
+    }
+
+    @Test
+    void bindTo_shouldPublishQueueMetrics() {
+        // Given
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        writeBehind.bindTo(registry);
+        writeBehind.record(use(1, Instant.now()));
+        writeBehind.record(use(2, Instant.now()));
+
+        // When
+        double pendingBeforeFlush = registry.get("webauthn.signature-count.pending").gauge().value();
+        writeBehind.flush();
+
+        // Then
+        assertThat(pendingBeforeFlush).isEqualTo(1.0);
+        assertThat(registry.get("webauthn.signature-count.recorded").functionCounter().count()).isEqualTo(2.0);
+        assertThat(registry.get("webauthn.signature-count.written").functionCounter().count()).isEqualTo(1.0);
+    }
+
+    private CredentialRecord use(long signatureCount, Instant lastUsed) {
+        return ImmutableCredentialRecord.fromCredentialRecord(registered)
+                .signatureCount(signatureCount)
+                .lastUsed(lastUsed)
+                .build();
+    }
+
+    private long storedSignatureCount() {
+        Long count = jdbc.queryForObject("SELECT signature_count FROM webauthn_credentials", Long.class);
+        assertThat(count).isNotNull();
+        return count;
+    }
+}
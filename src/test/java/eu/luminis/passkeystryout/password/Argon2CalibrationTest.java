@@ -0,0 +1,30 @@
+package eu.luminis.passkeystryout.password;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.security.crypto.argon2.Argon2PasswordEncoder;
+
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class Argon2CalibrationTest {
+
+    @Test
+    void calibrateIterations_shouldStayWithinBounds() {
+        assertThat(Argon2Calibration.calibrateIterations(Duration.ofNanos(1), 1024, 1, 2, 5)).isEqualTo(2);
+        assertThat(Argon2Calibration.calibrateIterations(Duration.ofHours(1), 1024, 1, 2, 5)).isEqualTo(5);
+    }
+
+    @Test
+    void encoder_shouldUpgradeHashesMadeWithFewerIterations() {
+        // Given
+        Argon2PasswordEncoder weak = Argon2Calibration.encoder(1024, 1, 1);
+        Argon2PasswordEncoder strong = Argon2Calibration.encoder(1024, 1, 3);
+        String hash = weak.encode("secret");
+
+        // When / Then
+        assertThat(strong.matches("secret", hash)).isTrue();
+        assertThat(strong.upgradeEncoding(hash)).isTrue();
+        assertThat(strong.upgradeEncoding(strong.encode("secret"))).isFalse();
+    }
+}
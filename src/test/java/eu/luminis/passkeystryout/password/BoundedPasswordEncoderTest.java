@@ -0,0 +1,80 @@
+package eu.luminis.passkeystryout.password;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.awaitility.Awaitility.await;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class BoundedPasswordEncoderTest {
+
+    private final PasswordEncoder delegate = mock(PasswordEncoder.class);
+    private BoundedPasswordEncoder encoder;
+
+    @AfterEach
+    void tearDown() {
+        encoder.close();
+    }
+
+    @Test
+    void encodeAndMatches_shouldRunOnHashingThread() {
+        // Given
+        encoder = new BoundedPasswordEncoder(delegate, 1, 1);
+        when(delegate.encode("secret")).thenAnswer(invocation -> Thread.currentThread().getName());
+        when(delegate.matches("secret", "hash")).thenReturn(true);
+
+        // When / Then
+        assertThat(encoder.encode("secret")).startsWith("password-hashing-");
+        assertThat(encoder.matches("secret", "hash")).isTrue();
+    }
+
+    @Test
+    void upgradeEncoding_shouldDelegate() {
+        // Given
+        encoder = new BoundedPasswordEncoder(delegate, 1, 1);
+        when(delegate.upgradeEncoding("hash")).thenReturn(true);
+
+        // When / Then
+        assertThat(encoder.upgradeEncoding("hash")).isTrue();
+    }
+
+    @Test
+    void matches_shouldRejectHash_whenPoolAndQueueAreFull() throws Exception {
+        // Given one hashing thread that is busy and a queue of one that is taken
+        encoder = new BoundedPasswordEncoder(delegate, 1, 1);
+        CountDownLatch release = new CountDownLatch(1);
+        when(delegate.matches("slow", "hash")).thenAnswer(invocation -> release.await(5, TimeUnit.SECONDS));
+        CompletableFuture<Boolean> running = CompletableFuture.supplyAsync(() -> encoder.matches("slow", "hash"));
+        await().until(() -> encoder.activeCount() == 1);
+        CompletableFuture<Boolean> queued = CompletableFuture.supplyAsync(() -> encoder.matches("slow", "hash"));
+        await().until(() -> encoder.queuedCount() == 1);
+
+        // When / Then
+        assertThatThrownBy(() -> encoder.matches("slow", "hash"))
+                .isInstanceOf(PasswordHashingRejectedException.class);
+
+        release.countDown();
+        assertThat(running.get(5, TimeUnit.SECONDS)).isTrue();
+        assertThat(queued.get(5, TimeUnit.SECONDS)).isTrue();
+    }
+
+    @Test
+    void encode_shouldPropagateDelegateFailures() {
+        // Given
+        encoder = new BoundedPasswordEncoder(delegate, 1, 1);
+        when(delegate.encode("secret")).thenThrow(new IllegalArgumentException("bad"));
+
+        // When / Then
+        assertThatThrownBy(() -> encoder.encode("secret"))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("bad");
+    }
+}
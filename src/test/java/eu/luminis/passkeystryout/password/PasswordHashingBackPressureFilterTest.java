@@ -0,0 +1,57 @@
+package eu.luminis.passkeystryout.password;
+
+import jakarta.servlet.ServletException;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class PasswordHashingBackPressureFilterTest {
+
+    private final PasswordHashingBackPressureFilter filter = new PasswordHashingBackPressureFilter(2);
+    private final MockHttpServletRequest request = new MockHttpServletRequest("POST", "/login");
+    private final MockHttpServletResponse response = new MockHttpServletResponse();
+
+    @Test
+    void doFilter_shouldAnswerTooManyRequests_whenHashingWasRejected() throws Exception {
+        // When
+        filter.doFilter(request, response, (req, resp) -> {
+            throw new PasswordHashingRejectedException("full");
+        });
+
+        // Then
+        assertThat(response.getStatus()).isEqualTo(429);
+        assertThat(response.getHeader("Retry-After")).isEqualTo("2");
+    }
+
+    @Test
+    void doFilter_shouldUnwrapServletExceptions() throws Exception {
+        // When
+        filter.doFilter(request, response, (req, resp) -> {
+            throw new ServletException("Request processing failed", new PasswordHashingRejectedException("full"));
+        });
+
+        // Then
+        assertThat(response.getStatus()).isEqualTo(429);
+    }
+
+    @Test
+    void doFilter_shouldRethrowOtherExceptions() {
+        // When / Then
+        assertThatThrownBy(() -> filter.doFilter(request, response, (req, resp) -> {
+            throw new IllegalStateException("other");
+        })).isInstanceOf(IllegalStateException.class);
+    }
+
+    @Test
+    void doFilter_shouldPassThroughNormalRequests() throws Exception {
+        // When
+        filter.doFilter(request, response, new MockFilterChain());
+
+        // Then
+        assertThat(response.getStatus()).isEqualTo(200);
+    }
+}
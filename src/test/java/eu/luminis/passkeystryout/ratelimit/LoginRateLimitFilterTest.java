@@ -0,0 +1,79 @@
+package eu.luminis.passkeystryout.ratelimit;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class LoginRateLimitFilterTest {
+
+    private final TokenBucketRateLimiter byAddress =
+            new TokenBucketRateLimiter("address", 3, Duration.ofSeconds(10), 64, 4);
+    private final TokenBucketRateLimiter byUsername =
+            new TokenBucketRateLimiter("username", 2, Duration.ofSeconds(30), 64, 4);
+    private final LoginRateLimitFilter filter = new LoginRateLimitFilter(byAddress, byUsername);
+
+    @Test
+    void requestsFromOneAddress_shouldBeTurnedAway_onceItsBucketIsEmpty() throws Exception {
+        // Given
+        for (int i = 0; i < 3; i++) {
+            assertThat(send("POST", "/webauthn/authenticate/options", "192.0.2.1", null).getStatus()).isEqualTo(200);
+        }
+
+        // When
+        MockHttpServletResponse response = send("POST", "/login/webauthn", "192.0.2.1", null);
+
+        // Then
+        assertThat(response.getStatus()).isEqualTo(429);
+        assertThat(response.getHeader(HttpHeaders.RETRY_AFTER)).isEqualTo("10");
+        assertThat(send("POST", "/login/webauthn", "192.0.2.2", null).getStatus()).isEqualTo(200);
+    }
+
+    @Test
+    void passwordLoginsForOneUsername_shouldBeLimited_fromEveryAddress() throws Exception {
+        // Given
+        send("POST", "/login", "198.51.100.1", "alice");
+        send("POST", "/register", "198.51.100.2", "Alice");
+
+        // When
+        MockHttpServletResponse response = send("POST", "/login", "198.51.100.3", "alice");
+
+        // Then
+        assertThat(response.getStatus()).isEqualTo(429);
+        assertThat(response.getHeader(HttpHeaders.RETRY_AFTER)).isEqualTo("30");
+        assertThat(send("POST", "/login", "198.51.100.3", "bob").getStatus()).isEqualTo(200);
+    }
+
+    @Test
+    void otherRequests_shouldNotBeLimited() throws Exception {
+        // Given
+        for (int i = 0; i < 3; i++) {
+            send("POST", "/login", "203.0.113.1", null);
+        }
+
+        // When
+        MockHttpServletResponse loginPage = send("GET", "/login", "203.0.113.1", null);
+        MockHttpServletResponse deletion = send("DELETE", "/passkey/abc", "203.0.113.1", null);
+
+        // Then
+        assertThat(loginPage.getStatus()).isEqualTo(200);
+        assertThat(deletion.getStatus()).isEqualTo(200);
+    }
+
+    private MockHttpServletResponse send(String method, String path, String address, String username)
+            throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest(method, path);
+        request.setRemoteAddr(address);
+        if (username != null) {
+            request.setParameter("username", username);
+        }
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        filter.doFilter(request, response, new MockFilterChain());
+        return response;
+    }
+}
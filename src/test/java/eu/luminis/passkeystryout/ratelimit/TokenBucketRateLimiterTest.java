@@ -0,0 +1,158 @@
+package eu.luminis.passkeystryout.ratelimit;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class TokenBucketRateLimiterTest {
+
+    private final AtomicLong nanos = new AtomicLong(1_000_000_000L);
+
+    @Test
+    void tryAcquire_shouldAllowABurstOfCapacity_thenAskToWaitForTheNextToken() {
+        // Given
+        TokenBucketRateLimiter limiter = limiter(3, Duration.ofSeconds(2), 64);
+
+        // When
+        Duration first = limiter.tryAcquire("192.0.2.1");
+        Duration second = limiter.tryAcquire("192.0.2.1");
+        Duration third = limiter.tryAcquire("192.0.2.1");
+        Duration fourth = limiter.tryAcquire("192.0.2.1");
+
+        // Then
+        assertThat(first).isZero();
+        assertThat(second).isZero();
+        assertThat(third).isZero();
+        assertThat(fourth).isEqualTo(Duration.ofSeconds(2));
+    }
+
+    @Test
+    void tryAcquire_shouldRefillOneTokenPerInterval() {
+        // Given
+        TokenBucketRateLimiter limiter = limiter(2, Duration.ofSeconds(1), 64);
+        limiter.tryAcquire("alice");
+        limiter.tryAcquire("alice");
+        advance(Duration.ofMillis(400));
+
+        // When
+        Duration tooSoon = limiter.tryAcquire("alice");
+        advance(Duration.ofMillis(600));
+        Duration afterRefill = limiter.tryAcquire("alice");
+        Duration emptyAgain = limiter.tryAcquire("alice");
+
+        // Then
+        assertThat(tooSoon).isEqualTo(Duration.ofMillis(600));
+        assertThat(afterRefill).isZero();
+        assertThat(emptyAgain).isEqualTo(Duration.ofSeconds(1));
+    }
+
+    @Test
+    void tryAcquire_shouldKeepABucketPerKey() {
+        // Given
+        TokenBucketRateLimiter limiter = limiter(1, Duration.ofMinutes(1), 64);
+        limiter.tryAcquire("alice");
+
+        // When
+        Duration bob = limiter.tryAcquire("bob");
+
+        // Then
+        assertThat(bob).isZero();
+        assertThat(limiter.tryAcquire("alice")).isPositive();
+    }
+
+    @Test
+    void evictIdle_shouldDropOnlyBucketsThatAreFullAgain() {
+        // Given
+        TokenBucketRateLimiter limiter = limiter(2, Duration.ofSeconds(1), 64);
+        limiter.tryAcquire("idle");
+        advance(Duration.ofMillis(500));
+        limiter.tryAcquire("busy");
+        limiter.tryAcquire("busy");
+        advance(Duration.ofMillis(600));
+
+        // When
+        int evicted = limiter.evictIdle();
+
+        // Then
+        assertThat(evicted).isOne();
+        assertThat(limiter.size()).isOne();
+    }
+
+    @Test
+    void buckets_shouldBeBoundedByMaximumKeys_droppingABucketThatIsFullAgain() {
+        // Given
+        TokenBucketRateLimiter limiter = limiter(1, Duration.ofMinutes(1), 1);
+        limiter.tryAcquire("first");
+        advance(Duration.ofMinutes(1));
+
+        // When
+        Duration second = limiter.tryAcquire("second");
+
+        // Then
+        assertThat(second).isZero();
+        assertThat(limiter.size()).isOne();
+        assertThat(limiter.tryAcquire("second")).isPositive();
+    }
+
+    @Test
+    void buckets_shouldTurnNewKeysAway_whileEveryBucketInTheStripeIsStillThrottling() {
+        // Given a victim that used up its bucket, and a stripe that is full
+        TokenBucketRateLimiter limiter = limiter(1, Duration.ofMinutes(1), 2);
+        limiter.tryAcquire("victim");
+        advance(Duration.ofSeconds(20));
+        limiter.tryAcquire("attacker-0");
+
+        // When
+        Duration sprayed = limiter.tryAcquire("attacker-1");
+        advance(Duration.ofSeconds(10));
+        Duration sprayedAgain = limiter.tryAcquire("attacker-2");
+
+        // Then the victim's bucket is kept, and new keys wait until it is full again
+        assertThat(sprayed).isEqualTo(Duration.ofSeconds(40));
+        assertThat(sprayedAgain).isEqualTo(Duration.ofSeconds(30));
+        assertThat(limiter.size()).isEqualTo(2);
+        assertThat(limiter.tryAcquire("victim")).isEqualTo(Duration.ofSeconds(30));
+        advance(Duration.ofSeconds(30));
+        assertThat(limiter.tryAcquire("attacker-3")).isZero();
+        assertThat(limiter.tryAcquire("attacker-0")).isPositive();
+    }
+
+    @Test
+    void metrics_shouldCountAllowedAndRejectedRequests() {
+        // Given
+        TokenBucketRateLimiter limiter = limiter(1, Duration.ofMinutes(1), 64);
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        limiter.bindTo(registry);
+
+        // When
+        limiter.tryAcquire("alice");
+        limiter.tryAcquire("alice");
+        limiter.tryAcquire("alice");
+
+        // Then
+        assertThat(registry.get("rate-limit.requests").tag("limiter", "test").tag("outcome", "allowed")
+                .functionCounter().count()).isEqualTo(1);
+        assertThat(registry.get("rate-limit.requests").tag("limiter", "test").tag("outcome", "rejected")
+                .functionCounter().count()).isEqualTo(2);
+        assertThat(registry.get("rate-limit.buckets").tag("limiter", "test").gauge().value()).isEqualTo(1);
+    }
+
+    @Test
+    void constructor_shouldRejectStripesThatAreNotAPowerOfTwo() {
+        assertThatThrownBy(() -> new TokenBucketRateLimiter("test", 1, Duration.ofSeconds(1), 64, 3))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    private TokenBucketRateLimiter limiter(int capacity, Duration refillInterval, int maximumKeys) {
+        return new TokenBucketRateLimiter("test", capacity, refillInterval, maximumKeys, 1, nanos::get);
+    }
+
+    private void advance(Duration duration) {
+        nanos.addAndGet(duration.toNanos());
+    }
+}
@@ -0,0 +1,171 @@
+package eu.luminis.passkeystryout.session;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+import org.springframework.session.FindByIndexNameSessionRepository;
+import org.springframework.session.Session;
+import org.springframework.session.jdbc.JdbcIndexedSessionRepository;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Runs the repository in front of Spring Session's JDBC repository on the schema of the application, in an in-memory
+ * H2 database.
+ */
+class BatchedTouchSessionRepositoryTest {
+
+    private static final Duration TOUCH_INTERVAL = Duration.ofMinutes(1);
+
+    private EmbeddedDatabase database;
+    private JdbcTemplate jdbc;
+    private BatchedTouchSessionRepository sessions;
+
+    @BeforeEach
+    void setUp() {
+        database = new EmbeddedDatabaseBuilder()
+                .setType(EmbeddedDatabaseType.H2)
+                .generateUniqueName(true)
+                .addScript("schema.sql")
+                .build();
+        jdbc = new JdbcTemplate(database);
+        JdbcIndexedSessionRepository repository = new JdbcIndexedSessionRepository(jdbc,
+                new TransactionTemplate(new DataSourceTransactionManager(database)));
+        repository.setDefaultMaxInactiveInterval(Duration.ofMinutes(30));
+        sessions = new BatchedTouchSessionRepository(indexed(repository), jdbc, TOUCH_INTERVAL, 2);
+    }
+
+    @AfterEach
+    void tearDown() {
+        database.shutdown();
+    }
+
+    @Test
+    void touchWithinTheInterval_shouldNotWriteTheSession() {
+        // Given
+        Instant created = now();
+        String id = storedSession(created);
+
+        // When
+        BatchedTouchSessionRepository.TouchTrackingSession session = sessions.findById(id);
+        session.setLastAccessedTime(created.plusSeconds(30));
+        sessions.save(session);
+
+        // Then
+        assertThat(sessions.pendingCount()).isZero();
+        assertThat(sessions.flush()).isZero();
+        assertThat(storedLastAccessTime(id)).isEqualTo(created.toEpochMilli());
+    }
+
+    @Test
+    void touchAfterTheInterval_shouldBeWrittenByTheNextFlush() {
+        // Given
+        Instant created = now().minus(Duration.ofMinutes(5));
+        String id = storedSession(created);
+        Instant touched = created.plus(Duration.ofMinutes(2));
+
+        // When
+        BatchedTouchSessionRepository.TouchTrackingSession session = sessions.findById(id);
+        session.setLastAccessedTime(touched);
+        sessions.save(session);
+
+        // Then the touch is only queued, but is seen by later requests
+        assertThat(storedLastAccessTime(id)).isEqualTo(created.toEpochMilli());
+        assertThat(sessions.findById(id).getLastAccessedTime()).isEqualTo(touched);
+
+        assertThat(sessions.flush()).isOne();
+        assertThat(sessions.pendingCount()).isZero();
+        assertThat(storedLastAccessTime(id)).isEqualTo(touched.toEpochMilli());
+        assertThat(jdbc.queryForObject("SELECT expiry_time FROM spring_session WHERE session_id = ?", Long.class, id))
+                .isEqualTo(touched.plus(Duration.ofMinutes(30)).toEpochMilli());
+    }
+
+    @Test
+    void changedAttributes_shouldBeWrittenRightAway_withTheQueuedTouch() {
+        // Given
+        Instant created = now().minus(Duration.ofMinutes(5));
+        String id = storedSession(created);
+        BatchedTouchSessionRepository.TouchTrackingSession touchedOnly = sessions.findById(id);
+        touchedOnly.setLastAccessedTime(created.plus(Duration.ofMinutes(2)));
+        sessions.save(touchedOnly);
+        Instant changedAt = created.plus(Duration.ofMinutes(3));
+
+        // When
+        BatchedTouchSessionRepository.TouchTrackingSession session = sessions.findById(id);
+        session.setLastAccessedTime(changedAt);
+        session.setAttribute("theme", "dark");
+        sessions.save(session);
+
+        // Then
+        assertThat(sessions.pendingCount()).isZero();
+        assertThat(storedLastAccessTime(id)).isEqualTo(changedAt.toEpochMilli());
+        assertThat(sessions.findById(id).<String>getAttribute("theme")).isEqualTo("dark");
+    }
+
+    @Test
+    void deletedSession_shouldDropItsQueuedTouch() {
+        // Given
+        Instant created = now().minus(Duration.ofMinutes(5));
+        String id = storedSession(created);
+        BatchedTouchSessionRepository.TouchTrackingSession session = sessions.findById(id);
+        session.setLastAccessedTime(created.plus(Duration.ofMinutes(2)));
+        sessions.save(session);
+
+        // When
+        sessions.deleteById(id);
+
+        // Then
+        assertThat(sessions.pendingCount()).isZero();
+        assertThat(sessions.findById(id)).isNull();
+    }
+
+    @Test
+    void queuedTouch_shouldNotOverwriteALaterWriteOfAnotherNode() {
+        // Given
+        Instant created = now().minus(Duration.ofMinutes(5));
+        String id = storedSession(created);
+        BatchedTouchSessionRepository.TouchTrackingSession session = sessions.findById(id);
+        session.setLastAccessedTime(created.plus(Duration.ofMinutes(2)));
+        sessions.save(session);
+        long writtenElsewhere = created.plus(Duration.ofMinutes(4)).toEpochMilli();
+        jdbc.update("UPDATE spring_session SET last_access_time = ? WHERE session_id = ?", writtenElsewhere, id);
+
+        // When
+        sessions.flush();
+
+        // Then
+        assertThat(storedLastAccessTime(id)).isEqualTo(writtenElsewhere);
+    }
+
+    private String storedSession(Instant lastAccessed) {
+        BatchedTouchSessionRepository.TouchTrackingSession session = sessions.createSession();
+        session.setLastAccessedTime(lastAccessed);
+        session.setAttribute("user", "alice");
+        sessions.save(session);
+        return session.getId();
+    }
+
+    private long storedLastAccessTime(String id) {
+        return jdbc.queryForObject("SELECT last_access_time FROM spring_session WHERE session_id = ?", Long.class, id);
+    }
+
+    private static Instant now() {
+        return Instant.now().truncatedTo(ChronoUnit.MILLIS);
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static FindByIndexNameSessionRepository<Session> indexed(JdbcIndexedSessionRepository repository) {
+        // Its session type is not public
+        return (FindByIndexNameSessionRepository) repository;
+    }
+}
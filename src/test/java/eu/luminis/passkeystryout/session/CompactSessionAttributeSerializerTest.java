@@ -0,0 +1,195 @@
+package eu.luminis.passkeystryout.session;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.serializer.DefaultSerializer;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+import org.springframework.security.authentication.TestingAuthenticationToken;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.FactorGrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.core.context.SecurityContext;
+import org.springframework.security.core.context.SecurityContextImpl;
+import org.springframework.security.core.userdetails.User;
+import org.springframework.security.web.authentication.WebAuthenticationDetails;
+import org.springframework.security.web.csrf.DefaultCsrfToken;
+import org.springframework.security.web.webauthn.api.Bytes;
+import org.springframework.security.web.webauthn.api.ImmutablePublicKeyCredentialUserEntity;
+import org.springframework.security.web.webauthn.authentication.WebAuthnAuthentication;
+import org.springframework.session.Session;
+import org.springframework.session.SessionRepository;
+import org.springframework.session.jdbc.JdbcIndexedSessionRepository;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.time.Instant;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Stores sessions with Spring Session's JDBC repository in an in-memory H2 database, with the attributes serialised
+ * by {@link CompactSessionAttributeSerializer}.
+ */
+class CompactSessionAttributeSerializerTest {
+
+    private static final String SECURITY_CONTEXT = "SPRING_SECURITY_CONTEXT";
+
+    private EmbeddedDatabase database;
+    private JdbcTemplate jdbc;
+    private SessionRepository<Session> sessions;
+
+    @BeforeEach
+    void setUp() {
+        database = new EmbeddedDatabaseBuilder()
+                .setType(EmbeddedDatabaseType.H2)
+                .generateUniqueName(true)
+                .addScript("org/springframework/session/jdbc/schema-h2.sql")
+                .build();
+        jdbc = new JdbcTemplate(database);
+        JdbcIndexedSessionRepository repository = new JdbcIndexedSessionRepository(jdbc,
+                new TransactionTemplate(new DataSourceTransactionManager(database)));
+        repository.setConversionService(
+                CompactSessionAttributeSerializer.conversionService(getClass().getClassLoader()));
+        sessions = sessionRepository(repository);
+    }
+
+    @AfterEach
+    void tearDown() {
+        database.shutdown();
+    }
+
+    @Test
+    void passwordLogin_shouldBeStoredCompactlyAndRestored() throws IOException {
+        // Given
+        SecurityContext context = new SecurityContextImpl(passwordLogin());
+
+        // When
+        SecurityContext restored = storeAndLoad(context);
+
+        // Then
+        Authentication authentication = restored.getAuthentication();
+        assertThat(authentication).isInstanceOf(UsernamePasswordAuthenticationToken.class);
+        assertThat(authentication.getPrincipal()).isEqualTo(context.getAuthentication().getPrincipal());
+        assertThat(authentication.getAuthorities()).isEqualTo(context.getAuthentication().getAuthorities());
+        assertThat(authentication.getDetails()).isEqualTo(context.getAuthentication().getDetails());
+        assertThat(authentication.isAuthenticated()).isTrue();
+        assertThat(storedBytes()).hasSizeLessThan(javaSerialized(context).length / 4);
+    }
+
+    @Test
+    void passkeyLogin_shouldBeStoredCompactlyAndRestored() throws IOException {
+        // Given
+        SecurityContext context = new SecurityContextImpl(passkeyLogin());
+
+        // When
+        SecurityContext restored = storeAndLoad(context);
+
+        // Then
+        assertThat(restored.getAuthentication()).isInstanceOfSatisfying(WebAuthnAuthentication.class, passkey -> {
+            assertThat(passkey.getPrincipal()).usingRecursiveComparison()
+                    .isEqualTo(context.getAuthentication().getPrincipal());
+            assertThat(passkey.getAuthorities()).isEqualTo(context.getAuthentication().getAuthorities());
+            assertThat(passkey.getDetails()).isEqualTo(context.getAuthentication().getDetails());
+        });
+        assertThat(storedBytes()).hasSizeLessThan(javaSerialized(context).length / 4);
+    }
+
+    @Test
+    void otherAttributes_shouldStillBeJavaSerialised() {
+        // Given
+        DefaultCsrfToken csrfToken = new DefaultCsrfToken("X-CSRF-TOKEN", "_csrf", "token");
+        SecurityContext testingContext = new SecurityContextImpl(
+                new TestingAuthenticationToken("alice", "secret", "ROLE_USER"));
+        Session session = sessions.createSession();
+        session.setAttribute("csrf", csrfToken);
+        session.setAttribute(SECURITY_CONTEXT, testingContext);
+        sessions.save(session);
+
+        // When
+        Session loaded = sessions.findById(session.getId());
+
+        // Then
+        assertThat(loaded.<DefaultCsrfToken>getAttribute("csrf").getToken()).isEqualTo("token");
+        assertThat(loaded.<SecurityContext>getAttribute(SECURITY_CONTEXT).getAuthentication())
+                .isEqualTo(testingContext.getAuthentication());
+    }
+
+    @Test
+    void attributesStoredBeforeTheCompactForm_shouldStillBeRead() throws IOException {
+        // Given a context written with Java serialisation by an earlier version
+        SecurityContext context = new SecurityContextImpl(passkeyLogin());
+        Session session = sessions.createSession();
+        session.setAttribute(SECURITY_CONTEXT, new SecurityContextImpl());
+        sessions.save(session);
+        jdbc.update("UPDATE spring_session_attributes SET attribute_bytes = ? WHERE attribute_name = ?",
+                javaSerialized(context), SECURITY_CONTEXT);
+
+        // When
+        SecurityContext restored = sessions.findById(session.getId()).getAttribute(SECURITY_CONTEXT);
+
+        // Then
+        assertThat(restored).usingRecursiveComparison().isEqualTo(context);
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static SessionRepository<Session> sessionRepository(JdbcIndexedSessionRepository repository) {
+        // Its session type is not public
+        return (SessionRepository) repository;
+    }
+
+    private SecurityContext storeAndLoad(SecurityContext context) {
+        Session session = sessions.createSession();
+        session.setAttribute(SECURITY_CONTEXT, context);
+        sessions.save(session);
+        return sessions.findById(session.getId()).getAttribute(SECURITY_CONTEXT);
+    }
+
+    private byte[] storedBytes() {
+        return jdbc.queryForObject("SELECT attribute_bytes FROM spring_session_attributes WHERE attribute_name = ?",
+                byte[].class, SECURITY_CONTEXT);
+    }
+
+    private static byte[] javaSerialized(Object value) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new DefaultSerializer().serialize(value, out);
+        return out.toByteArray();
+    }
+
+    static Authentication passwordLogin() {
+        List<GrantedAuthority> authorities = List.of(
+                new SimpleGrantedAuthority("ROLE_USER"),
+                FactorGrantedAuthority.withAuthority(FactorGrantedAuthority.PASSWORD_AUTHORITY)
+                        .issuedAt(Instant.parse("2026-10-17T10:00:00Z"))
+                        .build());
+        User user = new User("alice", "{argon2}hash", authorities);
+        user.eraseCredentials();
+        UsernamePasswordAuthenticationToken authentication =
+                UsernamePasswordAuthenticationToken.authenticated(user, null, authorities);
+        authentication.setDetails(new WebAuthenticationDetails("127.0.0.1", null));
+        return authentication;
+    }
+
+    static Authentication passkeyLogin() {
+        WebAuthnAuthentication authentication = new WebAuthnAuthentication(
+                ImmutablePublicKeyCredentialUserEntity.builder()
+                        .id(new Bytes(new byte[64]))
+                        .name("bob")
+                        .displayName("Bob")
+                        .build(),
+                List.of(new SimpleGrantedAuthority("ROLE_USER"),
+                        FactorGrantedAuthority.withAuthority(FactorGrantedAuthority.WEBAUTHN_AUTHORITY)
+                                .issuedAt(Instant.parse("2026-10-17T10:00:00Z"))
+                                .build()));
+        authentication.setDetails(new WebAuthenticationDetails("127.0.0.1", "6f1c1e6d-2a0a-4d4f-8f7e-0d6c5b4a3f21"));
+        return authentication;
+    }
+}
@@ -0,0 +1,90 @@
+package eu.luminis.passkeystryout.session;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class ExpiredSessionSweeperTest {
+
+    private static final Instant NOW = Instant.parse("2026-10-17T10:00:00Z");
+
+    private EmbeddedDatabase database;
+    private JdbcTemplate jdbc;
+
+    @BeforeEach
+    void setUp() {
+        database = new EmbeddedDatabaseBuilder()
+                .setType(EmbeddedDatabaseType.H2)
+                .generateUniqueName(true)
+                .addScript("schema.sql")
+                .build();
+        jdbc = new JdbcTemplate(database);
+    }
+
+    @AfterEach
+    void tearDown() {
+        database.shutdown();
+    }
+
+    @Test
+    void sweep_shouldDeleteExpiredSessionsAndTheirAttributes_inChunks() {
+        // Given
+        for (int i = 0; i < 7; i++) {
+            insertSession(NOW.minusSeconds(60 + i));
+        }
+        String live = insertSession(NOW.plusSeconds(60));
+        ExpiredSessionSweeper sweeper = new ExpiredSessionSweeper(jdbc, 3, Clock.fixed(NOW, ZoneOffset.UTC));
+
+        // When
+        int removed = sweeper.sweep();
+
+        // Then
+        assertThat(removed).isEqualTo(7);
+        assertThat(jdbc.queryForList("SELECT primary_id FROM spring_session", String.class)).containsExactly(live);
+        assertThat(jdbc.queryForObject("SELECT COUNT(*) FROM spring_session_attributes", Integer.class)).isOne();
+    }
+
+    @Test
+    void sweep_shouldStopAtAnEmptyChunk_whenTheExpiredSessionsFillWholeChunks() {
+        // Given
+        for (int i = 0; i < 4; i++) {
+            insertSession(NOW.minusSeconds(60 + i));
+        }
+        ExpiredSessionSweeper sweeper = new ExpiredSessionSweeper(jdbc, 2, Clock.fixed(NOW, ZoneOffset.UTC));
+
+        // When
+        int removed = sweeper.sweep();
+
+        // Then
+        assertThat(removed).isEqualTo(4);
+        assertThat(sweeper.sweep()).isZero();
+    }
+
+    @Test
+    void constructor_shouldRejectAChunkSizeBelowOne() {
+        assertThatThrownBy(() -> new ExpiredSessionSweeper(jdbc, 0, Clock.systemUTC()))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    private String insertSession(Instant expiry) {
+        String primaryId = UUID.randomUUID().toString();
+        jdbc.update("""
+                INSERT INTO spring_session (primary_id, session_id, creation_time, last_access_time,
+                    max_inactive_interval, expiry_time) VALUES (?, ?, ?, ?, 1800, ?)
+                """, primaryId, UUID.randomUUID().toString(), 0L, 0L, expiry.toEpochMilli());
+        jdbc.update("INSERT INTO spring_session_attributes VALUES (?, ?, ?)", primaryId, "user", new byte[]{1});
+        return primaryId;
+    }
+}
@@ -0,0 +1,99 @@
+package eu.luminis.passkeystryout.session;
+
+import eu.luminis.passkeystryout.PasskeysTryoutApplication;
+import eu.luminis.passkeystryout.load.ClosedLoopLoad;
+import eu.luminis.passkeystryout.load.WebAuthnBrowser;
+import eu.luminis.passkeystryout.user.User;
+import eu.luminis.passkeystryout.user.UserRepository;
+import eu.luminis.passkeystryout.webauthn.VirtualAuthenticator;
+import eu.luminis.passkeystryout.webauthn.VirtualCredential;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.server.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Runs two nodes with their HTTP sessions in the shared {@code spring_session} tables of an in-memory database. One
+ * browser signs in on the first node and carries on on the second.
+ */
+class JdbcSessionIntegrationTest {
+
+    private static final String PASSWORD = "jdbc-session-test-password";
+
+    private static ConfigurableApplicationContext nodeA;
+    private static ConfigurableApplicationContext nodeB;
+
+    @BeforeAll
+    static void start() {
+        nodeA = startNode();
+        nodeB = startNode();
+        nodeA.getBean(UserRepository.class).save(new User("jdbc-alice", "Alice",
+                nodeA.getBean(PasswordEncoder.class).encode(PASSWORD)));
+    }
+
+    @AfterAll
+    static void stop() {
+        nodeA.close();
+        nodeB.close();
+    }
+
+    @Test
+    void sessionOfOneNode_shouldServeTheDashboardAndPasskeyDeletionOnAnother() throws Exception {
+        JdbcTemplate jdbc = nodeA.getBean(JdbcTemplate.class);
+        VirtualAuthenticator authenticator = new VirtualAuthenticator("localhost", "http://localhost:8080");
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            // Given
+            WebAuthnBrowser atA = new WebAuthnBrowser(baseUrl(nodeA), authenticator, executor);
+            atA.signInWithPassword(ClosedLoopLoad.Steps.untimed(), "jdbc-alice", PASSWORD);
+            VirtualCredential credential = atA.registerPasskey(ClosedLoopLoad.Steps.untimed(),
+                    VirtualAuthenticator.Algorithm.ES256, "Shared session key");
+            WebAuthnBrowser atB = atA.atNode(baseUrl(nodeB));
+
+            // When
+            String dashboard = atB.openDashboard(ClosedLoopLoad.Steps.untimed());
+            long lastAccess = lastAccessTime(jdbc);
+            atB.openDashboard(ClosedLoopLoad.Steps.untimed());
+            atB.openDashboard(ClosedLoopLoad.Steps.untimed());
+            atB.deletePasskey(ClosedLoopLoad.Steps.untimed(), credential);
+
+            // Then
+            assertThat(dashboard).contains("jdbc-alice", "Shared session key");
+            assertThat(lastAccessTime(jdbc)).as("last access time after refreshing the dashboard")
+                    .isEqualTo(lastAccess);
+            assertThat(jdbc.queryForObject("SELECT COUNT(*) FROM webauthn_credentials WHERE credential_id = ?",
+                    Integer.class, (Object) credential.credentialId().getBytes())).isZero();
+        }
+    }
+
+    private static long lastAccessTime(JdbcTemplate jdbc) {
+        return jdbc.queryForObject("SELECT last_access_time FROM spring_session WHERE principal_name = ?",
+                Long.class, "jdbc-alice");
+    }
+
+    private static String baseUrl(ConfigurableApplicationContext node) {
+        return "http://localhost:" + ((WebServerApplicationContext) node).getWebServer().getPort();
+    }
+
+    private static ConfigurableApplicationContext startNode() {
+        return new SpringApplicationBuilder(PasskeysTryoutApplication.class)
+                .run("--server.port=0",
+                        "--spring.datasource.url=jdbc:h2:mem:jdbc-sessions;DB_CLOSE_DELAY=-1",
+                        "--spring.jpa.show-sql=false",
+                        "--logging.level.root=WARN",
+                        "--logging.level.org.springframework.security.web.webauthn=WARN",
+                        "--logging.level.org.springframework.security.authentication=WARN",
+                        "--logging.level.com.webauthn4j=WARN",
+                        "--passkeys.password.argon2.target-time=1ms",
+                        "--passkeys.password.argon2.min-iterations=1",
+                        "--passkeys.session.store=jdbc");
+    }
+}
@@ -0,0 +1,166 @@
+package eu.luminis.passkeystryout.session;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.FactorGrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.core.userdetails.User;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.web.webauthn.api.Bytes;
+import org.springframework.security.web.webauthn.api.ImmutablePublicKeyCredentialUserEntity;
+import org.springframework.security.web.webauthn.api.PublicKeyCredentialUserEntity;
+import org.springframework.security.web.webauthn.authentication.WebAuthnAuthentication;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.Base64;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class SessionTokenCodecTest {
+
+    private static final String OLD_KEY = "1:" + secret('o');
+    private static final String NEW_KEY = "2:" + secret('n');
+    private static final Instant NOW = Instant.parse("2026-10-17T10:00:00Z");
+
+    @Test
+    void decode_shouldRestoreAPasswordLogin() {
+        // Given
+        FactorGrantedAuthority factor = FactorGrantedAuthority.withAuthority(FactorGrantedAuthority.PASSWORD_AUTHORITY)
+                .issuedAt(NOW.truncatedTo(ChronoUnit.MILLIS))
+                .build();
+        List<GrantedAuthority> authorities = List.of(new SimpleGrantedAuthority("ROLE_USER"), factor);
+        UserDetails user = User.withUsername("alice").password("{noop}secret").authorities(authorities).build();
+        SessionToken token = SessionToken.issue(UsernamePasswordAuthenticationToken.authenticated(
+                user, "secret", authorities), NOW, Duration.ofHours(8));
+        SessionTokenCodec codec = codec(false, NEW_KEY);
+
+        // When
+        SessionToken decoded = codec.decode(codec.encode(token));
+
+        // Then
+        assertThat(decoded).isNotNull();
+        assertThat(decoded.id()).isEqualTo(token.id());
+        assertThat(decoded.expiresAt()).isEqualTo(NOW.plus(Duration.ofHours(8)));
+        Authentication authentication = decoded.authentication();
+        assertThat(authentication.isAuthenticated()).isTrue();
+        assertThat(authentication.getName()).isEqualTo("alice");
+        assertThat(authentication.getCredentials()).isNull();
+        assertThat(authentication.getPrincipal()).isInstanceOfSatisfying(UserDetails.class,
+                principal -> assertThat(principal.getPassword()).isNull());
+        assertThat(authentication.getAuthorities()).extracting(GrantedAuthority::getAuthority)
+                .containsExactly("ROLE_USER", FactorGrantedAuthority.PASSWORD_AUTHORITY);
+        assertThat(authentication.getAuthorities()).last().isInstanceOfSatisfying(FactorGrantedAuthority.class,
+                restored -> assertThat(restored.getIssuedAt()).isEqualTo(factor.getIssuedAt()));
+    }
+
+    @Test
+    void decode_shouldRestoreAPasskeyLogin() {
+        // Given
+        PublicKeyCredentialUserEntity userEntity = ImmutablePublicKeyCredentialUserEntity.builder()
+                .id(Bytes.random())
+                .name("bob")
+                .displayName("Bob")
+                .build();
+        SessionToken token = SessionToken.issue(new WebAuthnAuthentication(userEntity,
+                List.of(new SimpleGrantedAuthority("ROLE_USER"))), NOW, Duration.ofHours(8));
+        SessionTokenCodec codec = codec(true, NEW_KEY);
+
+        // When
+        SessionToken decoded = codec.decode(codec.encode(token));
+
+        // Then
+        assertThat(decoded).isNotNull();
+        assertThat(decoded.authentication()).isInstanceOfSatisfying(WebAuthnAuthentication.class, authentication -> {
+            assertThat(authentication.isAuthenticated()).isTrue();
+            assertThat(authentication.getPrincipal().getId()).isEqualTo(userEntity.getId());
+            assertThat(authentication.getPrincipal().getName()).isEqualTo("bob");
+            assertThat(authentication.getPrincipal().getDisplayName()).isEqualTo("Bob");
+            assertThat(authentication.getAuthorities()).extracting(GrantedAuthority::getAuthority)
+                    .containsExactly("ROLE_USER");
+        });
+    }
+
+    @Test
+    void encode_shouldHideThePrincipal_whenEncrypting() {
+        // Given
+        SessionToken token = passwordToken("carol-the-user");
+
+        // When
+        String plain = codec(false, NEW_KEY).encode(token);
+        String encrypted = codec(true, NEW_KEY).encode(token);
+
+        // Then
+        assertThat(new String(Base64.getUrlDecoder().decode(plain), StandardCharsets.ISO_8859_1))
+                .contains("carol-the-user");
+        assertThat(new String(Base64.getUrlDecoder().decode(encrypted), StandardCharsets.ISO_8859_1))
+                .doesNotContain("carol-the-user");
+    }
+
+    @Test
+    void decode_shouldRejectATamperedToken() {
+        // Given
+        SessionTokenCodec codec = codec(true, NEW_KEY);
+        byte[] bytes = Base64.getUrlDecoder().decode(codec.encode(passwordToken("alice")));
+        bytes[bytes.length / 2] ^= 1;
+
+        // When / Then
+        assertThat(codec.decode(Base64.getUrlEncoder().withoutPadding().encodeToString(bytes))).isNull();
+        assertThat(codec.decode("not a token")).isNull();
+        assertThat(codec.decode("")).isNull();
+    }
+
+    @Test
+    void decode_shouldAcceptTokensOfOlderKeys_untilTheyAreRemoved() {
+        // Given
+        String issuedBeforeRotation = codec(false, OLD_KEY).encode(passwordToken("alice"));
+
+        // When
+        SessionToken afterRotation = codec(false, NEW_KEY, OLD_KEY).decode(issuedBeforeRotation);
+        SessionToken afterRemoval = codec(false, NEW_KEY).decode(issuedBeforeRotation);
+
+        // Then
+        assertThat(afterRotation).isNotNull();
+        assertThat(afterRotation.authentication().getName()).isEqualTo("alice");
+        assertThat(afterRemoval).isNull();
+    }
+
+    @Test
+    void decode_shouldRejectTokensSignedWithAnotherSecretUnderTheSameId() {
+        // Given
+        String token = codec(false, "2:" + secret('x')).encode(passwordToken("alice"));
+
+        // When / Then
+        assertThat(codec(false, NEW_KEY).decode(token)).isNull();
+    }
+
+    @Test
+    void parse_shouldRejectShortSecretsAndDuplicateIds() {
+        assertThatThrownBy(() -> SessionTokenKeys.parse(List.of("1:c2hvcnQ")))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> SessionTokenKeys.parse(List.of(NEW_KEY, NEW_KEY)))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> SessionTokenKeys.parse(List.of("256:" + secret('a'))))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    private static SessionTokenCodec codec(boolean encrypt, String... keys) {
+        return new SessionTokenCodec(SessionTokenKeys.parse(List.of(keys)), encrypt);
+    }
+
+    private static SessionToken passwordToken(String username) {
+        UserDetails user = User.withUsername(username).password("").roles("USER").build();
+        return SessionToken.issue(UsernamePasswordAuthenticationToken.authenticated(user, null,
+                user.getAuthorities()), NOW, Duration.ofHours(8));
+    }
+
+    private static String secret(char filler) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(String.valueOf(filler).repeat(32).getBytes());
+    }
+}
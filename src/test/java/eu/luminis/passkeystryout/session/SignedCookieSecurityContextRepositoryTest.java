@@ -0,0 +1,187 @@
+package eu.luminis.passkeystryout.session;
+
+import jakarta.servlet.http.Cookie;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.authentication.AnonymousAuthenticationToken;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.context.SecurityContext;
+import org.springframework.security.core.context.SecurityContextImpl;
+import org.springframework.security.core.userdetails.User;
+import org.springframework.security.core.userdetails.UserDetails;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Two repositories with the same keys and a shared H2 database stand in for two nodes.
+ */
+class SignedCookieSecurityContextRepositoryTest {
+
+    private static final List<String> KEYS = List.of("7:MDEyMzQ1Njc4OWFiY2RlZjAxMjM0NTY3ODlhYmNkZWY");
+    private static final Duration TIME_TO_LIVE = Duration.ofHours(8);
+
+    private final MutableClock clock = new MutableClock(Instant.parse("2026-10-17T10:00:00Z"));
+    private EmbeddedDatabase database;
+    private SessionTokenDenyList denyListA;
+    private SessionTokenDenyList denyListB;
+    private SignedCookieSecurityContextRepository nodeA;
+    private SignedCookieSecurityContextRepository nodeB;
+
+    @BeforeEach
+    void setUp() {
+        database = new EmbeddedDatabaseBuilder()
+                .setType(EmbeddedDatabaseType.H2)
+                .generateUniqueName(true)
+                .addScript("schema.sql")
+                .build();
+        JdbcTemplate jdbc = new JdbcTemplate(database);
+        denyListA = new SessionTokenDenyList(jdbc, clock);
+        denyListB = new SessionTokenDenyList(jdbc, clock);
+        nodeA = repository(denyListA);
+        nodeB = repository(denyListB);
+    }
+
+    @AfterEach
+    void tearDown() {
+        database.shutdown();
+    }
+
+    @Test
+    void loadDeferredContext_shouldRestoreALoginSavedByAnotherNode() {
+        // Given
+        Cookie cookie = login(nodeA, "alice");
+
+        // When
+        MockHttpServletRequest request = requestWith(cookie);
+        SecurityContext context = nodeB.loadDeferredContext(request).get();
+
+        // Then
+        assertThat(context.getAuthentication()).isNotNull();
+        assertThat(context.getAuthentication().getName()).isEqualTo("alice");
+        assertThat(nodeB.containsContext(request)).isTrue();
+        assertThat(request.getSession(false)).isNull();
+    }
+
+    @Test
+    void loadDeferredContext_shouldBeEmpty_withoutCookieOrAfterExpiry() {
+        // Given
+        Cookie cookie = login(nodeA, "alice");
+        clock.advance(TIME_TO_LIVE);
+
+        // When / Then
+        assertThat(nodeA.loadDeferredContext(new MockHttpServletRequest()).isGenerated()).isTrue();
+        assertThat(nodeA.loadDeferredContext(requestWith(cookie)).get().getAuthentication()).isNull();
+    }
+
+    @Test
+    void saveContext_shouldRevokeTheToken_whenLoggingOut() {
+        // Given
+        Cookie cookie = login(nodeA, "alice");
+
+        // When
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        nodeA.saveContext(new SecurityContextImpl(), requestWith(cookie), response);
+        denyListB.refresh();
+
+        // Then
+        assertThat(response.getHeader(HttpHeaders.SET_COOKIE)).contains("Max-Age=0");
+        assertThat(nodeA.loadDeferredContext(requestWith(cookie)).get().getAuthentication()).isNull();
+        assertThat(nodeB.loadDeferredContext(requestWith(cookie)).get().getAuthentication()).isNull();
+    }
+
+    @Test
+    void saveContext_shouldTreatAnAnonymousContextAsLoggedOut() {
+        // Given
+        Cookie cookie = login(nodeA, "alice");
+        SecurityContext anonymous = new SecurityContextImpl(new AnonymousAuthenticationToken("key", "anonymousUser",
+                User.withUsername("anonymousUser").password("").roles("ANONYMOUS").build().getAuthorities()));
+
+        // When
+        nodeA.saveContext(anonymous, requestWith(cookie), new MockHttpServletResponse());
+
+        // Then
+        assertThat(nodeA.containsContext(requestWith(cookie))).isFalse();
+    }
+
+    @Test
+    void refresh_shouldForgetRevocationsOfExpiredTokens() {
+        // Given
+        Cookie cookie = login(nodeA, "alice");
+        nodeA.saveContext(new SecurityContextImpl(), requestWith(cookie), new MockHttpServletResponse());
+        assertThat(denyListA.size()).isEqualTo(1);
+
+        // When
+        clock.advance(TIME_TO_LIVE);
+        denyListA.refresh();
+        denyListB.refresh();
+
+        // Then
+        assertThat(denyListA.size()).isZero();
+        assertThat(denyListB.size()).isZero();
+    }
+
+    private SignedCookieSecurityContextRepository repository(SessionTokenDenyList denyList) {
+        return new SignedCookieSecurityContextRepository(
+                new SessionTokenCodec(SessionTokenKeys.parse(KEYS), true), denyList, TIME_TO_LIVE, clock);
+    }
+
+    private static Cookie login(SignedCookieSecurityContextRepository repository, String username) {
+        UserDetails user = User.withUsername(username).password("").roles("USER").build();
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        repository.saveContext(new SecurityContextImpl(UsernamePasswordAuthenticationToken.authenticated(
+                user, null, user.getAuthorities())), new MockHttpServletRequest(), response);
+        Cookie cookie = response.getCookie(SignedCookieSecurityContextRepository.COOKIE_NAME);
+        assertThat(cookie).isNotNull();
+        assertThat(cookie.isHttpOnly()).isTrue();
+        return new Cookie(cookie.getName(), cookie.getValue());
+    }
+
+    private static MockHttpServletRequest requestWith(Cookie cookie) {
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.setCookies(cookie);
+        return request;
+    }
+
+    private static final class MutableClock extends Clock {
+
+        private Instant now;
+
+        MutableClock(Instant now) {
+            this.now = now;
+        }
+
+        void advance(Duration duration) {
+            now = now.plus(duration);
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return now;
+        }
+    }
+}
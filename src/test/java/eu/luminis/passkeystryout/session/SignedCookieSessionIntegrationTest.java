@@ -0,0 +1,155 @@
+package eu.luminis.passkeystryout.session;
+
+import eu.luminis.passkeystryout.PasskeysTryoutApplication;
+import eu.luminis.passkeystryout.user.User;
+import eu.luminis.passkeystryout.user.UserRepository;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.server.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+import java.net.CookieManager;
+import java.net.HttpCookie;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Runs two nodes with the security context in a signed cookie and a shared in-memory database. The cookies of one
+ * {@link HttpClient} are sent to both nodes, because cookies are not scoped by port.
+ */
+class SignedCookieSessionIntegrationTest {
+
+    private static final Pattern CSRF_META = Pattern.compile("<meta name=\"_csrf\" content=\"([^\"]+)\"");
+    private static final Pattern CSRF_JSON = Pattern.compile("\"token\":\"([^\"]+)\"");
+    private static final String PASSWORD = "cookie-test-password";
+
+    private static ConfigurableApplicationContext nodeA;
+    private static ConfigurableApplicationContext nodeB;
+
+    private final CookieManager cookies = new CookieManager();
+    private final HttpClient client = HttpClient.newBuilder()
+            .cookieHandler(cookies)
+            .followRedirects(HttpClient.Redirect.NORMAL)
+            .build();
+
+    @BeforeAll
+    static void start() {
+        nodeA = startNode();
+        nodeB = startNode();
+        nodeA.getBean(UserRepository.class).save(new User("cookie-alice", "Alice",
+                nodeA.getBean(PasswordEncoder.class).encode(PASSWORD)));
+    }
+
+    @AfterAll
+    static void stop() {
+        nodeA.close();
+        nodeB.close();
+    }
+
+    @Test
+    void passwordLogin_shouldBeRecognisedByAnotherNode_withoutHttpSession() throws Exception {
+        // Given
+        signIn(nodeA);
+
+        // When
+        HttpResponse<String> dashboard = get(nodeB, "/dashboard");
+
+        // Then
+        assertThat(dashboard.uri().getPath()).isEqualTo("/dashboard");
+        assertThat(dashboard.body()).contains("cookie-alice");
+        assertThat(cookies.getCookieStore().getCookies()).extracting(HttpCookie::getName)
+                .contains(SignedCookieSecurityContextRepository.COOKIE_NAME)
+                .doesNotContain("JSESSIONID");
+    }
+
+    @Test
+    void logout_shouldRevokeTheTokenOnEveryNode() throws Exception {
+        // Given
+        signIn(nodeA);
+        String token = sessionCookie().getValue();
+        String csrf = csrfToken(get(nodeA, "/dashboard").body());
+
+        // When
+        post(nodeB, "/logout", "_csrf=" + URLEncoder.encode(csrf, StandardCharsets.UTF_8));
+        nodeA.getBean(SessionTokenDenyList.class).refresh();
+
+        // Then
+        HttpResponse<String> withRevokedToken = client.send(HttpRequest.newBuilder(uri(nodeA, "/dashboard"))
+                .header("Cookie", SignedCookieSecurityContextRepository.COOKIE_NAME + "=" + token)
+                .build(), HttpResponse.BodyHandlers.ofString());
+        assertThat(withRevokedToken.uri().getPath()).isEqualTo("/login");
+    }
+
+    private void signIn(ConfigurableApplicationContext node) throws Exception {
+        get(node, "/login");
+        String csrf = csrfTokenFromEndpoint(node);
+        HttpResponse<String> dashboard = post(node, "/login", "username=cookie-alice&password=" + PASSWORD
+                + "&_csrf=" + URLEncoder.encode(csrf, StandardCharsets.UTF_8));
+        assertThat(dashboard.uri().getPath()).isEqualTo("/dashboard");
+    }
+
+    private HttpCookie sessionCookie() {
+        return cookies.getCookieStore().getCookies().stream()
+                .filter(cookie -> cookie.getName().equals(SignedCookieSecurityContextRepository.COOKIE_NAME))
+                .findFirst()
+                .orElseThrow();
+    }
+
+    private HttpResponse<String> get(ConfigurableApplicationContext node, String path) throws Exception {
+        return client.send(HttpRequest.newBuilder(uri(node, path)).build(), HttpResponse.BodyHandlers.ofString());
+    }
+
+    private HttpResponse<String> post(ConfigurableApplicationContext node, String path, String form)
+            throws Exception {
+        return client.send(HttpRequest.newBuilder(uri(node, path))
+                .header("Content-Type", "application/x-www-form-urlencoded")
+                .POST(HttpRequest.BodyPublishers.ofString(form))
+                .build(), HttpResponse.BodyHandlers.ofString());
+    }
+
+    private static URI uri(ConfigurableApplicationContext node, String path) {
+        return URI.create("http://localhost:" + ((WebServerApplicationContext) node).getWebServer().getPort()
+                + path);
+    }
+
+    private static String csrfToken(String html) {
+        Matcher matcher = CSRF_META.matcher(html);
+        assertThat(matcher.find()).as("CSRF token on the page").isTrue();
+        return matcher.group(1);
+    }
+
+    /**
+     * The token that the login page, prerendered without one, fetches once it has loaded.
+     */
+    private String csrfTokenFromEndpoint(ConfigurableApplicationContext node) throws Exception {
+        Matcher matcher = CSRF_JSON.matcher(get(node, "/csrf").body());
+        assertThat(matcher.find()).as("CSRF token from /csrf").isTrue();
+        return matcher.group(1);
+    }
+
+    private static ConfigurableApplicationContext startNode() {
+        return new SpringApplicationBuilder(PasskeysTryoutApplication.class)
+                .run("--server.port=0",
+                        "--spring.datasource.url=jdbc:h2:mem:cookie-sessions;DB_CLOSE_DELAY=-1",
+                        "--spring.jpa.show-sql=false",
+                        "--logging.level.root=WARN",
+                        "--logging.level.org.springframework.security.web.webauthn=WARN",
+                        "--logging.level.org.springframework.security.authentication=WARN",
+                        "--logging.level.com.webauthn4j=WARN",
+                        "--passkeys.password.argon2.target-time=1ms",
+                        "--passkeys.password.argon2.min-iterations=1",
+                        "--passkeys.session.store=cookie",
+                        "--passkeys.session.cookie.keys=3:c2Vzc2lvbi1jb29raWUtaW50ZWdyYXRpb24tdGVzdC1rZXk");
+    }
+}
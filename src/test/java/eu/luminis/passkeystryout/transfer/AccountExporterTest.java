@@ -0,0 +1,132 @@
+package eu.luminis.passkeystryout.transfer;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+import org.springframework.security.web.webauthn.api.Bytes;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Exports accounts from one in-memory H2 database created from {@code schema.sql} and imports them into another.
+ */
+class AccountExporterTest {
+
+    private static final int CHUNK_SIZE = 2;
+
+    private EmbeddedDatabase source;
+    private EmbeddedDatabase target;
+    private JdbcTemplate sourceJdbc;
+    private JdbcTemplate targetJdbc;
+
+    @BeforeEach
+    void setUp() {
+        source = database();
+        target = database();
+        sourceJdbc = new JdbcTemplate(source);
+        targetJdbc = new JdbcTemplate(target);
+    }
+
+    @AfterEach
+    void tearDown() {
+        source.shutdown();
+        target.shutdown();
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"ndjson", "csv"})
+    void exportedAccounts_shouldImportIntoAnotherDatabaseUnchanged(String name) throws IOException {
+        // Given five accounts, so the export reads three chunks, with two passkeys on either side of a chunk boundary
+        List<TransferredAccount> accounts = List.of(
+                account("alice", true, "YWxpY2U", credential(1, "Laptop"), credential(2, "Phone")),
+                account("bob", true, "Ym9i", credential(3, null)),
+                account("carol", false, "Y2Fyb2w", credential(4, "Security key")),
+                account("dave", true, null),
+                account("erin", true, "ZXJpbg", credential(5, "Tablet"), credential(6, "Watch")));
+        importer(sourceJdbc, source).importAccounts(reader(accounts), "seed");
+        AccountFormat format = AccountFormat.named(name);
+
+        // When
+        StringWriter out = new StringWriter();
+        TransferResult exported = new AccountExporter(sourceJdbc, CHUNK_SIZE).exportAccounts(format.writer(out));
+        TransferResult imported = importer(targetJdbc, target)
+                .importAccounts(format.reader(new StringReader(out.toString())), "accounts." + name);
+
+        // Then
+        assertThat(exported.accounts()).isEqualTo(5);
+        assertThat(exported.credentials()).isEqualTo(6);
+        assertThat(imported.accounts()).isEqualTo(5);
+        assertThat(imported.credentials()).isEqualTo(6);
+        assertThat(read(format, out.toString())).isEqualTo(accounts);
+        StringWriter reexported = new StringWriter();
+        new AccountExporter(targetJdbc, CHUNK_SIZE).exportAccounts(format.writer(reexported));
+        assertThat(reexported.toString()).isEqualTo(out.toString());
+    }
+
+    private static EmbeddedDatabase database() {
+        return new EmbeddedDatabaseBuilder()
+                .setType(EmbeddedDatabaseType.H2)
+                .generateUniqueName(true)
+                .addScript("schema.sql")
+                .build();
+    }
+
+    private static AccountImporter importer(JdbcTemplate jdbc, EmbeddedDatabase database) {
+        return new AccountImporter(jdbc, new TransactionTemplate(new DataSourceTransactionManager(database)),
+                CHUNK_SIZE);
+    }
+
+    private static TransferredAccount account(String username, boolean enabled, String userHandle,
+                                              TransferredAccount.Credential... credentials) {
+        return new TransferredAccount(username, username.toUpperCase(), "{noop}" + username, enabled, userHandle,
+                userHandle == null ? List.of() : List.of(credentials));
+    }
+
+    private static TransferredAccount.Credential credential(int number, String label) {
+        Instant created = Instant.parse("2026-01-31T09:00:00Z").plusSeconds(number);
+        return new TransferredAccount.Credential(Bytes.random(), new Bytes(new byte[] {(byte) 0xa5, (byte) number}),
+                number, "public-key", created, created.plusSeconds(60), label, number % 2 == 0, false, true,
+                "internal,hybrid", new Bytes(new byte[] {(byte) 0xa3, (byte) number}),
+                new Bytes(new byte[] {'{', '}'}));
+    }
+
+    private static List<TransferredAccount> read(AccountFormat format, String input) throws IOException {
+        List<TransferredAccount> accounts = new ArrayList<>();
+        AccountFormat.AccountReader reader = format.reader(new StringReader(input));
+        TransferredAccount account;
+        while ((account = reader.read()) != null) {
+            accounts.add(account);
+        }
+        return accounts;
+    }
+
+    private static AccountFormat.AccountReader reader(List<TransferredAccount> accounts) {
+        Iterator<TransferredAccount> iterator = accounts.iterator();
+        return new AccountFormat.AccountReader() {
+
+            @Override
+            public TransferredAccount read() {
+                return iterator.hasNext() ? iterator.next() : null;
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+    }
+}
@@ -0,0 +1,82 @@
+package eu.luminis.passkeystryout.transfer;
+
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.springframework.security.web.webauthn.api.Bytes;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class AccountFormatTest {
+
+    @ParameterizedTest
+    @ValueSource(strings = {"ndjson", "csv"})
+    void accountsWritten_shouldBeReadBackUnchanged(String name) throws IOException {
+        // Given
+        AccountFormat format = AccountFormat.named(name);
+        List<TransferredAccount> accounts = List.of(
+                new TransferredAccount("alice", "Alice \"Al\", from\nAmsterdam", "{bcrypt}$2a$10$abc", true,
+                        "aGFuZGxl", List.of(credential(1, "Laptop, work"), credential(2, null))),
+                new TransferredAccount("bob", "Bob", "{noop}secret", false, null, List.of()));
+
+        // When
+        StringWriter out = new StringWriter();
+        try (AccountFormat.AccountWriter writer = format.writer(out)) {
+            for (TransferredAccount account : accounts) {
+                writer.write(account);
+            }
+        }
+        List<TransferredAccount> read = new ArrayList<>();
+        try (AccountFormat.AccountReader reader = format.reader(new StringReader(out.toString()))) {
+            TransferredAccount account;
+            while ((account = reader.read()) != null) {
+                read.add(account);
+            }
+        }
+
+        // Then
+        assertThat(read).isEqualTo(accounts);
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"ndjson", "csv"})
+    void emptyInput_shouldHaveNoAccounts(String name) throws IOException {
+        // When
+        TransferredAccount account = AccountFormat.named(name).reader(new StringReader("")).read();
+
+        // Then
+        assertThat(account).isNull();
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"ndjson", "csv"})
+    void malformedInput_shouldBeRejectedWithItsPosition(String name) {
+        // Given
+        String input = name.equals("csv")
+                ? String.join(",", CsvAccountFormat.HEADER) + "\r\nalice,Alice\r\n"
+                : "{\"username\":\"alice\",\"password\":\"{noop}x\"}\n{\"username\":\"bob\"}\n";
+
+        // When / Then
+        assertThatThrownBy(() -> {
+            AccountFormat.AccountReader reader = AccountFormat.named(name).reader(new StringReader(input));
+            while (reader.read() != null) {
+                // read on until the malformed account
+            }
+        }).isInstanceOf(IOException.class).hasMessageContaining(name.equals("csv") ? "Row 2" : "line 2");
+    }
+
+    private static TransferredAccount.Credential credential(int id, String label) {
+        return new TransferredAccount.Credential(new Bytes(new byte[] {(byte) id, 0x7f, (byte) 0xff}),
+                new Bytes(new byte[] {(byte) 0xa5, 1, 2}), id * 10L, "public-key",
+                Instant.parse("2026-01-31T09:00:00.123Z"), id == 1 ? Instant.parse("2026-02-01T10:00:00Z") : null,
+                label, true, id == 1, false, id == 1 ? "internal,hybrid" : null,
+                id == 1 ? new Bytes(new byte[] {1, 2, 3}) : null, null);
+    }
+}
@@ -0,0 +1,155 @@
+package eu.luminis.passkeystryout.transfer;
+
+import eu.luminis.passkeystryout.passkey.JdbcCredentialRecordRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+import org.springframework.security.web.webauthn.api.AuthenticatorTransport;
+import org.springframework.security.web.webauthn.api.Bytes;
+import org.springframework.security.web.webauthn.api.CredentialRecord;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Imports and exports accounts against an in-memory H2 database created from {@code schema.sql}.
+ */
+class AccountImporterTest {
+
+    private EmbeddedDatabase database;
+    private JdbcTemplate jdbc;
+    private AccountImporter importer;
+
+    @BeforeEach
+    void setUp() {
+        database = new EmbeddedDatabaseBuilder()
+                .setType(EmbeddedDatabaseType.H2)
+                .generateUniqueName(true)
+                .addScript("schema.sql")
+                .build();
+        jdbc = new JdbcTemplate(database);
+        importer = new AccountImporter(jdbc, new TransactionTemplate(new DataSourceTransactionManager(database)), 2);
+    }
+
+    @AfterEach
+    void tearDown() {
+        database.shutdown();
+    }
+
+    @Test
+    void importAccounts_shouldStoreUsersWithPasskeysTheApplicationCanRead() throws IOException {
+        // Given
+        List<TransferredAccount> accounts = accounts(5);
+
+        // When
+        TransferResult result = importer.importAccounts(reader(accounts, Integer.MAX_VALUE), "accounts.ndjson");
+
+        // Then
+        assertThat(result.accounts()).isEqualTo(5);
+        assertThat(result.credentials()).isEqualTo(5);
+        assertThat(jdbc.queryForObject("SELECT COUNT(*) FROM users", Integer.class)).isEqualTo(5);
+        List<CredentialRecord> records = new JdbcCredentialRecordRepository(jdbc)
+                .findByUserId(Bytes.fromBase64(accounts.get(2).userHandle()));
+        assertThat(records).singleElement().satisfies(record -> {
+            assertThat(record.getCredentialId()).isEqualTo(accounts.get(2).credentials().getFirst().credentialId());
+            assertThat(record.getSignatureCount()).isEqualTo(2);
+            assertThat(record.getTransports()).isEqualTo(Set.of(AuthenticatorTransport.INTERNAL));
+            assertThat(record.getLastUsed()).isEqualTo(record.getCreated());
+        });
+        assertThat(jdbc.queryForObject("SELECT position FROM account_transfer_checkpoints WHERE name = ?", Long.class,
+                "accounts.ndjson")).isEqualTo(5);
+    }
+
+    @Test
+    void interruptedImport_shouldResumeAfterTheLastCommittedChunk() throws IOException {
+        // Given
+        List<TransferredAccount> accounts = accounts(7);
+        assertThatThrownBy(() -> importer.importAccounts(reader(accounts, 5), "accounts.csv"))
+                .isInstanceOf(IOException.class);
+        assertThat(jdbc.queryForObject("SELECT COUNT(*) FROM users", Integer.class)).isEqualTo(4);
+
+        // When
+        TransferResult result = importer.importAccounts(reader(accounts, Integer.MAX_VALUE), "accounts.csv");
+
+        // Then
+        assertThat(result.accounts()).isEqualTo(3);
+        assertThat(jdbc.queryForList("SELECT username FROM users ORDER BY id", String.class))
+                .containsExactly("user0", "user1", "user2", "user3", "user4", "user5", "user6");
+    }
+
+    @Test
+    void exportAccounts_shouldWriteEveryAccountInChunks() throws IOException {
+        // Given
+        List<TransferredAccount> accounts = accounts(5);
+        importer.importAccounts(reader(accounts, Integer.MAX_VALUE), "accounts.ndjson");
+        jdbc.update("INSERT INTO users (username, display_name, password) VALUES ('carol', 'Carol', '{noop}x')");
+
+        // When
+        StringWriter out = new StringWriter();
+        TransferResult result = new AccountExporter(jdbc, 2).exportAccounts(new CsvAccountFormat().writer(out));
+
+        // Then
+        assertThat(result.accounts()).isEqualTo(6);
+        assertThat(result.credentials()).isEqualTo(5);
+        List<TransferredAccount> exported = new ArrayList<>();
+        AccountFormat.AccountReader reader = new CsvAccountFormat().reader(new StringReader(out.toString()));
+        TransferredAccount account;
+        while ((account = reader.read()) != null) {
+            exported.add(account);
+        }
+        assertThat(exported.subList(0, 5)).usingRecursiveComparison().ignoringFields("credentials.lastUsed")
+                .isEqualTo(accounts);
+        assertThat(exported.get(5).username()).isEqualTo("carol");
+        assertThat(exported.get(5).credentials()).isEmpty();
+    }
+
+    private static List<TransferredAccount> accounts(int count) {
+        List<TransferredAccount> accounts = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            accounts.add(new TransferredAccount("user" + i, "User " + i, "{noop}secret" + i, true,
+                    Bytes.random().toBase64UrlString(), List.of(new TransferredAccount.Credential(Bytes.random(),
+                    new Bytes(new byte[] {(byte) 0xa5, (byte) i}), i, "public-key",
+                    Instant.parse("2026-01-31T09:00:00Z"), null, "Key " + i, false, false, true, "internal",
+                    null, null))));
+        }
+        return accounts;
+    }
+
+    /**
+     * Reads the accounts, failing like a broken input before account {@code failAt}.
+     */
+    private static AccountFormat.AccountReader reader(List<TransferredAccount> accounts, int failAt) {
+        Iterator<TransferredAccount> iterator = accounts.iterator();
+        return new AccountFormat.AccountReader() {
+
+            private int read;
+
+            @Override
+            public TransferredAccount read() throws IOException {
+                if (read++ == failAt) {
+                    throw new IOException("Input broke off");
+                }
+                return iterator.hasNext() ? iterator.next() : null;
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+    }
+}
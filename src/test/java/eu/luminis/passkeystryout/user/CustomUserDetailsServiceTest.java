@@ -3,18 +3,29 @@ package eu.luminis.passkeystryout.user;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
-import org.mockito.InjectMocks;
+import org.mockito.ArgumentMatchers;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.jdbc.core.JdbcOperations;
+import org.springframework.jdbc.core.RowMapper;
 import org.springframework.security.core.GrantedAuthority;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.security.core.userdetails.UsernameNotFoundException;
+import org.springframework.security.web.webauthn.api.Bytes;
+import org.springframework.security.web.webauthn.api.ImmutablePublicKeyCredentialUserEntity;
+import org.springframework.security.web.webauthn.api.PublicKeyCredentialUserEntity;
 
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Optional;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoMoreInteractions;
 import static org.mockito.Mockito.when;
 
 @ExtendWith(MockitoExtension.class)
@@ -23,13 +34,26 @@ class CustomUserDetailsServiceTest {
     @Mock
     private UserRepository userRepository;
 
-    @InjectMocks
+    @Mock
+    private JdbcOperations jdbc;
+
+    private final List<Long> padding = new ArrayList<>();
+
+    private KnownUsernames knownUsernames;
+
     private CustomUserDetailsService userDetailsService;
 
     private User testUser;
 
     @BeforeEach
     void setUp() {
+        // Every name these tests look up could exist as far as the filter knows, so lookups reach the repository
+        knownUsernames = new KnownUsernames(jdbc, 1000, 0.000001, 100, Duration.ofSeconds(2), Duration.ZERO,
+                padding::add);
+        for (String username : List.of("testuser", "TESTUSER", "otheruser", "disableduser", "nonexistent")) {
+            knownUsernames.add(username);
+        }
+        userDetailsService = new CustomUserDetailsService(userRepository, knownUsernames, 100, Duration.ofMinutes(5));
         testUser = new User();
         testUser.setId(1L);
         testUser.setUsername("testuser");
@@ -77,6 +101,24 @@ class CustomUserDetailsServiceTest {
         verify(userRepository).findByUsername(username);
     }
 
+    @Test
+    void loadUserByUsername_shouldNotQueryTheRepository_forANameTheFilterRulesOut() {
+        // Given
+        when(userRepository.findByUsername("testuser")).thenReturn(Optional.of(testUser));
+        userDetailsService.loadUserByUsername("testuser");
+
+        // When & Then
+        assertThatThrownBy(() -> userDetailsService.loadUserByUsername("mallory"))
+                .isInstanceOf(UsernameNotFoundException.class)
+                .hasMessage("User not found: mallory");
+
+        verify(userRepository).findByUsername("testuser");
+        verify(userRepository, times(0)).findByUsername("mallory");
+        // Only the users inserted since the filter was filled are read, which took part of the pause
+        verify(jdbc).query(eq(KnownUsernames.SELECT_CHUNK_SQL), ArgumentMatchers.<RowMapper<?>>any(), eq(0L), eq(100));
+        assertThat(padding).allSatisfy(nanos -> assertThat(nanos).isPositive());
+    }
+
     @Test
     void loadUserByUsername_shouldHandleUsersWithDifferentPasswords() {
         // Given
@@ -150,4 +192,126 @@ class CustomUserDetailsServiceTest {
         // If you want to respect the enabled flag, you'd need to update the implementation
         assertThat(userDetails.isEnabled()).isTrue();
     }
+
+    @Test
+    void updatePassword_shouldStoreNewHashAndReturnUpdatedUser() {
+        // Given
+        when(userRepository.findByUsername("testuser")).thenReturn(Optional.of(testUser));
+        UserDetails current = userDetailsService.loadUserByUsername("testuser");
+
+        // When
+        UserDetails updated = userDetailsService.updatePassword(current, "{argon2}newhash");
+
+        // Then
+        assertThat(updated.getPassword()).isEqualTo("{argon2}newhash");
+        assertThat(updated.getUsername()).isEqualTo("testuser");
+        assertThat(testUser.getPassword()).isEqualTo("{argon2}newhash");
+        verify(userRepository).save(testUser);
+    }
+
+    @Test
+    void updatePassword_shouldReloadTheUserAfterwards() {
+        // Given
+        when(userRepository.findByUsername("testuser")).thenReturn(Optional.of(testUser));
+        UserDetails current = userDetailsService.loadUserByUsername("testuser");
+
+        // When
+        userDetailsService.updatePassword(current, "{argon2}newhash");
+        UserDetails reloaded = userDetailsService.loadUserByUsername("testuser");
+
+        // Then
+        assertThat(reloaded.getPassword()).isEqualTo("{argon2}newhash");
+        verify(userRepository, times(3)).findByUsername("testuser");
+    }
+
+    @Test
+    void loadUserByUsername_shouldReadTheUserOnce_forPasswordAndPasskeyLookups() {
+        // Given
+        testUser.setUserHandle("dGVzdHVzZXJpZA");
+        when(userRepository.findByUsername("testuser")).thenReturn(Optional.of(testUser));
+
+        // When
+        UserDetails first = userDetailsService.loadUserByUsername("testuser");
+        UserDetails second = userDetailsService.loadUserByUsername("testuser");
+        PublicKeyCredentialUserEntity byName = userDetailsService.findByUsername("testuser");
+        PublicKeyCredentialUserEntity byId = userDetailsService.findById(Bytes.fromBase64("dGVzdHVzZXJpZA"));
+
+        // Then
+        assertThat(first).isNotSameAs(second);
+        assertThat(second.getPassword()).isEqualTo("$2a$10$encodedPassword");
+        assertThat(byName).isNotNull();
+        assertThat(byName.getId()).isEqualTo(Bytes.fromBase64("dGVzdHVzZXJpZA"));
+        assertThat(byName.getName()).isEqualTo("testuser");
+        assertThat(byName.getDisplayName()).isEqualTo("Test User");
+        assertThat(byId).isSameAs(byName);
+        verify(userRepository).findByUsername("testuser");
+        verifyNoMoreInteractions(userRepository);
+    }
+
+    @Test
+    void findByUsername_shouldReturnNull_whenUserHasNoUserHandle() {
+        // Given
+        when(userRepository.findByUsername("testuser")).thenReturn(Optional.of(testUser));
+
+        // When / Then
+        assertThat(userDetailsService.findByUsername("testuser")).isNull();
+        assertThat(userDetailsService.findByUsername("nonexistent")).isNull();
+    }
+
+    @Test
+    void findById_shouldLoadTheUserByHandle_whenItIsNotCached() {
+        // Given
+        testUser.setUserHandle("dGVzdHVzZXJpZA");
+        when(userRepository.findByUserHandle("dGVzdHVzZXJpZA")).thenReturn(Optional.of(testUser));
+
+        // When
+        PublicKeyCredentialUserEntity userEntity = userDetailsService.findById(Bytes.fromBase64("dGVzdHVzZXJpZA"));
+        UserDetails userDetails = userDetailsService.loadUserByUsername("testuser");
+
+        // Then
+        assertThat(userEntity).isNotNull();
+        assertThat(userEntity.getName()).isEqualTo("testuser");
+        assertThat(userDetails.getUsername()).isEqualTo("testuser");
+        verify(userRepository).findByUserHandle("dGVzdHVzZXJpZA");
+        verifyNoMoreInteractions(userRepository);
+    }
+
+    @Test
+    void save_shouldStoreTheUserHandleOnTheUser() {
+        // Given
+        when(userRepository.findByUsername("testuser")).thenReturn(Optional.of(testUser));
+        assertThat(userDetailsService.findByUsername("testuser")).isNull();
+        PublicKeyCredentialUserEntity userEntity = ImmutablePublicKeyCredentialUserEntity.builder()
+                .id(Bytes.fromBase64("dGVzdHVzZXJpZA"))
+                .name("testuser")
+                .displayName("testuser")
+                .build();
+
+        // When
+        userDetailsService.save(userEntity);
+
+        // Then
+        assertThat(testUser.getUserHandle()).isEqualTo("dGVzdHVzZXJpZA");
+        verify(userRepository).save(testUser);
+        PublicKeyCredentialUserEntity stored = userDetailsService.findByUsername("testuser");
+        assertThat(stored).isNotNull();
+        assertThat(stored.getId()).isEqualTo(userEntity.getId());
+        assertThat(stored.getDisplayName()).isEqualTo("Test User");
+    }
+
+    @Test
+    void save_shouldThrowException_whenUserNotFound() {
+        // Given
+        when(userRepository.findByUsername("nonexistent")).thenReturn(Optional.empty());
+        PublicKeyCredentialUserEntity userEntity = ImmutablePublicKeyCredentialUserEntity.builder()
+                .id(Bytes.random())
+                .name("nonexistent")
+                .displayName("nonexistent")
+                .build();
+
+        // When / Then
+        assertThatThrownBy(() -> userDetailsService.save(userEntity))
+                .isInstanceOf(UsernameNotFoundException.class)
+                .hasMessage("User not found: nonexistent");
+    }
 }
@@ -0,0 +1,59 @@
+package eu.luminis.passkeystryout.user;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.webmvc.test.autoconfigure.AutoConfigureMockMvc;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.web.servlet.MockMvc;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.security.test.web.servlet.request.SecurityMockMvcRequestBuilders.formLogin;
+import static org.springframework.security.test.web.servlet.response.SecurityMockMvcResultMatchers.authenticated;
+import static org.springframework.security.test.web.servlet.response.SecurityMockMvcResultMatchers.unauthenticated;
+
+@SpringBootTest
+@AutoConfigureMockMvc
+@TestPropertySource(properties = {
+        "spring.datasource.url=jdbc:h2:mem:known-usernames",
+        "spring.jpa.show-sql=false",
+        "passkeys.password.argon2.target-time=1ms",
+        "passkeys.password.argon2.min-iterations=1",
+        // No scheduled refresh runs during the test, so only the read on a miss can find the user; every miss may read
+        "passkeys.username-filter.refresh-interval=1h",
+        "passkeys.username-filter.catch-up-interval=0s"
+})
+class KnownUsernamesIntegrationTest {
+
+    @Autowired
+    MockMvc mockMvc;
+
+    @Autowired
+    JdbcTemplate jdbc;
+
+    @Autowired
+    PasswordEncoder passwordEncoder;
+
+    @Autowired
+    KnownUsernames knownUsernames;
+
+    @Test
+    void formLogin_shouldSignInAUserInsertedBehindTheFiltersBack() throws Exception {
+        // Given a user written with plain JDBC, as another node or an import would
+        jdbc.update("INSERT INTO users (username, display_name, password) VALUES (?, ?, ?)",
+                "elsewhere", "Created Elsewhere", passwordEncoder.encode("secret"));
+        assertThat(knownUsernames.mightContain("elsewhere")).isFalse();
+
+        // When / Then
+        mockMvc.perform(formLogin().user("elsewhere").password("secret"))
+                .andExpect(authenticated().withUsername("elsewhere"));
+    }
+
+    @Test
+    void formLogin_shouldRejectANameThatDoesNotExist() throws Exception {
+        mockMvc.perform(formLogin().user("nobody").password("secret"))
+                .andExpect(unauthenticated());
+    }
+}
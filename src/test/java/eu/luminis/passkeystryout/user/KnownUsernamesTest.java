@@ -0,0 +1,190 @@
+package eu.luminis.passkeystryout.user;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Fills the filter from an in-memory H2 database created from {@code schema.sql}.
+ */
+class KnownUsernamesTest {
+
+    private static final Duration REREAD_WINDOW = Duration.ofMinutes(1);
+
+    private final List<Long> padding = new ArrayList<>();
+
+    private EmbeddedDatabase database;
+    private JdbcTemplate jdbc;
+
+    @BeforeEach
+    void setUp() {
+        database = new EmbeddedDatabaseBuilder()
+                .setType(EmbeddedDatabaseType.H2)
+                .generateUniqueName(true)
+                .addScript("schema.sql")
+                .build();
+        jdbc = new JdbcTemplate(database);
+    }
+
+    @AfterEach
+    void tearDown() {
+        database.shutdown();
+    }
+
+    @Test
+    void refresh_shouldReadEveryUserInChunks_andThenOnlyNewOnes() {
+        // Given
+        insertUsers(0, 7);
+        KnownUsernames knownUsernames = new KnownUsernames(jdbc, 100, 0.000001, 3,
+                REREAD_WINDOW, Duration.ZERO, padding::add);
+        assertThat(knownUsernames.refresh()).isEqualTo(7);
+        insertUsers(7, 2);
+
+        // When
+        int loaded = knownUsernames.refresh();
+
+        // Then
+        assertThat(loaded).isEqualTo(2);
+        for (int i = 0; i < 9; i++) {
+            assertThat(knownUsernames.mightContain("user" + i)).isTrue();
+        }
+        assertThat(knownUsernames.mightContain("stranger")).isFalse();
+    }
+
+    @Test
+    void refresh_shouldRebuildTheFilter_onceItHoldsMoreNamesThanExpected() {
+        // Given
+        insertUsers(0, 5);
+        KnownUsernames knownUsernames = new KnownUsernames(jdbc, 4, 0.000001, 100,
+                REREAD_WINDOW, Duration.ZERO, padding::add);
+        knownUsernames.refresh();
+
+        // When
+        int loaded = knownUsernames.refresh();
+
+        // Then
+        assertThat(loaded).isEqualTo(5);
+        for (int i = 0; i < 5; i++) {
+            assertThat(knownUsernames.mightContain("user" + i)).isTrue();
+        }
+    }
+
+    @Test
+    void lookUp_shouldWaitForAboutALookup_beforeAnsweringForANameThatDoesNotExist() {
+        // Given
+        insertUsers(0, 1);
+        KnownUsernames knownUsernames = new KnownUsernames(jdbc, 100, 0.000001, 100,
+                REREAD_WINDOW, Duration.ZERO, padding::add);
+        knownUsernames.refresh();
+        String found = knownUsernames.lookUp("user0", () -> {
+            sleep(20);
+            return "user0";
+        });
+
+        // When
+        long start = System.nanoTime();
+        String notFound = knownUsernames.lookUp("stranger", () -> "unexpected");
+        long elapsed = System.nanoTime() - start;
+
+        // Then the read of new users and the pause together take about as long as the lookup
+        assertThat(found).isEqualTo("user0");
+        assertThat(notFound).isNull();
+        assertThat(padding).singleElement()
+                .satisfies(nanos -> assertThat(nanos + elapsed).isGreaterThan(15_000_000L));
+    }
+
+    @Test
+    void lookUp_shouldFindAUserInsertedBehindTheFiltersBack_withoutARefresh() {
+        // Given
+        insertUsers(0, 3);
+        KnownUsernames knownUsernames = new KnownUsernames(jdbc, 100, 0.000001, 100,
+                REREAD_WINDOW, Duration.ZERO, padding::add);
+        knownUsernames.refresh();
+        insertUsers(3, 1);
+
+        // When
+        String found = knownUsernames.lookUp("user3", () -> "user3");
+
+        // Then
+        assertThat(found).isEqualTo("user3");
+        assertThat(knownUsernames.mightContain("user3")).isTrue();
+        assertThat(padding).isEmpty();
+    }
+
+    @Test
+    void lookUp_shouldFindAUserWhoseInsertCommittedAfterAHigherId_withinTheRereadWindow() {
+        // Given
+        insertUsers(0, 3);
+        KnownUsernames knownUsernames = new KnownUsernames(jdbc, 100, 0.000001, 100,
+                REREAD_WINDOW, Duration.ZERO, padding::add);
+        knownUsernames.refresh();
+        jdbc.update("INSERT INTO users (id, username, display_name, password) VALUES (10, 'early', 'Early', 'x')");
+        assertThat(knownUsernames.lookUp("early", () -> "early")).isEqualTo("early");
+        jdbc.update("INSERT INTO users (id, username, display_name, password) VALUES (5, 'late', 'Late', 'x')");
+
+        // When
+        String found = knownUsernames.lookUp("late", () -> "late");
+
+        // Then
+        assertThat(found).isEqualTo("late");
+    }
+
+    @Test
+    void lookUp_shouldNotReadNewUsersAgain_withinTheCatchUpInterval() {
+        // Given
+        insertUsers(0, 1);
+        KnownUsernames knownUsernames = new KnownUsernames(jdbc, 100, 0.000001, 100, REREAD_WINDOW,
+                Duration.ofHours(1), padding::add);
+        knownUsernames.refresh();
+        assertThat(knownUsernames.lookUp("stranger", () -> "unexpected")).isNull();
+        insertUsers(1, 1);
+
+        // When
+        String withinInterval = knownUsernames.lookUp("user1", () -> "user1");
+        knownUsernames.refresh();
+        String afterRefresh = knownUsernames.lookUp("user1", () -> "user1");
+
+        // Then
+        assertThat(withinInterval).isNull();
+        assertThat(afterRefresh).isEqualTo("user1");
+    }
+
+    @Test
+    void add_shouldMakeANewUserKnownWithoutARefresh() {
+        // Given
+        KnownUsernames knownUsernames = new KnownUsernames(jdbc, 100, 0.000001, 100,
+                REREAD_WINDOW, Duration.ZERO, padding::add);
+        knownUsernames.refresh();
+
+        // When
+        knownUsernames.add("newcomer");
+
+        // Then
+        assertThat(knownUsernames.mightContain("newcomer")).isTrue();
+    }
+
+    private void insertUsers(int from, int count) {
+        for (int i = from; i < from + count; i++) {
+            jdbc.update("INSERT INTO users (username, display_name, password) VALUES (?, ?, ?)",
+                    "user" + i, "User " + i, "{noop}x");
+        }
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package eu.luminis.passkeystryout.user;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Timestamp;
+import java.time.Instant;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Merges the user entities table of earlier versions into {@code users} in an in-memory H2 database that is laid out
+ * like one of those versions.
+ */
+class LegacyUserEntityMigrationTest {
+
+    private EmbeddedDatabase database;
+    private JdbcTemplate jdbc;
+    private LegacyUserEntityMigration migration;
+
+    @BeforeEach
+    void setUp() {
+        database = new EmbeddedDatabaseBuilder()
+                .setType(EmbeddedDatabaseType.H2)
+                .generateUniqueName(true)
+                .addScript("schema.sql")
+                .addScript("legacy-user-entities.sql")
+                .build();
+        jdbc = new JdbcTemplate(database);
+        // Earlier versions referenced the user entities from the credentials table
+        jdbc.execute("ALTER TABLE webauthn_credentials DROP CONSTRAINT fk_webauthn_credentials_user");
+        jdbc.execute("ALTER TABLE webauthn_credentials ADD CONSTRAINT fk_legacy_user_entity "
+                + "FOREIGN KEY (user_entity_user_id) REFERENCES user_entities(id)");
+        migration = new LegacyUserEntityMigration(jdbc, new TransactionTemplate(
+                new DataSourceTransactionManager(database)));
+    }
+
+    @AfterEach
+    void tearDown() {
+        database.shutdown();
+    }
+
+    @Test
+    void migrate_shouldGiveUsersTheIdOfTheirUserEntityAndDropTheOldTable() {
+        // Given
+        insertUser("alice");
+        insertUser("bob");
+        insertUserEntity("YWxpY2U", "alice");
+        insertCredential("YWxpY2U", "alice-key");
+
+        // When
+        int migrated = migration.migrate();
+
+        // Then
+        assertThat(migrated).isEqualTo(1);
+        assertThat(userHandle("alice")).isEqualTo("YWxpY2U");
+        assertThat(userHandle("bob")).isNull();
+        assertThat(tableCount("USER_ENTITIES")).isZero();
+        assertThat(jdbc.queryForObject("SELECT COUNT(*) FROM webauthn_credentials", Integer.class)).isEqualTo(1);
+    }
+
+    @Test
+    void migrate_shouldDeleteCredentialsWithoutUserAndReferenceUsers() {
+        // Given
+        insertUserEntity("b3JwaGFu", "orphan");
+        insertCredential("b3JwaGFu", "orphan-key");
+
+        // When
+        migration.migrate();
+
+        // Then
+        assertThat(jdbc.queryForObject("SELECT COUNT(*) FROM webauthn_credentials", Integer.class)).isZero();
+        assertThatThrownBy(() -> insertCredential("b3JwaGFu", "orphan-key"))
+                .isInstanceOf(DataIntegrityViolationException.class);
+    }
+
+    @Test
+    void migrate_shouldDoNothing_whenThereIsNoOldTable() {
+        // Given
+        jdbc.execute("DROP TABLE user_entities CASCADE");
+
+        // When / Then
+        assertThat(migration.migrate()).isZero();
+    }
+
+    private void insertUser(String username) {
+        jdbc.update("INSERT INTO users (username, display_name, password) VALUES (?, ?, '{noop}x')", username,
+                username);
+    }
+
+    private void insertUserEntity(String id, String name) {
+        jdbc.update("INSERT INTO user_entities (id, name, display_name) VALUES (?, ?, ?)", id, name, name);
+    }
+
+    private void insertCredential(String userEntityId, String credentialId) {
+        Timestamp now = Timestamp.from(Instant.now());
+        jdbc.update("""
+                INSERT INTO webauthn_credentials (user_entity_user_id, credential_id, public_key, signature_count,
+                    public_key_credential_type, created)
+                VALUES (?, ?, X'00', 0, 'public-key', ?)
+                """, userEntityId, credentialId.getBytes(), now);
+    }
+
+    private String userHandle(String username) {
+        return jdbc.queryForObject("SELECT user_handle FROM users WHERE username = ?", String.class, username);
+    }
+
+    private int tableCount(String table) {
+        Integer tables = jdbc.queryForObject(
+                "SELECT COUNT(*) FROM information_schema.tables WHERE table_name = ?", Integer.class, table);
+        return tables == null ? 0 : tables;
+    }
+}
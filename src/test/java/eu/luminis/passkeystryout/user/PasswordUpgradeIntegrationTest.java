@@ -0,0 +1,49 @@
+package eu.luminis.passkeystryout.user;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.webmvc.test.autoconfigure.AutoConfigureMockMvc;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.test.web.servlet.MockMvc;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.security.test.web.servlet.request.SecurityMockMvcRequestBuilders.formLogin;
+import static org.springframework.security.test.web.servlet.response.SecurityMockMvcResultMatchers.authenticated;
+
+@SpringBootTest
+@AutoConfigureMockMvc
+class PasswordUpgradeIntegrationTest {
+
+    @Autowired
+    MockMvc mockMvc;
+
+    @Autowired
+    UserRepository userRepository;
+
+    @Autowired
+    PasswordEncoder passwordEncoder;
+
+    @AfterEach
+    void tearDown() {
+        userRepository.findByUsername("legacy").ifPresent(userRepository::delete);
+    }
+
+    @Test
+    void formLogin_shouldUpgradeLegacyBcryptHashToArgon2() throws Exception {
+        // Given a user stored before passwords were prefixed with their algorithm
+        String legacyHash = new BCryptPasswordEncoder(4).encode("secret");
+        userRepository.save(new User("legacy", "Legacy User", legacyHash));
+
+        // When
+        mockMvc.perform(formLogin().user("legacy").password("secret"))
+                .andExpect(authenticated().withUsername("legacy"));
+
+        // Then
+        String upgraded = userRepository.findByUsername("legacy").orElseThrow().getPassword();
+        assertThat(upgraded).startsWith("{argon2}");
+        assertThat(passwordEncoder.matches("secret", upgraded)).isTrue();
+    }
+}
@@ -4,6 +4,7 @@ import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.webmvc.test.autoconfigure.AutoConfigureMockMvc;
 import org.springframework.boot.webmvc.test.autoconfigure.WebMvcTest;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.test.context.bean.override.mockito.MockitoBean;
 import org.springframework.test.web.servlet.MockMvc;
@@ -248,4 +249,23 @@ class RegistrationControllerTest {
                 .andExpect(view().name("register"))
                 .andExpect(model().attribute("error", "Username already exists"));
     }
+
+    @Test
+    void register_shouldReturnError_whenTheNameIsTakenBetweenCheckAndSave() throws Exception {
+        // Given
+        when(userRepository.existsByUsername("contested")).thenReturn(false);
+        when(passwordEncoder.encode("password")).thenReturn("encoded");
+        when(userRepository.save(any(User.class)))
+                .thenThrow(new DataIntegrityViolationException("Unique index or primary key violation"));
+
+        // When & Then
+        mockMvc.perform(post("/register")
+                        .param("username", "contested")
+                        .param("displayName", "Contested")
+                        .param("password", "password")
+                        .with(csrf()))
+                .andExpect(status().isOk())
+                .andExpect(view().name("register"))
+                .andExpect(model().attribute("error", "Username already exists"));
+    }
 }
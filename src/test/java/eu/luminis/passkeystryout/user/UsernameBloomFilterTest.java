@@ -0,0 +1,77 @@
+package eu.luminis.passkeystryout.user;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class UsernameBloomFilterTest {
+
+    @Test
+    void namesAddedConcurrently_shouldAllBeFound() throws Exception {
+        // Given
+        UsernameBloomFilter filter = new UsernameBloomFilter(80_000, 0.01);
+
+        // When
+        try (ExecutorService executor = Executors.newFixedThreadPool(8)) {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int thread = 0; thread < 8; thread++) {
+                int offset = thread;
+                futures.add(executor.submit(() -> {
+                    for (int i = offset; i < 80_000; i += 8) {
+                        filter.put("user-" + i);
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        }
+
+        // Then
+        for (int i = 0; i < 80_000; i++) {
+            assertThat(filter.mightContain("user-" + i)).as("user-" + i).isTrue();
+        }
+    }
+
+    @Test
+    void namesNeverAdded_shouldMostlyBeRuledOut() {
+        // Given
+        UsernameBloomFilter filter = new UsernameBloomFilter(10_000, 0.01);
+        for (int i = 0; i < 10_000; i++) {
+            filter.put("user-" + i);
+        }
+
+        // When
+        int falsePositives = 0;
+        for (int i = 0; i < 100_000; i++) {
+            if (filter.mightContain("stranger-" + i)) {
+                falsePositives++;
+            }
+        }
+
+        // Then
+        assertThat(falsePositives).isLessThan(2_000);
+        assertThat(filter.falsePositiveProbability()).isBetween(0.005, 0.02);
+    }
+
+    @Test
+    void put_shouldOnlyCountNamesThatWereNotThereYet() {
+        // Given
+        UsernameBloomFilter filter = new UsernameBloomFilter(100, 0.01);
+
+        // When
+        boolean first = filter.put("alice");
+        boolean second = filter.put("alice");
+
+        // Then
+        assertThat(first).isTrue();
+        assertThat(second).isFalse();
+        assertThat(filter.insertions()).isEqualTo(1);
+    }
+}
@@ -0,0 +1,246 @@
+package eu.luminis.passkeystryout.webauthn;
+
+import com.webauthn4j.converter.util.ObjectConverter;
+import com.webauthn4j.data.attestation.authenticator.COSEKey;
+import com.webauthn4j.data.attestation.authenticator.EC2COSEKey;
+import com.webauthn4j.data.attestation.authenticator.EdDSACOSEKey;
+import com.webauthn4j.data.attestation.authenticator.RSACOSEKey;
+import com.webauthn4j.data.attestation.statement.COSEAlgorithmIdentifier;
+import org.springframework.security.web.webauthn.api.AuthenticatorAssertionResponse;
+import org.springframework.security.web.webauthn.api.AuthenticatorAttachment;
+import org.springframework.security.web.webauthn.api.Bytes;
+import org.springframework.security.web.webauthn.api.ImmutableAuthenticationExtensionsClientOutputs;
+import org.springframework.security.web.webauthn.api.PublicKeyCredential;
+import org.springframework.security.web.webauthn.api.PublicKeyCredentialType;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.security.Signature;
+import java.security.interfaces.ECPublicKey;
+import java.security.interfaces.EdECPublicKey;
+import java.security.interfaces.RSAPublicKey;
+import java.security.spec.ECGenParameterSpec;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Software authenticator for tests and benchmarks. It generates real key pairs and signs assertions the way a
+ * platform authenticator does, so the responses pass the full WebAuthn verification of the relying party.
+ * <p>
+ * The authenticator always reports user presence and user verification. It keeps no state of its own; the signature
+ * counter lives in the {@link VirtualCredential}. Like synced passkey providers, an authenticator created with
+ * {@link #withoutSignatureCounter(String, String)} always reports a counter of zero, so its assertions can be
+ * replayed, which is what benchmarks need.
+ */
+public final class VirtualAuthenticator {
+
+    private static final byte FLAG_USER_PRESENT = 0x01;
+    private static final byte FLAG_USER_VERIFIED = 0x04;
+    private static final byte FLAG_ATTESTED_CREDENTIAL_DATA = 0x40;
+    private static final byte[] AAGUID = new byte[16];
+
+    private static final ObjectConverter OBJECT_CONVERTER = new ObjectConverter();
+
+    private final String rpId;
+    private final String origin;
+    private final byte[] rpIdHash;
+    private final boolean signatureCounter;
+    private final SecureRandom random = new SecureRandom();
+
+    public VirtualAuthenticator(String rpId, String origin) {
+        this(rpId, origin, true);
+    }
+
+    private VirtualAuthenticator(String rpId, String origin, boolean signatureCounter) {
+        this.rpId = rpId;
+        this.origin = origin;
+        this.rpIdHash = sha256(rpId.getBytes(StandardCharsets.UTF_8));
+        this.signatureCounter = signatureCounter;
+    }
+
+    public static VirtualAuthenticator withoutSignatureCounter(String rpId, String origin) {
+        return new VirtualAuthenticator(rpId, origin, false);
+    }
+
+    public String rpId() {
+        return rpId;
+    }
+
+    public String origin() {
+        return origin;
+    }
+
+    /**
+     * Generates a new key pair and a random 32 byte credential id, registered with the given challenge. The
+     * attestation uses the {@code none} format, as most passkey providers do.
+     */
+    public VirtualCredential createCredential(Algorithm algorithm, Bytes userHandle, Bytes challenge) {
+        byte[] credentialId = new byte[32];
+        random.nextBytes(credentialId);
+        KeyPair keyPair = algorithm.generateKeyPair();
+        byte[] publicKeyCose = OBJECT_CONVERTER.getCborConverter().writeValueAsBytes(algorithm.toCoseKey(keyPair));
+        byte[] authenticatorData = ByteBuffer.allocate(
+                        rpIdHash.length + 1 + Integer.BYTES + AAGUID.length + Short.BYTES + credentialId.length
+                                + publicKeyCose.length)
+                .put(rpIdHash)
+                .put((byte) (FLAG_USER_PRESENT | FLAG_USER_VERIFIED | FLAG_ATTESTED_CREDENTIAL_DATA))
+                .putInt(0)
+                .put(AAGUID)
+                .putShort((short) credentialId.length)
+                .put(credentialId)
+                .put(publicKeyCose)
+                .array();
+        Map<String, Object> attestationObject = new LinkedHashMap<>();
+        attestationObject.put("fmt", "none");
+        attestationObject.put("attStmt", Map.of());
+        attestationObject.put("authData", authenticatorData);
+        return new VirtualCredential(new Bytes(credentialId), userHandle, algorithm, keyPair, signatureCounter,
+                publicKeyCose,
+                OBJECT_CONVERTER.getCborConverter().writeValueAsBytes(attestationObject),
+                clientDataJson("webauthn.create", challenge));
+    }
+
+    /**
+     * Same as {@link #createCredential(Algorithm, Bytes, Bytes)}, for tests that do not go through the registration
+     * ceremony.
+     */
+    public VirtualCredential createCredential(Algorithm algorithm, Bytes userHandle) {
+        return createCredential(algorithm, userHandle, Bytes.random());
+    }
+
+    /**
+     * Signs an assertion for the given challenge, as {@code navigator.credentials.get()} would return it. Unless the
+     * authenticator has no signature counter, every call increments the counter of the credential.
+     */
+    public PublicKeyCredential<AuthenticatorAssertionResponse> getAssertion(VirtualCredential credential,
+                                                                          Bytes challenge) {
+        byte[] clientDataJson = clientDataJson("webauthn.get", challenge);
+        byte[] authenticatorData = ByteBuffer.allocate(rpIdHash.length + 1 + Integer.BYTES)
+                .put(rpIdHash)
+                .put((byte) (FLAG_USER_PRESENT | FLAG_USER_VERIFIED))
+                .putInt((int) credential.nextSignatureCount())
+                .array();
+        byte[] signature = credential.sign(concat(authenticatorData, sha256(clientDataJson)));
+
+        AuthenticatorAssertionResponse response = AuthenticatorAssertionResponse.builder()
+                .authenticatorData(new Bytes(authenticatorData))
+                .clientDataJSON(new Bytes(clientDataJson))
+                .signature(new Bytes(signature))
+                .userHandle(credential.userHandle())
+                .build();
+        return PublicKeyCredential.<AuthenticatorAssertionResponse>builder()
+                .id(credential.credentialId().toBase64UrlString())
+                .rawId(credential.credentialId())
+                .type(PublicKeyCredentialType.PUBLIC_KEY)
+                .response(response)
+                .authenticatorAttachment(AuthenticatorAttachment.PLATFORM)
+                .clientExtensionResults(new ImmutableAuthenticationExtensionsClientOutputs())
+                .build();
+    }
+
+    private byte[] clientDataJson(String type, Bytes challenge) {
+        return ("{\"type\":\"" + type + "\",\"challenge\":\"" + challenge.toBase64UrlString()
+                + "\",\"origin\":\"" + origin + "\",\"crossOrigin\":false}").getBytes(StandardCharsets.UTF_8);
+    }
+
+    static byte[] sha256(byte[] data) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(data);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static byte[] concat(byte[]... parts) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (byte[] part : parts) {
+            out.writeBytes(part);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * The COSE algorithms the authenticator can create credentials for.
+     */
+    public enum Algorithm {
+        ES256(COSEAlgorithmIdentifier.ES256, "SHA256withECDSA") {
+            @Override
+            KeyPair generateKeyPair() {
+                try {
+                    KeyPairGenerator generator = KeyPairGenerator.getInstance("EC");
+                    generator.initialize(new ECGenParameterSpec("secp256r1"));
+                    return generator.generateKeyPair();
+                } catch (GeneralSecurityException e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+
+            @Override
+            COSEKey toCoseKey(KeyPair keyPair) {
+                return EC2COSEKey.create((ECPublicKey) keyPair.getPublic(), coseAlgorithm());
+            }
+        },
+        RS256(COSEAlgorithmIdentifier.RS256, "SHA256withRSA") {
+            @Override
+            KeyPair generateKeyPair() {
+                try {
+                    KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+                    generator.initialize(2048);
+                    return generator.generateKeyPair();
+                } catch (GeneralSecurityException e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+
+            @Override
+            COSEKey toCoseKey(KeyPair keyPair) {
+                return RSACOSEKey.create((RSAPublicKey) keyPair.getPublic(), coseAlgorithm());
+            }
+        },
+        EdDSA(COSEAlgorithmIdentifier.EdDSA, "Ed25519") {
+            @Override
+            KeyPair generateKeyPair() {
+                try {
+                    return KeyPairGenerator.getInstance("Ed25519").generateKeyPair();
+                } catch (GeneralSecurityException e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+
+            @Override
+            COSEKey toCoseKey(KeyPair keyPair) {
+                return EdDSACOSEKey.create((EdECPublicKey) keyPair.getPublic(), coseAlgorithm());
+            }
+        };
+
+        private final COSEAlgorithmIdentifier coseAlgorithm;
+        private final String signatureAlgorithm;
+
+        Algorithm(COSEAlgorithmIdentifier coseAlgorithm, String signatureAlgorithm) {
+            this.coseAlgorithm = coseAlgorithm;
+            this.signatureAlgorithm = signatureAlgorithm;
+        }
+
+        public COSEAlgorithmIdentifier coseAlgorithm() {
+            return coseAlgorithm;
+        }
+
+        abstract KeyPair generateKeyPair();
+
+        abstract COSEKey toCoseKey(KeyPair keyPair);
+
+        Signature newSignature() {
+            try {
+                return Signature.getInstance(signatureAlgorithm);
+            } catch (GeneralSecurityException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package eu.luminis.passkeystryout.webauthn;
+
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+import org.springframework.security.web.webauthn.api.Bytes;
+import org.springframework.security.web.webauthn.api.ImmutablePublicKeyCredentialUserEntity;
+import org.springframework.security.web.webauthn.api.PublicKeyCredentialRequestOptions;
+import org.springframework.security.web.webauthn.api.PublicKeyCredentialRpEntity;
+import org.springframework.security.web.webauthn.api.PublicKeyCredentialUserEntity;
+import org.springframework.security.web.webauthn.api.UserVerificationRequirement;
+import org.springframework.security.web.webauthn.management.MapPublicKeyCredentialUserEntityRepository;
+import org.springframework.security.web.webauthn.management.MapUserCredentialRepository;
+import org.springframework.security.web.webauthn.management.RelyingPartyAuthenticationRequest;
+import org.springframework.security.web.webauthn.management.Webauthn4JRelyingPartyOperations;
+
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class VirtualAuthenticatorTest {
+
+    private final VirtualAuthenticator authenticator = new VirtualAuthenticator("localhost", "http://localhost:8080");
+
+    @ParameterizedTest
+    @EnumSource(VirtualAuthenticator.Algorithm.class)
+    void getAssertion_shouldPassRelyingPartyVerification(VirtualAuthenticator.Algorithm algorithm) {
+        // Given
+        MapPublicKeyCredentialUserEntityRepository userEntities = new MapPublicKeyCredentialUserEntityRepository();
+        MapUserCredentialRepository credentials = new MapUserCredentialRepository();
+        PublicKeyCredentialUserEntity user = ImmutablePublicKeyCredentialUserEntity.builder()
+                .id(Bytes.random())
+                .name("alice")
+                .displayName("Alice")
+                .build();
+        userEntities.save(user);
+        VirtualCredential credential = authenticator.createCredential(algorithm, user.getId());
+        credentials.save(credential.toCredentialRecord());
+        Webauthn4JRelyingPartyOperations relyingParty = relyingParty(userEntities, credentials);
+        PublicKeyCredentialRequestOptions options = requestOptions();
+
+        // When
+        PublicKeyCredentialUserEntity authenticated = relyingParty.authenticate(new RelyingPartyAuthenticationRequest(
+                options, authenticator.getAssertion(credential, options.getChallenge())));
+
+        // Then
+        assertThat(authenticated.getName()).isEqualTo("alice");
+        assertThat(credentials.findByCredentialId(credential.credentialId()).getSignatureCount()).isEqualTo(1);
+    }
+
+    @ParameterizedTest
+    @EnumSource(VirtualAuthenticator.Algorithm.class)
+    void getAssertion_shouldFailVerification_whenSignedForAnotherChallenge(VirtualAuthenticator.Algorithm algorithm) {
+        // Given
+        MapPublicKeyCredentialUserEntityRepository userEntities = new MapPublicKeyCredentialUserEntityRepository();
+        MapUserCredentialRepository credentials = new MapUserCredentialRepository();
+        PublicKeyCredentialUserEntity user = ImmutablePublicKeyCredentialUserEntity.builder()
+                .id(Bytes.random())
+                .name("alice")
+                .displayName("Alice")
+                .build();
+        userEntities.save(user);
+        VirtualCredential credential = authenticator.createCredential(algorithm, user.getId());
+        credentials.save(credential.toCredentialRecord());
+        Webauthn4JRelyingPartyOperations relyingParty = relyingParty(userEntities, credentials);
+
+        // When / Then
+        assertThatThrownBy(() -> relyingParty.authenticate(new RelyingPartyAuthenticationRequest(
+                requestOptions(), authenticator.getAssertion(credential, Bytes.random()))))
+                .isInstanceOf(RuntimeException.class);
+    }
+
+    @ParameterizedTest
+    @EnumSource(VirtualAuthenticator.Algorithm.class)
+    void withoutSignatureCounter_shouldProduceAssertionsThatCanBeVerifiedRepeatedly(
+            VirtualAuthenticator.Algorithm algorithm) {
+        // Given
+        VirtualAuthenticator synced = VirtualAuthenticator.withoutSignatureCounter("localhost", "http://localhost:8080");
+        MapPublicKeyCredentialUserEntityRepository userEntities = new MapPublicKeyCredentialUserEntityRepository();
+        MapUserCredentialRepository credentials = new MapUserCredentialRepository();
+        PublicKeyCredentialUserEntity user = ImmutablePublicKeyCredentialUserEntity.builder()
+                .id(Bytes.random())
+                .name("alice")
+                .displayName("Alice")
+                .build();
+        userEntities.save(user);
+        VirtualCredential credential = synced.createCredential(algorithm, user.getId());
+        credentials.save(credential.toCredentialRecord());
+        Webauthn4JRelyingPartyOperations relyingParty = relyingParty(userEntities, credentials);
+        PublicKeyCredentialRequestOptions options = requestOptions();
+        RelyingPartyAuthenticationRequest request = new RelyingPartyAuthenticationRequest(
+                options, synced.getAssertion(credential, options.getChallenge()));
+
+        // When
+        relyingParty.authenticate(request);
+        PublicKeyCredentialUserEntity authenticated = relyingParty.authenticate(request);
+
+        // Then
+        assertThat(authenticated.getName()).isEqualTo("alice");
+        assertThat(credentials.findByCredentialId(credential.credentialId()).getSignatureCount()).isZero();
+    }
+
+    private Webauthn4JRelyingPartyOperations relyingParty(MapPublicKeyCredentialUserEntityRepository userEntities,
+                                                          MapUserCredentialRepository credentials) {
+        return new Webauthn4JRelyingPartyOperations(userEntities, credentials,
+                PublicKeyCredentialRpEntity.builder().id(authenticator.rpId()).name("Passkeys Demo").build(),
+                Set.of(authenticator.origin()));
+    }
+
+    private PublicKeyCredentialRequestOptions requestOptions() {
+        return PublicKeyCredentialRequestOptions.builder()
+                .challenge(Bytes.random())
+                .rpId(authenticator.rpId())
+                .userVerification(UserVerificationRequirement.PREFERRED)
+                .build();
+    }
+}
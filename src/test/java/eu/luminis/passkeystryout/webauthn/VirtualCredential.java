@@ -0,0 +1,121 @@
+package eu.luminis.passkeystryout.webauthn;
+
+import org.springframework.security.web.webauthn.api.AuthenticatorTransport;
+import org.springframework.security.web.webauthn.api.Bytes;
+import org.springframework.security.web.webauthn.api.CredentialRecord;
+import org.springframework.security.web.webauthn.api.ImmutableCredentialRecord;
+import org.springframework.security.web.webauthn.api.ImmutablePublicKeyCose;
+import org.springframework.security.web.webauthn.api.PublicKeyCredentialType;
+
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.security.PublicKey;
+import java.security.Signature;
+import java.time.Instant;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A credential held by a {@link VirtualAuthenticator}: the key pair, the ids it is known by and its signature
+ * counter.
+ */
+public final class VirtualCredential {
+
+    private final Bytes credentialId;
+    private final Bytes userHandle;
+    private final VirtualAuthenticator.Algorithm algorithm;
+    private final KeyPair keyPair;
+    private final boolean signatureCounter;
+    private final byte[] publicKeyCose;
+    private final byte[] attestationObject;
+    private final byte[] attestationClientDataJson;
+    private final AtomicLong signatureCount = new AtomicLong();
+
+    VirtualCredential(Bytes credentialId, Bytes userHandle, VirtualAuthenticator.Algorithm algorithm,
+                      KeyPair keyPair, boolean signatureCounter, byte[] publicKeyCose, byte[] attestationObject,
+                      byte[] attestationClientDataJson) {
+        this.credentialId = credentialId;
+        this.userHandle = userHandle;
+        this.algorithm = algorithm;
+        this.keyPair = keyPair;
+        this.signatureCounter = signatureCounter;
+        this.publicKeyCose = publicKeyCose;
+        this.attestationObject = attestationObject;
+        this.attestationClientDataJson = attestationClientDataJson;
+    }
+
+    public Bytes credentialId() {
+        return credentialId;
+    }
+
+    public Bytes userHandle() {
+        return userHandle;
+    }
+
+    public VirtualAuthenticator.Algorithm algorithm() {
+        return algorithm;
+    }
+
+    public PublicKey publicKey() {
+        return keyPair.getPublic();
+    }
+
+    /**
+     * Returns the COSE encoded public key, as the relying party stores it.
+     */
+    public byte[] publicKeyCose() {
+        return publicKeyCose.clone();
+    }
+
+    /**
+     * Returns the CBOR attestation object that was produced when the credential was created.
+     */
+    public Bytes attestationObject() {
+        return new Bytes(attestationObject);
+    }
+
+    /**
+     * Returns the client data JSON of the registration ceremony.
+     */
+    public Bytes attestationClientDataJson() {
+        return new Bytes(attestationClientDataJson);
+    }
+
+    /**
+     * Returns the record the relying party would have stored after registering this credential.
+     */
+    public CredentialRecord toCredentialRecord() {
+        Instant now = Instant.now();
+        return ImmutableCredentialRecord.builder()
+                .credentialType(PublicKeyCredentialType.PUBLIC_KEY)
+                .credentialId(credentialId)
+                .userEntityUserId(userHandle)
+                .publicKey(new ImmutablePublicKeyCose(publicKeyCose))
+                .signatureCount(signatureCount.get())
+                .uvInitialized(true)
+                .transports(Set.of(AuthenticatorTransport.INTERNAL))
+                .backupEligible(false)
+                .backupState(false)
+                .attestationObject(attestationObject())
+                .attestationClientDataJSON(attestationClientDataJson())
+                .created(now)
+                .lastUsed(now)
+                .label("Virtual " + algorithm)
+                .build();
+    }
+
+    long nextSignatureCount() {
+        return signatureCounter ? signatureCount.incrementAndGet() : 0;
+    }
+
+    byte[] sign(byte[] data) {
+        try {
+            Signature signature = algorithm.newSignature();
+            signature.initSign(keyPair.getPrivate());
+            signature.update(data);
+            return signature.sign();
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,19 @@
+-- The credentials table of earlier versions, which LegacyCredentialTableMigration moves to webauthn_credentials
+CREATE TABLE IF NOT EXISTS user_credentials (
+    id VARCHAR(255) DEFAULT RANDOM_UUID() PRIMARY KEY,
+    user_entity_user_id VARCHAR(255) NOT NULL,
+    credential_id VARCHAR(1024) NOT NULL UNIQUE,
+    public_key TEXT NOT NULL,
+    signature_count BIGINT NOT NULL,
+    public_key_credential_type VARCHAR(32) NOT NULL,
+    created TIMESTAMP NOT NULL,
+    last_used TIMESTAMP,
+    label VARCHAR(512),
+    backup_eligible BOOLEAN NOT NULL DEFAULT FALSE,
+    backup_state BOOLEAN NOT NULL DEFAULT FALSE,
+    uv_initialized BOOLEAN NOT NULL DEFAULT FALSE,
+    authenticator_transports VARCHAR(512),
+    attestation_object VARBINARY(1024),
+    attestation_client_data_json VARBINARY(1024),
+    FOREIGN KEY (user_entity_user_id) REFERENCES user_entities(id)
+);
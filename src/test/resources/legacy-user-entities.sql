@@ -0,0 +1,6 @@
+-- The user entities table of earlier versions, which LegacyUserEntityMigration merges into users
+CREATE TABLE IF NOT EXISTS user_entities (
+    id VARCHAR(255) PRIMARY KEY,
+    name VARCHAR(255) NOT NULL UNIQUE,
+    display_name VARCHAR(255) NOT NULL
+);